@@ -35,6 +35,7 @@ public abstract class FreeTextQuery implements Serializable {
   public static final String FIELD_UNIQUE = "unique";
   public static final String FIELD_ID = "id";
   public static final String FIELD_ID_RANGEABLE = "id_range";
+  public static final String FIELD_ID_SORT = "id_sort";
   public static final String FIELD_ITEMDEFID = "itemdefid";
   public static final String FIELD_SCHEMAID = "schemaid";
   public static final String FIELD_LIVE = "live";
@@ -63,12 +64,14 @@ public abstract class FreeTextQuery implements Serializable {
   public static final String FIELD_IS_BAD_URL = "badurl";
 
   public static final String FIELD_INDEXEDTIME = "indexedtime";
+  public static final String FIELD_INDEXEDTIME_DOCVALUES = "indexedtime_dv";
   public static final String FIELD_RATING = "rating";
   public static final String FIELD_WORKFLOW_UNANIMOUS = "unanimous";
   public static final String FIELD_WORKFLOW_ASSIGNEDTO = "assignedto";
   public static final String FIELD_WORKFLOW_ACCEPTED = "accepted";
   public static final String FIELD_WORKFLOW_TASKID = "taskid";
   public static final String FIELD_INSTITUTION = "institution";
+  public static final String FIELD_INSTITUTION_DOCVALUES = "institution_dv";
   public static final String FIELD_REALLASTMODIFIED = "lastmodified";
   public static final String FIELD_REALCREATED = "created";
 
@@ -83,6 +86,8 @@ public abstract class FreeTextQuery implements Serializable {
   public static final String FIELD_BOOKMARK_OWNER = "bookmark_owner";
   public static final String FIELD_BOOKMARK_TAGS = "bookmark_tags";
 
+  private static final String FACET_EXT = "/$FACET$";
+
   // The things one learns from Sonar's quibbles - the mutability of the
   // contents of a final array, so ...
   public static final List<String> BASIC_NAME_BODY_ATTACHMENT_FIELDS =
@@ -111,6 +116,15 @@ public abstract class FreeTextQuery implements Serializable {
     return t != null ? t : field;
   }
 
+  /**
+   * The field holding the sorted set doc values of an indexed schema node, used for counting the
+   * values of the node. Doc values can't be added to the existing indexed field, as a field's doc
+   * values type can't change within an index.
+   */
+  public static String getFacetField(String field) {
+    return field + FACET_EXT;
+  }
+
   public static String combineQuery(String q1, String q2) {
     if (Check.isEmpty(q2)) {
       return q1;
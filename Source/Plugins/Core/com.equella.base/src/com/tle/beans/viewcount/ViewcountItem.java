@@ -37,6 +37,12 @@ import org.hibernate.annotations.NamedQuery;
     query =
         "DELETE FROM ViewcountItem Where id.itemVersion = :itemVersion and id.itemUuid = :itemUuid"
             + " and id.inst = :institutionId")
+@NamedQuery(
+    name = "addItemViews",
+    query =
+        "UPDATE ViewcountItem vci SET vci.count = vci.count + :views, vci.lastViewed = :lastViewed"
+            + " WHERE vci.id.itemVersion = :itemVersion and vci.id.itemUuid = :itemUuid and"
+            + " vci.id.inst = :institutionId")
 @Entity
 @AttributeAccessor("field")
 public class ViewcountItem extends AbstractViewcount {
@@ -25,6 +25,11 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
 public interface TextExtracterExtension {
+  /**
+   * Appends the text of the input to the output, cut off at {@code maxSize} characters. Throws if
+   * the text can't be extracted in full, such as when parsing fails or takes longer than {@code
+   * parseDurationCap} milliseconds, so that partial text is not kept as the text of the file.
+   */
   void extractText(
       String mimeType,
       InputStream input,
@@ -26,7 +26,9 @@ import com.tle.core.plugins.PluginTracker;
 import io.prometheus.client.Info;
 import io.prometheus.client.hotspot.DefaultExports;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
 import org.apache.commons.logging.Log;
@@ -43,6 +45,7 @@ public final class ApplicationStarter {
       Info.build().name("version").help("Version information for the server").register();
 
   private static PluginTracker<StartupBean> startupTracker;
+  private static final Deque<StartupBean> startedBeans = new ArrayDeque<StartupBean>();
 
   private ApplicationStarter() {
     throw new Error();
@@ -87,11 +90,30 @@ public final class ApplicationStarter {
                 new PluginTracker.ExtensionParamComparator("order", true))
             .setBeanKey("bean");
 
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(ApplicationStarter::stop, "ApplicationStarter.shutdown"));
     for (String type : types) {
       startRoles(type);
     }
   }
 
+  private static void stop() {
+    while (true) {
+      StartupBean startupBean;
+      synchronized (startedBeans) {
+        startupBean = startedBeans.pollFirst();
+      }
+      if (startupBean == null) {
+        return;
+      }
+      try {
+        startupBean.shutdown();
+      } catch (Exception e) {
+        LOGGER.error("Error shutting down bean " + startupBean, e);
+      }
+    }
+  }
+
   private static final void startRoles(String type) {
     // This code has been vastly simplified.
     // It used to use a thread pool to run "initial" tasks concurrently, but there is actually a
@@ -104,6 +126,9 @@ public final class ApplicationStarter {
         LOGGER.info("Starting bean " + extension);
         StartupBean startupBean = startupTracker.getBeanByExtension(extension);
         startupBean.startup();
+        synchronized (startedBeans) {
+          startedBeans.addFirst(startupBean);
+        }
         long end = System.currentTimeMillis();
         LOGGER.info("Startup bean " + extension + " took " + (end - start) + "ms.");
       }
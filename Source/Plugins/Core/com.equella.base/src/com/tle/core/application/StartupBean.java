@@ -20,4 +20,12 @@ package com.tle.core.application;
 
 public interface StartupBean {
   void startup();
+
+  /**
+   * Called when the server stops, in the reverse order the beans were started in, for beans which
+   * need to finish or save work in progress.
+   */
+  default void shutdown() {
+    // Nothing by default
+  }
 }
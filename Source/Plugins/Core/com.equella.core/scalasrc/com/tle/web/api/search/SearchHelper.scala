@@ -26,7 +26,7 @@ import com.dytech.devlib.PropBagEx
 import com.dytech.edge.exceptions.{BadRequestException, DRMException}
 import com.tle.beans.entity.DynaCollection
 import com.tle.beans.item.ItemStatus.{MODERATING, REJECTED, REVIEW}
-import com.tle.beans.item.{Comment, Item, ItemIdKey, ItemStatus}
+import com.tle.beans.item.{Comment, Item, ItemIdKey, ItemSelect, ItemStatus}
 import com.tle.common.Check
 import com.tle.common.beans.exception.NotFoundException
 import com.tle.common.collection.AttachmentConfigConstants
@@ -90,6 +90,30 @@ object SearchHelper {
   ): FreetextSearchResults[FreetextResult] =
     LegacyGuice.freeTextService.search(defaultSearch, start, length, searchAttachments)
 
+  /** Execute a search and return the page of results which follows a cursor.
+    *
+    * @param defaultSearch
+    *   A set of search criteria
+    * @param cursor
+    *   The cursor returned with the previous page, or None for the first page.
+    * @param length
+    *   The maximum number of search results.
+    * @param searchAttachments
+    *   Whether to search attachments.
+    */
+  def searchAfter(
+      defaultSearch: DefaultSearch,
+      cursor: Option[String],
+      length: Int,
+      searchAttachments: Boolean
+  ): FreetextSearchResults[FreetextResult] =
+    LegacyGuice.freeTextService.searchAfter(
+      defaultSearch,
+      cursor.orNull,
+      length,
+      searchAttachments
+    )
+
   /** Create a new search with search criteria. The search criteria include two parts.
     *   1. General criteria provided by `SearchPayload`. 2. Advanced search criteria defined by a
     *      list of `WizardControlFieldValue`.
@@ -302,7 +326,87 @@ object SearchHelper {
     LegacyGuice.itemSerializerService.createItemBeanSerializer(ids, category, false, privileges: _*)
   }
 
-  /** Convert a SearchItem to an instance of SearchResultItem.
+  /** Details from the database needed to convert a page of search results, keyed by item ID
+    * unless stated otherwise. Loading these for the whole page at once avoids several queries for
+    * every single result.
+    *
+    * @param items
+    *   The items themselves, including their DRM settings and moderation status.
+    * @param latestVersions
+    *   The latest version of each item keyed by item UUID.
+    * @param bookmarkIds
+    *   The ID of the current user's bookmark of each bookmarked item.
+    * @param commentCounts
+    *   The number of comments of each item whose comments the current user can view.
+    */
+  case class SearchPageDetails(
+      items: Map[Long, Item],
+      latestVersions: Map[String, Int],
+      bookmarkIds: Map[Long, Long],
+      commentCounts: Map[Long, Integer]
+  )
+
+  /** Load the details needed to convert a page of search results with a fixed number of queries,
+    * regardless of the number of results.
+    *
+    * @param keys
+    *   Keys of the items in the page of search results.
+    */
+  def loadSearchPageDetails(keys: List[ItemIdKey]): SearchPageDetails = {
+    val select = new ItemSelect
+    select.setDrm(true)
+    select.setModeration(true)
+
+    val items = LegacyGuice.itemService
+      .queryItems(keys.asJava, select)
+      .asScala
+      .filter(_ != null)
+      .toList
+    val latestVersions = LegacyGuice.itemService
+      .getLatestVersions(keys.map(_.getUuid).distinct.asJava)
+      .asScala
+      .map { case (uuid, version) => uuid -> version.intValue }
+      .toMap
+    val bookmarkIds = LegacyGuice.bookmarkService
+      .getBookmarksForItems(items.asJava)
+      .asScala
+      .map { case (item, bookmark) => item.getId -> bookmark.getId }
+      .toMap
+    val commentCounts = LegacyGuice.itemCommentService
+      .getCommentCountsWithACLCheck(items.asJava)
+      .asScala
+      .map { case (id, count) => id.longValue -> count }
+      .toMap
+
+    SearchPageDetails(
+      items.map(i => i.getId -> i).toMap,
+      latestVersions,
+      bookmarkIds,
+      commentCounts
+    )
+  }
+
+  /** Convert a page of SearchItem to instances of SearchResultItem, loading the details from the
+    * database for all of them at once.
+    *
+    * @param items
+    *   Details of the items to convert.
+    * @param includeAttachments
+    *   Controls whether to populate the 'attachments' property as that process can be intensive and
+    *   slow down searches.
+    * @return
+    *   The result of converting each of `items` to a `SearchResultItem`, in the same order.
+    */
+  def convertToItems(
+      items: List[SearchItem],
+      includeAttachments: Boolean = true
+  ): List[SearchResultItem] = {
+    val details = loadSearchPageDetails(items.map(_.idKey))
+    items.map(convertToItem(_, includeAttachments, details))
+  }
+
+  /** Convert a SearchItem to an instance of SearchResultItem. When converting a page of results
+    * use `convertToItems` instead, which loads the details of all the items at once.
     *
     * @param item
     *   Details of an item to convert.
@@ -312,12 +416,19 @@ object SearchHelper {
     * @return
     *   The result of converting `item` to a `SearchResultItem`.
     */
-  def convertToItem(item: SearchItem, includeAttachments: Boolean = true): SearchResultItem = {
+  def convertToItem(item: SearchItem, includeAttachments: Boolean = true): SearchResultItem =
+    convertToItem(item, includeAttachments, loadSearchPageDetails(List(item.idKey)))
+
+  private def convertToItem(
+      item: SearchItem,
+      includeAttachments: Boolean,
+      details: SearchPageDetails
+  ): SearchResultItem = {
     val key  = item.idKey
     val bean = item.bean
     lazy val sanitisedAttachmentBeans =
       Option(bean.getAttachments).map(_.asScala.map(sanitiseAttachmentBean).toList)
-    val rawItem = LegacyGuice.itemService.getUnsecureIfExists(key)
+    val rawItem = details.items.get(key.getKey).orNull
 
     SearchResultItem(
       uuid = key.getUuid,
@@ -328,7 +439,7 @@ object SearchHelper {
       createdDate = bean.getCreatedDate,
       modifiedDate = bean.getModifiedDate,
       collectionId = bean.getCollection.getUuid,
-      commentCount = getItemCommentCount(key),
+      commentCount = details.commentCounts.get(key.getKey),
       starRatings = bean.getRating,
       attachmentCount = Option(bean.getAttachments).map(_.size).getOrElse(0),
       attachments =
@@ -340,8 +451,9 @@ object SearchHelper {
       displayOptions = Option(bean.getDisplayOptions),
       keywordFoundInAttachment = item.keywordFound,
       links = getLinksFromBean(bean),
-      bookmarkId = getBookmarkId(key),
-      isLatestVersion = isLatestVersion(key),
+      bookmarkId = details.bookmarkIds.get(key.getKey),
+      // Same as ItemService.getLatestVersion, which treats an unknown item as being at version 1.
+      isLatestVersion = key.getVersion == details.latestVersions.getOrElse(key.getUuid, 1),
       drmStatus = getItemDrmStatus(rawItem),
       moderationDetails = getModerationDetails(rawItem)
     )
@@ -396,32 +508,11 @@ object SearchHelper {
   def getItemComments(key: ItemIdKey): Option[java.util.List[Comment]] =
     Option(LegacyGuice.itemCommentService.getCommentsWithACLCheck(key, null, null, -1))
 
-  def getItemCommentCount(key: ItemIdKey): Option[Integer] =
-    Option(LegacyGuice.itemCommentService.getCommentCountWithACLCheck(key))
-
   /** Extract the value of 'links' from the 'extras' of AbstractExtendableBean.
     */
   def getLinksFromBean[T <: AbstractExtendableBean](bean: T) =
     bean.get("links").asInstanceOf[java.util.Map[String, String]]
 
-  /** Find the Bookmark linking to the Item and return the Bookmark's ID.
-    * @param itemID
-    *   Unique Item ID
-    * @return
-    *   Unique Bookmark ID
-    */
-  def getBookmarkId(itemID: ItemIdKey): Option[Long] =
-    Option(LegacyGuice.bookmarkService.getByItem(itemID)).map(_.getId)
-
-  /** Check whether a specific version is the latest version
-    * @param itemID
-    *   Unique Item ID
-    * @return
-    *   True if the version is the latest one
-    */
-  def isLatestVersion(itemID: ItemIdKey): Boolean =
-    itemID.getVersion == LegacyGuice.itemService.getLatestVersion(itemID.getUuid)
-
   def getThumbnailDetails(
       attachmentBeans: Option[List[AttachmentBean]],
       itemKey: ItemIdKey
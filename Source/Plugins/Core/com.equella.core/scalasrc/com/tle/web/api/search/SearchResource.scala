@@ -63,6 +63,9 @@ import scala.util.{Failure, Success, Try}
 class SearchResource {
   val Logger: Logger = LoggerFactory.getLogger(getClass)
 
+  // Value of the 'cursor' parameter which requests the first page of a cursor based search.
+  private val FirstPageCursor = "*"
+
   @Inject private var browseHierarchyHelper: BrowseHierarchyHelper = _
   @Inject private var hierarchyService: HierarchyService           = _
   @Inject private var auditLogService: AuditLogService             = _
@@ -215,8 +218,17 @@ class SearchResource {
 
   private def getSearchResult(searchRequest: DefaultSearch, payload: SearchPayload): Response = {
     Try {
-      val searchResults =
-        search(searchRequest, payload.start, payload.length, payload.searchAttachments)
+      val searchResults = payload.cursor match {
+        case Some(cursor) =>
+          searchAfter(
+            searchRequest,
+            Option.when(cursor != FirstPageCursor)(cursor),
+            payload.length,
+            payload.searchAttachments
+          )
+        case None =>
+          search(searchRequest, payload.start, payload.length, payload.searchAttachments)
+      }
 
       val freetextResults         = searchResults.getSearchResults.asScala.toList
       val itemIds                 = freetextResults.map(_.getItemIdKey)
@@ -229,8 +241,9 @@ class SearchResource {
         searchResults.getOffset,
         searchResults.getCount,
         searchResults.getAvailable,
-        items.map(convertToItem(_, payload.includeAttachments)),
-        highlight
+        convertToItems(items, payload.includeAttachments),
+        highlight,
+        Option(searchResults.getNextCursor)
       )
     } match {
       case Success(searchResult) => Response.ok.entity(searchResult).build()
@@ -85,6 +85,12 @@ class SearchParam extends BaseSearchParam {
   @QueryParam("length") @DefaultValue("10")
   var length: Int = _
 
+  @ApiParam(
+    "A cursor used to page through the search results instead of 'start'. Use '*' for the first page, and then the value of 'nextCursor' in each result for the following page."
+  )
+  @QueryParam("cursor")
+  var cursor: String = _
+
   @ApiParam(
     value = "The order of the search results",
     allowableValues = "relevance,modified,name,rating,created,task_submitted,task_lastaction"
@@ -135,6 +141,7 @@ case class SearchPayload(
     query: Option[String],
     start: Int = 0,
     length: Int = 10,
+    cursor: Option[String] = None,
     collections: Array[String] = Array(),
     order: Option[String],
     reverseOrder: Boolean = false,
@@ -158,6 +165,7 @@ object SearchPayload {
       query = Option(searchParam.query),
       start = searchParam.start,
       length = searchParam.length,
+      cursor = Option(searchParam.cursor),
       collections = searchParam.collections,
       order = Option(searchParam.order),
       reverseOrder = searchParam.reverseOrder,
@@ -30,11 +30,14 @@ package com.tle.web.api.search.model
   *   The individual items which match the search
   * @param highlight
   *   List of words to use to highlight when displaying the results
+  * @param nextCursor
+  *   The cursor for the next page when paging with a cursor, or None if there are no more results
   */
 case class SearchResult[T](
     start: Int,
     length: Int,
     available: Int,
     results: List[T],
-    highlight: List[String]
+    highlight: List[String],
+    nextCursor: Option[String] = None
 )
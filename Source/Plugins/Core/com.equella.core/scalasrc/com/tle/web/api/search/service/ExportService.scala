@@ -20,19 +20,21 @@ package com.tle.web.api.search.service
 
 import com.tle.common.search.DefaultSearch
 import com.tle.core.guice.Bind
-import com.tle.legacy.LegacyGuice
+import com.tle.core.services.item.{FreetextResult, FreetextSearchResults}
 import com.tle.web.api.search.CSVHeader
 import com.tle.web.api.search.ExportCSVHelper.{buildCSVRow, convertSearchResultToXML}
-import com.tle.web.api.search.SearchHelper.search
+import com.tle.web.api.search.SearchHelper.searchAfter
 import org.springframework.transaction.annotation.Transactional
 import javax.inject.Singleton
+import scala.annotation.tailrec
 import scala.jdk.CollectionConverters._
 
 @Bind
 @Singleton
 class ExportService {
 
-  /** Export search results as CSV contents. The full result is chunked by paging and streaming.
+  /** Export search results as CSV contents. The full result is chunked by paging with a search
+    * cursor and streaming, so the cost of each chunk does not grow with the size of the export.
     * @param defaultSearch
     *   A set of search criteria
     * @param searchAttachments
@@ -49,20 +51,44 @@ class ExportService {
       headers: List[CSVHeader],
       writeRow: (String) => Unit
   ): Unit = {
-    // Get the total count first. As we only do one search, the result of 'countsFromFilters'
-    // must be an array that has only one element.
-    val count     = LegacyGuice.freeTextService.countsFromFilters(List(defaultSearch).asJava)(0)
     val chunkSize = 100
-    val starts: Seq[Int] =
-      for (i <- 0 until count / chunkSize + 1) yield i * chunkSize
 
-    starts.foreach(start => {
-      convertSearchResultToXML(
-        search(defaultSearch, start, chunkSize, searchAttachments).getSearchResults.asScala.toList
-      )
+    ExportService.forEachPage[FreetextSearchResults[FreetextResult]](
+      searchAfter(defaultSearch, _, chunkSize, searchAttachments),
+      results => Option(results.getNextCursor)
+    ) { results =>
+      convertSearchResultToXML(results.getSearchResults.asScala.toList)
         .foreach(xml => {
           writeRow(s"${buildCSVRow(xml, headers)}")
         })
-    })
+    }
+  }
+}
+
+object ExportService {
+
+  /** Walk through every page of a cursor based search, starting from the first page.
+    * @param search
+    *   Function which returns the page following a cursor, or the first page for None.
+    * @param nextCursor
+    *   Function which returns the cursor for the page following a page, or None for the last page.
+    * @param handlePage
+    *   Function called with each page in turn.
+    */
+  def forEachPage[T](search: Option[String] => T, nextCursor: T => Option[String])(
+      handlePage: T => Unit
+  ): Unit = {
+    @tailrec
+    def page(cursor: Option[String]): Unit = {
+      val results = search(cursor)
+      handlePage(results)
+
+      nextCursor(results) match {
+        case Some(next) => page(Some(next))
+        case None       =>
+      }
+    }
+
+    page(None)
   }
 }
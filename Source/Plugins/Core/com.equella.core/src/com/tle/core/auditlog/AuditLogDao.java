@@ -20,8 +20,12 @@ package com.tle.core.auditlog;
 
 import com.tle.beans.Institution;
 import com.tle.beans.audit.AuditLogEntry;
+import java.util.Collection;
 import org.hibernate.criterion.Criterion;
 
 public interface AuditLogDao extends AuditLogExtensionDao<AuditLogEntry> {
   Criterion restrictByInstitution(Institution institution);
+
+  /** Saves the entries in a transaction of their own, inserting them in JDBC batches. */
+  void saveAll(Collection<AuditLogEntry> entries, int batchSize);
 }
@@ -24,7 +24,13 @@ import com.tle.core.hibernate.dao.GenericDao;
 import java.util.Date;
 
 public interface AuditLogExtensionDao<T extends AuditLogTable> extends GenericDao<T, Long> {
-  void removeEntriesBeforeDate(Date date);
+  /**
+   * Removes up to {@code maxEntries} of the oldest entries in the current institution from before
+   * the date, in a transaction of their own.
+   *
+   * @return The number of entries removed, which is zero once there are none left.
+   */
+  int removeEntriesBeforeDate(Date date, int maxEntries);
 
   void removeEntriesForInstitution(Institution institution);
 
@@ -22,12 +22,13 @@ import com.tle.beans.Institution;
 import com.tle.beans.audit.AuditLogTable;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.auditlog.AuditLogExtensionDao;
-import com.tle.core.dao.helpers.DMLPartitioner;
 import com.tle.core.hibernate.dao.GenericDaoImpl;
 import java.util.Date;
+import java.util.List;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.springframework.orm.hibernate5.HibernateCallback;
+import org.springframework.transaction.annotation.Transactional;
 
 @SuppressWarnings("nls")
 public abstract class AbstractAuditLogDaoImpl<T extends AuditLogTable>
@@ -37,37 +38,43 @@ public abstract class AbstractAuditLogDaoImpl<T extends AuditLogTable>
     super(persistentClass);
   }
 
-  /*
-   * (non-Javadoc)
-   * @see com.tle.core.dao.AuditLogDao#removeEntriesBeforeDate(java.util.Date)
-   */
   @Override
-  public void removeEntriesBeforeDate(final Date date) {
-    getHibernateTemplate()
-        .execute(
-            new DMLPartitioner(getEntityName(), "id") {
-              @Override
-              public String getWhereClause() {
-                return "where timestamp < :date and institution = :institution";
-              }
-
-              @Override
-              public void setWhereParams(Query query) {
-                query.setTimestamp("date", date);
-                query.setParameter("institution", CurrentInstitution.get());
-              }
-
-              @Override
-              public String getDmlStart() {
-                return "delete from " + getEntityName();
-              }
+  @Transactional
+  public int removeEntriesBeforeDate(final Date date, final int maxEntries) {
+    return (Integer)
+        getHibernateTemplate()
+            .execute(
+                new HibernateCallback() {
+                  @Override
+                  public Object doInHibernate(Session session) {
+                    Query ids =
+                        session.createQuery(
+                            "select id from "
+                                + getEntityName()
+                                + " where timestamp < :date and institution = :institution"
+                                + " order by id asc");
+                    ids.setTimestamp("date", date);
+                    ids.setParameter("institution", CurrentInstitution.get());
+                    ids.setMaxResults(maxEntries);
+                    List<Long> found = ids.list();
+                    if (found.isEmpty()) {
+                      return 0;
+                    }
 
-              @Override
-              public void setDmlParams(Query q) {
-                // Nothing additional to set that not already in the where
-                // parameters
-              }
-            });
+                    // Everything matching in the range of the IDs found is one of them
+                    Query delete =
+                        session.createQuery(
+                            "delete from "
+                                + getEntityName()
+                                + " where timestamp < :date and institution = :institution"
+                                + " and id >= :startId and id <= :endId");
+                    delete.setTimestamp("date", date);
+                    delete.setParameter("institution", CurrentInstitution.get());
+                    delete.setParameter("startId", found.get(0));
+                    delete.setParameter("endId", found.get(found.size() - 1));
+                    return delete.executeUpdate();
+                  }
+                });
   }
 
   /*
@@ -22,9 +22,13 @@ import com.tle.beans.Institution;
 import com.tle.beans.audit.AuditLogEntry;
 import com.tle.core.auditlog.AuditLogDao;
 import com.tle.core.guice.Bind;
+import java.util.Collection;
 import javax.inject.Singleton;
+import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
+import org.springframework.orm.hibernate5.HibernateCallback;
+import org.springframework.transaction.annotation.Transactional;
 
 @Bind(AuditLogDao.class)
 @Singleton
@@ -36,4 +40,23 @@ public class AuditLogDaoImpl extends AbstractAuditLogDaoImpl<AuditLogEntry> impl
   public Criterion restrictByInstitution(Institution institution) {
     return Restrictions.eq("institution", institution);
   }
+
+  @Override
+  @Transactional
+  public void saveAll(final Collection<AuditLogEntry> entries, final int batchSize) {
+    getHibernateTemplate()
+        .execute(
+            new HibernateCallback() {
+              @Override
+              public Object doInHibernate(Session session) {
+                session.setJdbcBatchSize(batchSize);
+                for (AuditLogEntry entry : entries) {
+                  session.save(entry);
+                }
+                session.flush();
+                session.clear();
+                return null;
+              }
+            });
+  }
 }
@@ -70,11 +70,14 @@ public class AuditLogServiceImpl implements AuditLogService {
 
   private static final String USED_TYPE = "USED";
 
+  // Old entries are deleted a chunk at a time, each in its own transaction
+  private static final int REMOVE_CHUNK_SIZE = 10000;
+
   @Inject private AuditLogDao dao;
+  @Inject private AuditLogWriter writer;
   private PluginTracker<AuditLogExtension> extensionTracker;
 
   @Override
-  @Transactional
   public void removeOldLogs(int daysOld) {
     Calendar c = Calendar.getInstance();
     c.set(Calendar.HOUR_OF_DAY, 23);
@@ -82,9 +85,13 @@ public class AuditLogServiceImpl implements AuditLogService {
     c.add(Calendar.DAY_OF_YEAR, -daysOld);
 
     Date date = c.getTime();
-    dao.removeEntriesBeforeDate(date);
+    while (dao.removeEntriesBeforeDate(date, REMOVE_CHUNK_SIZE) > 0) {
+      // Keep going
+    }
     for (AuditLogExtension extension : getExtensions()) {
-      extension.getDao().removeEntriesBeforeDate(date);
+      while (extension.getDao().removeEntriesBeforeDate(date, REMOVE_CHUNK_SIZE) > 0) {
+        // Keep going
+      }
     }
   }
 
@@ -268,7 +275,7 @@ public class AuditLogServiceImpl implements AuditLogService {
             CurrentInstitution.get(),
             meta);
 
-    dao.save(entry);
+    writer.write(entry);
   }
 
   @Override
@@ -302,7 +309,7 @@ public class AuditLogServiceImpl implements AuditLogService {
       String d3,
       String d4,
       Institution institution) {
-    dao.save(
+    writer.write(
         new AuditLogEntry(
             userId, sessionId, category, type, new Date(), d1, d2, d3, d4, institution, null));
   }
@@ -0,0 +1,373 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.auditlog.impl;
+
+import com.tle.beans.Institution;
+import com.tle.beans.audit.AuditLogEntry;
+import com.tle.core.application.StartupBean;
+import com.tle.core.auditlog.AuditLogDao;
+import com.tle.core.guice.Bind;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.institution.RunAsInstitution;
+import com.tle.core.plugins.PluginAwareObjectInputStream;
+import com.tle.core.plugins.PluginAwareObjectOutputStream;
+import io.prometheus.client.Counter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves audit log entries from a background thread, so that logging a search or a content view
+ * doesn't cost the request an insert. Entries wait in a bounded queue and are saved in JDBC batches
+ * once {@code auditLog.batchSize} have been queued or {@code auditLog.flushMillis} has passed.
+ *
+ * <p>If the queue is full the request waits up to {@code auditLog.queueWaitMillis} for room, and
+ * then saves its entry itself, so a slow database slows logging down rather than losing entries.
+ * Entries which can't be saved, or are still queued when the server stops, are written to a spill
+ * file in the filestore and saved once the database is available again.
+ *
+ * <p>The writer thread is started and stopped with the server, as a {@link StartupBean}. Entries
+ * written before it starts are saved by the request.
+ */
+@SuppressWarnings("nls")
+@Bind
+@Singleton
+public class AuditLogWriter implements StartupBean {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AuditLogWriter.class);
+
+  private static final String SPILL_FOLDER = "AuditLogSpill";
+  private static final String SPILL_EXTENSION = ".entries";
+  private static final long SPILL_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  private static final long STOP_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  // Spill files only ever hold a list of entries and their institutions
+  private static final ObjectInputFilter SPILL_FILTER =
+      ObjectInputFilter.Config.createFilter(
+          "java.util.ArrayList;java.util.Date;java.lang.*;com.tle.beans.Institution;"
+              + "com.tle.beans.audit.AuditLogEntry;!*");
+
+  private static final Counter QUEUED =
+      Counter.build()
+          .name("audit_log_entries_queued")
+          .help("Audit log entries queued to be saved in the background")
+          .register();
+  private static final Counter SAVED =
+      Counter.build()
+          .name("audit_log_entries_saved")
+          .help("Queued audit log entries saved by the background writer")
+          .register();
+  private static final Counter SAVED_BY_REQUEST =
+      Counter.build()
+          .name("audit_log_entries_saved_by_request")
+          .help("Audit log entries saved by the request because the queue was full")
+          .register();
+  private static final Counter SPILLED =
+      Counter.build()
+          .name("audit_log_entries_spilled")
+          .help("Audit log entries written to a spill file to be saved later")
+          .register();
+  private static final Counter DROPPED =
+      Counter.build()
+          .name("audit_log_entries_dropped")
+          .help("Audit log entries which could be neither saved nor spilled")
+          .register();
+
+  @Inject private AuditLogDao dao;
+  @Inject private InstitutionService institutionService;
+  @Inject private RunAsInstitution runAs;
+
+  @Inject
+  @Named("filestore.root")
+  private File filestoreRoot;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("auditLog.async")
+  private boolean async = true;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("auditLog.queueSize")
+  private int queueSize = 10000;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("auditLog.batchSize")
+  private int batchSize = 200;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("auditLog.flushMillis")
+  private int flushMillis = 1000;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("auditLog.queueWaitMillis")
+  private int queueWaitMillis = 100;
+
+  private volatile BlockingQueue<AuditLogEntry> queue;
+  private Thread writer;
+  private volatile boolean stopped;
+  // Only used by the writer thread. Look for files left over from before a restart.
+  private boolean spillPending = true;
+  private long nextSpillReplay;
+
+  public AuditLogWriter() {
+    // Configured by injection
+  }
+
+  AuditLogWriter(File filestoreRoot, int batchSize, int flushMillis) {
+    this.filestoreRoot = filestoreRoot;
+    this.batchSize = batchSize;
+    this.flushMillis = flushMillis;
+  }
+
+  /**
+   * Queues the entry to be saved, or saves it straight away if entries are saved synchronously or
+   * the queue stays full. Must be called within a transaction.
+   */
+  public void write(AuditLogEntry entry) {
+    final BlockingQueue<AuditLogEntry> q = queue;
+    if (q == null || stopped || entry.getInstitution() == null) {
+      dao.save(entry);
+      return;
+    }
+
+    try {
+      if (q.offer(entry, queueWaitMillis, TimeUnit.MILLISECONDS)) {
+        // Nothing will take it from the queue if the writer stopped in the meantime
+        if (!stopped || !q.remove(entry)) {
+          QUEUED.inc();
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // The writer isn't keeping up with the entries being logged
+    SAVED_BY_REQUEST.inc();
+    dao.save(entry);
+  }
+
+  /** Starts the writer thread, unless entries are saved synchronously. */
+  @Override
+  public synchronized void startup() {
+    if (!async || stopped || queue != null) {
+      return;
+    }
+    queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    writer = new Thread(this::writeQueued, "AuditLogWriter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private void writeQueued() {
+    final List<AuditLogEntry> batch = new ArrayList<>(batchSize);
+    try {
+      while (true) {
+        try {
+          if (spillPending && System.currentTimeMillis() >= nextSpillReplay) {
+            replaySpilled();
+          }
+
+          AuditLogEntry entry = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+          if (entry != null) {
+            // Give a burst of entries the chance to fill up the batch
+            long flushAt = System.currentTimeMillis() + flushMillis;
+            long remaining = flushMillis;
+            while (entry != null) {
+              batch.add(entry);
+              queue.drainTo(batch, batchSize - batch.size());
+              if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+              }
+              entry = queue.poll(remaining, TimeUnit.MILLISECONDS);
+              remaining = flushAt - System.currentTimeMillis();
+            }
+            save(batch);
+            batch.clear();
+          }
+        } catch (InterruptedException e) {
+          throw e;
+        } catch (Throwable t) {
+          LOGGER.error("Error saving audit log entries", t);
+          batch.clear();
+        }
+      }
+    } catch (InterruptedException e) {
+      // Stopped while waiting for entries. Save the ones already taken from the queue, and leave
+      // the rest to be spilled by stop().
+      if (!batch.isEmpty()) {
+        save(batch);
+      }
+    }
+  }
+
+  /**
+   * Saves the entries, grouped by institution. Entries which can't be saved are spilled.
+   *
+   * @return false if any of the entries couldn't be saved.
+   */
+  private boolean save(List<AuditLogEntry> entries) {
+    Map<Long, List<AuditLogEntry>> byInstitution = new LinkedHashMap<>();
+    for (AuditLogEntry entry : entries) {
+      byInstitution
+          .computeIfAbsent(entry.getInstitution().getUniqueId(), id -> new ArrayList<>())
+          .add(entry);
+    }
+
+    boolean saved = true;
+    for (Map.Entry<Long, List<AuditLogEntry>> group : byInstitution.entrySet()) {
+      final Institution institution = institutionService.getInstitution(group.getKey());
+      final List<AuditLogEntry> instEntries = group.getValue();
+      if (institution == null) {
+        LOGGER.warn(
+            "Dropping " + instEntries.size() + " audit log entries of a deleted institution");
+        DROPPED.inc(instEntries.size());
+        continue;
+      }
+
+      try {
+        for (AuditLogEntry entry : instEntries) {
+          entry.setInstitution(institution);
+        }
+        runAs.executeAsSystem(institution, () -> dao.saveAll(instEntries, batchSize));
+        SAVED.inc(instEntries.size());
+      } catch (Exception e) {
+        LOGGER.warn("Error saving audit log entries, they will be saved again later", e);
+        spill(instEntries);
+        saved = false;
+      }
+    }
+    return saved;
+  }
+
+  private void spill(List<AuditLogEntry> entries) {
+    File folder = new File(filestoreRoot, SPILL_FOLDER);
+    String name = UUID.randomUUID().toString();
+    File temp = new File(folder, name + ".tmp");
+    try {
+      Files.createDirectories(folder.toPath());
+      try (ObjectOutputStream out =
+          new PluginAwareObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        ArrayList<AuditLogEntry> spilled = new ArrayList<>(entries);
+        for (AuditLogEntry entry : spilled) {
+          // Saving may have given it an ID before failing
+          entry.setId(0);
+        }
+        out.writeObject(spilled);
+      }
+      Files.move(
+          temp.toPath(),
+          new File(folder, name + SPILL_EXTENSION).toPath(),
+          StandardCopyOption.ATOMIC_MOVE);
+      SPILLED.inc(entries.size());
+      spillPending = true;
+      nextSpillReplay = System.currentTimeMillis() + SPILL_RETRY_MILLIS;
+    } catch (IOException e) {
+      LOGGER.error("Error spilling " + entries.size() + " audit log entries, they are lost", e);
+      DROPPED.inc(entries.size());
+      temp.delete();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void replaySpilled() {
+    File folder = new File(filestoreRoot, SPILL_FOLDER);
+    File[] files = folder.listFiles((dir, name) -> name.endsWith(SPILL_EXTENSION));
+    spillPending = false;
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      // Claim the file first, as the filestore may be shared by other nodes
+      File claimed = new File(folder, file.getName() + ".saving");
+      if (!file.renameTo(claimed)) {
+        continue;
+      }
+
+      List<AuditLogEntry> entries;
+      try (ObjectInputStream in =
+          new PluginAwareObjectInputStream(new BufferedInputStream(new FileInputStream(claimed)))) {
+        in.setObjectInputFilter(SPILL_FILTER);
+        entries = (List<AuditLogEntry>) in.readObject();
+      } catch (IOException | ClassNotFoundException | RuntimeException e) {
+        LOGGER.error("Error reading spilled audit log entries from " + claimed, e);
+        claimed.renameTo(new File(folder, file.getName() + ".failed"));
+        continue;
+      }
+
+      // Any entries which still can't be saved are spilled to a new file
+      boolean saved = save(entries);
+      claimed.delete();
+      if (!saved) {
+        return;
+      }
+      LOGGER.info("Saved " + entries.size() + " spilled audit log entries");
+    }
+  }
+
+  /**
+   * Stops the writer when the server shuts down. The batch being saved is given the chance to
+   * finish, and anything still queued is spilled to be saved after the restart.
+   */
+  @Override
+  public void shutdown() {
+    final Thread w;
+    synchronized (this) {
+      stopped = true;
+      w = writer;
+    }
+    if (w == null) {
+      return;
+    }
+
+    w.interrupt();
+    try {
+      w.join(STOP_WAIT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    spillQueued();
+  }
+
+  private void spillQueued() {
+    List<AuditLogEntry> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    if (!remaining.isEmpty()) {
+      spill(remaining);
+    }
+  }
+}
@@ -31,6 +31,8 @@ public class CappedBodyContentHandler extends BodyContentHandler {
 
   private int durationCheckCounter = 0;
 
+  private volatile boolean overCappedDuration;
+
   private static final int DURATION_CHECK_FREQUENCY = 200;
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CappedBodyContentHandler.class);
@@ -71,6 +73,7 @@ public class CappedBodyContentHandler extends BodyContentHandler {
       long dur = System.currentTimeMillis() - start;
       LOGGER.debug("Checking if parser is past capped duration - time spent so far: " + dur);
       if (parseDurationCap < dur) {
+        overCappedDuration = true;
         throw new SAXException(
             "Parser exceeded maximum duration of parse.  max=" + parseDurationCap);
       } else {
@@ -78,4 +81,9 @@ public class CappedBodyContentHandler extends BodyContentHandler {
       }
     }
   }
+
+  /** Whether the parse was stopped for taking longer than the capped duration. */
+  public boolean isOverCappedDuration() {
+    return overCappedDuration;
+  }
 }
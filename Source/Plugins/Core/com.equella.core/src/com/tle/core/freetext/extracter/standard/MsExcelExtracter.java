@@ -66,7 +66,7 @@ public class MsExcelExtracter extends AbstractTextExtracterExtension {
         LOGGER.debug("Excel Summary:" + content); // $NON-NLS-1$
       }
     } catch (Exception e) {
-      // Do nothing
+      throw new RuntimeException(e);
     }
   }
 
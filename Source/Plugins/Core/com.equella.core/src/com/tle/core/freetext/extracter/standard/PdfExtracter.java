@@ -23,10 +23,10 @@ import com.tle.core.freetext.extracter.handler.CappedBodyContentHandler;
 import com.tle.core.guice.Bind;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import javax.inject.Singleton;
@@ -54,53 +54,67 @@ public class PdfExtracter extends AbstractTextExtracterExtension {
     return mimeEntry.getType().equals("application/pdf");
   }
 
+  /**
+   * Throws a {@link TimeoutException} if the parse takes longer than the parse duration, rather
+   * than returning the text extracted so far, so that incomplete text is never cached or indexed as
+   * if it were the whole document. Text cut off at {@code maxSize} is returned as usual.
+   */
   @Override
   public void extractText(
       String mimeType, InputStream input, StringBuilder outputText, int maxSize, long parseDuration)
       throws InterruptedException, ExecutionException, TimeoutException {
     WriteOutContentHandler wrapped = new WriteOutContentHandler(maxSize);
-    ContentHandler handler = new CappedBodyContentHandler(wrapped, parseDuration);
-    Runnable runnableParse =
+    CappedBodyContentHandler handler = new CappedBodyContentHandler(wrapped, parseDuration);
+    Callable<String> callableParse =
         () -> {
           try {
             Metadata meta = new Metadata();
             Parser parser = new AutoDetectParser(new TikaConfig(getClass().getClassLoader()));
             parser.parse(input, handler, meta, new ParseContext());
-
-            appendText(handler, outputText, maxSize);
           } catch (IOException | SAXException | TikaException t) {
-            if (WriteLimitReachedException.isWriteLimitReached(t)) {
-              // keep going
-              LOGGER.info("PDF size limit reached.  Indexing truncated text");
-              appendText(handler, outputText, maxSize);
-              return;
+            if (handler.isOverCappedDuration()) {
+              throw new TimeoutException("PDF extraction exceeded " + parseDuration + "ms");
+            }
+            if (!WriteLimitReachedException.isWriteLimitReached(t)) {
+              throw new RuntimeException(t);
             }
-            throw new RuntimeException(t);
+            // keep going
+            LOGGER.info("PDF size limit reached.  Indexing truncated text");
           }
+          return getText(handler, maxSize);
         };
     ExecutorService executor = Executors.newSingleThreadExecutor();
-    Future<?> future = executor.submit(runnableParse);
     try {
-      future.get(parseDuration, TimeUnit.MILLISECONDS);
-    } catch (InterruptedException | TimeoutException | ExecutionException e) {
+      // The text is only appended once the parse has finished, so a parse which times out can't
+      // append to the output later
+      outputText.append(executor.submit(callableParse).get(parseDuration, TimeUnit.MILLISECONDS));
+    } catch (ExecutionException e) {
+      LOGGER.error("PDF extraction failed", e);
+      if (e.getCause() instanceof TimeoutException) {
+        throw (TimeoutException) e.getCause();
+      }
+      // rethrow so indexerThread can catch
+      throw e;
+    } catch (InterruptedException | TimeoutException e) {
       LOGGER.error("PDF extraction timed out", e);
       // rethrow so indexerThread can catch
       throw e;
+    } finally {
+      executor.shutdownNow();
     }
-    executor.shutdownNow();
   }
 
-  private void appendText(ContentHandler handler, StringBuilder outputText, int maxSize) {
+  private String getText(ContentHandler handler, int maxSize) {
     String pdfSummary = handler.toString();
 
     if (pdfSummary.length() > maxSize) {
       pdfSummary = pdfSummary.substring(0, maxSize);
     }
-    outputText.append(pdfSummary);
 
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace("PDF Summary:" + pdfSummary);
     }
+    return pdfSummary;
   }
 
   @Override
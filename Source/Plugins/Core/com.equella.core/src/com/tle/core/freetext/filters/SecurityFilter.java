@@ -22,24 +22,28 @@ import com.dytech.edge.queries.FreeTextQuery;
 import com.tle.common.usermanagement.user.CurrentUser;
 import com.tle.common.usermanagement.user.UserState;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
 import java.util.TreeSet;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.search.BooleanClause.Occur;
-import org.apache.lucene.search.BooleanQuery.Builder;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
 
 /**
  * This filter was significantly refactored when we upgraded Lucene V5.5.5. To generate a proper
@@ -64,65 +68,58 @@ import org.apache.lucene.util.BytesRef;
  *     OWNER, but the owner must not be A.
  * <li>Example 3: two common ACLs (ACLD-2222 and ACLD-3333) are available in user account A, the
  *     result is (ACLD-2222 OR ACLD-3333).
+ *
+ *     <p>Walking every term of every ACL field is expensive for users with many ACL expressions, so
+ *     rather than building the BooleanQuery above the filter evaluates the same logic directly
+ *     against each segment and keeps the resulting bitset in a {@link SecurityFilterCache}, keyed
+ *     by the segment and the user's ACL signature.
  */
 public class SecurityFilter implements CustomFilter {
-  private final String[] expressions;
+  private final String aclType;
+  private final Collection<String> expressions;
   private final Map<String, Boolean> ownerExprMap = new HashMap<>();
   private final boolean systemUser;
-  private final IndexReader reader;
+  private final String userId;
+  private final String signature;
+  private final SecurityFilterCache cache;
 
-  public SecurityFilter(String aclType, IndexReader reader) {
-    this.reader = reader;
+  public SecurityFilter(String aclType, SecurityFilterCache cache) {
+    this.aclType = aclType;
+    this.cache = cache;
 
     UserState userState = CurrentUser.getUserState();
     systemUser = userState.isSystem();
-    Collection<Long> aclExpressions = userState.getCommonAclExpressions();
-    Collection<Long> ownerAclExpressions = userState.getOwnerAclExpressions();
-    Collection<Long> notOwnerAclExpressions = userState.getNotOwnerAclExpressions();
+    userId = CurrentUser.getUserID();
 
-    int ownerSizes =
-        (ownerAclExpressions == null ? 0 : ownerAclExpressions.size())
-            + (notOwnerAclExpressions == null ? 0 : notOwnerAclExpressions.size());
-    expressions = new String[(aclExpressions == null ? 0 : aclExpressions.size()) + ownerSizes];
+    // Sorted so that the signature is the same regardless of the order the expressions came in.
+    Collection<String> common = toFields(aclType, userState.getCommonAclExpressions());
+    Collection<String> owner = toFields(aclType, userState.getOwnerAclExpressions());
+    Collection<String> notOwner = toFields(aclType, userState.getNotOwnerAclExpressions());
+    owner.forEach(aclStr -> ownerExprMap.put(aclStr, true));
+    notOwner.forEach(aclStr -> ownerExprMap.put(aclStr, false));
 
-    int i = 0;
-    if (aclExpressions != null) {
-      for (Long acl : aclExpressions) {
-        expressions[i++] = aclType + acl;
-      }
-    }
+    TreeSet<String> allExpressions = new TreeSet<>(common);
+    allExpressions.addAll(ownerExprMap.keySet());
+    expressions = Collections.unmodifiableCollection(allExpressions);
 
-    if (ownerAclExpressions != null) {
-      for (Long acl : ownerAclExpressions) {
-        String aclStr = aclType + acl;
-        expressions[i++] = aclStr;
-        ownerExprMap.put(aclStr, true);
-      }
-    }
-    if (notOwnerAclExpressions != null) {
-      for (Long acl : notOwnerAclExpressions) {
-        String aclStr = aclType + acl;
-        expressions[i++] = aclStr;
-        ownerExprMap.put(aclStr, false);
-      }
+    // Owner related expressions are evaluated against the current user, so only those signatures
+    // need to include the user ID.
+    StringBuilder sig = new StringBuilder(aclType);
+    sig.append(common).append('|').append(owner).append('|').append(notOwner);
+    if (!ownerExprMap.isEmpty()) {
+      sig.append('|').append(userId);
     }
+    signature = sig.toString();
   }
 
-  private Set<Term> getTermsForField(String field) {
-    Set<Term> set = new HashSet<>();
-    try {
-      Terms terms = MultiTerms.getTerms(reader, field);
-      if (terms != null) {
-        TermsEnum termsEnum = terms.iterator();
-        while (termsEnum.next() != null) {
-          set.add(new Term(field, new BytesRef(termsEnum.term().utf8ToString())));
-        }
+  private static Collection<String> toFields(String aclType, Collection<Long> aclExpressions) {
+    TreeSet<String> fields = new TreeSet<>();
+    if (aclExpressions != null) {
+      for (Long acl : aclExpressions) {
+        fields.add(aclType + acl);
       }
-
-      return set;
-    } catch (IOException e) {
-      throw new RuntimeException("Failed to list terms for field " + field, e);
     }
+    return fields;
   }
 
   @Override
@@ -130,37 +127,110 @@ public class SecurityFilter implements CustomFilter {
     if (systemUser) {
       return null;
     }
+    return new SecurityQuery();
+  }
 
-    Set<Term> allTerms = new TreeSet<>();
-
-    Arrays.stream(expressions)
-        .map(this::getTermsForField)
-        .filter(termSet -> !termSet.isEmpty())
-        .forEach(allTerms::addAll);
-
-    Builder fullQueryBuilder = new Builder();
-    for (Term term : allTerms) {
-      Optional<Boolean> ownerAcl = Optional.ofNullable(ownerExprMap.get(term.field()));
-      if (ownerAcl.isPresent()) {
-        boolean isOwnerAcl = ownerAcl.get();
-        Builder ownerClauseBuilder = new Builder();
-        ownerClauseBuilder.add(new TermQuery(term), Occur.MUST);
-        ownerClauseBuilder.add(
-            new TermQuery(
-                new Term(FreeTextQuery.FIELD_OWNER, new BytesRef(CurrentUser.getUserID()))),
-            isOwnerAcl ? Occur.MUST : Occur.MUST_NOT);
-        fullQueryBuilder.add(ownerClauseBuilder.build(), Occur.SHOULD);
-      } else {
-        String type = term.text();
-        boolean grant = type.endsWith("G");
-        if (grant) {
-          fullQueryBuilder.add(new TermQuery(term), Occur.SHOULD);
+  /**
+   * Calculate the documents of a single segment which are permitted. A document is permitted when
+   * it matches at least one granted expression and is not matched by any revoked common expression.
+   */
+  private FixedBitSet loadPermittedDocs(LeafReader reader) throws IOException {
+    int maxDoc = reader.maxDoc();
+    FixedBitSet granted = new FixedBitSet(maxDoc);
+    FixedBitSet revoked = new FixedBitSet(maxDoc);
+    FixedBitSet ownedDocs = null;
+
+    for (String field : expressions) {
+      Terms terms = reader.terms(field);
+      if (terms == null) {
+        continue;
+      }
+
+      Boolean ownerAcl = ownerExprMap.get(field);
+      if (ownerAcl != null && ownedDocs == null) {
+        ownedDocs = new FixedBitSet(maxDoc);
+        addDocs(reader.postings(new Term(FreeTextQuery.FIELD_OWNER, userId)), ownedDocs);
+      }
+
+      TermsEnum termsEnum = terms.iterator();
+      PostingsEnum postings = null;
+      while (termsEnum.next() != null) {
+        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+        if (ownerAcl != null) {
+          FixedBitSet termDocs = new FixedBitSet(maxDoc);
+          addDocs(postings, termDocs);
+          if (ownerAcl) {
+            termDocs.and(ownedDocs);
+          } else {
+            termDocs.andNot(ownedDocs);
+          }
+          granted.or(termDocs);
+        } else if (termsEnum.term().utf8ToString().endsWith("G")) {
+          addDocs(postings, granted);
         } else {
-          fullQueryBuilder.add(new TermQuery(term), Occur.MUST_NOT);
+          addDocs(postings, revoked);
         }
       }
     }
 
-    return fullQueryBuilder.build();
+    granted.andNot(revoked);
+    return granted;
+  }
+
+  private static void addDocs(PostingsEnum postings, FixedBitSet bits) throws IOException {
+    if (postings != null) {
+      int doc;
+      while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        bits.set(doc);
+      }
+    }
+  }
+
+  /** Matches the documents permitted by the enclosing filter, one cached bitset per segment. */
+  private final class SecurityQuery extends Query {
+    private final String key = signature;
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+      return new ConstantScoreWeight(this, boost) {
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+          FixedBitSet bits =
+              cache.get(context.reader(), signature, SecurityFilter.this::loadPermittedDocs);
+          int cardinality = bits.cardinality();
+          if (cardinality == 0) {
+            return null;
+          }
+          return new ConstantScoreScorer(
+              this, score(), scoreMode, new BitSetIterator(bits, cardinality));
+        }
+
+        @Override
+        public boolean isCacheable(LeafReaderContext ctx) {
+          // Already cached per segment by the SecurityFilterCache
+          return false;
+        }
+      };
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+      visitor.visitLeaf(this);
+    }
+
+    @Override
+    public String toString(String field) {
+      return "SecurityFilter(" + aclType + expressions + ")";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return sameClassAs(other) && key.equals(((SecurityQuery) other).key);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * classHash() + key.hashCode();
+    }
   }
 }
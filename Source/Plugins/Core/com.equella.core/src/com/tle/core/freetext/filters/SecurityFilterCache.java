@@ -0,0 +1,225 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.filters;
+
+import io.prometheus.client.Counter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.util.FixedBitSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the documents permitted by a {@link SecurityFilter} for each Lucene segment. Entries are
+ * keyed by the segment core key and the ACL signature of a user, so any users sharing the same set
+ * of ACL expressions share the same bitsets. Because segments are immutable, an entry stays valid
+ * until its segment is closed (typically after a merge), at which point it is dropped. Memory is
+ * capped by evicting the least recently used entries once the configured budget is exceeded.
+ *
+ * <p>Hits, misses and evictions are counted for each cache instance, and also added to global
+ * Prometheus counters that total them across every instance.
+ */
+@SuppressWarnings("nls")
+public class SecurityFilterCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SecurityFilterCache.class);
+
+  private static final Counter HITS =
+      Counter.build()
+          .name("freetext_security_filter_cache_hits")
+          .help("Segment security bitsets served from the cache")
+          .register();
+  private static final Counter MISSES =
+      Counter.build()
+          .name("freetext_security_filter_cache_misses")
+          .help("Segment security bitsets computed because they were not cached")
+          .register();
+  private static final Counter EVICTIONS =
+      Counter.build()
+          .name("freetext_security_filter_cache_evictions")
+          .help("Segment security bitsets evicted to stay within the memory budget")
+          .register();
+
+  private final long maxBytes;
+  private final LinkedHashMap<CacheKey, FixedBitSet> cache = new LinkedHashMap<>(64, 0.75f, true);
+  private final Set<IndexReader.CacheKey> trackedSegments = new HashSet<>();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private long usedBytes;
+
+  /**
+   * @param maxBytes The maximum number of bytes the cached bitsets can use. Zero or less disables
+   *     caching.
+   */
+  public SecurityFilterCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the bitset of permitted documents for the given segment and ACL signature, computing
+   * and caching it with the provided loader if it is not already cached.
+   */
+  public FixedBitSet get(LeafReader reader, String signature, BitSetLoader loader)
+      throws IOException {
+    IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+    if (maxBytes <= 0 || cacheHelper == null) {
+      return loader.load(reader);
+    }
+
+    CacheKey key = new CacheKey(cacheHelper.getKey(), signature);
+    synchronized (cache) {
+      FixedBitSet bits = cache.get(key);
+      if (bits != null) {
+        hitCount.incrementAndGet();
+        HITS.inc();
+        return bits;
+      }
+    }
+
+    missCount.incrementAndGet();
+    MISSES.inc();
+    // Computed outside the lock so a slow segment does not block other searches. Two concurrent
+    // misses for the same key will both compute, and the second simply replaces the first.
+    FixedBitSet bits = loader.load(reader);
+    put(cacheHelper, key, bits);
+    return bits;
+  }
+
+  private void put(IndexReader.CacheHelper cacheHelper, CacheKey key, FixedBitSet bits) {
+    long size = bits.ramBytesUsed();
+    if (size > maxBytes) {
+      return;
+    }
+
+    boolean newSegment;
+    synchronized (cache) {
+      FixedBitSet previous = cache.put(key, bits);
+      if (previous != null) {
+        usedBytes -= previous.ramBytesUsed();
+      }
+      usedBytes += size;
+      evictToBudget();
+      newSegment = trackedSegments.add(key.segment);
+    }
+
+    if (newSegment) {
+      cacheHelper.addClosedListener(this::removeSegment);
+    }
+  }
+
+  private void evictToBudget() {
+    Iterator<Map.Entry<CacheKey, FixedBitSet>> iter = cache.entrySet().iterator();
+    while (usedBytes > maxBytes && iter.hasNext()) {
+      Map.Entry<CacheKey, FixedBitSet> eldest = iter.next();
+      usedBytes -= eldest.getValue().ramBytesUsed();
+      iter.remove();
+      evictionCount.incrementAndGet();
+      EVICTIONS.inc();
+    }
+  }
+
+  private void removeSegment(IndexReader.CacheKey segment) {
+    synchronized (cache) {
+      trackedSegments.remove(segment);
+      Iterator<Map.Entry<CacheKey, FixedBitSet>> iter = cache.entrySet().iterator();
+      while (iter.hasNext()) {
+        Map.Entry<CacheKey, FixedBitSet> entry = iter.next();
+        if (entry.getKey().segment == segment) {
+          usedBytes -= entry.getValue().ramBytesUsed();
+          iter.remove();
+        }
+      }
+    }
+    LOGGER.debug("Dropped cached security bitsets for closed segment " + segment);
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+      usedBytes = 0;
+    }
+  }
+
+  /** The number of bitsets this cache has served without computing them. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** The number of bitsets this cache has computed because they were not cached. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** The number of bitsets this cache has evicted to stay within its memory budget. */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  public long getSizeInBytes() {
+    synchronized (cache) {
+      return usedBytes;
+    }
+  }
+
+  public int getEntryCount() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  @FunctionalInterface
+  public interface BitSetLoader {
+    FixedBitSet load(LeafReader reader) throws IOException;
+  }
+
+  private static final class CacheKey {
+    private final IndexReader.CacheKey segment;
+    private final String signature;
+
+    private CacheKey(IndexReader.CacheKey segment, String signature) {
+      this.segment = segment;
+      this.signature = signature;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey other = (CacheKey) obj;
+      return segment == other.segment && signature.equals(other.signature);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(segment), signature);
+    }
+  }
+}
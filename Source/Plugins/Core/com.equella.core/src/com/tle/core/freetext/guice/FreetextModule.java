@@ -33,9 +33,26 @@ public class FreetextModule extends PropertiesModule {
   protected void configure() {
     bindInt("freetextIndex.synchroiseMinutes");
     bindProp("freetextIndex.defaultOperator");
+    bindInt("freetextIndex.securityFilterCacheSize");
+    bindInt("freetextIndex.searchResultCacheSize");
+    bindInt("freetextIndex.indexerThreads");
+    bindInt("freetextIndex.indexBatchSize");
+    bindInt("freetextIndex.prepareBatchSize");
+    bindInt("freetextIndex.indexWriterThreads");
+    bindInt("freetextIndex.syncThreads");
+    bindProp("freetextIndex.directory");
+    bindProp("freetextIndex.mmapPreload");
+    bindInt("freetextIndex.nrtCacheSize");
+    bindInt("freetextIndex.ramBufferSize");
+    bindInt("freetextIndex.reopenMaxMillis");
+    bindInt("freetextIndex.reopenMinMillis");
+    bindInt("freetextIndex.commitMinutes");
+    bindProp("freetextIndex.warmSortFields");
+    bindProp("freetextIndex.warmQueries");
     bindBoolean("textExtracter.indexAttachments");
     bindBoolean("textExtracter.indexImsPackages");
     bindLong("textExtracter.parseDurationCap");
+    bindInt("textExtracter.cacheSize");
     install(new FreetextMandatoryModule());
     install(new FreetextOptionalModule());
   }
@@ -20,6 +20,8 @@ package com.tle.core.freetext.index;
 
 import com.dytech.common.io.FileUtils;
 import com.dytech.edge.exceptions.ErrorDuringSearchException;
+import com.dytech.edge.queries.FreeTextQuery;
+import com.tle.freetext.FreetextIndexConfiguration;
 import com.tle.freetext.TLEAnalyzer;
 import io.github.classgraph.ClassGraph;
 import io.github.classgraph.ClassInfoList;
@@ -29,23 +31,39 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
 import javax.annotation.PostConstruct;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.WordlistLoader;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
 import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -86,15 +104,16 @@ public abstract class AbstractIndexEngine {
   private PerFieldAnalyzerWrapper analyzer = null;
   private File stopWordsFile;
   private String analyzerLanguage;
-  private FSDirectory directory;
+  private FreetextIndexConfiguration configuration;
+  private Directory directory;
 
   private IndexWriter indexWriter;
   private SearcherManager searcherManager;
   private ControlledRealTimeReopenThread<IndexSearcher> controlledRealTimeReopenThread;
   private Timer commiterThread;
 
-  // The index generation we should wait for
-  private long generation = -1;
+  // The index generation we should wait for. Batches may be written by several threads at once.
+  private final AtomicLong generation = new AtomicLong(-1);
 
   // As autoCompleteAnalyzer doesn't need stopwords and stemming so it works for all languages.
   private final TLEAnalyzer autoCompleteAnalyzer = new TLEAnalyzer(null, false);
@@ -120,24 +139,31 @@ public abstract class AbstractIndexEngine {
         throw new Error("Error creating index:" + indexPath); // $NON-NLS-1$
       }
     }
-    directory = FSDirectory.open(indexPath.toPath());
+    directory = openDirectory();
 
-    LOGGER.info("Opening writer for index:" + indexPath);
+    LOGGER.info("Opening writer for index:" + indexPath + " using " + directory);
 
-    indexWriter = new IndexWriter(directory, new IndexWriterConfig(getAnalyser()));
-    searcherManager = new SearcherManager(indexWriter, true, true, null);
+    IndexWriterConfig writerConfig = new IndexWriterConfig(getAnalyser());
+    writerConfig.setRAMBufferSizeMB(Math.max(1, configuration.getRamBufferSize()));
+    indexWriter = new IndexWriter(directory, writerConfig);
+    searcherManager = new SearcherManager(indexWriter, true, true, createSearcherFactory());
 
-    // Possibly reopen a searcher every 5 seconds if necessary in the
-    // background
+    // Possibly reopen a searcher every few seconds if necessary in the background, or sooner if a
+    // search is waiting for a change
+    double reopenMaxSeconds = Math.max(1, configuration.getReopenMaxMillis()) / 1000.0;
+    double reopenMinSeconds =
+        Math.min(reopenMaxSeconds, Math.max(1, configuration.getReopenMinMillis()) / 1000.0);
     controlledRealTimeReopenThread =
-        new ControlledRealTimeReopenThread<>(indexWriter, searcherManager, 5.0, 0.1);
+        new ControlledRealTimeReopenThread<>(
+            indexWriter, searcherManager, reopenMaxSeconds, reopenMinSeconds);
     controlledRealTimeReopenThread.setName("Controlled Real Time Reopen Thread: " + getClass());
     controlledRealTimeReopenThread.setPriority(
         Math.min(Thread.currentThread().getPriority() + 2, Thread.MAX_PRIORITY));
     controlledRealTimeReopenThread.setDaemon(true);
     controlledRealTimeReopenThread.start();
 
-    // Commit any changes to disk every 5 minutes
+    // Commit any changes to disk periodically
+    long commitMillis = TimeUnit.MINUTES.toMillis(Math.max(1, configuration.getCommitMinutes()));
     commiterThread = new Timer(true);
     commiterThread.schedule(
         new TimerTask() {
@@ -150,8 +176,87 @@ public abstract class AbstractIndexEngine {
             }
           }
         },
-        5 * 60 * 1000,
-        5 * 60 * 1000);
+        commitMillis,
+        commitMillis);
+  }
+
+  /**
+   * Creates the factory which warms the new segments of each reopened searcher with the configured
+   * sort fields and queries. Queries which can't be parsed are logged and left out.
+   */
+  private SearcherFactory createSearcherFactory() {
+    List<String> sortFields = splitList(configuration.getWarmSortFields());
+    List<Query> queries = new ArrayList<>();
+    for (String query : splitList(configuration.getWarmQueries())) {
+      try {
+        queries.add(new StandardQueryParser(getAnalyser()).parse(query, FreeTextQuery.FIELD_BODY));
+      } catch (QueryNodeException e) {
+        LOGGER.warn("Ignoring invalid freetext warming query: " + query, e);
+      }
+    }
+    return new WarmingSearcherFactory(indexPath.getName(), sortFields, queries);
+  }
+
+  private static List<String> splitList(String list) {
+    List<String> values = new ArrayList<>();
+    for (String value : list.split(",")) {
+      value = value.trim();
+      if (!value.isEmpty()) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Opens the directory configured for the index. Small newly flushed segments can be kept in
+   * memory by wrapping it in an {@link NRTCachingDirectory}, which saves writing (and then merging
+   * away) lots of tiny files when items are indexed one at a time.
+   */
+  private Directory openDirectory() throws IOException {
+    Path path = indexPath.toPath();
+    String type = configuration.getDirectoryType().trim().toLowerCase();
+    FSDirectory fsDirectory;
+    switch (type) {
+      case "mmap":
+        MMapDirectory mmapDirectory = new MMapDirectory(path);
+        mmapDirectory.setPreload(getPreload(configuration.getMmapPreload()));
+        fsDirectory = mmapDirectory;
+        break;
+      case "nio":
+        fsDirectory = new NIOFSDirectory(path);
+        break;
+      case "fs":
+      case "":
+        fsDirectory = FSDirectory.open(path);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown freetext index directory type: " + type);
+    }
+
+    int nrtCacheSize = configuration.getNrtCacheSize();
+    if (nrtCacheSize <= 0) {
+      return fsDirectory;
+    }
+    // Merged segments up to a quarter of the cache are cached too
+    return new NRTCachingDirectory(fsDirectory, nrtCacheSize / 4.0, nrtCacheSize);
+  }
+
+  private static BiPredicate<String, IOContext> getPreload(String extensions) {
+    Set<String> preload = new HashSet<>();
+    for (String extension : extensions.split(",")) {
+      extension = extension.trim();
+      if (extension.equals("*")) {
+        return (filename, context) -> true;
+      }
+      if (!extension.isEmpty()) {
+        preload.add(extension);
+      }
+    }
+    if (preload.isEmpty()) {
+      return (filename, context) -> false;
+    }
+    return (filename, context) -> preload.contains(IndexFileNames.getExtension(filename));
   }
 
   public void modifyIndex(IndexBuilder builder) {
@@ -160,7 +265,7 @@ public abstract class AbstractIndexEngine {
       try {
         g = builder.buildIndex(searcherManager, indexWriter);
       } finally {
-        generation = Math.max(g, generation);
+        generation.accumulateAndGet(g, Math::max);
       }
     } catch (Exception ex) {
       throw new RuntimeException("Error while building index", ex);
@@ -170,7 +275,7 @@ public abstract class AbstractIndexEngine {
   public <RV> RV search(Searcher<RV> s) {
     IndexSearcher indexSearcher = null;
     try {
-      controlledRealTimeReopenThread.waitForGeneration(generation);
+      controlledRealTimeReopenThread.waitForGeneration(generation.get());
       indexSearcher = searcherManager.acquire();
 
       return s.search(indexSearcher);
@@ -196,6 +301,10 @@ public abstract class AbstractIndexEngine {
     this.analyzerLanguage = analyzerLanguage;
   }
 
+  public void setConfiguration(FreetextIndexConfiguration configuration) {
+    this.configuration = configuration;
+  }
+
   /** Returns a new Analyser. */
   protected Analyzer getAnalyser() {
     if (analyzer == null) {
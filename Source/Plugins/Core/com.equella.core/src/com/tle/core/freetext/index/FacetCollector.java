@@ -0,0 +1,269 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.index;
+
+import com.dytech.edge.queries.FreeTextQuery;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Counts the combinations of values of one or more schema node fields in a single pass over the
+ * matching documents, reading the sorted set doc values written for each indexed node. Within a
+ * segment values are counted by ordinal and are only looked up once the segment is finished, and
+ * then only for the ordinals which were hit, so the cost is proportional to the number of hits
+ * rather than to the number of terms in the fields.
+ *
+ * <p>A document with values for some of the fields but not others is counted with a blank (null)
+ * value for the missing fields, if blanks are included. Combinations are sorted by value, with
+ * blanks last.
+ */
+final class FacetCollector extends SimpleCollector {
+  private static final long BLANK = -1;
+
+  private static final Comparator<BytesRef> BLANK_LAST =
+      Comparator.nullsLast(Comparator.naturalOrder());
+  private static final Comparator<List<BytesRef>> VALUES_ORDER =
+      (v1, v2) -> {
+        for (int i = 0; i < v1.size(); i++) {
+          int cmp = BLANK_LAST.compare(v1.get(i), v2.get(i));
+          if (cmp != 0) {
+            return cmp;
+          }
+        }
+        return 0;
+      };
+
+  private final String[] facetFields;
+  private final boolean includeBlanks;
+  private final boolean collectDocs;
+  private final SortedMap<List<BytesRef>, Facet> facets = new TreeMap<>(VALUES_ORDER);
+
+  // State of the current segment
+  private SortedSetDocValues[] values;
+  private int docBase;
+  private int[] ordCounts;
+  private final Map<OrdKey, Facet> segmentFacets = new HashMap<>();
+
+  /**
+   * @param fields The (un-prefixed) schema node fields to count.
+   * @param includeBlanks Whether documents missing values for some of the fields are counted.
+   * @param collectDocs Whether to record the matching (top level) document numbers of each
+   *     combination, rather than just count them.
+   */
+  FacetCollector(List<String> fields, boolean includeBlanks, boolean collectDocs) {
+    this.facetFields = fields.stream().map(FreeTextQuery::getFacetField).toArray(String[]::new);
+    this.includeBlanks = includeBlanks;
+    this.collectDocs = collectDocs;
+  }
+
+  /**
+   * Whether every segment which indexed the field also has its facet doc values, which won't be the
+   * case until documents indexed before they were added have been reindexed.
+   */
+  static boolean isSupported(IndexReader reader, String field) {
+    if (field.indexOf('[') != -1) {
+      // XPath indexed nodes are only available as terms
+      return false;
+    }
+    String facetField = FreeTextQuery.getFacetField(field);
+    for (LeafReaderContext context : reader.leaves()) {
+      FieldInfos infos = context.reader().getFieldInfos();
+      if (infos.fieldInfo(field) != null && infos.fieldInfo(facetField) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected void doSetNextReader(LeafReaderContext context) throws IOException {
+    finishSegment();
+    docBase = context.docBase;
+    values = new SortedSetDocValues[facetFields.length];
+    for (int i = 0; i < facetFields.length; i++) {
+      values[i] = context.reader().getSortedSetDocValues(facetFields[i]);
+    }
+    // Simple case of a single field, which can be counted straight into an array
+    if (facetFields.length == 1 && !collectDocs && values[0] != null) {
+      ordCounts = new int[Math.toIntExact(values[0].getValueCount())];
+    }
+  }
+
+  @Override
+  public void collect(int doc) throws IOException {
+    if (ordCounts != null) {
+      SortedSetDocValues dv = values[0];
+      if (dv.advanceExact(doc)) {
+        for (int i = dv.docValueCount(); i > 0; i--) {
+          ordCounts[(int) dv.nextOrd()]++;
+        }
+      }
+      return;
+    }
+
+    long[][] docOrds = new long[values.length][];
+    boolean any = false;
+    boolean all = true;
+    for (int i = 0; i < values.length; i++) {
+      SortedSetDocValues dv = values[i];
+      if (dv != null && dv.advanceExact(doc)) {
+        long[] ords = new long[dv.docValueCount()];
+        for (int j = 0; j < ords.length; j++) {
+          ords[j] = dv.nextOrd();
+        }
+        docOrds[i] = ords;
+        any = true;
+      } else {
+        all = false;
+      }
+    }
+    if (any && (all || includeBlanks)) {
+      addCombinations(docOrds, 0, new long[docOrds.length], docBase + doc);
+    }
+  }
+
+  private void addCombinations(long[][] docOrds, int index, long[] key, int topDoc) {
+    if (index == docOrds.length) {
+      Facet facet =
+          segmentFacets.computeIfAbsent(new OrdKey(key.clone()), k -> new Facet(collectDocs));
+      facet.add(topDoc);
+      return;
+    }
+    long[] ords = docOrds[index];
+    if (ords == null) {
+      key[index] = BLANK;
+      addCombinations(docOrds, index + 1, key, topDoc);
+    } else {
+      for (long ord : ords) {
+        key[index] = ord;
+        addCombinations(docOrds, index + 1, key, topDoc);
+      }
+    }
+  }
+
+  /** Looks up the values of the ordinals hit in the segment and merges them into the results. */
+  private void finishSegment() throws IOException {
+    if (ordCounts != null) {
+      for (int ord = 0; ord < ordCounts.length; ord++) {
+        if (ordCounts[ord] > 0) {
+          List<BytesRef> key = Collections.singletonList(lookup(0, ord));
+          facets.computeIfAbsent(key, k -> new Facet(false)).count += ordCounts[ord];
+        }
+      }
+      ordCounts = null;
+    }
+
+    for (Map.Entry<OrdKey, Facet> entry : segmentFacets.entrySet()) {
+      long[] ords = entry.getKey().ords;
+      List<BytesRef> key = new ArrayList<>(ords.length);
+      for (int i = 0; i < ords.length; i++) {
+        key.add(ords[i] == BLANK ? null : lookup(i, ords[i]));
+      }
+      Facet existing = facets.get(key);
+      if (existing == null) {
+        facets.put(key, entry.getValue());
+      } else {
+        existing.merge(entry.getValue());
+      }
+    }
+    segmentFacets.clear();
+  }
+
+  private BytesRef lookup(int field, long ord) throws IOException {
+    return BytesRef.deepCopyOf(values[field].lookupOrd(ord));
+  }
+
+  /** The counted combinations of values, in order. Blank values are null. */
+  SortedMap<List<BytesRef>, Facet> getFacets() throws IOException {
+    finishSegment();
+    return facets;
+  }
+
+  @Override
+  public ScoreMode scoreMode() {
+    return ScoreMode.COMPLETE_NO_SCORES;
+  }
+
+  static final class Facet {
+    private int count;
+    private final List<Integer> docs;
+
+    private Facet(boolean collectDocs) {
+      docs = collectDocs ? new ArrayList<>() : null;
+    }
+
+    private void add(int topDoc) {
+      count++;
+      if (docs != null) {
+        docs.add(topDoc);
+      }
+    }
+
+    private void merge(Facet other) {
+      count += other.count;
+      if (docs != null) {
+        docs.addAll(other.docs);
+      }
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    /** The top level document numbers, if they were collected. */
+    List<Integer> getDocs() {
+      return docs;
+    }
+  }
+
+  private static final class OrdKey {
+    private final long[] ords;
+    private final int hash;
+
+    private OrdKey(long[] ords) {
+      this.ords = ords;
+      this.hash = Arrays.hashCode(ords);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof OrdKey && Arrays.equals(ords, ((OrdKey) obj).ords);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -33,6 +33,7 @@ import com.tle.beans.item.ItemId;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.Check;
 import com.tle.common.Pair;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.DateFilter.Format;
 import com.tle.common.searching.Field;
 import com.tle.common.searching.Search;
@@ -50,6 +51,7 @@ import com.tle.core.freetext.filters.MatrixFilter;
 import com.tle.core.freetext.filters.MustFilter;
 import com.tle.core.freetext.filters.MustNotFilter;
 import com.tle.core.freetext.filters.SecurityFilter;
+import com.tle.core.freetext.filters.SecurityFilterCache;
 import com.tle.core.freetext.filters.XPathFieldIterator;
 import com.tle.core.freetext.queries.FreeTextAutocompleteQuery;
 import com.tle.core.freetext.queries.FreeTextBooleanQuery;
@@ -75,11 +77,13 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.WeakHashMap;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -95,8 +99,10 @@ import org.apache.lucene.index.AutomatonTermsEnum;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.index.Term;
@@ -114,8 +120,11 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BooleanQuery.Builder;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.FieldComparatorSource;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.MultiPhraseQuery;
 import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.search.PrefixQuery;
@@ -169,6 +178,14 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
 
   private StoredFieldVisitor keyFieldSelector;
 
+  private SecurityFilterCache securityFilterCache;
+
+  private SearchResultCache searchResultCache;
+
+  // Whether each open segment core has an item ID sort value for all of its documents
+  private final Map<Object, Boolean> idSortedSegments =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
   public ItemIndex(FreetextIndex freetextIndex) {
     this.freetextIndex = freetextIndex;
   }
@@ -179,7 +196,12 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
     setStopWordsFile(freetextIndex.getStopWordsFile());
     setDefaultOperator(freetextIndex.getDefaultOperator());
     setAnalyzerLanguage(freetextIndex.getAnalyzerLanguage());
+    setConfiguration(freetextIndex.getConfiguration());
     keyFieldSelector = new DocumentStoredFieldVisitor(getKeyFields());
+    securityFilterCache =
+        new SecurityFilterCache(freetextIndex.getSecurityFilterCacheSize() * 1024L * 1024L);
+    searchResultCache =
+        new SearchResultCache(freetextIndex.getConfiguration().getSearchResultCacheSize());
     super.afterPropertiesSet();
   }
 
@@ -217,6 +239,14 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
     return new HashSet<String>(Arrays.asList(FreeTextQuery.FIELD_UNIQUE, FreeTextQuery.FIELD_ID));
   }
 
+  public SecurityFilterCache getSecurityFilterCache() {
+    return securityFilterCache;
+  }
+
+  public SearchResultCache getSearchResultCache() {
+    return searchResultCache;
+  }
+
   public void setTitleBoost(float titleBoost) {
     this.titleBoost = titleBoost;
   }
@@ -324,74 +354,60 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
             boolean searchAll =
                 Check.isEmpty(searchreq.getQuery()) || searchreq.getQuery().equals("*");
 
-            boolean sortByRelevance =
-                Optional.ofNullable(searchreq.getSortFields())
-                    .map(Arrays::stream)
-                    .flatMap(fields -> fields.filter(f -> f.getType() == Type.SCORE).findFirst())
-                    .isPresent();
+            boolean sortByRelevance = isSortedByRelevance(searchreq);
 
             if (actualCount == 0) {
-              TotalHitCountCollector hitCount = new TotalHitCountCollector();
-              searcher.search(query, hitCount);
-              results =
-                  new SimpleSearchResults<T>(new ArrayList<T>(), 0, 0, hitCount.getTotalHits());
+              int totalHits =
+                  searchResultCache.count(
+                      searcher.getIndexReader(),
+                      query,
+                      () -> {
+                        TotalHitCountCollector hitCount = new TotalHitCountCollector();
+                        searcher.search(query, hitCount);
+                        return hitCount.getTotalHits();
+                      });
+              results = new SimpleSearchResults<T>(new ArrayList<T>(), 0, 0, totalHits);
             } else {
-              CollectorManager<? extends Collector, ? extends TopDocs> itemCollectorManager =
-                  sortByRelevance
-                      ? new TopScoreDocCollectorManager(actualCount, Integer.MAX_VALUE)
-                      : new TopFieldCollectorManager(sorter, actualCount, Integer.MAX_VALUE);
-
-              TopDocs hits = searcher.search(query, itemCollectorManager);
+              // Later pages of the same search are usually served from the collected hits
+              TopDocs hits =
+                  searchResultCache.search(
+                      searcher.getIndexReader(),
+                      query,
+                      sortByRelevance ? Sort.RELEVANCE : sorter,
+                      actualCount,
+                      numDocs,
+                      collect -> {
+                        CollectorManager<? extends Collector, ? extends TopDocs>
+                            itemCollectorManager =
+                                sortByRelevance
+                                    ? new TopScoreDocCollectorManager(collect, Integer.MAX_VALUE)
+                                    : new TopFieldCollectorManager(
+                                        sorter, collect, Integer.MAX_VALUE);
+                        return searcher.search(query, itemCollectorManager);
+                      });
 
               final SearchResults<T> itemResults =
                   getResultsFromTopDocs(searcher, hits, actualStart, sortByRelevance);
 
-              SearchResults<T> attachmentResults = null;
-              int attachmentBoostValue = freetextIndex.getSearchSettings().getAttachmentBoost();
               if (searchAll) {
                 // don't worry about attachment relevance
                 results = itemResults;
-              } else if (attachmentBoostValue != 0 && searchAttachment) {
-                final String[] fields = new String[] {FreeTextQuery.FIELD_ATTACHMENT_VECTORED};
-
-                Query queryAttachmentOnly =
-                    getQuery(searchreq, searcher.getIndexReader(), fields, searchAttachment);
-                queryAttachmentOnly =
-                    addUniqueIdClauseToQuery(
-                        queryAttachmentOnly, itemResults, searcher.getIndexReader());
-
-                // Attachments do not care scores so always use TopFieldCollectorManager.
-                CollectorManager<? extends Collector, ? extends TopDocs>
-                    attachmentCollectorManager =
-                        new TopFieldCollectorManager(sorter, actualCount, Integer.MAX_VALUE);
-
-                final TopDocs attachmentHits =
-                    searcher.search(queryAttachmentOnly, attachmentCollectorManager);
-                attachmentResults =
-                    getResultsFromTopDocs(searcher, attachmentHits, 0, sortByRelevance);
-              }
-
-              if (attachmentResults != null) {
-                results = markItemKeywordFoundInAttachment(itemResults, attachmentResults);
               } else {
-                results = itemResults;
+                results =
+                    markAttachmentMatches(
+                        searcher,
+                        searchreq,
+                        itemResults,
+                        sorter,
+                        actualCount,
+                        searchAttachment,
+                        sortByRelevance);
               }
             }
             long t2 = System.currentTimeMillis();
 
             if (!(searchreq.getFreeTextQuery() instanceof FreeTextAutocompleteQuery)) {
-              LOGGER.info(
-                  "Query["
-                      + query
-                      + "] Hits["
-                      + results.getAvailable()
-                      + "] Returning["
-                      + results.getCount()
-                      + "] Time Elapsed["
-                      + (t2 - t1)
-                      + "ms] Total Indexed["
-                      + numDocs
-                      + "]");
+              logSearch(query, results, t2 - t1, numDocs);
             }
 
             return results;
@@ -399,6 +415,176 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
         });
   }
 
+  /**
+   * Performs a search and returns the page of results which follows the provided cursor. Unlike
+   * {@link #search(Search, int, int, boolean)} the cost of a page does not grow with its depth, as
+   * only {@code count} documents are ever collected, so this should be used to walk through a large
+   * number of results. Indexes which have not been reindexed since the item ID sort field was added
+   * are paged by offset instead, with the same cursor based API.
+   *
+   * @param cursor A cursor returned with the previous page, or null for the first page.
+   * @param count The number of results to return, greater than 0.
+   * @return The results, including the cursor for the next page if there may be more results.
+   */
+  public CursorSearchResults<T> searchAfter(
+      final Search searchreq,
+      @Nullable final String cursor,
+      final int count,
+      final boolean searchAttachment) {
+    return search(
+        new Searcher<CursorSearchResults<T>>() {
+          @Override
+          public CursorSearchResults<T> search(IndexSearcher searcher) throws IOException {
+            long t1 = System.currentTimeMillis();
+
+            SortField[] sortFields = getSorter(searchreq).getSort();
+            SortField[] cursorFields = Arrays.copyOf(sortFields, sortFields.length + 1);
+            cursorFields[sortFields.length] =
+                new SortField(FreeTextQuery.FIELD_ID_SORT, SortField.Type.LONG);
+            Sort sorter = new Sort(cursorFields);
+            boolean sortByRelevance = isSortedByRelevance(searchreq);
+
+            // Documents indexed before the item ID sort field existed all tie on it, so a
+            // search-after would skip any result which ties with the last one of a page. Page
+            // those indexes by offset until they have been reindexed.
+            SearchCursor position =
+                cursor != null ? SearchCursor.decode(cursor, cursorFields.length) : null;
+            FieldDoc after = position != null ? position.getAfter() : null;
+            boolean byOffset =
+                position != null ? after == null : !hasIdSortValues(searcher.getIndexReader());
+            int offset = byOffset && position != null ? position.getOffset() : 0;
+            int collect = offset + count;
+
+            Query query = getQuery(searchreq, searcher.getIndexReader(), searchAttachment);
+            TopDocs hits =
+                searcher.search(
+                    query, new TopFieldCollectorManager(sorter, collect, after, Integer.MAX_VALUE));
+
+            SearchResults<T> results =
+                getResultsFromTopDocs(searcher, hits, offset, sortByRelevance);
+            boolean searchAll =
+                Check.isEmpty(searchreq.getQuery()) || searchreq.getQuery().equals("*");
+            if (!searchAll) {
+              results =
+                  markAttachmentMatches(
+                      searcher,
+                      searchreq,
+                      results,
+                      sorter,
+                      collect,
+                      searchAttachment,
+                      sortByRelevance);
+            }
+
+            ScoreDoc[] scoreDocs = hits.scoreDocs;
+            String nextCursor = null;
+            if (scoreDocs.length == collect) {
+              nextCursor =
+                  byOffset
+                      ? SearchCursor.encodeOffset(collect)
+                      : SearchCursor.encode((FieldDoc) scoreDocs[scoreDocs.length - 1]);
+            }
+            CursorSearchResults<T> cursorResults =
+                new CursorSearchResults<>(results.getResults(), results.getAvailable(), nextCursor);
+
+            logSearch(
+                query,
+                cursorResults,
+                System.currentTimeMillis() - t1,
+                searcher.getIndexReader().numDocs());
+            return cursorResults;
+          }
+        });
+  }
+
+  private static boolean isSortedByRelevance(Search searchreq) {
+    return Optional.ofNullable(searchreq.getSortFields())
+        .map(Arrays::stream)
+        .flatMap(fields -> fields.filter(f -> f.getType() == Type.SCORE).findFirst())
+        .isPresent();
+  }
+
+  /**
+   * Checks whether every document of the index has a value for {@link FreeTextQuery#FIELD_ID_SORT}.
+   * Segments never gain documents, so the answer for a segment is remembered for as long as its
+   * core is open.
+   */
+  private boolean hasIdSortValues(IndexReader reader) throws IOException {
+    for (LeafReaderContext context : reader.leaves()) {
+      LeafReader leaf = context.reader();
+      IndexReader.CacheHelper cacheHelper = leaf.getCoreCacheHelper();
+      Object key = cacheHelper != null ? cacheHelper.getKey() : null;
+      Boolean complete = key != null ? idSortedSegments.get(key) : null;
+      if (complete == null) {
+        NumericDocValues values = leaf.getNumericDocValues(FreeTextQuery.FIELD_ID_SORT);
+        int withValue = 0;
+        if (values != null) {
+          while (values.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+            withValue++;
+          }
+        }
+        complete = withValue == leaf.maxDoc();
+        if (key != null) {
+          idSortedSegments.put(key, complete);
+        }
+      }
+      if (!complete) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void logSearch(Query query, SearchResults<T> results, long elapsed, int numDocs) {
+    LOGGER.info(
+        "Query["
+            + query
+            + "] Hits["
+            + results.getAvailable()
+            + "] Returning["
+            + results.getCount()
+            + "] Time Elapsed["
+            + elapsed
+            + "ms] Total Indexed["
+            + numDocs
+            + "]");
+  }
+
+  /**
+   * If attachments are searched, runs the query again against attachment content only and flags
+   * which of the results matched through their attachments.
+   */
+  private SearchResults<T> markAttachmentMatches(
+      IndexSearcher searcher,
+      Search searchreq,
+      SearchResults<T> itemResults,
+      Sort sorter,
+      int count,
+      boolean searchAttachment,
+      boolean sortByRelevance)
+      throws IOException {
+    int attachmentBoostValue = freetextIndex.getSearchSettings().getAttachmentBoost();
+    if (attachmentBoostValue == 0 || !searchAttachment) {
+      return itemResults;
+    }
+
+    final String[] fields = new String[] {FreeTextQuery.FIELD_ATTACHMENT_VECTORED};
+
+    Query queryAttachmentOnly =
+        getQuery(searchreq, searcher.getIndexReader(), fields, searchAttachment);
+    queryAttachmentOnly =
+        addUniqueIdClauseToQuery(queryAttachmentOnly, itemResults, searcher.getIndexReader());
+
+    // Attachments do not care scores so always use TopFieldCollectorManager.
+    CollectorManager<? extends Collector, ? extends TopDocs> attachmentCollectorManager =
+        new TopFieldCollectorManager(sorter, count, Integer.MAX_VALUE);
+
+    final TopDocs attachmentHits = searcher.search(queryAttachmentOnly, attachmentCollectorManager);
+    SearchResults<T> attachmentResults =
+        getResultsFromTopDocs(searcher, attachmentHits, 0, sortByRelevance);
+    return markItemKeywordFoundInAttachment(itemResults, attachmentResults);
+  }
+
   private Query addUniqueIdClauseToQuery(
       Query query, SearchResults<T> itemResults, IndexReader reader) {
     List<T> results = itemResults.getResults();
@@ -561,10 +747,15 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
               LOGGER.debug("Counting for " + query);
             }
 
-            CountingCollector collector = new CountingCollector();
-            searcher.search(query, collector);
-
-            int count = collector.getCount();
+            int count =
+                searchResultCache.count(
+                    searcher.getIndexReader(),
+                    query,
+                    () -> {
+                      CountingCollector collector = new CountingCollector();
+                      searcher.search(query, collector);
+                      return collector.getCount();
+                    });
             if (LOGGER.isDebugEnabled()) {
               LOGGER.debug("Counted " + count + " items");
             }
@@ -573,16 +764,56 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
         });
   }
 
+  /**
+   * Counts the number of documents each of the searches matches, all with the same searcher. Counts
+   * of the same searches by the same user are remembered until the index changes.
+   *
+   * @return The counts, in the order of the searches, or -1 for a null search.
+   */
+  public int[] counts(final List<? extends Search> searches, final boolean isSearchAttachment) {
+    return search(
+        new Searcher<int[]>() {
+          @Override
+          public int[] search(IndexSearcher searcher) throws IOException {
+            IndexReader reader = searcher.getIndexReader();
+            List<Query> queries = new ArrayList<>();
+            for (Search searchreq : searches) {
+              if (searchreq != null) {
+                queries.add(getQuery(searchreq, reader, isSearchAttachment));
+              }
+            }
+
+            int[] queryCounts =
+                searchResultCache.counts(
+                    reader,
+                    queries,
+                    toCount -> {
+                      int[] newCounts = new int[toCount.size()];
+                      for (int i = 0; i < newCounts.length; i++) {
+                        CountingCollector collector = new CountingCollector();
+                        searcher.search(toCount.get(i), collector);
+                        newCounts[i] = collector.getCount();
+                      }
+                      return newCounts;
+                    });
+            int[] counts = new int[searches.size()];
+            int next = 0;
+            for (int i = 0; i < counts.length; i++) {
+              counts[i] = searches.get(i) != null ? queryCounts[next++] : -1;
+            }
+            return counts;
+          }
+        });
+  }
+
   /**
    * A simplified implementation of matrixSearch() that only works on a single field, and currently
    * only returns the count per term. It could easily be extended to return a list of ItemIds per
    * term, it simply wasn't necessary when I was writing it!
    *
-   * <p>This simplified implementation was written to overcome the memory pressures that
-   * matrixSearch() creates when you have over half a million terms for a field. MatrixSearch()
-   * creates *many* BitSets that it holds on to to reuse as it recurse through a list of fields.
-   * Since we only care about a single field in this implementation, we can avoid generating and
-   * holding onto BitSets.
+   * <p>Fields with facet doc values are counted by a {@link FacetCollector} in the same pass as the
+   * search. Otherwise (for XPath fields, or before a reindex has added the doc values) the terms of
+   * the field are walked and intersected with the search results.
    */
   public Multimap<String, Pair<String, Integer>> facetCount(
       @Nullable final Search searchreq, final Collection<String> fields) {
@@ -591,12 +822,45 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
           @Override
           public Multimap<String, Pair<String, Integer>> search(IndexSearcher searcher)
               throws IOException {
+            final Multimap<String, Pair<String, Integer>> rv = ArrayListMultimap.create();
+            if (fields.isEmpty()) {
+              return rv;
+            }
             final IndexReader reader = searcher.getIndexReader();
-            final FixedBitSet filteredBits =
-                searchRequestToBitSet(searchreq, searcher, reader, false);
 
-            final Multimap<String, Pair<String, Integer>> rv = ArrayListMultimap.create();
+            final Map<String, FacetCollector> facetCollectors = new LinkedHashMap<>();
+            final List<String> termFields = new ArrayList<>();
             for (String field : fields) {
+              if (FacetCollector.isSupported(reader, field)) {
+                facetCollectors.put(
+                    field, new FacetCollector(Collections.singletonList(field), false, false));
+              } else {
+                termFields.add(field);
+              }
+            }
+            final List<Collector> collectors = new ArrayList<>(facetCollectors.values());
+            final BitSetCollector bitSetCollector =
+                termFields.isEmpty() ? null : new BitSetCollector(reader.maxDoc());
+            if (bitSetCollector != null) {
+              collectors.add(bitSetCollector);
+            }
+            searcher.search(
+                searchRequestToQuery(searchreq, reader, false), MultiCollector.wrap(collectors));
+
+            for (Map.Entry<String, FacetCollector> entry : facetCollectors.entrySet()) {
+              for (Map.Entry<List<BytesRef>, FacetCollector.Facet> facet :
+                  entry.getValue().getFacets().entrySet()) {
+                rv.put(
+                    entry.getKey(),
+                    new Pair<>(facet.getKey().get(0).utf8ToString(), facet.getValue().getCount()));
+              }
+            }
+
+            if (bitSetCollector == null) {
+              return rv;
+            }
+            final FixedBitSet filteredBits = bitSetCollector.getBitSet();
+            for (String field : termFields) {
               for (Term term : new XPathFieldIterator(reader, field)) {
                 PostingsEnum docs = MultiTerms.getTermPostingsEnum(reader, field, term.bytes());
 
@@ -625,6 +889,10 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
           @Override
           public MatrixResults search(IndexSearcher searcher) throws IOException {
             IndexReader reader = searcher.getIndexReader();
+            if (fields.stream().allMatch(field -> FacetCollector.isSupported(reader, field))) {
+              return facetMatrixSearch(searcher, searchreq, fields, countOnly, searchAttachments);
+            }
+
             FixedBitSet filteredBits =
                 searchRequestToBitSet(searchreq, searcher, reader, searchAttachments);
             int maxDoc = reader.maxDoc();
@@ -691,24 +959,59 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
         });
   }
 
-  private FixedBitSet searchRequestToBitSet(
-      @Nullable final Search searchreq,
+  /**
+   * Counts the combinations of field values in a single pass with a {@link FacetCollector}, giving
+   * the same results as the term based matrix search.
+   */
+  private MatrixResults facetMatrixSearch(
       IndexSearcher searcher,
-      IndexReader reader,
+      @Nullable Search searchreq,
+      List<String> fields,
+      boolean countOnly,
       boolean searchAttachments)
       throws IOException {
-    Builder builder = new Builder();
-    Query query;
+    IndexReader reader = searcher.getIndexReader();
+    FacetCollector collector = new FacetCollector(fields, true, !countOnly);
+    searcher.search(searchRequestToQuery(searchreq, reader, searchAttachments), collector);
+
+    MatrixResults results = new MatrixResults();
+    results.setFields(fields);
+    for (Map.Entry<List<BytesRef>, FacetCollector.Facet> entry : collector.getFacets().entrySet()) {
+      ArrayList<String> vals = new ArrayList<String>(fields.size());
+      for (BytesRef value : entry.getKey()) {
+        vals.add(value == null ? "" : value.utf8ToString());
+      }
+      FacetCollector.Facet facet = entry.getValue();
+      List<ItemIdKey> ids = null;
+      int count = facet.getCount();
+      if (!countOnly) {
+        ids = getIdsForDocs(facet.getDocs(), reader);
+        count = ids.size();
+      }
+      results.addEntry(new MatrixResults.MatrixEntry(vals, ids, count));
+    }
+    return results;
+  }
+
+  private Query searchRequestToQuery(
+      @Nullable final Search searchreq, IndexReader reader, boolean searchAttachments) {
     if (searchreq != null) {
-      query = getQuery(searchreq, reader, searchAttachments);
-    } else {
-      InstitutionFilter institutionFilter = new InstitutionFilter();
-      builder.add(institutionFilter.buildQuery(), institutionFilter.getOccur());
-      query = builder.build();
+      return getQuery(searchreq, reader, searchAttachments);
     }
+    Builder builder = new Builder();
+    InstitutionFilter institutionFilter = new InstitutionFilter();
+    builder.add(institutionFilter.buildQuery(), institutionFilter.getOccur());
+    return builder.build();
+  }
 
+  private FixedBitSet searchRequestToBitSet(
+      @Nullable final Search searchreq,
+      IndexSearcher searcher,
+      IndexReader reader,
+      boolean searchAttachments)
+      throws IOException {
     BitSetCollector collector = new BitSetCollector(reader.maxDoc());
-    searcher.search(query, collector);
+    searcher.search(searchRequestToQuery(searchreq, reader, searchAttachments), collector);
     return collector.getBitSet();
   }
 
@@ -827,6 +1130,18 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
     }
   }
 
+  private List<ItemIdKey> getIdsForDocs(List<Integer> docs, IndexReader reader) {
+    List<ItemIdKey> keys = new ArrayList<ItemIdKey>(docs.size());
+    for (int docid : docs) {
+      try {
+        keys.add(getKeyForDocument(reader.document(docid)));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return keys;
+  }
+
   private List<ItemIdKey> getIdsForBitset(FixedBitSet docBits, IndexReader reader) {
     int docid = 0;
     List<ItemIdKey> keys = new ArrayList<ItemIdKey>();
@@ -922,7 +1237,7 @@ public abstract class ItemIndex<T extends FreetextResult> extends AbstractIndexE
       privPrefix = getPrefixForPrivilege(privilege);
     }
     if (privPrefix != null) {
-      filters.add(new SecurityFilter(privPrefix, reader));
+      filters.add(new SecurityFilter(privPrefix, securityFilterCache));
     }
 
     List<List<Field>> must = request.getMust();
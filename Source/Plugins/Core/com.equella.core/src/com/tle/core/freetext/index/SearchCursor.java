@@ -0,0 +1,192 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.index;
+
+import com.dytech.edge.exceptions.InvalidSearchQueryException;
+import com.tle.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Opaque, URL safe token which records the sort values of the last result of a page, so the next
+ * page can be collected with Lucene's search-after support rather than an offset. Because the sort
+ * always ends with the item ID the position is stable between searcher reopens, and collecting a
+ * page only ever needs to keep {@code count} documents in the priority queue.
+ *
+ * <p>Indexes written before the item ID sort field existed can not break ties that way, so for
+ * those a cursor records a plain offset instead and paging falls back to collecting from the start.
+ */
+@SuppressWarnings("nls")
+public final class SearchCursor {
+  private static final byte VERSION = 1;
+  private static final byte OFFSET_VERSION = 2;
+
+  private static final byte NULL = 0;
+  private static final byte BYTES = 1;
+  private static final byte LONG = 2;
+  private static final byte INT = 3;
+  private static final byte FLOAT = 4;
+  private static final byte DOUBLE = 5;
+
+  @Nullable private final FieldDoc after;
+  private final int offset;
+
+  private SearchCursor(@Nullable FieldDoc after, int offset) {
+    this.after = after;
+    this.offset = offset;
+  }
+
+  /**
+   * @return The last result of the previous page, or null if the cursor is an offset.
+   */
+  @Nullable
+  public FieldDoc getAfter() {
+    return after;
+  }
+
+  /**
+   * @return The offset of the next page, only meaningful when {@link #getAfter()} is null.
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /** Encode the sort values of a result into a cursor token. */
+  public static String encode(FieldDoc last) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(VERSION);
+      out.writeInt(last.fields.length);
+      for (Object value : last.fields) {
+        writeValue(out, value);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to encode search cursor", e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  /** Encode the offset of the next page into a cursor token. */
+  public static String encodeOffset(int offset) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(OFFSET_VERSION);
+      out.writeInt(offset);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to encode search cursor", e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  /**
+   * Decode a cursor token created by {@link #encode(FieldDoc)} or {@link #encodeOffset(int)}.
+   *
+   * @param token A token previously created by this class.
+   * @param sortFieldCount The number of sort fields of the search the cursor will be used with.
+   * @throws InvalidSearchQueryException if the token is malformed or was created for a search with
+   *     a different sort order.
+   */
+  public static SearchCursor decode(String token, int sortFieldCount) {
+    try (DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+      byte version = in.readByte();
+      if (version == OFFSET_VERSION) {
+        int offset = in.readInt();
+        if (offset < 0) {
+          throw new InvalidSearchQueryException("Invalid search cursor");
+        }
+        return new SearchCursor(null, offset);
+      }
+      if (version != VERSION) {
+        throw new InvalidSearchQueryException("Unsupported search cursor");
+      }
+      int count = in.readInt();
+      if (count != sortFieldCount) {
+        throw new InvalidSearchQueryException("Search cursor does not match the sort order");
+      }
+      Object[] values = new Object[count];
+      for (int i = 0; i < count; i++) {
+        values[i] = readValue(in);
+      }
+      // Ties are impossible as the last sort field is the item ID, so the document number only
+      // matters for the last result itself which must be skipped.
+      return new SearchCursor(new FieldDoc(Integer.MAX_VALUE, Float.NaN, values), 0);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new InvalidSearchQueryException("Invalid search cursor", e);
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof BytesRef) {
+      BytesRef ref = (BytesRef) value;
+      out.writeByte(BYTES);
+      out.writeInt(ref.length);
+      out.write(ref.bytes, ref.offset, ref.length);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else {
+      throw new IllegalArgumentException(
+          "Sort value of type " + value.getClass().getName() + " can not be used in a cursor");
+    }
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case NULL:
+        return null;
+      case BYTES:
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+          throw new IllegalArgumentException("Invalid sort value length " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new BytesRef(data);
+      case LONG:
+        return in.readLong();
+      case INT:
+        return in.readInt();
+      case FLOAT:
+        return in.readFloat();
+      case DOUBLE:
+        return in.readDouble();
+      default:
+        throw new IllegalArgumentException("Unknown sort value type " + type);
+    }
+  }
+}
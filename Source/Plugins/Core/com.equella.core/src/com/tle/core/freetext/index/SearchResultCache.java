@@ -0,0 +1,331 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.index;
+
+import com.tle.annotation.Nullable;
+import io.prometheus.client.Counter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+
+/**
+ * Keeps the top hits of recent searches, so that paging through the results of a search, or
+ * counting them, doesn't run the query again. Entries are keyed by the index reader the search was
+ * run against and the Lucene query and sort. The query includes the security filter, and with it
+ * the ACL signature of the user, so users sharing the same ACL expressions share the same entries.
+ *
+ * <p>Once the searcher manager refreshes, searches use a new reader and so never see the old
+ * entries, which are dropped when the old reader is closed. Entries also expire after a few
+ * minutes, and the least recently used entries are evicted beyond the configured number.
+ *
+ * <p>Hits, misses and evictions are counted for each cache instance, and also added to global
+ * Prometheus counters that total them across every instance.
+ */
+@SuppressWarnings("nls")
+public class SearchResultCache {
+  /** The most hits collected and kept for a search, enough for a good number of pages. */
+  static final int MAX_CACHED_HITS = 500;
+
+  private static final long MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+  private static final Counter HITS =
+      Counter.build()
+          .name("freetext_search_result_cache_hits")
+          .help("Searches and counts answered from previously collected hits")
+          .register();
+  private static final Counter MISSES =
+      Counter.build()
+          .name("freetext_search_result_cache_misses")
+          .help("Searches and counts which had to run the query")
+          .register();
+  private static final Counter EVICTIONS =
+      Counter.build()
+          .name("freetext_search_result_cache_evictions")
+          .help("Cached search hits evicted to stay within the maximum number of entries")
+          .register();
+
+  private final int maxEntries;
+  private final LinkedHashMap<CacheKey, CachedHits> cache = new LinkedHashMap<>(64, 0.75f, true);
+  private final Set<IndexReader.CacheKey> trackedReaders = new HashSet<>();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * @param maxEntries The maximum number of searches cached. Zero or less disables caching.
+   */
+  public SearchResultCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Returns the first {@code count} hits of the query, from the cache if a search with the same
+   * query and sort has already collected them. Otherwise up to {@link #MAX_CACHED_HITS} hits are
+   * collected with the loader, so that the following pages can be served from the cache.
+   *
+   * @param sort The sort, or {@link Sort#RELEVANCE} when sorted by score.
+   * @param numDocs The number of documents in the index, which is the most hits there can be.
+   */
+  public TopDocs search(
+      IndexReader reader, Query query, Sort sort, int count, int numDocs, HitsLoader loader)
+      throws IOException {
+    IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+    if (maxEntries <= 0 || cacheHelper == null || count > MAX_CACHED_HITS) {
+      return loader.load(count);
+    }
+
+    CacheKey key = new CacheKey(cacheHelper.getKey(), query, sort);
+    CachedHits cached = get(key);
+    if (cached != null && cached.covers(count)) {
+      hitCount.incrementAndGet();
+      HITS.inc();
+      return cached.first(count);
+    }
+
+    missCount.incrementAndGet();
+    MISSES.inc();
+    TopDocs hits = loader.load(Math.max(count, Math.min(MAX_CACHED_HITS, numDocs)));
+    CachedHits collected = new CachedHits(hits);
+    put(cacheHelper, key, collected);
+    // Also answers a count of the same query
+    put(cacheHelper, new CacheKey(cacheHelper.getKey(), query, null), collected);
+    return collected.first(count);
+  }
+
+  /** Returns the number of documents the query matches, counting them with the loader if needed. */
+  public int count(IndexReader reader, Query query, CountLoader loader) throws IOException {
+    IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+    if (maxEntries <= 0 || cacheHelper == null) {
+      return loader.count();
+    }
+
+    CacheKey key = new CacheKey(cacheHelper.getKey(), query, null);
+    CachedHits cached = get(key);
+    if (cached != null) {
+      hitCount.incrementAndGet();
+      HITS.inc();
+      return cached.totalHits;
+    }
+
+    missCount.incrementAndGet();
+    MISSES.inc();
+    int count = loader.count();
+    put(cacheHelper, key, new CachedHits(count));
+    return count;
+  }
+
+  /**
+   * Returns the number of documents each of the queries matches. The queries which haven't been
+   * counted recently are all counted by a single call of the loader.
+   */
+  public int[] counts(IndexReader reader, List<Query> queries, MultiCountLoader loader)
+      throws IOException {
+    IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+    if (maxEntries <= 0 || cacheHelper == null) {
+      return loader.count(queries);
+    }
+
+    int[] counts = new int[queries.size()];
+    List<Integer> uncounted = new ArrayList<>();
+    for (int i = 0; i < counts.length; i++) {
+      CachedHits cached = get(new CacheKey(cacheHelper.getKey(), queries.get(i), null));
+      if (cached != null) {
+        hitCount.incrementAndGet();
+        HITS.inc();
+        counts[i] = cached.totalHits;
+      } else {
+        missCount.incrementAndGet();
+        MISSES.inc();
+        uncounted.add(i);
+      }
+    }
+
+    if (!uncounted.isEmpty()) {
+      List<Query> toCount = uncounted.stream().map(queries::get).collect(Collectors.toList());
+      int[] loaded = loader.count(toCount);
+      for (int i = 0; i < loaded.length; i++) {
+        counts[uncounted.get(i)] = loaded[i];
+        put(
+            cacheHelper,
+            new CacheKey(cacheHelper.getKey(), toCount.get(i), null),
+            new CachedHits(loaded[i]));
+      }
+    }
+    return counts;
+  }
+
+  @Nullable
+  private CachedHits get(CacheKey key) {
+    synchronized (cache) {
+      CachedHits cached = cache.get(key);
+      if (cached != null && System.nanoTime() - cached.created > MAX_AGE_NANOS) {
+        cache.remove(key);
+        return null;
+      }
+      return cached;
+    }
+  }
+
+  private void put(IndexReader.CacheHelper cacheHelper, CacheKey key, CachedHits hits) {
+    boolean newReader;
+    synchronized (cache) {
+      cache.put(key, hits);
+      Iterator<Map.Entry<CacheKey, CachedHits>> iter = cache.entrySet().iterator();
+      while (cache.size() > maxEntries && iter.hasNext()) {
+        iter.next();
+        iter.remove();
+        evictionCount.incrementAndGet();
+        EVICTIONS.inc();
+      }
+      newReader = trackedReaders.add(key.reader);
+    }
+
+    if (newReader) {
+      cacheHelper.addClosedListener(this::removeReader);
+    }
+  }
+
+  private void removeReader(IndexReader.CacheKey reader) {
+    synchronized (cache) {
+      trackedReaders.remove(reader);
+      cache.keySet().removeIf(key -> key.reader == reader);
+    }
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  /** The number of searches and counts this cache has answered without running the query. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** The number of searches and counts this cache has had to run the query for. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** The number of entries this cache has evicted to stay within its maximum. */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  public int getEntryCount() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  @FunctionalInterface
+  public interface HitsLoader {
+    TopDocs load(int count) throws IOException;
+  }
+
+  @FunctionalInterface
+  public interface CountLoader {
+    int count() throws IOException;
+  }
+
+  @FunctionalInterface
+  public interface MultiCountLoader {
+    /** Counts the documents matched by each of the queries, in the same order. */
+    int[] count(List<Query> queries) throws IOException;
+  }
+
+  private static final class CachedHits {
+    private final long created = System.nanoTime();
+    @Nullable private final TopDocs hits;
+    private final int totalHits;
+
+    private CachedHits(TopDocs hits) {
+      this.hits = hits;
+      // Hits are always counted exactly, so this is safe
+      this.totalHits = (int) hits.totalHits.value;
+    }
+
+    private CachedHits(int totalHits) {
+      this.hits = null;
+      this.totalHits = totalHits;
+    }
+
+    /** Whether the first {@code count} hits were collected, or all of them if there are fewer. */
+    private boolean covers(int count) {
+      return hits != null && (hits.scoreDocs.length >= count || hits.scoreDocs.length >= totalHits);
+    }
+
+    private TopDocs first(int count) {
+      ScoreDoc[] scoreDocs = hits.scoreDocs;
+      if (scoreDocs.length > count) {
+        scoreDocs = Arrays.copyOf(scoreDocs, count);
+      }
+      return new TopDocs(new TotalHits(totalHits, TotalHits.Relation.EQUAL_TO), scoreDocs);
+    }
+  }
+
+  private static final class CacheKey {
+    private final IndexReader.CacheKey reader;
+    private final Query query;
+    // Null for a count
+    @Nullable private final Sort sort;
+
+    private CacheKey(IndexReader.CacheKey reader, Query query, @Nullable Sort sort) {
+      this.reader = reader;
+      this.query = query;
+      this.sort = sort;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey other = (CacheKey) obj;
+      return reader == other.reader
+          && query.equals(other.query)
+          && Objects.equals(sort, other.sort);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(reader), query, sort);
+    }
+  }
+}
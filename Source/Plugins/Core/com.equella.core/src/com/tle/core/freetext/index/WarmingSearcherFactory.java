@@ -0,0 +1,139 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.freetext.index;
+
+import com.dytech.edge.queries.FreeTextQuery;
+import io.prometheus.client.Counter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms the segments of a reopened index before its searcher is handed out. Otherwise the first
+ * searches after each reopen pay for loading the doc values of the sort fields and the norms of the
+ * searched fields of the new segments. Only segments which weren't in the previous searcher are
+ * warmed, and this is done on the reopen thread, so searches carry on using the previous searcher
+ * in the meantime.
+ *
+ * <p>Each new segment is sorted by every one of the sort fields and searched with every one of the
+ * queries. Failures are logged rather than thrown, as a cold searcher is better than none.
+ */
+@SuppressWarnings("nls")
+final class WarmingSearcherFactory extends SearcherFactory {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WarmingSearcherFactory.class);
+
+  private static final Counter WARMED =
+      Counter.build()
+          .name("freetext_searcher_warmed_segments")
+          .help("New index segments warmed before their searcher was used")
+          .register();
+  private static final Counter WARMING_SECONDS =
+      Counter.build()
+          .name("freetext_searcher_warming_seconds")
+          .help("Time spent warming reopened index searchers")
+          .register();
+
+  private static final Query ALL_DOCS = new TermQuery(new Term(FreeTextQuery.FIELD_ALL, "1"));
+  private static final int WARM_HITS = 10;
+
+  private final String name;
+  private final List<Sort> sorts;
+  private final List<Query> queries;
+
+  /**
+   * @param name The name of the index, for logging.
+   * @param sortFields The (string) fields which searches are sorted by.
+   * @param queries Queries representative of the searches, ranked by relevance.
+   */
+  WarmingSearcherFactory(String name, List<String> sortFields, List<Query> queries) {
+    this.name = name;
+    this.sorts =
+        sortFields.stream().map(f -> new Sort(new SortField(f, SortField.Type.STRING))).toList();
+    this.queries = queries;
+  }
+
+  @Override
+  public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader)
+      throws IOException {
+    // The first searcher is opened at startup, before there are any searches to keep waiting
+    if (previousReader != null && !(sorts.isEmpty() && queries.isEmpty())) {
+      warm(reader, previousReader);
+    }
+    return super.newSearcher(reader, previousReader);
+  }
+
+  private void warm(IndexReader reader, IndexReader previousReader) {
+    Set<IndexReader.CacheKey> previous = new HashSet<>();
+    for (LeafReaderContext context : previousReader.leaves()) {
+      previous.add(context.reader().getCoreCacheHelper().getKey());
+    }
+
+    long start = System.nanoTime();
+    int warmed = 0;
+    for (LeafReaderContext context : reader.leaves()) {
+      LeafReader leaf = context.reader();
+      // A segment which only has new deletions has already been warmed
+      if (previous.contains(leaf.getCoreCacheHelper().getKey())) {
+        continue;
+      }
+      warmSegment(new IndexSearcher(leaf));
+      warmed++;
+    }
+
+    if (warmed > 0) {
+      double seconds = (System.nanoTime() - start) / 1e9;
+      WARMED.inc(warmed);
+      WARMING_SECONDS.inc(seconds);
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(
+            "Warmed " + warmed + " new segments of index " + name + " in " + seconds + "s");
+      }
+    }
+  }
+
+  private void warmSegment(IndexSearcher searcher) {
+    for (Sort sort : sorts) {
+      try {
+        searcher.search(ALL_DOCS, WARM_HITS, sort);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("Error warming sort " + sort + " of index " + name, e);
+      }
+    }
+    for (Query query : queries) {
+      try {
+        searcher.search(query, WARM_HITS);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("Error warming query " + query + " of index " + name, e);
+      }
+    }
+  }
+}
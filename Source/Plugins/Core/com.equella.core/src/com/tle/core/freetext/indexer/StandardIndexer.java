@@ -22,6 +22,8 @@ import static com.tle.beans.entity.LanguageBundle.initBundle;
 
 import com.dytech.devlib.PropBagEx;
 import com.dytech.edge.queries.FreeTextQuery;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.tle.beans.ReferencedURL;
 import com.tle.beans.entity.Schema;
 import com.tle.beans.item.Comment;
@@ -33,6 +35,7 @@ import com.tle.beans.item.attachments.CustomAttachment;
 import com.tle.beans.item.attachments.ImsAttachment;
 import com.tle.beans.item.attachments.UnmodifiableAttachments;
 import com.tle.common.Check;
+import com.tle.common.Pair;
 import com.tle.common.util.Dates;
 import com.tle.common.util.UtcDate;
 import com.tle.core.cloudproviders.CloudProviderService;
@@ -42,12 +45,14 @@ import com.tle.freetext.FreetextIndex;
 import com.tle.freetext.IndexedItem;
 import com.tle.freetext.TextExtracter;
 import com.tle.freetext.XmlSchemaIndexer;
+import com.tle.freetext.XmlSchemaIndexer.SchemaPaths;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import javax.inject.Inject;
@@ -55,6 +60,7 @@ import javax.inject.Singleton;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.hibernate.Hibernate;
 import org.hibernate.type.SerializationException;
@@ -72,6 +78,7 @@ public class StandardIndexer extends AbstractIndexingExtension {
   private static final String TYPE_RESOURCE = "resource"; // $NON-NLS-1$
   private static final String DATA_UUID = "uuid"; // $NON-NLS-1$
   private static final String DATA_VERSION = "version"; // $NON-NLS-1$
+  static final int SCHEMA_PATHS_CACHE_SIZE = 100;
 
   private static NumberFormat FORMAT = new DecimalFormat("0.00"); // $NON-NLS-1$
   private static Logger LOGGER = LoggerFactory.getLogger(StandardIndexer.class);
@@ -80,6 +87,11 @@ public class StandardIndexer extends AbstractIndexingExtension {
   @Inject private FreetextIndex freetextIndex;
   @Inject private RunAsInstitution runAs;
 
+  // Built once for each schema definition rather than for each schema node tree, as the tree is
+  // rebuilt every time the schema is loaded. Kept by schema ID with the definition they are from.
+  private final Cache<Long, Pair<String, SchemaPaths>> schemaPaths =
+      CacheBuilder.newBuilder().maximumSize(SCHEMA_PATHS_CACHE_SIZE).build();
+
   @Override
   public void indexFast(IndexedItem indexedItem) {
     Document itemdoc = indexedItem.getItemdoc();
@@ -266,6 +278,13 @@ public class StandardIndexer extends AbstractIndexingExtension {
     fields.add(stringSortingField(FreeTextQuery.FIELD_REALLASTMODIFIED, realLastModified));
     fields.add(stringSortingField(FreeTextQuery.FIELD_NAME, szName));
     fields.add(stringSortingField(FreeTextQuery.FIELD_RATING, rating));
+    // Tie-breaker which gives every result a stable position for cursor based paging.
+    fields.add(numericSortingField(FreeTextQuery.FIELD_ID_SORT, item.getId()));
+    // Read by the index synchroniser instead of loading stored fields for every document.
+    fields.add(new NumericDocValuesField(FreeTextQuery.FIELD_INSTITUTION_DOCVALUES, instId));
+    fields.add(
+        new NumericDocValuesField(
+            FreeTextQuery.FIELD_INDEXEDTIME_DOCVALUES, lastIndexed.getTime()));
 
     return fields;
   }
@@ -280,17 +299,27 @@ public class StandardIndexer extends AbstractIndexingExtension {
     fields.add(unstoredAndVectored(FreeTextQuery.FIELD_BODY_NOSTEM, body));
   }
 
+  SchemaPaths getSchemaPaths(Schema schema) {
+    String definition = schema.getSerialisedDefinition();
+    Pair<String, SchemaPaths> paths = schemaPaths.getIfPresent(schema.getId());
+    if (paths == null || !Objects.equals(paths.getFirst(), definition)) {
+      paths = new Pair<>(definition, new SchemaPaths(schema.getRootSchemaNode()));
+      schemaPaths.put(schema.getId(), paths);
+    }
+    return paths.getSecond();
+  }
+
   private List<Field> indexFields(Schema schema, PropBagEx resBag) {
     List<Field> fields = new ArrayList<Field>();
     if (schema != null) {
       try {
         XmlSchemaIndexer schemaIndexer = new XmlSchemaIndexer();
         schemaIndexer.indexChildNodes(
-            schema.getRootSchemaNode(),
+            getSchemaPaths(schema),
             schema.getItemNamePath(),
             "",
             "",
-            resBag); //$NON-NLS-1$ //$NON-NLS-2$
+            resBag.getRootElement()); // $NON-NLS-1$ //$NON-NLS-2$
         fields.addAll(schemaIndexer.getIndexedFields());
         Set<String> allPaths = schemaIndexer.getPathsIndexed();
         for (String path : allPaths) {
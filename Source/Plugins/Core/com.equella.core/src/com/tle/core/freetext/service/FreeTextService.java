@@ -18,6 +18,7 @@
 
 package com.tle.core.freetext.service;
 
+import com.tle.annotation.Nullable;
 import com.tle.beans.entity.itemdef.ItemDefinition;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.searching.Search;
@@ -54,6 +55,21 @@ public interface FreeTextService {
   <T extends FreetextResult> FreetextSearchResults<T> search(
       Search searchReq, int start, int count, boolean searchAttachments);
 
+  /**
+   * Search for the page of results which follows a cursor. Use this rather than an increasing start
+   * offset to walk through a large number of results, as the cost of each page stays the same
+   * however deep it is.
+   *
+   * @param searchReq A search request.
+   * @param cursor The cursor returned by {@link FreetextSearchResults#getNextCursor()} for the
+   *     previous page, or null for the first page.
+   * @param count The maximum number of results per page.
+   * @param searchAttachments Whether to search attachments.
+   * @return A page of search results, with the cursor for the next page if there may be more.
+   */
+  <T extends FreetextResult> FreetextSearchResults<T> searchAfter(
+      Search searchReq, @Nullable String cursor, int count, boolean searchAttachments);
+
   /**
    * Search for items matching the provided search requirements from lucene indexes.
    *
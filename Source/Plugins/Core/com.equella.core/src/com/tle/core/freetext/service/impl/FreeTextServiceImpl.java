@@ -24,6 +24,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Multimap;
+import com.tle.annotation.Nullable;
 import com.tle.beans.Institution;
 import com.tle.beans.entity.itemdef.ItemDefinition;
 import com.tle.beans.item.ItemIdKey;
@@ -33,6 +34,7 @@ import com.tle.common.search.DefaultSearch;
 import com.tle.common.search.ItemIdKeySearchResults;
 import com.tle.common.search.LiveItemSearch;
 import com.tle.common.search.whereparser.WhereParser;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.Search;
 import com.tle.common.searching.SearchResults;
 import com.tle.core.freetext.event.ItemReindexEvent;
@@ -64,6 +66,7 @@ import com.tle.freetext.BackgroundIndexerImpl.BackgroundIndexerFactory;
 import com.tle.freetext.FreetextIndex;
 import com.tle.freetext.IndexedItem;
 import it.uniroma3.mat.extendedset.wrappers.LongSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -270,6 +273,14 @@ public class FreeTextServiceImpl
     return new StdFreetextResults<T>(itemService, results, searchReq);
   }
 
+  @Override
+  public <T extends FreetextResult> FreetextSearchResults<T> searchAfter(
+      Search searchReq, @Nullable String cursor, int count, boolean searchAttachments) {
+    CursorSearchResults<T> results =
+        indexer.searchAfter(searchReq, cursor, count, searchAttachments);
+    return new StdFreetextResults<T>(itemService, results, searchReq);
+  }
+
   @Override
   public SearchResults<ItemIdKey> searchIds(Search searchreq, int nStart, int nCount) {
     SearchResults<FreetextResult> results = indexer.search(searchreq, nStart, nCount);
@@ -298,13 +309,8 @@ public class FreeTextServiceImpl
 
   @Override
   public int[] countsFromFilters(Collection<? extends Search> filters) {
-    int[] res = new int[filters.size()];
-
     Date t1 = new Date();
-    int rescount = 0;
-    for (Search search : filters) {
-      res[rescount++] = search != null ? indexer.count(search) : -1;
-    }
+    int[] res = indexer.counts(new ArrayList<>(filters));
     Date t2 = new Date();
 
     if (LOGGER.isDebugEnabled()) {
@@ -81,7 +81,8 @@ public class DefaultMessageCallback implements MessageCallback, Serializable {
     return null;
   }
 
-  public void incrementCurrent() {
+  // May be called concurrently by the workers of a TransactionThreadPool
+  public synchronized void incrementCurrent() {
     current++;
     values[0] = current;
   }
@@ -21,6 +21,7 @@ package com.tle.core.item.convert;
 import com.dytech.common.io.FileExtensionFilter;
 import com.dytech.common.io.UnicodeReader;
 import com.dytech.edge.common.Constants;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
@@ -81,6 +82,7 @@ import java.util.Map;
 import java.util.Random;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.ccil.cowan.tagsoup.AttributesImpl;
 import org.ccil.cowan.tagsoup.Parser;
@@ -100,11 +102,26 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
   @Inject private EntityRegistry registry;
   @Inject private ItemFileService itemFileService;
 
+  // Importing items concurrently has caused problems before (EQ-2532), so it is opt in
+  @com.google.inject.Inject(optional = true)
+  @Named("institutions.converter.items.importThreads")
+  private int importThreads = 1;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("institutions.converter.items.exportThreads")
+  private int exportThreads = 4;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("institutions.converter.items.perTransaction")
+  private int itemsPerTransaction = 20;
+
   private final Random random = new Random();
 
   private PluginTracker<ItemExtrasConverter> itemExtrasTracker;
   private FileExtensionFilter changeUrlFilter;
-  private XStream xstream;
+  // XStream marshalling is thread safe, but sharing one instance between the pool threads makes
+  // the converter caches a point of contention
+  private final ThreadLocal<XStream> xstream = ThreadLocal.withInitial(this::createXStream);
 
   @PostConstruct
   public void setupChangeUrlExtensions() {
@@ -186,86 +203,88 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
 
     final Map<Object, Object> sharedState = Collections.synchronizedMap(Maps.newHashMap());
     final Collection<PostReadMigrator<ItemConverterInfo>> migrations = getMigrations(params);
-    TransactionThreadPool threadPool = newThreadPool(1);
-    for (final String entry : entries) {
+    TransactionThreadPool threadPool = newThreadPool(importThreads);
+    for (final List<String> batch : Lists.partition(entries, Math.max(1, itemsPerTransaction))) {
       threadPool.doInTransaction(
           new Runnable() {
             @Override
             public void run() {
-              try {
-                final String dataFolderPath = entry.replace(".xml", Constants.BLANK);
-
-                Item item = new Item();
-                DataHolder dh = getXStream().newDataHolder();
-                dh.put(WorkflowNodeSupplier.class, new ItemWorkflowNodeSupplier(item));
-                xmlHelper.readXmlFile(allImportItemsFolder, entry, getXStream(), item, dh);
-                Long origId = item.getId();
-
-                // Fix up some weird cases where Data Created was null
-                // in 4.0 exports. May as well check Date Modified too.
-                Date c = item.getDateCreated();
-                Date m = item.getDateModified();
-                // Add some randomness to make the chance of finding an
-                // old stale
-                // indexed item negligible
-                item.setDateForIndex(new Date(Math.abs(random.nextLong() % 1000L)));
-                if (c == null) {
-                  c = m != null ? m : new Date();
-                  item.setDateCreated(c);
-                }
-
-                if (m == null) {
-                  item.setDateModified(c);
-                }
-
-                // If an item def doesn't have a workflow, then the item
-                // should definitely not have any moderation status.
-                if (item.getItemDefinition().getWorkflow() == null) {
-                  ModerationStatus moderation = item.getModeration();
-                  if (moderation != null) {
-                    moderation.getStatuses().clear();
+              for (final String entry : batch) {
+                try {
+                  final String dataFolderPath = entry.replace(".xml", Constants.BLANK);
+
+                  Item item = new Item();
+                  DataHolder dh = xstream.get().newDataHolder();
+                  dh.put(WorkflowNodeSupplier.class, new ItemWorkflowNodeSupplier(item));
+                  xmlHelper.readXmlFile(allImportItemsFolder, entry, xstream.get(), item, dh);
+                  Long origId = item.getId();
+
+                  // Fix up some weird cases where Data Created was null
+                  // in 4.0 exports. May as well check Date Modified too.
+                  Date c = item.getDateCreated();
+                  Date m = item.getDateModified();
+                  // Add some randomness to make the chance of finding an
+                  // old stale
+                  // indexed item negligible
+                  item.setDateForIndex(new Date(Math.abs(random.nextLong() % 1000L)));
+                  if (c == null) {
+                    c = m != null ? m : new Date();
+                    item.setDateCreated(c);
                   }
-                }
-
-                // data folder
-                final SubTemporaryFile importItemFolder =
-                    new SubTemporaryFile(allImportItemsFolder, dataFolderPath);
-                final ItemFile itemFolder = itemFileService.getItemFile(item);
-                if (!params.hasFlag(ConverterParams.NO_ITEMSATTACHMENTS)) {
-                  fileSystemService.commitFiles(importItemFolder, itemFolder);
-                } else {
-                  fileSystemService.copy(importItemFolder, itemFolder);
-                }
 
-                // This needs to happen before the PostReadMigrations
-                changeHardcodedUrls(params, itemFolder);
-
-                ItemConverterInfo info =
-                    new ItemConverterInfo(item, itemFolder, sharedState, params);
-                runMigrations(migrations, info);
-                // just to initialise it
-                item.getNavigationSettings();
-                item.setInstitution(institution);
-                initialiserService.initialiseClones(item);
-
-                storeXml(params, item, itemFolder, institution);
+                  if (m == null) {
+                    item.setDateModified(c);
+                  }
 
-                itemDao.save(item);
-                saveList(item.getComments());
-                saveList(item.getAcceptances());
-                runExtras(
-                    info,
-                    getXStream(),
-                    new SubTemporaryFile(allImportItemsFolder, dataFolderPath + "-extra"),
-                    true);
-                itemDao.flush();
-                itemDao.clear();
+                  // If an item def doesn't have a workflow, then the item
+                  // should definitely not have any moderation status.
+                  if (item.getItemDefinition().getWorkflow() == null) {
+                    ModerationStatus moderation = item.getModeration();
+                    if (moderation != null) {
+                      moderation.getStatuses().clear();
+                    }
+                  }
 
-                params.getItems().put(origId, item.getId());
+                  // data folder
+                  final SubTemporaryFile importItemFolder =
+                      new SubTemporaryFile(allImportItemsFolder, dataFolderPath);
+                  final ItemFile itemFolder = itemFileService.getItemFile(item);
+                  if (!params.hasFlag(ConverterParams.NO_ITEMSATTACHMENTS)) {
+                    fileSystemService.commitFiles(importItemFolder, itemFolder);
+                  } else {
+                    fileSystemService.copy(importItemFolder, itemFolder);
+                  }
 
-                message.incrementCurrent();
-              } catch (Exception e) {
-                throw new RuntimeException("Error in " + entry, e);
+                  // This needs to happen before the PostReadMigrations
+                  changeHardcodedUrls(params, itemFolder);
+
+                  ItemConverterInfo info =
+                      new ItemConverterInfo(item, itemFolder, sharedState, params);
+                  runMigrations(migrations, info);
+                  // just to initialise it
+                  item.getNavigationSettings();
+                  item.setInstitution(institution);
+                  initialiserService.initialiseClones(item);
+
+                  storeXml(params, item, itemFolder, institution);
+
+                  itemDao.save(item);
+                  saveList(item.getComments());
+                  saveList(item.getAcceptances());
+                  runExtras(
+                      info,
+                      xstream.get(),
+                      new SubTemporaryFile(allImportItemsFolder, dataFolderPath + "-extra"),
+                      true);
+                  itemDao.flush();
+                  itemDao.clear();
+
+                  params.getItems().put(origId, item.getId());
+
+                  message.incrementCurrent();
+                } catch (Exception e) {
+                  throw new RuntimeException("Error in " + entry, e);
+                }
               }
             }
           });
@@ -277,8 +296,7 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
   }
 
   private TransactionThreadPool newThreadPool(int threads) {
-    // FIXME see EQ-2532 come up with a better solution
-    return new TransactionThreadPool(this, 1);
+    return new TransactionThreadPool(this, Math.max(1, threads));
   }
 
   void runExtras(
@@ -446,7 +464,7 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
     message.setKey("institutions.converter.items.itemsmsg");
     message.setTotal(ids.size());
 
-    TransactionThreadPool pool = newThreadPool(4);
+    TransactionThreadPool pool = newThreadPool(exportThreads);
     final Map<Object, Object> sharedState = Collections.synchronizedMap(Maps.newHashMap());
     for (final ItemIdKey id : ids) {
       pool.doInTransaction(
@@ -480,10 +498,10 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
                 }
 
                 xmlHelper.writeXmlFile(
-                    bucketFolder, Long.toString(itemId) + ".xml", item, getXStream());
+                    bucketFolder, Long.toString(itemId) + ".xml", item, xstream.get());
                 runExtras(
                     info,
-                    getXStream(),
+                    xstream.get(),
                     new SubTemporaryFile(bucketFolder, Long.toString(itemId) + "-extra"),
                     false);
 
@@ -502,22 +520,20 @@ public class ItemConverter extends AbstractConverter<ItemConverter.ItemConverter
     pool.close();
   }
 
-  private synchronized XStream getXStream() {
-    if (xstream == null) {
-      xstream =
-          new XmlServiceImpl.ExtXStream(getClass().getClassLoader()) {
-            @Override
-            protected MapperWrapper wrapMapper(MapperWrapper next) {
-              return new HibernateMapper(next);
-            }
-          };
-      xstream.registerConverter(new WorkflowNodeConverter());
-      xstream.registerConverter(new BaseEntityXmlConverter(registry));
-      xstream.registerConverter(new HibernateProxyConverter());
-      xstream.registerConverter(new HibernatePersistentCollectionConverter(xstream.getMapper()));
-      xstream.registerConverter(new HibernatePersistentMapConverter(xstream.getMapper()));
-    }
-    return xstream;
+  private XStream createXStream() {
+    XStream xs =
+        new XmlServiceImpl.ExtXStream(getClass().getClassLoader()) {
+          @Override
+          protected MapperWrapper wrapMapper(MapperWrapper next) {
+            return new HibernateMapper(next);
+          }
+        };
+    xs.registerConverter(new WorkflowNodeConverter());
+    xs.registerConverter(new BaseEntityXmlConverter(registry));
+    xs.registerConverter(new HibernateProxyConverter());
+    xs.registerConverter(new HibernatePersistentCollectionConverter(xs.getMapper()));
+    xs.registerConverter(new HibernatePersistentMapConverter(xs.getMapper()));
+    return xs;
   }
 
   void exportXml(
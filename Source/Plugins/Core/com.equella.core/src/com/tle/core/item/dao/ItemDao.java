@@ -89,6 +89,12 @@ public interface ItemDao extends GenericInstitutionalDao<Item, Long> {
 
   int getLatestVersion(String uuid);
 
+  /**
+   * Bulk version of {@link #getLatestVersion(String)}. UUIDs which do not match an item in the
+   * current institution are absent from the returned map.
+   */
+  Map<String, Integer> getLatestVersions(Collection<String> uuids);
+
   int getLatestLiveVersion(String uuid);
 
   ItemIdKey getLatestLiveVersionId(String uuid);
@@ -545,6 +545,38 @@ public class ItemDaoImpl extends GenericInstitionalDaoImpl<Item, Long> implement
     return allVersionNumbers.get(allVersionNumbers.size() - 1);
   }
 
+  @Override
+  public Map<String, Integer> getLatestVersions(final Collection<String> uuids) {
+    if (uuids.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    final Institution institution = CurrentInstitution.get();
+    List<Object[]> rows =
+        (List<Object[]>)
+            getHibernateTemplate()
+                .execute(
+                    new CollectionPartitioner<String, Object[]>(uuids) {
+                      @Override
+                      public List<Object[]> doQuery(Session session, Collection<String> uuids) {
+                        Query query =
+                            session.createQuery(
+                                "select i.uuid, max(i.version) from Item i where i.uuid in"
+                                    + " (:uuids) and i.institution = :institution group by"
+                                    + " i.uuid");
+                        query.setParameterList("uuids", uuids);
+                        query.setParameter("institution", institution);
+                        return query.list();
+                      }
+                    });
+
+    Map<String, Integer> versions = new HashMap<String, Integer>(rows.size());
+    for (Object[] row : rows) {
+      versions.put((String) row[0], ((Number) row[1]).intValue());
+    }
+    return versions;
+  }
+
   @Override
   @Transactional(propagation = Propagation.MANDATORY)
   public int getLatestLiveVersion(String uuid) {
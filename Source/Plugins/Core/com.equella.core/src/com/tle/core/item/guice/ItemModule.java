@@ -19,6 +19,7 @@
 package com.tle.core.item.guice;
 
 import com.google.inject.AbstractModule;
+import com.tle.core.config.guice.OptionalConfigModule;
 import com.tle.core.guice.PluginTrackerModule;
 import com.tle.core.item.ItemIdExtension;
 import com.tle.core.item.helper.AbstractHelper;
@@ -30,6 +31,18 @@ public class ItemModule extends AbstractModule {
   @Override
   protected void configure() {
     install(new TrackerModule());
+    install(new ItemOptionalConfigModule());
+  }
+
+  public static class ItemOptionalConfigModule extends OptionalConfigModule {
+    @Override
+    protected void configure() {
+      bindInt("institutions.converter.items.importThreads");
+      bindInt("institutions.converter.items.exportThreads");
+      bindInt("institutions.converter.items.perTransaction");
+      bindInt("itemOperations.parallelThreads");
+      bindInt("itemOperations.parallelBatchSize");
+    }
   }
 
   public static class TrackerModule extends PluginTrackerModule {
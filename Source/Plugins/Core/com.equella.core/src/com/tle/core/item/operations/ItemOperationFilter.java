@@ -32,6 +32,15 @@ public interface ItemOperationFilter {
 
   FilterResults getItemIds();
 
+  /**
+   * Whether the items can be shared out between several threads, each operating on its items in
+   * their own transactions. Filters which return true must return new operations from every call to
+   * {@link #getOperations()}, and must be able to iterate their item IDs from any thread.
+   */
+  default boolean isParallel() {
+    return false;
+  }
+
   public class FilterResults {
     private final long total;
     private final Iterator<? extends ItemKey> results;
@@ -75,7 +75,11 @@ public final class ItemOperationParamsImpl implements ItemOperationParams {
   private Object securityObject;
 
   public ItemOperationParamsImpl() {
-    this.dateNow = new Date();
+    this(new Date());
+  }
+
+  public ItemOperationParamsImpl(Date dateNow) {
+    this.dateNow = dateNow;
   }
 
   @Override
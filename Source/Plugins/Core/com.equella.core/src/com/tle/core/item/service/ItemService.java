@@ -86,6 +86,14 @@ public interface ItemService
 
   int getLatestVersion(String uuid);
 
+  /**
+   * Get the latest version of several items in one query.
+   *
+   * @param uuids UUIDs of the items.
+   * @return A map of item UUID to latest version. UUIDs which do not match an item are absent.
+   */
+  Map<String, Integer> getLatestVersions(Collection<String> uuids);
+
   /**
    * If the target version is 0, return the latest version instead. Otherwise, return the target
    * version.
@@ -140,6 +148,16 @@ public interface ItemService
 
   Set<String> getItemPrivsFast(ItemKey itemId);
 
+  /**
+   * Works out which of the privileges the current user is granted on each of a page of items, such
+   * as a page of search results. The number of queries doesn't depend on the number of items, and
+   * ACLs looked up for one page are remembered for the rest of the transaction.
+   *
+   * @return The granted privileges of each item, in the same order as the items.
+   */
+  Map<ItemIdKey, Set<String>> getItemPrivileges(
+      Collection<ItemIdKey> items, Collection<String> privileges);
+
   Set<String> getReferencedUsers();
 
   void delete(Item item);
@@ -55,6 +55,7 @@ import com.tle.beans.item.attachments.Attachment;
 import com.tle.beans.item.attachments.IAttachment;
 import com.tle.beans.workflow.SecurityStatus;
 import com.tle.common.Check;
+import com.tle.common.NamedThreadFactory;
 import com.tle.common.Pair;
 import com.tle.common.Triple;
 import com.tle.common.collection.AttachmentConfigConstants;
@@ -82,6 +83,7 @@ import com.tle.core.auditlog.AuditLogService;
 import com.tle.core.events.ApplicationEvent;
 import com.tle.core.events.services.EventService;
 import com.tle.core.guice.Bind;
+import com.tle.core.institution.RunAsInstitution;
 import com.tle.core.item.ItemIdExtension;
 import com.tle.core.item.dao.ItemDao;
 import com.tle.core.item.event.ItemOperationBatchEvent;
@@ -99,6 +101,8 @@ import com.tle.core.item.operations.WorkflowOperation;
 import com.tle.core.item.scripting.WorkflowScriptConstants;
 import com.tle.core.item.scripting.WorkflowScriptContextParams;
 import com.tle.core.item.scripting.WorkflowScriptObjectContributor;
+import com.tle.core.item.serializer.ItemSerializerItemBean;
+import com.tle.core.item.serializer.ItemSerializerService;
 import com.tle.core.item.service.ItemLockingService;
 import com.tle.core.item.service.ItemResolverExtension;
 import com.tle.core.item.service.ItemService;
@@ -121,15 +125,23 @@ import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.apache.logging.log4j.ThreadContext;
 import org.hibernate.Hibernate;
@@ -173,6 +185,16 @@ public class ItemServiceImpl
   @Inject private NotificationService notificationService;
   @Inject private ConfigurationService configurationService;
   @Inject private ViewCountService viewCountService;
+  @Inject private ItemSerializerService itemSerializerService;
+  @Inject private RunAsInstitution runAs;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("itemOperations.parallelThreads")
+  private int parallelThreads = 4;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("itemOperations.parallelBatchSize")
+  private int parallelBatchSize = 100;
 
   // plugin extensions
   @Inject private PluginTracker<WorkflowOperation> operationTracker;
@@ -239,6 +261,12 @@ public class ItemServiceImpl
     return dao.getLatestVersion(uuid);
   }
 
+  @Override
+  @Transactional
+  public Map<String, Integer> getLatestVersions(Collection<String> uuids) {
+    return dao.getLatestVersions(uuids);
+  }
+
   @Override
   public int getRealVersion(int version, String uuid) {
     // If version is 0, find the real latest version of this Item.
@@ -484,6 +512,41 @@ public class ItemServiceImpl
     return privilegeCache.getIfPresent(getPrivCacheId(itemKey));
   }
 
+  @Override
+  @Transactional
+  public Map<ItemIdKey, Set<String>> getItemPrivileges(
+      Collection<ItemIdKey> items, Collection<String> privileges) {
+    Map<ItemIdKey, Set<String>> result = new LinkedHashMap<ItemIdKey, Set<String>>();
+    if (items.isEmpty() || privileges.isEmpty()) {
+      for (ItemIdKey item : items) {
+        result.put(item, Collections.<String>emptySet());
+      }
+      return result;
+    }
+
+    Set<Long> ids = new HashSet<Long>();
+    for (ItemIdKey item : items) {
+      ids.add(item.getKey());
+    }
+    // Only loads what the ACL checks need, and checks every item at once
+    ItemSerializerItemBean serializer =
+        itemSerializerService.createItemBeanSerializer(
+            ids,
+            Collections.<String>emptySet(),
+            false,
+            privileges.toArray(new String[privileges.size()]));
+    for (ItemIdKey item : items) {
+      Set<String> granted = new HashSet<String>();
+      for (String privilege : privileges) {
+        if (serializer.hasPrivilege(item.getKey(), privilege)) {
+          granted.add(privilege);
+        }
+      }
+      result.put(item, granted);
+    }
+    return result;
+  }
+
   @Override
   public Set<String> getReferencedUsers() {
     return dao.getReferencedUsers();
@@ -641,9 +704,19 @@ public class ItemServiceImpl
     }
 
     Iterator<? extends ItemKey> iter = itemIds.getResults();
-    while (iter.hasNext()) {
-      ItemKey itemKey = iter.next();
-      processItemId(filter, listener, params, containsDelete, itemKey);
+    int threads = getParallelThreads(filter, itemIds.getTotal());
+    if (threads > 1) {
+      ItemBatches batches = new ItemBatches(iter, Math.max(1, parallelBatchSize));
+      Date dateNow = params.getDateNow();
+      for (ItemOperationParams threadParams :
+          operateInParallel(filter, listener, dateNow, containsDelete, batches, threads)) {
+        postProcessParameters(threadParams);
+      }
+    } else {
+      while (iter.hasNext()) {
+        ItemKey itemKey = iter.next();
+        processItemId(filter, listener, params, containsDelete, itemKey);
+      }
     }
 
     postProcessParameters(params);
@@ -651,6 +724,112 @@ public class ItemServiceImpl
     return params;
   }
 
+  /** The number of threads to share the items between, or 1 to operate on them one by one here. */
+  private int getParallelThreads(ItemOperationFilter filter, long total) {
+    // Operations run within a surrounding transaction must all commit or roll back together
+    if (!filter.isParallel() || TransactionSynchronizationManager.isActualTransactionActive()) {
+      return 1;
+    }
+    long batchSize = Math.max(1, parallelBatchSize);
+    long batches = (total + batchSize - 1) / batchSize;
+    return (int) Math.max(1, Math.min(parallelThreads, batches));
+  }
+
+  /**
+   * Shares the items out in batches between a pool of threads, each running as the current user
+   * with its own parameters, so that every item is still operated on in its own transaction.
+   *
+   * @return The parameters of each thread, to be post processed once they have all finished.
+   */
+  private List<ItemOperationParams> operateInParallel(
+      final ItemOperationFilter filter,
+      final FilterResultListener listener,
+      final Date dateNow,
+      final boolean containsDelete,
+      final ItemBatches batches,
+      int threads) {
+    final UserState userState = CurrentUser.getUserState();
+    final FilterResultListener threadListener =
+        listener != null ? new SynchronizedListener(listener) : null;
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threads, new NamedThreadFactory("ItemService.operateAll"));
+    try {
+      List<Future<ItemOperationParams>> workers = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        workers.add(
+            executor.submit(
+                () ->
+                    runAs.execute(
+                        userState,
+                        () -> {
+                          try {
+                            return operateBatches(
+                                filter,
+                                threadListener,
+                                new ItemOperationParamsImpl(dateNow),
+                                containsDelete,
+                                batches);
+                          } catch (RuntimeException e) {
+                            batches.stop();
+                            throw e;
+                          }
+                        })));
+      }
+
+      // Wait for all of them, even if one fails or this thread is interrupted, so no items are left
+      // being operated on once this returns
+      List<ItemOperationParams> results = new ArrayList<>();
+      Throwable failure = null;
+      boolean interrupted = false;
+      for (Future<ItemOperationParams> worker : workers) {
+        while (true) {
+          try {
+            results.add(worker.get());
+            break;
+          } catch (ExecutionException e) {
+            failure = failure == null ? Throwables.getRootCause(e) : failure;
+            break;
+          } catch (InterruptedException e) {
+            // No more items are handed out, but the workers finish the batches they have
+            batches.stop();
+            interrupted = true;
+            failure = failure == null ? e : failure;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (failure != null) {
+        Throwables.throwIfInstanceOf(failure, WorkflowException.class);
+        throw new WorkflowException(failure);
+      }
+      return results;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Operates on batches of items until there are none left. Only the item keys are fetched a batch
+   * at a time, as each item is loaded by its operations in its own transaction and the session is
+   * cleared after every item, so items loaded ahead of their transaction would be thrown away.
+   */
+  private ItemOperationParams operateBatches(
+      ItemOperationFilter filter,
+      FilterResultListener listener,
+      ItemOperationParams params,
+      boolean containsDelete,
+      ItemBatches batches) {
+    List<ItemKey> batch;
+    while (!(batch = batches.next()).isEmpty()) {
+      for (ItemKey itemKey : batch) {
+        processItemId(filter, listener, params, containsDelete, itemKey);
+      }
+    }
+    return params;
+  }
+
   private void processItemId(
       final ItemOperationFilter filter,
       final FilterResultListener listener,
@@ -692,6 +871,55 @@ public class ItemServiceImpl
     }
   }
 
+  /** Hands out the items of a filter in batches, to the threads operating on them. */
+  protected static final class ItemBatches {
+    private final Iterator<? extends ItemKey> iter;
+    private final int batchSize;
+    private boolean stopped;
+
+    ItemBatches(Iterator<? extends ItemKey> iter, int batchSize) {
+      this.iter = iter;
+      this.batchSize = batchSize;
+    }
+
+    /** The next batch of items, which is empty once there are no more. */
+    synchronized List<ItemKey> next() {
+      List<ItemKey> batch = new ArrayList<>(batchSize);
+      while (!stopped && batch.size() < batchSize && iter.hasNext()) {
+        batch.add(iter.next());
+      }
+      return batch;
+    }
+
+    synchronized void stop() {
+      stopped = true;
+    }
+  }
+
+  /** Passes on the results of the threads one at a time, as listeners aren't thread safe. */
+  private static final class SynchronizedListener implements FilterResultListener {
+    private final FilterResultListener listener;
+
+    SynchronizedListener(FilterResultListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public synchronized void succeeded(ItemKey itemId, ItemPack<Item> pack) {
+      listener.succeeded(itemId, pack);
+    }
+
+    @Override
+    public synchronized void failed(ItemKey itemId, Item item, ItemPack<Item> pack, Throwable e) {
+      listener.failed(itemId, item, pack, e);
+    }
+
+    @Override
+    public synchronized void total(int total) {
+      listener.total(total);
+    }
+  }
+
   protected boolean containsDelete(WorkflowOperation[] ops) {
     for (WorkflowOperation op : ops) {
       if (op.isDeleteLike()) {
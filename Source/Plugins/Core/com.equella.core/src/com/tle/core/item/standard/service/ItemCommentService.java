@@ -22,8 +22,10 @@ import com.tle.beans.item.Comment;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemKey;
 import com.tle.beans.item.ItemPack;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 public interface ItemCommentService {
   enum CommentFilter {
@@ -81,6 +83,15 @@ public interface ItemCommentService {
    */
   Integer getCommentCountWithACLCheck(ItemKey itemId);
 
+  /**
+   * Bulk version of {@link #getCommentCountWithACLCheck(ItemKey)} which counts the comments of
+   * several items in one query.
+   *
+   * @return A map of item ID to number of comments. Items whose comments can not be viewed by the
+   *     current user are absent.
+   */
+  Map<Long, Integer> getCommentCountsWithACLCheck(Collection<Item> items);
+
   /**
    * Add a new comment to an item.
    *
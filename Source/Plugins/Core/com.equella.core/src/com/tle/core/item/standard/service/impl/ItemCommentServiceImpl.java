@@ -45,6 +45,7 @@ import com.tle.core.item.standard.dao.ItemCommentDao;
 import com.tle.core.item.standard.service.ItemCommentService;
 import com.tle.core.security.TLEAclManager;
 import com.tle.core.security.impl.SecureOnCall;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
@@ -104,6 +105,21 @@ public class ItemCommentServiceImpl implements ItemCommentService, UserChangeLis
         itemId, (item) -> itemDao.getCommentCounts(Collections.singletonList(item)).get(0));
   }
 
+  @Override
+  @Transactional
+  public Map<Long, Integer> getCommentCountsWithACLCheck(Collection<Item> items) {
+    List<Item> viewable =
+        Lists.newArrayList(
+            tleAclManager.filterNonGrantedObjects(Collections.singleton(COMMENT_VIEW_ITEM), items));
+    List<Integer> counts = itemDao.getCommentCounts(viewable);
+
+    Map<Long, Integer> countMap = Maps.newHashMapWithExpectedSize(viewable.size());
+    for (int i = 0; i < viewable.size(); i++) {
+      countMap.put(viewable.get(i).getId(), counts.get(i));
+    }
+    return countMap;
+  }
+
   @Override
   @SecureOnCall(priv = COMMENT_VIEW_ITEM)
   public List<Comment> getComments(
@@ -20,6 +20,7 @@ package com.tle.core.scripting;
 
 import com.dytech.edge.common.PropBagWrapper;
 import com.dytech.edge.common.ScriptContext;
+import com.tle.annotation.Nullable;
 import com.tle.common.scripting.ScriptObject;
 import com.tle.common.util.Logger;
 import java.util.Collections;
@@ -62,8 +63,38 @@ public class DefaultScriptContext implements ScriptContext {
     this.logger = logger;
   }
 
-  public Scriptable getUserScriptScope(Context jsContext) {
-    Scriptable scope = new ImporterTopLevel(jsContext);
+  /**
+   * Creates a scope of the standard objects without access to Java, sealed so that it can be shared
+   * by every script as the prototype of its own scope.
+   */
+  public static Scriptable createSharedScope(Context jsContext) {
+    ImporterTopLevel scope = new ImporterTopLevel(jsContext, true);
+    removeJavaAccess(scope);
+    // Standard objects are loaded lazily, so load them all before sealing
+    for (Object id : scope.getAllIds()) {
+      if (id instanceof String) {
+        scope.get((String) id, scope);
+      }
+    }
+    scope.sealObject();
+    return scope;
+  }
+
+  private static Scriptable newScope(Context jsContext, @Nullable Scriptable sharedScope) {
+    if (sharedScope == null) {
+      return new ImporterTopLevel(jsContext);
+    }
+    Scriptable scope = jsContext.newObject(sharedScope);
+    scope.setPrototype(sharedScope);
+    scope.setParentScope(null);
+    return scope;
+  }
+
+  /**
+   * @param sharedScope A scope from {@link #createSharedScope}, or null for a new scope.
+   */
+  public Scriptable getUserScriptScope(Context jsContext, @Nullable Scriptable sharedScope) {
+    Scriptable scope = newScope(jsContext, sharedScope);
     for (String name : userScriptObjects.keySet()) {
       Object obj = userScriptObjects.get(name);
       if (obj instanceof Boolean) {
@@ -77,9 +108,11 @@ public class DefaultScriptContext implements ScriptContext {
     return scope;
   }
 
-  @SuppressWarnings("nls")
-  public Scriptable getScope(Context jsContext) {
-    Scriptable scope = new ImporterTopLevel(jsContext);
+  /**
+   * @param sharedScope A scope from {@link #createSharedScope}, or null for a new scope.
+   */
+  public Scriptable getScope(Context jsContext, @Nullable Scriptable sharedScope) {
+    Scriptable scope = newScope(jsContext, sharedScope);
 
     for (String name : scriptObjects.keySet()) {
       Object obj = scriptObjects.get(name);
@@ -91,18 +124,9 @@ public class DefaultScriptContext implements ScriptContext {
       }
     }
 
-    // Remove the ability to create new Java objects in the script. List
-    // comes from https://bugzilla.mozilla.org/show_bug.cgi?id=468385
-    scope.delete("Packages");
-    scope.delete("JavaImporter");
-    scope.delete("JavaAdapter");
-    scope.delete("getClass");
-    scope.delete("java");
-    scope.delete("javax");
-    scope.delete("com");
-    scope.delete("net");
-    scope.delete("edu");
-    scope.delete("org");
+    if (sharedScope == null) {
+      removeJavaAccess(scope);
+    }
 
     try {
       // Prevent existingObject.getClass().forName('...')
@@ -122,6 +146,22 @@ public class DefaultScriptContext implements ScriptContext {
     return scope;
   }
 
+  @SuppressWarnings("nls")
+  private static void removeJavaAccess(Scriptable scope) {
+    // Remove the ability to create new Java objects in the script. List
+    // comes from https://bugzilla.mozilla.org/show_bug.cgi?id=468385
+    scope.delete("Packages");
+    scope.delete("JavaImporter");
+    scope.delete("JavaAdapter");
+    scope.delete("getClass");
+    scope.delete("java");
+    scope.delete("javax");
+    scope.delete("com");
+    scope.delete("net");
+    scope.delete("edu");
+    scope.delete("org");
+  }
+
   @Override
   public void scriptEnter() {
     for (Object object : scriptObjects.values()) {
@@ -21,6 +21,10 @@ package com.tle.core.scripting.service;
 import com.dytech.edge.common.PropBagWrapper;
 import com.dytech.edge.common.ScriptContext;
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.tle.annotation.Nullable;
 import com.tle.common.Check;
 import com.tle.common.Utils;
 import com.tle.common.scripting.ScriptException;
@@ -36,11 +40,14 @@ import com.tle.core.services.LoggingService;
 import com.tle.web.resources.PluginResourceHelper;
 import com.tle.web.resources.ResourcesService;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextAction;
@@ -49,6 +56,7 @@ import org.mozilla.javascript.EcmaError;
 import org.mozilla.javascript.ErrorReporter;
 import org.mozilla.javascript.EvaluatorException;
 import org.mozilla.javascript.JavaScriptException;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
 import org.mozilla.javascript.commonjs.module.Require;
@@ -65,7 +73,22 @@ public class ScriptingServiceImpl implements ScriptingService {
   private static final String IS_AN_OWNER = "isanowner";
   private static final String ITEM_XML = "xml";
 
+  @com.google.inject.Inject(optional = true)
+  @Named("scripting.optimizationLevel")
+  private int optimizationLevel = -1;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("scripting.sharedScope")
+  private boolean sharedScopeEnabled = false;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("scripting.compiledScriptCacheSize")
+  private int compiledScriptCacheSize = 1000;
+
   private Logger logger;
+  // Compiled scripts by a hash of their name and source. Null if caching is turned off.
+  private Cache<String, Script> compiledScripts;
+  private volatile Scriptable sharedScope;
   private PluginTracker<ScriptObjectContributor> scriptObjectTracker;
   private PluginTracker<UserScriptObjectContributor> userScriptObjectTracker;
   private static final PluginResourceHelper r =
@@ -164,15 +187,18 @@ public class ScriptingServiceImpl implements ScriptingService {
                     errorLogger = logger;
                   }
 
+                  cx.setOptimizationLevel(optimizationLevel);
+                  cx.setErrorReporter(new ScriptErrorReporter(errorLogger));
+
+                  Scriptable sharedScope = getSharedScope(cx);
                   Scriptable userScriptScope =
-                      ((DefaultScriptContext) context).getUserScriptScope(cx);
+                      ((DefaultScriptContext) context).getUserScriptScope(cx, sharedScope);
                   ScriptableModuleSourceProvider sourceProvider =
                       new ScriptableModuleSourceProvider(userScriptScope);
                   ModuleScriptProvider scriptProvider =
                       new SoftCachingModuleScriptProvider(sourceProvider);
 
-                  cx.initStandardObjects();
-                  Scriptable scope = ((DefaultScriptContext) context).getScope(cx);
+                  Scriptable scope = ((DefaultScriptContext) context).getScope(cx, sharedScope);
 
                   RequireBuilder builder = new RequireBuilder();
                   // The "uri" property must not exist in a sandbox
@@ -181,9 +207,6 @@ public class ScriptingServiceImpl implements ScriptingService {
 
                   Require require = builder.createRequire(cx, scope);
 
-                  cx.setOptimizationLevel(-1);
-                  cx.setErrorReporter(new ScriptErrorReporter(errorLogger));
-
                   final String execScript =
                       (function
                           ? "function runScript() {\n" + script + "\n}\n runScript();"
@@ -194,7 +217,7 @@ public class ScriptingServiceImpl implements ScriptingService {
                     context.scriptEnter();
                     require.install(scope);
 
-                    Object result = cx.evaluateString(scope, execScript, execScriptName, 1, null);
+                    Object result = compile(cx, execScript, execScriptName).exec(cx, scope);
 
                     context.scriptExit();
                     if (expectedResultClass == String.class) {
@@ -214,6 +237,42 @@ public class ScriptingServiceImpl implements ScriptingService {
     return Boolean.TRUE;
   }
 
+  /**
+   * Compiles the script, or returns the already compiled script if it has been run before. Scripts
+   * which fail to compile are not cached, so their errors are reported every time.
+   */
+  private Script compile(Context cx, String script, String scriptName) {
+    if (compiledScripts == null) {
+      return cx.compileString(script, scriptName, 1, null);
+    }
+    String key =
+        Hashing.sha256().hashString(scriptName + '\0' + script, StandardCharsets.UTF_8).toString();
+    Script compiled = compiledScripts.getIfPresent(key);
+    if (compiled == null) {
+      compiled = cx.compileString(script, scriptName, 1, null);
+      compiledScripts.put(key, compiled);
+    }
+    return compiled;
+  }
+
+  @Nullable
+  private Scriptable getSharedScope(Context cx) {
+    if (!sharedScopeEnabled) {
+      return null;
+    }
+    Scriptable scope = sharedScope;
+    if (scope == null) {
+      synchronized (this) {
+        scope = sharedScope;
+        if (scope == null) {
+          scope = DefaultScriptContext.createSharedScope(cx);
+          sharedScope = scope;
+        }
+      }
+    }
+    return scope;
+  }
+
   public static final class ScriptErrorReporter implements ErrorReporter {
     private final Logger errorLogger;
 
@@ -263,6 +322,14 @@ public class ScriptingServiceImpl implements ScriptingService {
     }
   }
 
+  @PostConstruct
+  public void setupCompiledScripts() {
+    compiledScripts =
+        compiledScriptCacheSize > 0
+            ? CacheBuilder.newBuilder().maximumSize(compiledScriptCacheSize).build()
+            : null;
+  }
+
   @Inject
   public void setLoggingService(LoggingService loggingService) {
     logger = loggingService.getLogger(ScriptingService.class);
@@ -0,0 +1,225 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.services.impl;
+
+import com.dytech.devlib.Md5;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.tle.common.filesystem.FileSystemHelper;
+import com.tle.core.guice.Bind;
+import io.prometheus.client.Counter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Remembers the MD5 digests of files and folders in the filestore, so that ETags and checksums
+ * don't need the whole file to be read every time they're asked for. A digest is kept along with a
+ * stamp of the size and modification time of the file (or of every file in a folder), and is only
+ * used while the stamp still matches.
+ *
+ * <p>Recently used digests are kept in memory, and digests are also saved in a user defined
+ * attribute of the file itself, so they survive restarts, are shared by the nodes of a cluster and
+ * are removed along with the file. Filestores which don't support user defined attributes only get
+ * the digests kept in memory.
+ */
+@SuppressWarnings("nls")
+@Bind
+@Singleton
+public class FileDigestCache {
+  private static final String ATTRIBUTE = "equella.md5";
+
+  private static final Counter HITS =
+      Counter.build()
+          .name("file_digest_cache_hits")
+          .help("File digests found in memory or in the attributes of the file")
+          .register();
+  private static final Counter MISSES =
+      Counter.build()
+          .name("file_digest_cache_misses")
+          .help("File digests which had to be calculated by reading the file")
+          .register();
+
+  @com.google.inject.Inject(optional = true)
+  @Named("filestore.digestCacheSize")
+  private int cacheSize = 10000;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("filestore.digestAttributes")
+  private boolean useAttributes = true;
+
+  private Cache<String, Digest> digests;
+
+  public FileDigestCache() {
+    // Configured by injection
+  }
+
+  FileDigestCache(int cacheSize, boolean useAttributes) {
+    this.cacheSize = cacheSize;
+    this.useAttributes = useAttributes;
+    init();
+  }
+
+  @PostConstruct
+  void init() {
+    digests = CacheBuilder.newBuilder().maximumSize(Math.max(0, cacheSize)).build();
+  }
+
+  /** The MD5 digest of the file, or of the contents of every file in the folder. */
+  public String getDigest(File file) throws IOException {
+    String stamp = getStamp(file.toPath());
+    if (stamp == null) {
+      // Doesn't exist, there's nothing to remember
+      return FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+    }
+
+    String key = file.getAbsolutePath();
+    Digest digest = digests.getIfPresent(key);
+    if (digest == null || !digest.stamp.equals(stamp)) {
+      digest = readAttribute(file.toPath());
+    }
+    if (digest != null && digest.stamp.equals(stamp)) {
+      HITS.inc();
+      digests.put(key, digest);
+      return digest.md5;
+    }
+
+    MISSES.inc();
+    String md5 = FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+    // Don't remember it if the file was changed while it was being read
+    if (stamp.equals(getStamp(file.toPath()))) {
+      remember(file, new Digest(stamp, md5));
+    }
+    return md5;
+  }
+
+  /** Remembers the digest of a file which has just been written. */
+  public void put(File file, String md5) {
+    try {
+      String stamp = getStamp(file.toPath());
+      if (stamp != null) {
+        remember(file, new Digest(stamp, md5));
+      }
+    } catch (IOException e) {
+      // It will be calculated when it's needed
+    }
+  }
+
+  private void remember(File file, Digest digest) {
+    digests.put(file.getAbsolutePath(), digest);
+    if (useAttributes) {
+      UserDefinedFileAttributeView view = getAttributeView(file.toPath());
+      if (view != null) {
+        try {
+          view.write(ATTRIBUTE, StandardCharsets.UTF_8.encode(digest.stamp + ' ' + digest.md5));
+        } catch (IOException | UnsupportedOperationException e) {
+          // Not supported by the filestore, or the file is read only
+        }
+      }
+    }
+  }
+
+  private Digest readAttribute(Path path) {
+    UserDefinedFileAttributeView view = useAttributes ? getAttributeView(path) : null;
+    if (view == null) {
+      return null;
+    }
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(view.size(ATTRIBUTE));
+      view.read(ATTRIBUTE, buffer);
+      buffer.flip();
+      String value = StandardCharsets.UTF_8.decode(buffer).toString();
+      int space = value.lastIndexOf(' ');
+      return space > 0 ? new Digest(value.substring(0, space), value.substring(space + 1)) : null;
+    } catch (IOException | UnsupportedOperationException e) {
+      // Not saved yet, or not supported by the filestore
+      return null;
+    }
+  }
+
+  /** The user defined attributes of the file, or null if the filestore doesn't support them. */
+  UserDefinedFileAttributeView getAttributeView(Path path) {
+    return Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+  }
+
+  /**
+   * The size and modification time of a file, or a digest of the names, sizes and modification
+   * times of all the files in a folder, which are read without reading their contents.
+   *
+   * @return null if the file doesn't exist.
+   */
+  private static String getStamp(Path path) throws IOException {
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return null;
+    }
+    if (!attrs.isDirectory()) {
+      return attrs.size() + ":" + attrs.lastModifiedTime().toMillis();
+    }
+
+    MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("md5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("Missing MD5 Digest");
+    }
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(path)) {
+      files = walk.sorted().toList();
+    }
+    for (Path file : files) {
+      BasicFileAttributes fileAttrs = Files.readAttributes(file, BasicFileAttributes.class);
+      if (fileAttrs.isRegularFile()) {
+        String entry =
+            path.relativize(file)
+                + ":"
+                + fileAttrs.size()
+                + ":"
+                + fileAttrs.lastModifiedTime().toMillis()
+                + "\n";
+        md5.update(entry.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return "dir:" + files.size() + ":" + Md5.stringify(md5.digest());
+  }
+
+  private static final class Digest {
+    private final String stamp;
+    private final String md5;
+
+    private Digest(String stamp, String md5) {
+      this.stamp = stamp;
+      this.md5 = md5;
+    }
+  }
+}
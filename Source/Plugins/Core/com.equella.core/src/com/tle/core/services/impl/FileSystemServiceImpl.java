@@ -113,6 +113,7 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
   @Inject private EventService eventService;
   @Inject private ZookeeperService zkService;
   @Inject private Map<String, Filestore> filestores;
+  @Inject private FileDigestCache digestCache;
 
   @com.google.inject.Inject(optional = true)
   @Named("filestore.advanced")
@@ -122,6 +123,10 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
   @Named("filestore.zipExtractCharset")
   private String charset;
 
+  @com.google.inject.Inject(optional = true)
+  @Named("filestore.digestOnWrite")
+  private boolean digestOnWrite = true;
+
   @Inject
   @Named("filestore.root")
   private File rootDir;
@@ -300,8 +305,11 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
           ex);
     }
 
+    // The digest of a whole file is remembered for its ETag and checksum, which costs a little
+    // over a second of CPU for every gigabyte written
+    boolean rememberMd5 = digestOnWrite && !append;
     MessageDigest md5 = null;
-    if (calculateMd5) {
+    if (calculateMd5 || rememberMd5) {
       try {
         md5 = MessageDigest.getInstance(DIGEST_MD5);
       } catch (NoSuchAlgorithmException e) {
@@ -309,15 +317,19 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
       }
     }
 
+    long byteCount;
     try (OutputStream out = getOutputStream(file, append)) {
-      long byteCount = copyStream(content, out, md5);
+      byteCount = copyStream(content, out, md5);
+    }
 
-      String md5Hex = null;
-      if (md5 != null) {
-        md5Hex = Md5.stringify(md5.digest());
+    String md5Hex = null;
+    if (md5 != null) {
+      md5Hex = Md5.stringify(md5.digest());
+      if (rememberMd5) {
+        digestCache.put(file, md5Hex);
       }
-      return new FileInfo(byteCount, filename, md5Hex);
     }
+    return new FileInfo(byteCount, filename, calculateMd5 ? md5Hex : null);
   }
 
   @Override
@@ -1083,7 +1095,7 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
   @Override
   public String getMD5Checksum(FileHandle handle, String path) {
     try {
-      return FileSystemHelper.md5recurse(getFile(handle, path), new byte[Short.MAX_VALUE]);
+      return digestCache.getDigest(getFile(handle, path));
     } catch (Exception e) {
       throw new FileSystemException("FATAL", e);
     }
@@ -1131,7 +1143,12 @@ public class FileSystemServiceImpl implements FileSystemService, ServiceCheckReq
   }
 
   private FileContentStream getContentStream(File file, String mimeType) {
-    return new FileContentStream(file, file.getName(), mimeType);
+    return new FileContentStream(file, file.getName(), mimeType) {
+      @Override
+      protected String calculateDigest(File contentFile) throws IOException {
+        return digestCache.getDigest(contentFile);
+      }
+    };
   }
 
   @Override
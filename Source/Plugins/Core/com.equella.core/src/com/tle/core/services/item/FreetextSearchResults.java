@@ -18,6 +18,7 @@
 
 package com.tle.core.services.item;
 
+import com.tle.annotation.Nullable;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemKey;
 import com.tle.common.searching.SearchResults;
@@ -31,4 +32,13 @@ public interface FreetextSearchResults<T extends FreetextResult> extends SearchR
   ItemKey getItemKey(int index);
 
   List<T> getSearchResults();
+
+  /**
+   * @return The cursor for the next page when the results were returned from a cursor based search
+   *     and more results may be available, otherwise null.
+   */
+  @Nullable
+  default String getNextCursor() {
+    return null;
+  }
 }
@@ -18,10 +18,12 @@
 
 package com.tle.core.services.item;
 
+import com.tle.annotation.Nullable;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.beans.item.ItemKey;
 import com.tle.beans.item.ItemSelect;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.Search;
 import com.tle.common.searching.SearchResults;
 import com.tle.core.item.service.ItemService;
@@ -73,6 +75,14 @@ public class StdFreetextResults<T extends FreetextResult> implements FreetextSea
     return results.getResults();
   }
 
+  @Nullable
+  @Override
+  public String getNextCursor() {
+    return results instanceof CursorSearchResults
+        ? ((CursorSearchResults<T>) results).getNextCursor()
+        : null;
+  }
+
   @Override
   public int getAvailable() {
     return results.getAvailable();
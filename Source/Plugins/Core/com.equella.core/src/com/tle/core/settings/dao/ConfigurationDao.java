@@ -27,4 +27,10 @@ public interface ConfigurationDao extends GenericDao<ConfigurationProperty, Prop
   void deleteAll();
 
   void deletePropertiesLike(Collection<String> select);
+
+  /**
+   * Inserts the property in a transaction of its own, failing with a {@link
+   * org.springframework.dao.DataIntegrityViolationException} if it already exists.
+   */
+  void insert(ConfigurationProperty property);
 }
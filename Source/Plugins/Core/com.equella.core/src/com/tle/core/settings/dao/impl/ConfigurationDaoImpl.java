@@ -76,4 +76,12 @@ public class ConfigurationDaoImpl extends GenericDaoImpl<ConfigurationProperty,
     // If you don't flush then you get a NonUniqueObjectException
     getHibernateTemplate().flush();
   }
+
+  @Override
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public void insert(ConfigurationProperty property) {
+    getHibernateTemplate().save(property);
+    // Flush so that a duplicate fails here, where it can be told apart from other errors
+    getHibernateTemplate().flush();
+  }
 }
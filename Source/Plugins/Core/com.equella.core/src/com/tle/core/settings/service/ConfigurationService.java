@@ -45,6 +45,14 @@ public interface ConfigurationService {
 
   void setProperty(String property, String value);
 
+  /**
+   * Saves the property unless it already has a value, which may have been saved at the same time by
+   * another node of the cluster.
+   *
+   * @return The value the property ends up with, which may not be the given one.
+   */
+  String setPropertyIfAbsent(String property, String value);
+
   void deleteProperty(String property);
 
   // For institution import/export/deletion only ///////////////////////////
@@ -60,6 +60,7 @@ import org.hibernate.criterion.Restrictions;
 import org.hibernate.engine.spi.TypedValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.transaction.annotation.Transactional;
 
 @Singleton
@@ -232,6 +233,26 @@ public class ConfigurationServiceImpl implements ConfigurationService, Configura
     invalidateCache();
   }
 
+  @Override
+  public String setPropertyIfAbsent(String property, String value) {
+    String existing = getProperty(property);
+    if (existing != null) {
+      return existing;
+    }
+
+    ConfigurationProperty prop = new ConfigurationProperty();
+    prop.setKey(new PropertyKey(CurrentInstitution.get(), property));
+    prop.setValue(value);
+    try {
+      configurationDao.insert(prop);
+    } catch (DataIntegrityViolationException e) {
+      // It was saved first by someone else, whose value is read back below
+      LOGGER.debug("Property " + property + " has already been saved", e);
+    }
+    invalidateCache();
+    return getProperty(property);
+  }
+
   @Override
   @Transactional
   public synchronized void setProperties(ConfigurationProperties properties) {
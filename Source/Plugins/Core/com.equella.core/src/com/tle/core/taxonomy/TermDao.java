@@ -45,6 +45,12 @@ public interface TermDao extends GenericDao<Term, Long> {
 
   List<Term> getAllTermsInOrder(Taxonomy taxonomy);
 
+  /**
+   * @return The full value, value, left, right and parent ID of each term in the taxonomy, in no
+   *     particular order.
+   */
+  List<Object[]> listSearchableTerms(Taxonomy taxonomy, int maxResults);
+
   /**
    * @param taxonomy
    * @param parent
@@ -38,6 +38,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.UUID;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.hibernate.Query;
 import org.hibernate.Session;
@@ -84,6 +85,8 @@ public class TermDaoImpl extends GenericDaoImpl<Term, Long> implements TermDao {
   private static final PluginResourceHelper resources =
       ResourcesService.getResourceHelper(TermDaoImpl.class);
 
+  @Inject private TermSearchIndex termSearchIndex;
+
   public TermDaoImpl() {
     super(Term.class);
   }
@@ -106,6 +109,29 @@ public class TermDaoImpl extends GenericDaoImpl<Term, Long> implements TermDao {
             .find("FROM Term t WHERE t.taxonomy = ?0 ORDER BY t.left", new Object[] {taxonomy});
   }
 
+  @Override
+  public List<Object[]> listSearchableTerms(final Taxonomy taxonomy, final int maxResults) {
+    return (List<Object[]>)
+        getHibernateTemplate()
+            .execute(
+                session -> {
+                  Query q =
+                      session.createQuery(
+                          "SELECT t.fullValue, t.value, t.left, t.right, p.id FROM Term t"
+                              + " LEFT JOIN t.parent p WHERE t.taxonomy = :taxonomy");
+                  q.setParameter("taxonomy", taxonomy);
+                  q.setMaxResults(maxResults);
+                  return q.list();
+                });
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public Long save(Term term) {
+    termSearchIndex.invalidate(term.getTaxonomy());
+    return super.save(term);
+  }
+
   @Override
   public Term getTerm(final Taxonomy taxonomy, final String termFullPath) {
     return (Term)
@@ -139,6 +165,7 @@ public class TermDaoImpl extends GenericDaoImpl<Term, Long> implements TermDao {
   @Override
   @Transactional(propagation = Propagation.MANDATORY)
   public void delete(final Term term) {
+    termSearchIndex.invalidate(term.getTaxonomy());
     getHibernateTemplate()
         .execute(
             new HibernateCallback() {
@@ -180,6 +207,7 @@ public class TermDaoImpl extends GenericDaoImpl<Term, Long> implements TermDao {
       Taxonomy taxonomy, Term parent, @Nullable String termUuid, String termValue, int index) {
     termValue = termValue.trim();
     checkTermValue(termValue, taxonomy, parent);
+    termSearchIndex.invalidate(taxonomy);
 
     final int left =
         parent != null
@@ -323,6 +351,7 @@ public class TermDaoImpl extends GenericDaoImpl<Term, Long> implements TermDao {
     // source AL/AR.
 
     final Taxonomy taxonomy = moveThisTerm.getTaxonomy();
+    termSearchIndex.invalidate(taxonomy);
 
     final int al = moveThisTerm.getLeft();
     final int ar = moveThisTerm.getRight();
@@ -476,6 +505,7 @@ public class TermDaoImpl extends GenericDaoImpl<Term, Long> implements TermDao {
   @Override
   @Transactional(propagation = Propagation.MANDATORY)
   public void deleteForTaxonomy(final Taxonomy taxonomy) {
+    termSearchIndex.invalidate(taxonomy);
     getHibernateTemplate()
         .execute(
             session -> {
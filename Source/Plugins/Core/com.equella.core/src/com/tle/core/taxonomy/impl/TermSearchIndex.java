@@ -0,0 +1,392 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.taxonomy.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.tle.annotation.Nullable;
+import com.tle.beans.Institution;
+import com.tle.common.Pair;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.common.taxonomy.SelectionRestriction;
+import com.tle.common.taxonomy.Taxonomy;
+import com.tle.core.events.services.EventService;
+import com.tle.core.guice.Bind;
+import com.tle.core.institution.InstitutionCache;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.taxonomy.TermResult;
+import io.prometheus.client.Counter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps the terms of each internal taxonomy in memory, sorted by value and by full value, so that
+ * searching them doesn't need a case insensitive LIKE query which scans every term of the taxonomy.
+ * A query which only has a wildcard at the end is answered by a binary search, and any other query
+ * by a scan of the terms in memory.
+ *
+ * <p>The terms are loaded the first time a taxonomy is searched and thrown away whenever one of its
+ * terms is added, moved, renamed or deleted, on this node straight away and on the other nodes once
+ * the change is committed. A transaction which changes the terms of a taxonomy queries them itself
+ * until it completes. Taxonomies with more terms than {@code taxonomy.termIndex.maxTerms} are still
+ * searched with a query.
+ */
+@SuppressWarnings({"nls", "unchecked"})
+@Bind
+@Singleton
+public class TermSearchIndex implements TaxonomyModifiedListener {
+  private static final Counter MEMORY_SEARCHES =
+      Counter.build()
+          .name("taxonomy_term_searches_memory")
+          .help("Taxonomy term searches answered from the terms in memory")
+          .register();
+  private static final Counter DATABASE_SEARCHES =
+      Counter.build()
+          .name("taxonomy_term_searches_database")
+          .help("Taxonomy term searches which had to query the terms")
+          .register();
+
+  @Inject private EventService eventService;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("taxonomy.termIndex.maxTerms")
+  private int maxTerms = 1000000;
+
+  // Bumped by every change, so terms loaded while they were being changed are never kept
+  private final AtomicLong generation = new AtomicLong();
+  private InstitutionCache<Cache<String, Terms>> indexes;
+
+  @Inject
+  public void setInstitutionService(InstitutionService service) {
+    indexes =
+        service.newInstitutionAwareCache(
+            new CacheLoader<Institution, Cache<String, Terms>>() {
+              @Override
+              public Cache<String, Terms> load(Institution institution) {
+                return CacheBuilder.newBuilder().softValues().build();
+              }
+            });
+  }
+
+  /**
+   * Finds the terms whose value or full value matches the query, ignoring case, in the same way as
+   * a case insensitive LIKE where {@code *} and {@code %} match any characters and {@code _} any
+   * single character.
+   *
+   * @param limit The maximum number of terms to return, or zero or less for all of them.
+   * @param loader Loads the full value, value, left, right and parent ID of every term in the
+   *     taxonomy, up to the given maximum number of terms.
+   * @return The total number of matching terms and the first of them in order of the searched
+   *     value, or null if the terms of the taxonomy aren't kept in memory and the caller must query
+   *     them.
+   */
+  @Nullable
+  public Pair<Long, List<TermResult>> search(
+      Taxonomy taxonomy,
+      String query,
+      SelectionRestriction restriction,
+      int limit,
+      boolean searchFullTerms,
+      IntFunction<List<Object[]>> loader) {
+    Terms terms = getTerms(taxonomy, loader);
+    if (terms == null) {
+      DATABASE_SEARCHES.inc();
+      return null;
+    }
+    MEMORY_SEARCHES.inc();
+    return terms.search(query.replace('*', '%'), restriction, limit, searchFullTerms);
+  }
+
+  @Nullable
+  private Terms getTerms(Taxonomy taxonomy, IntFunction<List<Object[]>> loader) {
+    if (maxTerms <= 0 || CurrentInstitution.get() == null) {
+      return null;
+    }
+    // Terms changed by the current transaction can only be seen by querying them, and loading them
+    // here would keep the uncommitted changes for everyone else
+    Set<String> changed = (Set<String>) TransactionSynchronizationManager.getResource(this);
+    if (changed != null && changed.contains(taxonomy.getUuid())) {
+      return null;
+    }
+
+    Cache<String, Terms> taxonomies = indexes.getCache();
+    Terms terms = taxonomies.getIfPresent(taxonomy.getUuid());
+    if (terms == null) {
+      long current = generation.get();
+      List<Object[]> rows = loader.apply(maxTerms + 1);
+      terms = new Terms(rows.size() > maxTerms ? null : rows);
+      if (generation.get() == current) {
+        taxonomies.put(taxonomy.getUuid(), terms);
+      }
+    }
+    return terms.fullValues != null ? terms : null;
+  }
+
+  /**
+   * Forgets the terms of the taxonomy after they have been changed. When called within a
+   * transaction they are forgotten again once it completes, in case they were reloaded from the
+   * uncommitted changes, and only then are the other nodes told.
+   */
+  public void invalidate(Taxonomy taxonomy) {
+    final String uuid = taxonomy.getUuid();
+    clear(uuid);
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      eventService.publishApplicationEvent(new TaxonomyModifiedEvent(uuid));
+      return;
+    }
+
+    Set<String> changed = (Set<String>) TransactionSynchronizationManager.getResource(this);
+    if (changed == null) {
+      final Set<String> uuids = new HashSet<>();
+      TransactionSynchronizationManager.bindResource(this, uuids);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(TermSearchIndex.this);
+              for (String changedUuid : uuids) {
+                clear(changedUuid);
+                if (status == STATUS_COMMITTED) {
+                  eventService.publishApplicationEvent(new TaxonomyModifiedEvent(changedUuid));
+                }
+              }
+            }
+          });
+      changed = uuids;
+    }
+    changed.add(uuid);
+  }
+
+  @Override
+  public void taxonomyModifiedEvent(TaxonomyModifiedEvent event) {
+    clear(event.getTaxonomyUuid());
+  }
+
+  private void clear(String taxonomyUuid) {
+    generation.incrementAndGet();
+    indexes.getCache().invalidate(taxonomyUuid);
+  }
+
+  private static final class Terms {
+    private static final byte LEAF = 1;
+    private static final byte TOP_LEVEL = 2;
+
+    private final String[] fullValues;
+    // Where the value starts in the full value
+    private final int[] valueStarts;
+    private final byte[] flags;
+    // Term indexes in order of value and full value, ignoring case
+    private final int[] byValue;
+    private final int[] byFullValue;
+
+    /**
+     * @param rows The full value, value, left, right and parent ID of each term.
+     */
+    private Terms(@Nullable List<Object[]> rows) {
+      if (rows == null) {
+        fullValues = null;
+        valueStarts = null;
+        flags = null;
+        byValue = null;
+        byFullValue = null;
+        return;
+      }
+
+      int count = rows.size();
+      fullValues = new String[count];
+      valueStarts = new int[count];
+      flags = new byte[count];
+      for (int i = 0; i < count; i++) {
+        Object[] row = rows.get(i);
+        String value = (String) row[1];
+        String fullValue = row[0] != null ? (String) row[0] : value;
+        fullValues[i] = fullValue;
+        valueStarts[i] = fullValue.endsWith(value) ? fullValue.length() - value.length() : 0;
+        if ((Integer) row[2] == (Integer) row[3] - 1) {
+          flags[i] |= LEAF;
+        }
+        if (row[4] == null) {
+          flags[i] |= TOP_LEVEL;
+        }
+      }
+      byValue = sortedBy(false);
+      byFullValue = sortedBy(true);
+    }
+
+    private int[] sortedBy(boolean fullValue) {
+      return IntStream.range(0, fullValues.length)
+          .boxed()
+          .sorted(
+              Comparator.comparing((Integer i) -> key(i, fullValue), String.CASE_INSENSITIVE_ORDER)
+                  .thenComparing(i -> key(i, fullValue)))
+          .mapToInt(Integer::intValue)
+          .toArray();
+    }
+
+    private String key(int term, boolean fullValue) {
+      return fullValue ? fullValues[term] : fullValues[term].substring(valueStarts[term]);
+    }
+
+    private Pair<Long, List<TermResult>> search(
+        String pattern, SelectionRestriction restriction, int limit, boolean searchFullTerms) {
+      int[] order = searchFullTerms ? byFullValue : byValue;
+      List<TermResult> results = new ArrayList<>();
+      long total = 0;
+
+      String prefix = getPrefix(pattern);
+      int from = 0;
+      int to = order.length;
+      if (prefix != null) {
+        from = lowerBound(order, prefix, searchFullTerms);
+      }
+      for (int i = from; i < to; i++) {
+        int term = order[i];
+        int start = searchFullTerms ? 0 : valueStarts[term];
+        if (prefix != null) {
+          if (!fullValues[term].regionMatches(true, start, prefix, 0, prefix.length())) {
+            // Past the end of the terms which start with the prefix
+            break;
+          }
+        } else if (!matches(fullValues[term], start, pattern)) {
+          continue;
+        }
+        if (!isAllowed(term, restriction)) {
+          continue;
+        }
+
+        total++;
+        if (limit <= 0 || results.size() < limit) {
+          results.add(
+              new TermResult(
+                  fullValues[term].substring(valueStarts[term]),
+                  fullValues[term],
+                  (flags[term] & LEAF) != 0));
+        }
+      }
+      return new Pair<>(total, results);
+    }
+
+    private boolean isAllowed(int term, SelectionRestriction restriction) {
+      switch (restriction) {
+        case TOP_LEVEL_ONLY:
+          return (flags[term] & TOP_LEVEL) != 0;
+
+        case LEAF_ONLY:
+          return (flags[term] & LEAF) != 0;
+
+        default:
+          return true;
+      }
+    }
+
+    /** The first position in the order of a term which isn't before the prefix. */
+    private int lowerBound(int[] order, String prefix, boolean searchFullTerms) {
+      int low = 0;
+      int high = order.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        int term = order[mid];
+        int start = searchFullTerms ? 0 : valueStarts[term];
+        if (compareIgnoreCase(fullValues[term], start, prefix, 0) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /** The same order as {@link String#CASE_INSENSITIVE_ORDER}, from the given offsets. */
+    private static int compareIgnoreCase(String s1, int start1, String s2, int start2) {
+      int n1 = s1.length() - start1;
+      int n2 = s2.length() - start2;
+      for (int i = 0; i < Math.min(n1, n2); i++) {
+        char c1 = s1.charAt(start1 + i);
+        char c2 = s2.charAt(start2 + i);
+        if (c1 != c2) {
+          c1 = Character.toUpperCase(c1);
+          c2 = Character.toUpperCase(c2);
+          if (c1 != c2) {
+            c1 = Character.toLowerCase(c1);
+            c2 = Character.toLowerCase(c2);
+            if (c1 != c2) {
+              return c1 - c2;
+            }
+          }
+        }
+      }
+      return n1 - n2;
+    }
+
+    /** The prefix if the only wildcards in the pattern are at the end, otherwise null. */
+    @Nullable
+    private static String getPrefix(String pattern) {
+      int end = pattern.length();
+      while (end > 0 && pattern.charAt(end - 1) == '%') {
+        end--;
+      }
+      if (end == pattern.length()) {
+        return null;
+      }
+      String prefix = pattern.substring(0, end);
+      return prefix.indexOf('%') < 0 && prefix.indexOf('_') < 0 ? prefix : null;
+    }
+
+    /** Whether the text from the start matches the LIKE pattern, ignoring case. */
+    private static boolean matches(String text, int start, String pattern) {
+      int t = start;
+      int p = 0;
+      int starP = -1;
+      int starT = 0;
+      while (t < text.length()) {
+        char c = p < pattern.length() ? pattern.charAt(p) : 0;
+        if (p < pattern.length()
+            && (c == '_' || c != '%' && text.regionMatches(true, t, pattern, p, 1))) {
+          t++;
+          p++;
+        } else if (p < pattern.length() && pattern.charAt(p) == '%') {
+          starP = p++;
+          starT = t;
+        } else if (starP >= 0) {
+          p = starP + 1;
+          t = ++starT;
+        } else {
+          return false;
+        }
+      }
+      while (p < pattern.length() && pattern.charAt(p) == '%') {
+        p++;
+      }
+      return p == pattern.length();
+    }
+  }
+}
@@ -77,6 +77,7 @@ public class TermServiceImpl implements TermService {
       ResourcesService.getResourceHelper(TermServiceImpl.class);
 
   @Inject private TermDao termDao;
+  @Inject private TermSearchIndex termSearchIndex;
   @Inject private EntityLockingService lockingService;
   @Inject private InitialiserService initialiserService;
   @Inject private XmlHelper xmlHelper;
@@ -112,6 +113,18 @@ public class TermServiceImpl implements TermService {
       SelectionRestriction restriction,
       int limit,
       boolean searchFullTerms) {
+    Pair<Long, List<TermResult>> indexed =
+        termSearchIndex.search(
+            taxonomy,
+            query,
+            restriction,
+            limit,
+            searchFullTerms,
+            maxTerms -> termDao.listSearchableTerms(taxonomy, maxTerms));
+    if (indexed != null) {
+      return indexed;
+    }
+
     final String searchField = (searchFullTerms ? "fullValue" : "value");
     final Criterion c1 = Restrictions.eq("taxonomy", taxonomy);
     final Criterion c2 = Restrictions.ilike(searchField, query.replace('*', '%'));
@@ -23,10 +23,25 @@ import com.tle.beans.item.ItemKey;
 import com.tle.beans.viewcount.ViewcountAttachment;
 import com.tle.beans.viewcount.ViewcountAttachmentId;
 import com.tle.core.hibernate.dao.GenericInstitutionalDao;
+import java.time.Instant;
+import java.util.Collection;
 
 public interface AttachmentViewCountDao
     extends GenericInstitutionalDao<ViewcountAttachment, ViewcountAttachmentId> {
   int getAttachmentViewCountForCollection(long collectionId);
 
   void deleteAttachmentViewCountForItem(Institution institution, ItemKey itemKey);
+
+  /**
+   * Adds views to the existing count of an Attachment, without reading it first.
+   *
+   * @return The number of counts updated, which is 0 if the Attachment has no view count yet.
+   */
+  int addViews(ViewcountAttachmentId id, int views, Instant lastViewed);
+
+  /**
+   * Adds the count of each to the saved count of its Attachment, or saves it if the Attachment has
+   * no view count yet, all in one transaction.
+   */
+  void addViews(Collection<ViewcountAttachment> views);
 }
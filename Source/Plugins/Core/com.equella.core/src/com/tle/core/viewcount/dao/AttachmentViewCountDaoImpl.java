@@ -25,8 +25,11 @@ import com.tle.beans.viewcount.ViewcountAttachmentId;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.dao.GenericInstitionalDaoImpl;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Optional;
 import javax.inject.Singleton;
+import org.springframework.transaction.annotation.Transactional;
 
 @Bind(AttachmentViewCountDao.class)
 @Singleton
@@ -66,4 +69,30 @@ public class AttachmentViewCountDaoImpl
                     .setParameter("institutionId", institution.getDatabaseId())
                     .executeUpdate());
   }
+
+  @Override
+  public int addViews(ViewcountAttachmentId id, int views, Instant lastViewed) {
+    return getHibernateTemplate()
+        .execute(
+            session ->
+                session
+                    .getNamedQuery("addAttachmentViews")
+                    .setParameter("views", views)
+                    .setParameter("lastViewed", lastViewed)
+                    .setParameter("attachment", id.getAttachment())
+                    .setParameter("itemVersion", id.getItemVersion())
+                    .setParameter("itemUuid", id.getItemUuid())
+                    .setParameter("institutionId", id.getInst())
+                    .executeUpdate());
+  }
+
+  @Override
+  @Transactional
+  public void addViews(Collection<ViewcountAttachment> views) {
+    for (ViewcountAttachment v : views) {
+      if (addViews(v.getId(), v.getCount(), v.getLastViewed()) == 0) {
+        save(v);
+      }
+    }
+  }
 }
@@ -23,9 +23,24 @@ import com.tle.beans.item.ItemKey;
 import com.tle.beans.viewcount.ViewcountItem;
 import com.tle.beans.viewcount.ViewcountItemId;
 import com.tle.core.hibernate.dao.GenericInstitutionalDao;
+import java.time.Instant;
+import java.util.Collection;
 
 public interface ItemViewCountDao extends GenericInstitutionalDao<ViewcountItem, ViewcountItemId> {
   int getItemCountForCollection(long collectionId);
 
   void deleteItemViewCount(Institution institution, ItemKey itemKey);
+
+  /**
+   * Adds views to the existing count of an Item, without reading it first.
+   *
+   * @return The number of counts updated, which is 0 if the Item has no view count yet.
+   */
+  int addViews(ViewcountItemId id, int views, Instant lastViewed);
+
+  /**
+   * Adds the count of each to the saved count of its Item, or saves it if the Item has no view
+   * count yet, all in one transaction.
+   */
+  void addViews(Collection<ViewcountItem> views);
 }
@@ -25,8 +25,11 @@ import com.tle.beans.viewcount.ViewcountItemId;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.dao.GenericInstitionalDaoImpl;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Optional;
 import javax.inject.Singleton;
+import org.springframework.transaction.annotation.Transactional;
 
 @Bind(ItemViewCountDao.class)
 @Singleton
@@ -65,4 +68,29 @@ public class ItemViewCountDaoImpl extends GenericInstitionalDaoImpl<ViewcountIte
                     .setParameter("institutionId", institution.getDatabaseId())
                     .executeUpdate());
   }
+
+  @Override
+  public int addViews(ViewcountItemId id, int views, Instant lastViewed) {
+    return getHibernateTemplate()
+        .execute(
+            session ->
+                session
+                    .getNamedQuery("addItemViews")
+                    .setParameter("views", views)
+                    .setParameter("lastViewed", lastViewed)
+                    .setParameter("itemVersion", id.getItemVersion())
+                    .setParameter("itemUuid", id.getItemUuid())
+                    .setParameter("institutionId", id.getInst())
+                    .executeUpdate());
+  }
+
+  @Override
+  @Transactional
+  public void addViews(Collection<ViewcountItem> views) {
+    for (ViewcountItem v : views) {
+      if (addViews(v.getId(), v.getCount(), v.getLastViewed()) == 0) {
+        save(v);
+      }
+    }
+  }
 }
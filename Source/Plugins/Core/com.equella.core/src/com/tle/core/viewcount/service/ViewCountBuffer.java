@@ -0,0 +1,215 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.viewcount.service;
+
+import com.tle.beans.Institution;
+import com.tle.beans.viewcount.ViewcountAttachment;
+import com.tle.beans.viewcount.ViewcountAttachmentId;
+import com.tle.beans.viewcount.ViewcountItem;
+import com.tle.beans.viewcount.ViewcountItemId;
+import com.tle.common.NamedThreadFactory;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.application.StartupBean;
+import com.tle.core.guice.Bind;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.institution.RunAsInstitution;
+import com.tle.core.viewcount.dao.AttachmentViewCountDao;
+import com.tle.core.viewcount.dao.ItemViewCountDao;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the views of Items and Attachments in memory and adds them to the saved view counts
+ * every {@code viewCount.flushSeconds}, so that a popular Item isn't read and updated for every
+ * single view. The views are added to the saved count by the update itself rather than by replacing
+ * it, so the views collected by each node of a cluster are all kept.
+ *
+ * <p>Views which can't be saved are kept and tried again next time. Whatever has been collected is
+ * saved when the server stops.
+ */
+@SuppressWarnings("nls")
+@Bind
+@Singleton
+public class ViewCountBuffer implements StartupBean {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ViewCountBuffer.class);
+
+  @Inject private ItemViewCountDao itemViewCountDao;
+  @Inject private AttachmentViewCountDao attachmentViewCountDao;
+  @Inject private InstitutionService institutionService;
+  @Inject private RunAsInstitution runAs;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("viewCount.flushSeconds")
+  private int flushSeconds = 10;
+
+  // Institution unique ID to the unsaved views of each ViewcountItemId and ViewcountAttachmentId
+  private final Map<Long, Map<Serializable, PendingViews>> pending = new ConcurrentHashMap<>();
+  private ScheduledExecutorService flusher;
+
+  /** Whether views are collected, rather than each being saved straight away. */
+  public boolean isEnabled() {
+    return flushSeconds > 0;
+  }
+
+  /**
+   * Records a view of the Item or Attachment in the current Institution.
+   *
+   * @param id A {@link ViewcountItemId} or {@link ViewcountAttachmentId}.
+   * @return The number of views which haven't been saved yet, including this one.
+   */
+  public int addView(Serializable id) {
+    PendingViews views =
+        getPending(CurrentInstitution.get())
+            .compute(
+                id,
+                (key, existing) -> {
+                  PendingViews v = existing != null ? existing : new PendingViews();
+                  v.count++;
+                  v.lastViewed = Instant.now();
+                  return v;
+                });
+    return views.count;
+  }
+
+  /** The number of views of the Item or Attachment in the current Institution not yet saved. */
+  public int getViews(Serializable id) {
+    Map<Serializable, PendingViews> views = pending.get(CurrentInstitution.get().getUniqueId());
+    PendingViews v = views != null ? views.get(id) : null;
+    return v != null ? v.count : 0;
+  }
+
+  /** Forgets the unsaved views of the matching Items and Attachments in the Institution. */
+  public void discard(Institution institution, Predicate<Serializable> ids) {
+    Map<Serializable, PendingViews> views = pending.get(institution.getUniqueId());
+    if (views != null) {
+      views.keySet().removeIf(ids);
+    }
+  }
+
+  private Map<Serializable, PendingViews> getPending(Institution institution) {
+    return pending.computeIfAbsent(institution.getUniqueId(), id -> new ConcurrentHashMap<>());
+  }
+
+  /** Starts saving the collected views every {@code viewCount.flushSeconds}, if enabled. */
+  @Override
+  public synchronized void startup() {
+    if (isEnabled() && flusher == null) {
+      flusher =
+          Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ViewCountBuffer"));
+      flusher.scheduleWithFixedDelay(this::flush, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /** Stops the scheduled saves and saves what we can, rather than lose the last few views. */
+  @Override
+  public void shutdown() {
+    synchronized (this) {
+      if (flusher != null) {
+        flusher.shutdown();
+        flusher = null;
+      }
+    }
+    flush();
+  }
+
+  /** Adds the collected views to the saved view counts. */
+  synchronized void flush() {
+    for (Map.Entry<Long, Map<Serializable, PendingViews>> entry : pending.entrySet()) {
+      Institution institution = institutionService.getInstitution(entry.getKey());
+      Map<Serializable, PendingViews> views = entry.getValue();
+      if (institution == null) {
+        pending.remove(entry.getKey());
+        continue;
+      }
+
+      // Taking each one out stops any more views being added to it while it's saved
+      Map<Serializable, PendingViews> batch = new HashMap<>();
+      for (Serializable id : views.keySet()) {
+        PendingViews v = views.remove(id);
+        if (v != null) {
+          batch.put(id, v);
+        }
+      }
+      if (batch.isEmpty()) {
+        continue;
+      }
+
+      Map<Serializable, PendingViews> itemBatch = new HashMap<>();
+      Map<Serializable, PendingViews> attachmentBatch = new HashMap<>();
+      batch.forEach(
+          (id, v) -> (id instanceof ViewcountItemId ? itemBatch : attachmentBatch).put(id, v));
+
+      // Each is saved in its own transaction, so only the one which failed is kept to try again
+      List<ViewcountItem> items = new ArrayList<>();
+      itemBatch.forEach(
+          (id, v) -> items.add(new ViewcountItem((ViewcountItemId) id, v.count, v.lastViewed)));
+      save(institution, views, itemBatch, () -> itemViewCountDao.addViews(items));
+
+      List<ViewcountAttachment> attachments = new ArrayList<>();
+      attachmentBatch.forEach(
+          (id, v) ->
+              attachments.add(
+                  new ViewcountAttachment((ViewcountAttachmentId) id, v.count, v.lastViewed)));
+      save(institution, views, attachmentBatch, () -> attachmentViewCountDao.addViews(attachments));
+    }
+  }
+
+  private void save(
+      Institution institution,
+      Map<Serializable, PendingViews> views,
+      Map<Serializable, PendingViews> batch,
+      Runnable saver) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      runAs.executeAsSystem(institution, saver);
+    } catch (Throwable t) {
+      LOGGER.warn("Error saving " + batch.size() + " view counts, they will be tried again", t);
+      batch.forEach((id, v) -> views.merge(id, v, PendingViews::merge));
+    }
+  }
+
+  private static final class PendingViews {
+    private int count;
+    private Instant lastViewed;
+
+    private PendingViews merge(PendingViews other) {
+      count += other.count;
+      if (other.lastViewed.isAfter(lastViewed)) {
+        lastViewed = other.lastViewed;
+      }
+      return this;
+    }
+  }
+}
@@ -28,14 +28,14 @@ import java.util.List;
 
 public interface ViewCountService {
   /**
-   * Get the view count of an Item.
+   * Get the view count of an Item, including views not yet saved.
    *
    * @param itemKey The Item's unique key.
    */
   int getItemViewCount(ItemKey itemKey);
 
   /**
-   * Get the view count of an Attachment.
+   * Get the view count of an Attachment, including views not yet saved.
    *
    * @param itemKey The Item's unique key.
    * @param attachmentUuid UUID of the Attachment.
@@ -57,14 +57,16 @@ public interface ViewCountService {
   List<ViewcountAttachment> getAttachmentViewCountList(Institution institution, ItemKey itemKey);
 
   /**
-   * The total Item view count of a Collection limited to current Institution.
+   * The total Item view count of a Collection limited to current Institution. Views collected in
+   * the last {@code viewCount.flushSeconds} may not be saved yet, and so not included.
    *
    * @param col The collection for which to get the total Item view count.
    */
   int getItemViewCountForCollection(ItemDefinition col);
 
   /**
-   * The total Attachment view count of a Collection limited to current Institution.
+   * The total Attachment view count of a Collection limited to current Institution. Views collected
+   * in the last {@code viewCount.flushSeconds} may not be saved yet, and so not included.
    *
    * @param col The collection for which to get the total Attachment view count.
    */
@@ -30,6 +30,7 @@ import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.guice.Bind;
 import com.tle.core.viewcount.dao.AttachmentViewCountDao;
 import com.tle.core.viewcount.dao.ItemViewCountDao;
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -44,6 +45,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class ViewCountServiceImpl implements ViewCountService {
   @Inject private ItemViewCountDao itemViewCountDao;
   @Inject private AttachmentViewCountDao attachmentViewCountDao;
+  @Inject private ViewCountBuffer buffer;
 
   private ViewcountItemId buildViewCountItemId(ItemKey itemKey) {
     return new ViewcountItemId(
@@ -74,6 +76,17 @@ public class ViewCountServiceImpl implements ViewCountService {
             });
   }
 
+  private boolean isForItem(Serializable id, ItemKey itemKey) {
+    if (id instanceof ViewcountItemId) {
+      ViewcountItemId itemId = (ViewcountItemId) id;
+      return itemId.getItemVersion() == itemKey.getVersion()
+          && itemId.getItemUuid().equals(itemKey.getUuid());
+    }
+    ViewcountAttachmentId attachmentId = (ViewcountAttachmentId) id;
+    return attachmentId.getItemVersion() == itemKey.getVersion()
+        && attachmentId.getItemUuid().equals(itemKey.getUuid());
+  }
+
   // If the given ViewCount exists, return the count. Otherwise, return 0.
   private int getViewCount(AbstractViewcount viewCount) {
     return Optional.ofNullable(viewCount).map(AbstractViewcount::getCount).orElse(0);
@@ -83,6 +96,7 @@ public class ViewCountServiceImpl implements ViewCountService {
   @Transactional
   public void setItemViewCount(ItemKey itemKey, int viewCount, Instant lastViewed) {
     ViewcountItemId id = buildViewCountItemId(itemKey);
+    buffer.discard(CurrentInstitution.get(), id::equals);
     itemViewCountDao.saveOrUpdate(new ViewcountItem(id, viewCount, lastViewed));
   }
 
@@ -91,12 +105,16 @@ public class ViewCountServiceImpl implements ViewCountService {
   public void setAttachmentViewCount(
       ItemKey itemKey, String attachmentUuid, int viewCount, Instant lastViewed) {
     ViewcountAttachmentId id = buildViewCountAttachmentId(itemKey, attachmentUuid);
+    buffer.discard(CurrentInstitution.get(), id::equals);
     attachmentViewCountDao.saveOrUpdate(new ViewcountAttachment(id, viewCount, lastViewed));
   }
 
   @Override
   public int incrementItemViewCount(ItemKey itemKey) {
     ViewcountItemId id = buildViewCountItemId(itemKey);
+    if (buffer.isEnabled()) {
+      return buffer.addView(id) + getViewCount(itemViewCountDao.findById(id));
+    }
 
     ViewcountItem viewcountItem =
         updateIfExists(itemViewCountDao.findById(id))
@@ -109,6 +127,9 @@ public class ViewCountServiceImpl implements ViewCountService {
   @Override
   public int incrementAttachmentViewCount(ItemKey itemKey, String attachmentUuid) {
     ViewcountAttachmentId id = buildViewCountAttachmentId(itemKey, attachmentUuid);
+    if (buffer.isEnabled()) {
+      return buffer.addView(id) + getViewCount(attachmentViewCountDao.findById(id));
+    }
 
     ViewcountAttachment viewcountAttachment =
         updateIfExists(attachmentViewCountDao.findById(id))
@@ -121,13 +142,14 @@ public class ViewCountServiceImpl implements ViewCountService {
 
   @Override
   public int getItemViewCount(ItemKey itemKey) {
-    return getViewCount(itemViewCountDao.findById(buildViewCountItemId(itemKey)));
+    ViewcountItemId id = buildViewCountItemId(itemKey);
+    return getViewCount(itemViewCountDao.findById(id)) + buffer.getViews(id);
   }
 
   @Override
   public int getAttachmentViewCount(ItemKey itemKey, String attachmentUuid) {
-    return getViewCount(
-        attachmentViewCountDao.findById(buildViewCountAttachmentId(itemKey, attachmentUuid)));
+    ViewcountAttachmentId id = buildViewCountAttachmentId(itemKey, attachmentUuid);
+    return getViewCount(attachmentViewCountDao.findById(id)) + buffer.getViews(id);
   }
 
   @Override
@@ -157,6 +179,7 @@ public class ViewCountServiceImpl implements ViewCountService {
   @Override
   @Transactional
   public void deleteViewCount(Institution institution, ItemKey itemKey) {
+    buffer.discard(institution, id -> isForItem(id, itemKey));
     itemViewCountDao.deleteItemViewCount(institution, itemKey);
     attachmentViewCountDao.deleteAttachmentViewCountForItem(institution, itemKey);
   }
@@ -18,12 +18,14 @@
 
 package com.tle.core.xslt.guice;
 
-import com.google.inject.AbstractModule;
+import com.tle.core.config.guice.OptionalConfigModule;
 import com.tle.core.xslt.ext.Users;
 
-public class XsltModule extends AbstractModule {
+@SuppressWarnings("nls")
+public class XsltModule extends OptionalConfigModule {
   @Override
   protected void configure() {
+    bindInt("xslt.templatesCacheSize");
     requestStaticInjection(Users.class);
   }
 }
@@ -21,22 +21,27 @@ package com.tle.core.xslt.service.impl;
 import com.dytech.devlib.BadCharacterFilterReader;
 import com.dytech.devlib.Md5;
 import com.dytech.devlib.PropBagEx;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.Closeables;
-import com.tle.common.Pair;
 import com.tle.common.filesystem.handle.FileHandle;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.filesystem.InstitutionFile;
 import com.tle.core.guice.Bind;
 import com.tle.core.services.FileSystemService;
 import com.tle.core.xslt.service.XsltService;
+import io.prometheus.client.Counter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
@@ -48,20 +53,47 @@ import javax.xml.transform.URIResolver;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
+/**
+ * Compiled stylesheets are kept in two bounded caches, one for stylesheet files (recompiled when
+ * the file is modified) and one for stylesheet strings, keyed by their digest. Each stylesheet is
+ * only compiled once however many threads want it at the same time, without holding up threads
+ * after other stylesheets, and keeps a few transformers for reuse.
+ */
+@SuppressWarnings("nls")
 @Bind(XsltService.class)
 @Singleton
 public final class XsltServiceImpl implements XsltService {
-  private final Map<String, Pair<Long, Templates>> xsltCache;
-  private final Map<String, Templates> stringXsltCache;
+  private static final int MAX_IDLE_TRANSFORMERS = 8;
+
+  private static final Counter HITS =
+      Counter.build()
+          .name("xslt_templates_cache_hits")
+          .help("XSLT transformations using an already compiled stylesheet")
+          .register();
+  private static final Counter MISSES =
+      Counter.build()
+          .name("xslt_templates_cache_misses")
+          .help("XSLT stylesheets compiled because they weren't cached or had been modified")
+          .register();
+
+  // Factories aren't thread safe, so each thread compiles with its own
+  private static final ThreadLocal<TransformerFactory> TRANSFORMER_FACTORY =
+      ThreadLocal.withInitial(TransformerFactory::newInstance);
+
+  @com.google.inject.Inject(optional = true)
+  @Named("xslt.templatesCacheSize")
+  private int templatesCacheSize = 500;
 
-  private final TransformerFactory factory;
+  private Cache<String, CompiledXslt> xsltCache;
+  private Cache<String, CompiledXslt> stringXsltCache;
 
   @Inject private FileSystemService fileSystemService;
 
-  public XsltServiceImpl() {
-    xsltCache = new WeakHashMap<String, Pair<Long, Templates>>();
-    stringXsltCache = new WeakHashMap<String, Templates>();
-    factory = TransformerFactory.newInstance();
+  @PostConstruct
+  public void setupCaches() {
+    xsltCache = CacheBuilder.newBuilder().maximumSize(Math.max(0, templatesCacheSize)).build();
+    stringXsltCache =
+        CacheBuilder.newBuilder().maximumSize(Math.max(0, templatesCacheSize)).build();
   }
 
   @Override
@@ -118,7 +150,7 @@ public final class XsltServiceImpl implements XsltService {
     currentThread.setContextClassLoader(getClass().getClassLoader());
     try {
       xsltSource = getSource(xslt);
-      final Transformer templates = factory.newTransformer(xsltSource);
+      final Transformer templates = TRANSFORMER_FACTORY.get().newTransformer(xsltSource);
       final StringWriter writer = new StringWriter();
       inputSource = getSource(input);
       templates.transform(inputSource, new StreamResult(writer));
@@ -142,79 +174,66 @@ public final class XsltServiceImpl implements XsltService {
       final StreamSource source,
       final URIResolver resolver,
       boolean omitXmlDeclaration) {
-    StreamSource xsltStream = null;
     Thread currentThread = Thread.currentThread();
     ClassLoader oldLoader = currentThread.getContextClassLoader();
     currentThread.setContextClassLoader(getClass().getClassLoader());
     try {
-      Pair<Long, Templates> compiledXslt = null;
-      Templates templates = null;
       final String key = getKey(handle, xslt);
-      synchronized (xsltCache) {
-        final long modified = fileSystemService.lastModified(handle, xslt);
-        compiledXslt = xsltCache.get(key);
-        if (compiledXslt != null) {
-          if (compiledXslt.getFirst() != modified) {
-            compiledXslt = null;
-          } else {
-            templates = compiledXslt.getSecond();
-          }
-        }
-
-        if (compiledXslt == null) {
-          xsltStream = getSource(fileSystemService.read(handle, xslt));
-          templates = factory.newTemplates(xsltStream);
-          xsltCache.put(key, new Pair<Long, Templates>(modified, templates));
-        }
+      final long modified = fileSystemService.lastModified(handle, xslt);
+      CompiledXslt compiledXslt = xsltCache.getIfPresent(key);
+      if (compiledXslt != null && compiledXslt.modified != modified) {
+        // Only the first thread to notice removes it, the others wait for the recompiled one
+        xsltCache.asMap().remove(key, compiledXslt);
+        compiledXslt = null;
       }
-      // Not sure it can be
-      if (templates == null) {
-        throw new Error("templates is null");
+      if (compiledXslt == null) {
+        compiledXslt =
+            xsltCache.get(
+                key,
+                () -> {
+                  StreamSource xsltStream = getSource(fileSystemService.read(handle, xslt));
+                  try {
+                    return compile(xsltStream, modified);
+                  } finally {
+                    closeSource(xsltStream);
+                  }
+                });
+      } else {
+        HITS.inc();
       }
-      Transformer transformersMoreThanMeetsTheEye = templates.newTransformer();
+
+      Transformer transformersMoreThanMeetsTheEye = compiledXslt.borrow();
       transformersMoreThanMeetsTheEye.setOutputProperty(
           OutputKeys.OMIT_XML_DECLARATION, omitXmlDeclaration ? "yes" : "no");
-      return doTransform(transformersMoreThanMeetsTheEye, source, resolver);
+      String result = doTransform(transformersMoreThanMeetsTheEye, source, resolver);
+      compiledXslt.release(transformersMoreThanMeetsTheEye);
+      return result;
+    } catch (final ExecutionException ex) {
+      throw new RuntimeException("Error compiling XSLT", ex.getCause());
     } catch (final Exception ex) {
       throw new RuntimeException("Error compiling XSLT", ex);
     } finally {
-      closeSource(xsltStream);
       currentThread.setContextClassLoader(oldLoader);
     }
   }
 
   @Override
   public String transformFromXsltString(String xslt, PropBagEx input) {
-    StreamSource xsltStream = null;
     StreamSource inputSource = null;
-    String cacheKey = new Md5(xslt).getStringDigest();
     Thread currentThread = Thread.currentThread();
     ClassLoader oldLoader = currentThread.getContextClassLoader();
     currentThread.setContextClassLoader(getClass().getClassLoader());
 
     try {
-      Templates templates = null;
-      Templates compiledXslt = null;
-
-      synchronized (stringXsltCache) {
-        compiledXslt = stringXsltCache.get(cacheKey);
-        if (compiledXslt != null) {
-          templates = compiledXslt;
-        }
-
-        if (compiledXslt == null) {
-          xsltStream = getSource(new StringReader(xslt));
-          templates = factory.newTemplates(xsltStream);
-          stringXsltCache.put(cacheKey, templates);
-        }
-      }
+      CompiledXslt compiledXslt = getCompiledString(xslt);
 
       inputSource = getSource(new StringReader(input.toString()));
-      // Not sure it can be
-      if (templates == null) {
-        throw new Error("templates is null");
-      }
-      return doTransform(templates.newTransformer(), inputSource, null);
+      Transformer transformer = compiledXslt.borrow();
+      String result = doTransform(transformer, inputSource, null);
+      compiledXslt.release(transformer);
+      return result;
+    } catch (ExecutionException ex) {
+      throw new RuntimeException("Error compiling XSLT", ex.getCause());
     } catch (Exception ex) {
       throw new RuntimeException("Error compiling XSLT", ex);
     } finally {
@@ -223,6 +242,21 @@ public final class XsltServiceImpl implements XsltService {
     }
   }
 
+  private CompiledXslt getCompiledString(String xslt) throws ExecutionException {
+    String cacheKey = new Md5(xslt).getStringDigest();
+    CompiledXslt compiledXslt = stringXsltCache.getIfPresent(cacheKey);
+    if (compiledXslt != null) {
+      HITS.inc();
+      return compiledXslt;
+    }
+    return stringXsltCache.get(cacheKey, () -> compile(getSource(new StringReader(xslt)), 0));
+  }
+
+  private CompiledXslt compile(StreamSource xsltStream, long modified) throws TransformerException {
+    MISSES.inc();
+    return new CompiledXslt(TRANSFORMER_FACTORY.get().newTemplates(xsltStream), modified);
+  }
+
   /** Performs the XSLT transformation. */
   private String doTransform(
       final Transformer transformer, final Source input, final URIResolver resolver) {
@@ -272,15 +306,36 @@ public final class XsltServiceImpl implements XsltService {
 
   @Override
   public void cacheXslt(String xslt) {
-    final String cacheKey = new Md5(xslt).getStringDigest();
-    synchronized (stringXsltCache) {
-      if (!stringXsltCache.containsKey(cacheKey)) {
-        try {
-          stringXsltCache.put(cacheKey, factory.newTemplates(getSource(new StringReader(xslt))));
-        } catch (final TransformerException ex) {
-          throw new RuntimeException("Error compiling XSLT", ex);
-        }
-      }
+    try {
+      getCompiledString(xslt);
+    } catch (final ExecutionException ex) {
+      throw new RuntimeException("Error compiling XSLT", ex.getCause());
+    }
+  }
+
+  /**
+   * A compiled stylesheet, with the transformers which have finished their transformations. A
+   * transformer which fails isn't reused.
+   */
+  private static final class CompiledXslt {
+    private final Templates templates;
+    private final long modified;
+    private final BlockingQueue<Transformer> idle = new ArrayBlockingQueue<>(MAX_IDLE_TRANSFORMERS);
+
+    private CompiledXslt(Templates templates, long modified) {
+      this.templates = templates;
+      this.modified = modified;
+    }
+
+    private Transformer borrow() throws TransformerException {
+      Transformer transformer = idle.poll();
+      return transformer != null ? transformer : templates.newTransformer();
+    }
+
+    private void release(Transformer transformer) {
+      // Clears the parameters, output properties and URI resolver of the last transformation
+      transformer.reset();
+      idle.offer(transformer);
     }
   }
 }
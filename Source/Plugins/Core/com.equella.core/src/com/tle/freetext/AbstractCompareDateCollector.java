@@ -28,10 +28,17 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.SimpleCollector;
 
+/**
+ * Compares the index time of each collected document with the database. The item ID, institution
+ * and index time are read from doc values, falling back to the stored fields for documents indexed
+ * before the doc values were added.
+ */
 public abstract class AbstractCompareDateCollector extends SimpleCollector {
 
   private static final Log LOGGER = LogFactory.getLog(AbstractCompareDateCollector.class);
@@ -40,6 +47,10 @@ public abstract class AbstractCompareDateCollector extends SimpleCollector {
   protected final List<ItemIndexDelete> toDelete;
   protected IndexReader reader;
 
+  private NumericDocValues itemIds;
+  private NumericDocValues institutionIds;
+  private NumericDocValues indexedTimes;
+
   public AbstractCompareDateCollector(
       Map<Long, Institution> instMap, List<ItemIndexDelete> toDelete) {
     this.instMap = instMap;
@@ -47,13 +58,30 @@ public abstract class AbstractCompareDateCollector extends SimpleCollector {
   }
 
   @Override
-  protected void doSetNextReader(LeafReaderContext context) {
-    this.reader = context.reader();
+  protected void doSetNextReader(LeafReaderContext context) throws IOException {
+    LeafReader leafReader = context.reader();
+    this.reader = leafReader;
+    itemIds = leafReader.getNumericDocValues(FreeTextQuery.FIELD_ID_SORT);
+    institutionIds = leafReader.getNumericDocValues(FreeTextQuery.FIELD_INSTITUTION_DOCVALUES);
+    indexedTimes = leafReader.getNumericDocValues(FreeTextQuery.FIELD_INDEXEDTIME_DOCVALUES);
   }
 
-  @SuppressWarnings("nls")
   @Override
   public void collect(int docNum) throws IOException {
+    if (itemIds != null
+        && institutionIds != null
+        && indexedTimes != null
+        && itemIds.advanceExact(docNum)
+        && institutionIds.advanceExact(docNum)
+        && indexedTimes.advanceExact(docNum)) {
+      compareDate(itemIds.longValue(), institutionIds.longValue(), indexedTimes.longValue());
+    } else {
+      collectStored(docNum);
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private void collectStored(int docNum) throws IOException {
     Document doc =
         reader.document(
             docNum,
@@ -32,6 +32,9 @@ public interface BackgroundIndexer extends Runnable {
 
   void addAllToQueue(Collection<IndexedItem> items);
 
+  /** Adds the items to the queue, first blocking until there is room for them. */
+  void addAllToQueueWhenRoom(Collection<IndexedItem> items) throws InterruptedException;
+
   void kill();
 
   IndexedItem getIndexedItem(ItemIdKey key);
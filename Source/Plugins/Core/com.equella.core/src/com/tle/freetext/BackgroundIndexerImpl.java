@@ -25,20 +25,25 @@ import com.google.inject.assistedinject.AssistedInject;
 import com.tle.beans.Institution;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.Check;
+import com.tle.common.NamedThreadFactory;
 import com.tle.common.institution.CurrentInstitution;
 import com.tle.core.guice.BindFactory;
 import com.tle.core.hibernate.CurrentDataSource;
 import com.tle.core.hibernate.DataSourceHolder;
 import com.tle.core.system.service.SchemaDataSourceService;
 import com.tle.freetext.ItemSyncer.ItemSyncFactory;
+import io.prometheus.client.Counter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -47,16 +52,34 @@ import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Indexes queued items in a pipeline of stages: items are prepared (loaded from the database) in
+ * batches, their text is extracted by a pool of {@link IndexerThread}s and the resulting documents
+ * are written to the indexes in batches by a pool of writer threads, as the {@code IndexWriter}
+ * supports concurrent writes. The number of extraction threads in use scales with the number of
+ * items waiting, up to the configured maximum, so a large reindex uses the whole pool while a few
+ * edited items don't compete with user requests.
+ */
 public class BackgroundIndexerImpl implements BackgroundIndexer {
-  private static final int BATCH_PREPARE = 10;
-
   protected static final int MAX_WAITING = 10000;
 
   private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundIndexerImpl.class);
 
-  private static final int MAXTHREADS = 4;
-  private static final int REAL_MAXTHREADS = MAXTHREADS * 2;
-  private static final int MAXBATCH = 50;
+  // Waiting items needed before another extraction thread is put to work
+  private static final int ITEMS_PER_THREAD = 2;
+
+  private static final Counter STAGE_ITEMS =
+      Counter.build()
+          .name("freetext_indexer_items")
+          .help("Items processed by each stage of the background indexer")
+          .labelNames("stage")
+          .register();
+  private static final Counter STAGE_SECONDS =
+      Counter.build()
+          .name("freetext_indexer_stage_seconds")
+          .help("Time spent in the batched stages of the background indexer")
+          .labelNames("stage")
+          .register();
 
   private static final long WAITTIME = TimeUnit.SECONDS.toMillis(2);
   private static final long CHECKTIME = TimeUnit.SECONDS.toMillis(15);
@@ -66,6 +89,13 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
   @Inject private ItemSyncFactory syncerFactory;
   @Inject private Provider<IndexerThread> indexerThreadProvider;
   @Inject private FreetextIndex freetextIndex;
+  @Inject private ExtractedTextCache extractedTextCache;
+
+  private int maxThreads;
+  private int maxBatch;
+  private int batchPrepare;
+  private ExecutorService writerExecutor;
+  private int writerThreads;
 
   private Object listLock = new Object();
   private Object threadingLock = new Object();
@@ -80,6 +110,10 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
   // Items finished indexing, but waiting to be added to lucene
   private LinkedList<IndexedItem> indexedList = new LinkedList<IndexedItem>(); // NOSONAR
 
+  // Items in a batch currently being written to the index. Guarded by listLock.
+  private final Set<FullIdKey> writingIds = new HashSet<FullIdKey>();
+  private int activeWriters;
+
   private final Stack<IndexerThread> freeThreads = new Stack<IndexerThread>();
   private final List<IndexerThread> inuseThreads = new LinkedList<IndexerThread>();
 
@@ -88,9 +122,14 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
 
   private int docsDone;
   private int docsDoneSinceLast;
+  private int docsPrepared;
+  private int docsPreparedSinceLast;
+  private int docsWritten;
+  private int docsWrittenSinceLast;
+  private long lastStatusUpdate;
   private int errors;
   private int deletions;
-  private boolean dead;
+  private volatile boolean dead;
   private volatile boolean wakeup;
 
   private final DataSourceHolder dataSource;
@@ -106,6 +145,17 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     dataSource = schemaService.getDataSourceForId(schemaId);
   }
 
+  @Inject
+  public void setConfiguration(FreetextIndexConfiguration config) {
+    maxThreads = Math.max(1, config.getIndexerThreads());
+    maxBatch = Math.max(1, config.getIndexBatchSize());
+    batchPrepare = Math.max(1, config.getPrepareBatchSize());
+    writerThreads = Math.max(1, config.getIndexWriterThreads());
+    writerExecutor =
+        Executors.newFixedThreadPool(
+            writerThreads, new NamedThreadFactory("BackgroundIndexerImpl.writer"));
+  }
+
   @Override
   public void run() {
     CurrentDataSource.set(dataSource);
@@ -147,6 +197,7 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     if (needsCheck) {
       nextCheck = now + CHECKTIME;
       statusUpdate(now);
+      lastStatusUpdate = now;
     }
     return wait;
   }
@@ -193,50 +244,66 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
 
   @SuppressWarnings("nls")
   private boolean checkBatchIndex(long now) {
-    List<IndexedItem> batch = null;
+    final List<IndexedItem> batch = new ArrayList<IndexedItem>();
     synchronized (listLock) {
-      if (indexedList.isEmpty()) {
+      // The writer pool is shut down under the same lock once killed, so batches are only handed
+      // to it while it still accepts them
+      if (dead || indexedList.isEmpty() || activeWriters >= writerThreads) {
         return true;
       }
       boolean overdue = now >= indexedList.element().getExpectedReturnTime();
-      if (indexedList.size() >= MAXBATCH || indexerThreads == 0 || overdue) {
-        int num = 0;
-        if (overdue) {
-          for (IndexedItem indItem : indexedList) {
-            if (now < indItem.getExpectedReturnTime()) {
-              break;
-            }
-            num++;
-          }
-        } else {
-          num = Math.min(MAXBATCH, indexedList.size());
-        }
+      if (indexedList.size() < maxBatch && indexerThreads != 0 && !overdue) {
+        return true;
+      }
 
-        List<IndexedItem> indexBatch = indexedList.subList(0, num);
-        for (IndexedItem item : indexBatch) {
+      // Items already being written by another batch are left for the next one, so that the
+      // deletion and addition of documents for the same item are never reordered.
+      Iterator<IndexedItem> iter = indexedList.iterator();
+      while (iter.hasNext() && batch.size() < maxBatch) {
+        IndexedItem item = iter.next();
+        if (overdue && now < item.getExpectedReturnTime()) {
+          break;
+        }
+        if (writingIds.add(item.getId())) {
           item.setOnIndexList(false);
+          batch.add(item);
+          iter.remove();
         }
-        batch = Lists.newArrayList(indexBatch);
-        indexBatch.clear();
-      } else {
+      }
+      if (batch.isEmpty()) {
         return true;
       }
+      activeWriters++;
+      writerExecutor.execute(() -> writeBatch(batch));
     }
+    return false;
+  }
 
+  @SuppressWarnings("nls")
+  private void writeBatch(List<IndexedItem> batch) {
+    long start = System.nanoTime();
     try {
       LOGGER.info("Indexing batch of " + batch.size() + " items");
       freetextIndex.indexBatch(batch);
     } catch (Exception e) {
       LOGGER.error("Serious Error indexing a batch", e);
-    }
-    synchronized (listLock) {
-      for (IndexedItem indexedItem : batch) {
-        if (indexedItem.isFinishedAllIndexing()) {
-          indexingMap.remove(indexedItem.getId());
+    } finally {
+      STAGE_SECONDS.labels("write").inc((System.nanoTime() - start) / 1e9);
+      STAGE_ITEMS.labels("write").inc(batch.size());
+      synchronized (listLock) {
+        for (IndexedItem indexedItem : batch) {
+          FullIdKey id = indexedItem.getId();
+          if (indexedItem.isFinishedAllIndexing()) {
+            indexingMap.remove(id, indexedItem);
+          }
+          indexedItem.setIndexed(true);
+          writingIds.remove(id);
         }
-        indexedItem.setIndexed(true);
+        docsWritten += batch.size();
+        activeWriters--;
+        listLock.notifyAll();
       }
-      return false;
+      wakeup();
     }
   }
 
@@ -245,12 +312,12 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     List<IndexedItem> batch = null;
     synchronized (listLock) {
       if (!waitingList.isEmpty()
-          && indexerThreads < REAL_MAXTHREADS
-          && (indexerThreads < MAXTHREADS
+          && indexerThreads < maxThreads * 2
+          && (indexerThreads < getTargetThreads(waitingList.size())
               || now >= waitingList.element().getExpectedReturnTime())) {
         item = waitingList.get(0);
         if (!item.isPrepared()) {
-          int batchSize = BATCH_PREPARE;
+          int batchSize = batchPrepare;
           if (waitingList.size() < batchSize) {
             batchSize = waitingList.size();
           }
@@ -290,19 +357,48 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     }
   }
 
+  /**
+   * The number of extraction threads to keep busy for the number of items waiting, which is
+   * normally at most the configured number of threads. Overdue items may use up to twice as many.
+   */
+  private int getTargetThreads(int waiting) {
+    return Math.min(maxThreads, Math.max(1, waiting / ITEMS_PER_THREAD));
+  }
+
   @SuppressWarnings("nls")
   private void populateItemBatch(List<IndexedItem> batch) {
+    long start = System.nanoTime();
+    int prepared = batch.size();
     try {
       freetextIndex.prepareItemsForIndexing(batch);
     } catch (Exception t) {
       LOGGER.error("Failed to prepare batch for indexing, trying 1", t);
+      prepared = 1;
       freetextIndex.prepareItemsForIndexing(batch.subList(0, 1));
+    } finally {
+      STAGE_SECONDS.labels("prepare").inc((System.nanoTime() - start) / 1e9);
+    }
+    STAGE_ITEMS.labels("prepare").inc(prepared);
+    synchronized (listLock) {
+      docsPrepared += prepared;
     }
   }
 
   @SuppressWarnings("nls")
   private void statusUpdate(long now) {
-    if (docsDoneSinceLast != docsDone || indexerThreads > 0) {
+    if (docsDoneSinceLast != docsDone
+        || docsWrittenSinceLast != docsWritten
+        || indexerThreads > 0) {
+      double seconds = Math.max(1, now - lastStatusUpdate) / 1000.0;
+      int prepared;
+      int written;
+      synchronized (listLock) {
+        prepared = docsPrepared - docsPreparedSinceLast;
+        written = docsWritten - docsWrittenSinceLast;
+        docsPreparedSinceLast = docsPrepared;
+        docsWrittenSinceLast = docsWritten;
+      }
+      int extracted = docsDone - docsDoneSinceLast;
       docsDoneSinceLast = docsDone;
       LOGGER.info(
           "Report: "
@@ -316,6 +412,19 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
               + " errors, "
               + deletions
               + " docs in Index but not in database");
+      LOGGER.info(
+          String.format(
+              "Throughput: %.1f prepared, %.1f extracted, %.1f written per second,"
+                  + " %d batches being written",
+              prepared / seconds, extracted / seconds, written / seconds, activeWriters));
+      if (extractedTextCache.isEnabled()) {
+        LOGGER.info(
+            "Extracted text cache: "
+                + extractedTextCache.getHitCount()
+                + " hits, "
+                + extractedTextCache.getMissCount()
+                + " misses overall");
+      }
       synchronized (threadingLock) {
         Iterator<IndexerThread> iter = inuseThreads.iterator();
         while (iter.hasNext()) {
@@ -394,6 +503,19 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     return (waitingList.size() + indexingMap.size() + size) < MAX_WAITING;
   }
 
+  @Override
+  public void addAllToQueueWhenRoom(Collection<IndexedItem> items) throws InterruptedException {
+    synchronized (listLock) {
+      // An empty queue always has room, however many items there are
+      while (!isRoomForItems(items.size()) && !(waitingList.isEmpty() && indexingMap.isEmpty())) {
+        // Woken when items leave the queue, but check again regardless in case they were removed
+        // without a notification
+        listLock.wait(WAITTIME);
+      }
+      addAllToQueue(items);
+    }
+  }
+
   /*
    * (non-Javadoc)
    * @see
@@ -491,6 +613,7 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
         indexingMap.remove(id);
       }
       errors++;
+      listLock.notifyAll();
     }
     wakeup();
   }
@@ -499,6 +622,7 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
     synchronized (threadingLock) {
       indexerThreads--;
       docsDone++;
+      STAGE_ITEMS.labels("extract").inc();
       LOGGER.debug("**inuse thread removed**"); // $NON-NLS-1$
       inuseThreads.remove(thread);
       freeThreads.push(thread);
@@ -519,9 +643,10 @@ public class BackgroundIndexerImpl implements BackgroundIndexer {
   public void kill() {
     LOGGER.debug("Kill");
 
-    synchronized (this) {
+    synchronized (listLock) {
       LOGGER.debug("dead=true");
       dead = true;
+      writerExecutor.shutdown();
     }
 
     for (IndexerThread t : freeThreads) {
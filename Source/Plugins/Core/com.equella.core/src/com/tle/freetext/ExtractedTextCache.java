@@ -0,0 +1,285 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.freetext;
+
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.tle.core.TextExtracterExtension;
+import com.tle.core.guice.Bind;
+import com.tle.core.services.ApplicationVersion;
+import io.prometheus.client.Counter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the text extracted from attachment files on local disk, keyed by the MD5 of the file and
+ * the extractor (and application version) which produced it. Reindexing an item whose files have
+ * not changed, such as after a metadata edit or a full reindex, can then skip the expensive
+ * extraction. The cache lives beside the freetext index and is capped to the configured size by
+ * deleting the least recently used entries.
+ */
+@SuppressWarnings("nls")
+@Bind
+@Singleton
+public class ExtractedTextCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExtractedTextCache.class);
+
+  private static final String CACHE_FOLDER = "extracted-text";
+  private static final String EXTENSION = ".txt.gz";
+  // Change when the content of the cached files changes, so old entries are no longer used
+  private static final int FORMAT_VERSION = 1;
+
+  private static final Counter HITS =
+      Counter.build()
+          .name("freetext_extracted_text_cache_hits")
+          .help("Attachment files whose extracted text was read from the cache")
+          .register();
+  private static final Counter MISSES =
+      Counter.build()
+          .name("freetext_extracted_text_cache_misses")
+          .help("Attachment files whose text was extracted because it was not cached")
+          .register();
+  private static final Counter EVICTIONS =
+      Counter.build()
+          .name("freetext_extracted_text_cache_evictions")
+          .help("Cached extracted text deleted to stay within the size limit")
+          .register();
+
+  @Inject
+  @Named("freetext.index.location")
+  private File indexLocation;
+
+  @Inject(optional = true)
+  @Named("textExtracter.cacheSize")
+  private int cacheSize = 1024;
+
+  // Entry file name to size in bytes, in least recently used order. Guarded by this.
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+  private long usedBytes;
+  private Path cacheFolder;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  public ExtractedTextCache() {
+    // Configured by injection
+  }
+
+  ExtractedTextCache(File indexLocation, int cacheSize) {
+    this.indexLocation = indexLocation;
+    this.cacheSize = cacheSize;
+  }
+
+  public boolean isEnabled() {
+    return cacheSize > 0;
+  }
+
+  /**
+   * Returns the text previously extracted from a file with the same checksum by the same extractor,
+   * or extracts it with the given loader and caches the result. Nothing is cached if the loader
+   * throws, as it does when the text could not be extracted in full.
+   *
+   * @param md5 The MD5 checksum of the file contents.
+   */
+  public String getText(String md5, TextExtracterExtension extractor, TextLoader loader)
+      throws Exception {
+    if (!isEnabled()) {
+      return loader.load();
+    }
+
+    final Path folder = getCacheFolder();
+    final String name = getEntryName(md5, extractor);
+    final Path file = folder.resolve(name.substring(0, 2)).resolve(name);
+    final String cached = read(name, file);
+    if (cached != null) {
+      hitCount.incrementAndGet();
+      HITS.inc();
+      return cached;
+    }
+
+    missCount.incrementAndGet();
+    MISSES.inc();
+    final String text = loader.load();
+    write(folder, name, file, text);
+    return text;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  private String getEntryName(String md5, TextExtracterExtension extractor) {
+    String key =
+        String.join(
+            "\0",
+            md5.toLowerCase(),
+            extractor.getClass().getName(),
+            ApplicationVersion.get().getFull(),
+            Integer.toString(FORMAT_VERSION));
+    return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString() + EXTENSION;
+  }
+
+  private String read(String name, Path file) {
+    synchronized (this) {
+      if (entries.get(name) == null) {
+        return null;
+      }
+    }
+
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+      String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      // Persist the recency of the entry, so it survives a restart
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return text;
+    } catch (NoSuchFileException e) {
+      // Evicted since we checked
+      remove(name);
+      return null;
+    } catch (IOException e) {
+      LOGGER.warn("Error reading cached text " + file + ", it will be extracted again", e);
+      remove(name);
+      return null;
+    }
+  }
+
+  private void write(Path folder, String name, Path file, String text) {
+    try {
+      Files.createDirectories(file.getParent());
+      Path temp = Files.createTempFile(folder, "text", ".tmp");
+      try {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+          out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      add(name, Files.size(file));
+    } catch (IOException e) {
+      LOGGER.warn("Error caching extracted text to " + file, e);
+    }
+  }
+
+  private void add(String name, long size) {
+    List<String> evicted = new ArrayList<>();
+    synchronized (this) {
+      Long previous = entries.put(name, size);
+      if (previous != null) {
+        usedBytes -= previous;
+      }
+      usedBytes += size;
+
+      long maxBytes = cacheSize * 1024L * 1024L;
+      Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+      while (usedBytes > maxBytes && iter.hasNext()) {
+        Map.Entry<String, Long> eldest = iter.next();
+        usedBytes -= eldest.getValue();
+        evicted.add(eldest.getKey());
+        iter.remove();
+      }
+    }
+
+    for (String evict : evicted) {
+      EVICTIONS.inc();
+      try {
+        Files.deleteIfExists(cacheFolder.resolve(evict.substring(0, 2)).resolve(evict));
+      } catch (IOException e) {
+        LOGGER.warn("Error deleting cached text " + evict, e);
+      }
+    }
+  }
+
+  private synchronized void remove(String name) {
+    Long size = entries.remove(name);
+    if (size != null) {
+      usedBytes -= size;
+    }
+  }
+
+  /**
+   * Finds the entries left by previous runs the first time the cache is used, oldest first so they
+   * are evicted in the same order as if the server had not been restarted.
+   */
+  private synchronized Path getCacheFolder() throws IOException {
+    if (cacheFolder == null) {
+      Path folder = new File(indexLocation, CACHE_FOLDER).toPath();
+      Files.createDirectories(folder);
+
+      List<Map.Entry<Path, BasicFileAttributes>> existing = new ArrayList<>();
+      try (Stream<Path> files = Files.walk(folder, 2)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+          if (!attrs.isRegularFile()) {
+            continue;
+          }
+          if (file.getFileName().toString().endsWith(EXTENSION)) {
+            existing.add(Map.entry(file, attrs));
+          } else {
+            // Left over from an interrupted write
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+      existing.sort(Comparator.comparing(e -> e.getValue().lastModifiedTime()));
+      for (Map.Entry<Path, BasicFileAttributes> entry : existing) {
+        entries.put(entry.getKey().getFileName().toString(), entry.getValue().size());
+        usedBytes += entry.getValue().size();
+      }
+      cacheFolder = folder;
+      LOGGER.info(
+          "Extracted text cache contains "
+              + entries.size()
+              + " entries using "
+              + usedBytes
+              + " bytes");
+    }
+    return cacheFolder;
+  }
+
+  @FunctionalInterface
+  public interface TextLoader {
+    String load() throws Exception;
+  }
+}
@@ -20,6 +20,7 @@ package com.tle.freetext;
 
 import com.google.common.collect.Multimap;
 import com.tle.common.Pair;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.Search;
 import com.tle.common.searching.SearchResults;
 import com.tle.common.settings.standard.SearchSettings;
@@ -61,10 +62,25 @@ public interface FreetextIndex {
   <T extends FreetextResult> SearchResults<T> search(
       Search searchReq, int start, int count, boolean searchAttachments);
 
+  /**
+   * @param cursor The cursor returned with the previous page, or null for the first page
+   * @param count The number of results per page
+   */
+  <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, String cursor, int count, boolean searchAttachments);
+
   LongSet searchBitSet(Search searchReq);
 
   int count(Search searchReq);
 
+  /**
+   * Counts several searches at once, searching each index only once however many of the searches
+   * are for it.
+   *
+   * @return The counts, in the order of the searches, or -1 for a null search.
+   */
+  int[] counts(List<? extends Search> searchReqs);
+
   /**
    * @return Collection of value/count pairs
    */
@@ -77,6 +93,10 @@ public interface FreetextIndex {
 
   int getSynchroniseMinutes();
 
+  int getSecurityFilterCacheSize();
+
+  FreetextIndexConfiguration getConfiguration();
+
   void prepareItemsForIndexing(Collection<IndexedItem> inditems);
 
   String suggestTerm(Search request, String prefix);
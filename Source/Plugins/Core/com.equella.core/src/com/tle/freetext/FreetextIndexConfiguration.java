@@ -30,4 +30,61 @@ public interface FreetextIndexConfiguration {
   File getStopWordsFile();
 
   String getAnalyzerLanguage();
+
+  /** The memory budget in megabytes of the per segment security filter cache of each index. */
+  int getSecurityFilterCacheSize();
+
+  /** The number of recent searches of each index whose top hits are kept for their later pages. */
+  int getSearchResultCacheSize();
+
+  /** The maximum number of threads extracting the text of items being indexed. */
+  int getIndexerThreads();
+
+  /** The maximum number of items written to the index in one batch. */
+  int getIndexBatchSize();
+
+  /** The number of items loaded from the database at once when preparing them for indexing. */
+  int getPrepareBatchSize();
+
+  /** The number of threads writing batches of items to the index concurrently. */
+  int getIndexWriterThreads();
+
+  /** The number of item ID ranges compared between the database and the index concurrently. */
+  int getSyncThreads();
+
+  /**
+   * The Lucene directory implementation used for the indexes: {@code fs} for the platform default,
+   * {@code mmap} or {@code nio}.
+   */
+  String getDirectoryType();
+
+  /**
+   * Comma separated extensions of index files loaded into memory when opened, if the directory is
+   * memory mapped. {@code *} preloads every file.
+   */
+  String getMmapPreload();
+
+  /**
+   * The memory in megabytes used to hold small newly flushed segments before they are written to
+   * disk, or zero to write them directly.
+   */
+  int getNrtCacheSize();
+
+  /** The RAM buffer of the index writers in megabytes. */
+  int getRamBufferSize();
+
+  /** The maximum time in milliseconds before changes are visible to searches. */
+  int getReopenMaxMillis();
+
+  /** The minimum time in milliseconds before changes a search is waiting on are visible. */
+  int getReopenMinMillis();
+
+  /** The interval in minutes between commits of the indexes to disk. */
+  int getCommitMinutes();
+
+  /** Comma separated fields whose sort values are loaded for new segments before they are used. */
+  String getWarmSortFields();
+
+  /** Comma separated queries run against new segments before they are used. */
+  String getWarmQueries();
 }
@@ -40,6 +40,70 @@ public class FreetextIndexConfigurationImpl implements FreetextIndexConfiguratio
   @Named("freetextIndex.synchroiseMinutes")
   private int synchroniseMinutes = 5;
 
+  @Inject(optional = true)
+  @Named("freetextIndex.securityFilterCacheSize")
+  private int securityFilterCacheSize = 64;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.searchResultCacheSize")
+  private int searchResultCacheSize = 200;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.indexerThreads")
+  private int indexerThreads = 4;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.indexBatchSize")
+  private int indexBatchSize = 50;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.prepareBatchSize")
+  private int prepareBatchSize = 10;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.indexWriterThreads")
+  private int indexWriterThreads = 2;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.syncThreads")
+  private int syncThreads = 4;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.directory")
+  private String directoryType = "fs";
+
+  @Inject(optional = true)
+  @Named("freetextIndex.mmapPreload")
+  private String mmapPreload = "";
+
+  @Inject(optional = true)
+  @Named("freetextIndex.nrtCacheSize")
+  private int nrtCacheSize = 0;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.ramBufferSize")
+  private int ramBufferSize = 16;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.reopenMaxMillis")
+  private int reopenMaxMillis = 5000;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.reopenMinMillis")
+  private int reopenMinMillis = 100;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.commitMinutes")
+  private int commitMinutes = 5;
+
+  @Inject(optional = true)
+  @Named("freetextIndex.warmSortFields")
+  private String warmSortFields = "lastmodified,created,name,rating";
+
+  @Inject(optional = true)
+  @Named("freetextIndex.warmQueries")
+  private String warmQueries = "";
+
   @Inject
   @Named("freetext.stopwords.file")
   private File stopWordsFile;
@@ -72,4 +136,84 @@ public class FreetextIndexConfigurationImpl implements FreetextIndexConfiguratio
   public String getAnalyzerLanguage() {
     return analyzerLanguage;
   }
+
+  @Override
+  public int getSecurityFilterCacheSize() {
+    return securityFilterCacheSize;
+  }
+
+  @Override
+  public int getSearchResultCacheSize() {
+    return searchResultCacheSize;
+  }
+
+  @Override
+  public int getIndexerThreads() {
+    return indexerThreads;
+  }
+
+  @Override
+  public int getIndexBatchSize() {
+    return indexBatchSize;
+  }
+
+  @Override
+  public int getPrepareBatchSize() {
+    return prepareBatchSize;
+  }
+
+  @Override
+  public int getIndexWriterThreads() {
+    return indexWriterThreads;
+  }
+
+  @Override
+  public int getSyncThreads() {
+    return syncThreads;
+  }
+
+  @Override
+  public String getDirectoryType() {
+    return directoryType;
+  }
+
+  @Override
+  public String getMmapPreload() {
+    return mmapPreload;
+  }
+
+  @Override
+  public int getNrtCacheSize() {
+    return nrtCacheSize;
+  }
+
+  @Override
+  public int getRamBufferSize() {
+    return ramBufferSize;
+  }
+
+  @Override
+  public int getReopenMaxMillis() {
+    return reopenMaxMillis;
+  }
+
+  @Override
+  public int getReopenMinMillis() {
+    return reopenMinMillis;
+  }
+
+  @Override
+  public int getCommitMinutes() {
+    return commitMinutes;
+  }
+
+  @Override
+  public String getWarmSortFields() {
+    return warmSortFields;
+  }
+
+  @Override
+  public String getWarmQueries() {
+    return warmQueries;
+  }
 }
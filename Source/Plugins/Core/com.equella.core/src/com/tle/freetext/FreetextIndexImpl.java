@@ -29,6 +29,7 @@ import com.tle.beans.item.ItemPack;
 import com.tle.beans.item.ItemSelect;
 import com.tle.common.Pair;
 import com.tle.common.i18n.CurrentLocale;
+import com.tle.common.searching.CursorSearchResults;
 import com.tle.common.searching.Search;
 import com.tle.common.searching.SearchResults;
 import com.tle.common.settings.standard.SearchSettings;
@@ -60,10 +61,13 @@ import com.tle.core.zookeeper.ZookeeperService;
 import it.uniroma3.mat.extendedset.wrappers.LongSet;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 import javax.inject.Singleton;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.BooleanQuery;
@@ -185,6 +189,22 @@ public class FreetextIndexImpl
     }
   }
 
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T extends FreetextResult> CursorSearchResults<T> searchAfter(
+      Search searchReq, String cursor, int count, boolean searchAttachments) {
+    try {
+      return (CursorSearchResults<T>)
+          getIndexer(searchReq.getSearchType())
+              .searchAfter(searchReq, cursor, count, searchAttachments);
+    } catch (SearchingException ex) {
+      if (!ex.isLogged()) {
+        LOGGER.error(ex.getMessage(), ex);
+      }
+      throw ex;
+    }
+  }
+
   @Override
   public LongSet searchBitSet(Search searchReq) {
     try {
@@ -216,6 +236,39 @@ public class FreetextIndexImpl
     }
   }
 
+  @Override
+  public int[] counts(List<? extends Search> searchReqs) {
+    int[] counts = new int[searchReqs.size()];
+    Arrays.fill(counts, -1);
+    // The searches of each index are counted together
+    Map<String, List<Integer>> byIndex = new LinkedHashMap<>();
+    for (int i = 0; i < counts.length; i++) {
+      Search searchReq = searchReqs.get(i);
+      if (searchReq != null) {
+        byIndex.computeIfAbsent(searchReq.getSearchType(), t -> new ArrayList<>()).add(i);
+      }
+    }
+
+    try {
+      boolean searchNotInAttachment = isSearchAttachment();
+      for (Map.Entry<String, List<Integer>> index : byIndex.entrySet()) {
+        List<Integer> positions = index.getValue();
+        List<Search> indexSearches =
+            positions.stream().map(searchReqs::get).collect(Collectors.toList());
+        int[] indexCounts = getIndexer(index.getKey()).counts(indexSearches, searchNotInAttachment);
+        for (int i = 0; i < indexCounts.length; i++) {
+          counts[positions.get(i)] = indexCounts[i];
+        }
+      }
+      return counts;
+    } catch (SearchingException ex) {
+      if (!ex.isLogged()) {
+        LOGGER.error(ex.getMessage(), ex);
+      }
+      throw ex;
+    }
+  }
+
   @Override
   public ItemIndex<? extends FreetextResult> getIndexer(String index) {
     return getIndexerMap().get(index);
@@ -366,6 +419,16 @@ public class FreetextIndexImpl
     return synchroniseMinutes;
   }
 
+  @Override
+  public int getSecurityFilterCacheSize() {
+    return config.getSecurityFilterCacheSize();
+  }
+
+  @Override
+  public FreetextIndexConfiguration getConfiguration() {
+    return config;
+  }
+
   @Override
   public void institutionEvent(InstitutionEvent event) {
     if (event.getEventType() == InstitutionEventType.DELETED) {
@@ -20,6 +20,7 @@ package com.tle.freetext;
 
 import com.dytech.edge.common.valuebean.ItemIndexDate;
 import com.dytech.edge.queries.FreeTextQuery;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
@@ -29,17 +30,25 @@ import com.tle.annotation.Nullable;
 import com.tle.beans.Institution;
 import com.tle.beans.item.ItemIdKey;
 import com.tle.common.Check;
+import com.tle.common.NamedThreadFactory;
 import com.tle.common.Pair;
 import com.tle.common.searching.Search;
 import com.tle.core.freetext.index.AbstractIndexEngine.Searcher;
 import com.tle.core.guice.BindFactory;
+import com.tle.core.hibernate.CurrentDataSource;
+import com.tle.core.hibernate.DataSourceHolder;
 import com.tle.core.item.dao.ItemDao;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
@@ -49,6 +58,13 @@ import org.apache.lucene.search.TermQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Compares the index times of items in the database with those in the index, queueing any items
+ * which are out of date or missing for indexing and removing documents of deleted items. The item
+ * ID range is split into slices which are compared concurrently, each walking its slice in batches.
+ * Changes are handed to the {@link BackgroundIndexer} as each batch is compared, blocking while its
+ * queue is full.
+ */
 public class ItemSyncer implements Callable<Void> {
   private static final int BATCH_INDEXSYNC = 1000;
   private static final Logger LOGGER = LoggerFactory.getLogger(ItemSyncer.class);
@@ -56,6 +72,7 @@ public class ItemSyncer implements Callable<Void> {
   @Inject private ItemDao itemDao;
   @Inject private FreetextIndex freetextIndex;
   @Inject private IndexedItemFactory indexedItemFactory;
+  @Inject private FreetextIndexConfiguration configuration;
 
   private final Collection<Institution> institutions;
   private final Date afterDate;
@@ -71,7 +88,8 @@ public class ItemSyncer implements Callable<Void> {
     this.institutions = institutions;
     this.backgroundIndexer = backgroundIndexer;
     if (afterDate == null) {
-      toDelete = Lists.newArrayList();
+      // Added to by each slice
+      toDelete = Collections.synchronizedList(Lists.newArrayList());
       afterDate = new Date(0L);
     }
     this.afterDate = afterDate;
@@ -97,29 +115,8 @@ public class ItemSyncer implements Callable<Void> {
       firstId = idRange.getFirst();
       lastId = idRange.getSecond();
     }
-    long rangeFirstId = firstId;
-    List<ItemIndexDate> indexedTimes;
-    do {
-      indexedTimes =
-          itemDao.getIndexTimesFromId(
-              institutions, afterDate, rangeFirstId, lastId, BATCH_INDEXSYNC);
-      long lastInRange;
-      if (indexedTimes.isEmpty()) {
-        lastInRange = lastId;
-      } else {
-        lastInRange = indexedTimes.get(indexedTimes.size() - 1).getKey().getKey();
-      }
-      final CompareDateCollector compareDates =
-          new CompareDateCollector(indexedTimes, indexedItemFactory, instMap, toDelete, startTime);
-      Collection<IndexedItem> changes =
-          freetextIndex
-              .getIndexer(Search.INDEX_ITEM)
-              .search(new CompareSearcher(institutions, compareDates, rangeFirstId, lastInRange));
-      if (!changes.isEmpty()) {
-        waitForRoom(changes);
-      }
-      rangeFirstId = lastInRange + 1;
-    } while (indexedTimes.size() == BATCH_INDEXSYNC);
+    syncSlices(startTime, firstId, lastId);
+
     if (toDelete != null) {
       DatesBeforeCollector datesBefore = new DatesBeforeCollector(instMap, toDelete, startTime);
       int beforeCount = toDelete.size();
@@ -154,20 +151,87 @@ public class ItemSyncer implements Callable<Void> {
                 deletedItem.getInstitution());
         deletedDocs.add(delete);
         if (deletedDocs.size() >= BATCH_INDEXSYNC) {
-          waitForRoom(deletedDocs);
+          backgroundIndexer.addAllToQueueWhenRoom(deletedDocs);
           deletedDocs.clear();
         }
       }
-      waitForRoom(deletedDocs);
+      backgroundIndexer.addAllToQueueWhenRoom(deletedDocs);
     }
     return null;
   }
 
-  private void waitForRoom(Collection<IndexedItem> changes) throws InterruptedException {
-    while (!backgroundIndexer.isRoomForItems(changes.size())) {
-      Thread.sleep(2000);
+  /**
+   * Splits the ID range into one slice per sync thread, unless it is too small to be worth it, and
+   * compares them concurrently.
+   */
+  private void syncSlices(Date startTime, long firstId, long lastId) throws Exception {
+    int threads = Math.max(1, configuration.getSyncThreads());
+    if (threads == 1 || lastId == Long.MAX_VALUE || lastId - firstId < threads * BATCH_INDEXSYNC) {
+      syncRange(startTime, firstId, lastId);
+      return;
     }
-    backgroundIndexer.addAllToQueue(changes);
+
+    final long sliceSize = (lastId - firstId) / threads + 1;
+    final DataSourceHolder dataSource = CurrentDataSource.get();
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threads, new NamedThreadFactory("ItemSyncer"));
+    try {
+      List<Future<Void>> slices = Lists.newArrayList();
+      for (long sliceFirst = firstId; sliceFirst <= lastId; sliceFirst += sliceSize) {
+        final long first = sliceFirst;
+        final long last = Math.min(lastId, sliceFirst + sliceSize - 1);
+        slices.add(
+            executor.submit(
+                () -> {
+                  CurrentDataSource.set(dataSource);
+                  try {
+                    syncRange(startTime, first, last);
+                  } finally {
+                    CurrentDataSource.remove();
+                  }
+                  return null;
+                }));
+      }
+      for (Future<Void> slice : slices) {
+        try {
+          slice.get();
+        } catch (ExecutionException e) {
+          Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+          Throwables.throwIfUnchecked(e.getCause());
+          throw e;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void syncRange(Date startTime, long firstId, long lastId) throws Exception {
+    long rangeFirstId = firstId;
+    List<ItemIndexDate> indexedTimes;
+    do {
+      indexedTimes =
+          itemDao.getIndexTimesFromId(
+              institutions, afterDate, rangeFirstId, lastId, BATCH_INDEXSYNC);
+      // The last batch must cover the rest of the range, so that documents for items which are
+      // no longer in the database are found
+      long lastInRange;
+      if (indexedTimes.size() < BATCH_INDEXSYNC) {
+        lastInRange = lastId;
+      } else {
+        lastInRange = indexedTimes.get(indexedTimes.size() - 1).getKey().getKey();
+      }
+      final CompareDateCollector compareDates =
+          new CompareDateCollector(indexedTimes, indexedItemFactory, instMap, toDelete, startTime);
+      Collection<IndexedItem> changes =
+          freetextIndex
+              .getIndexer(Search.INDEX_ITEM)
+              .search(new CompareSearcher(institutions, compareDates, rangeFirstId, lastInRange));
+      if (!changes.isEmpty()) {
+        backgroundIndexer.addAllToQueueWhenRoom(changes);
+      }
+      rangeFirstId = lastInRange + 1;
+    } while (indexedTimes.size() == BATCH_INDEXSYNC && rangeFirstId <= lastId);
   }
 
   private static class CompareSearcher implements Searcher<Collection<IndexedItem>> {
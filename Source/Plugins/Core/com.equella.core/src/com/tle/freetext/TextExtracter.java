@@ -23,11 +23,13 @@ import com.dytech.edge.queries.FreeTextQuery;
 import com.google.common.io.Closeables;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import com.tle.annotation.Nullable;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.attachments.Attachment;
 import com.tle.beans.item.attachments.CustomAttachment;
 import com.tle.beans.item.attachments.HtmlAttachment;
 import com.tle.beans.mime.MimeEntry;
+import com.tle.common.Check;
 import com.tle.common.URLUtils;
 import com.tle.common.settings.standard.SearchSettings;
 import com.tle.core.TextExtracterExtension;
@@ -78,6 +80,7 @@ public class TextExtracter {
   @Inject private ItemFileService itemFileService;
   @Inject private MimeTypeService mimeService;
   @Inject private IMSService imsService;
+  @Inject private ExtractedTextCache extractedTextCache;
 
   @Inject(optional = true)
   @Named("textExtracter.indexAttachments")
@@ -118,23 +121,15 @@ public class TextExtracter {
                   sbuf.append(filename);
                   sbuf.append(' ');
 
-                  indexSingleFile(item, sbuf, filename);
+                  indexSingleFile(item, sbuf, filename, attach.getMd5sum());
                 }
                 break;
               }
             case HTML:
               {
+                // Pages are edited in place, so the recorded checksum can't be trusted
                 final HtmlAttachment htmlAttach = (HtmlAttachment) attach;
-                final String filename = htmlAttach.getFilename();
-                final MimeEntry mimeEntry = mimeService.getEntryForFilename(filename);
-
-                final List<TextExtracterExtension> extractors = getExtractors(mimeEntry);
-                if (!extractors.isEmpty()) {
-                  try (InputStream input =
-                      fileSystemService.read(itemFileService.getItemFile(item), filename)) {
-                    extractTextFromStream(extractors, input, mimeEntry, sbuf);
-                  }
-                }
+                indexSingleFile(item, sbuf, htmlAttach.getFilename(), null);
                 break;
               }
 
@@ -216,7 +211,7 @@ public class TextExtracter {
               String type = customAttach.getType();
               if (type.equals(CloudProviderService.CloudAttachmentType())) {
                 for (String fname : CloudProviderService.filesToIndex(customAttach)) {
-                  indexSingleFile(item, sbuf, fname);
+                  indexSingleFile(item, sbuf, fname, null);
                 }
               } else if (type.equals("scorm") && indexImsPackages) {
                 indexIms(attach, sbuf, item);
@@ -290,15 +285,44 @@ public class TextExtracter {
     return fields;
   }
 
-  private void indexSingleFile(Item item, StringBuilder sbuf, String filename) throws Exception {
+  /**
+   * @param md5 The checksum recorded for the file, if known. It is calculated when the extracted
+   *     text cache is enabled and the checksum is not known.
+   */
+  private void indexSingleFile(Item item, StringBuilder sbuf, String filename, @Nullable String md5)
+      throws Exception {
     final MimeEntry mimeEntry = mimeService.getEntryForFilename(filename);
     final List<TextExtracterExtension> extractors = getExtractors(mimeEntry);
-    if (!extractors.isEmpty()) {
-      try (InputStream input =
-          fileSystemService.read(itemFileService.getItemFile(item), filename)) {
+    if (extractors.isEmpty()) {
+      return;
+    }
+
+    final ItemFile itemFile = itemFileService.getItemFile(item);
+    if (!extractedTextCache.isEnabled()) {
+      try (InputStream input = fileSystemService.read(itemFile, filename)) {
         extractTextFromStream(extractors, input, mimeEntry, sbuf);
       }
+      return;
     }
+
+    String checksum = md5;
+    if (Check.isEmpty(checksum)) {
+      if (!fileSystemService.fileExists(itemFile, filename)) {
+        throw new FileNotFoundException(filename);
+      }
+      checksum = fileSystemService.getMD5Checksum(itemFile, filename);
+    }
+    sbuf.append(
+        extractedTextCache.getText(
+            checksum,
+            extractors.get(0),
+            () -> {
+              final StringBuilder text = new StringBuilder();
+              try (InputStream input = fileSystemService.read(itemFile, filename)) {
+                extractTextFromStream(extractors, input, mimeEntry, text);
+              }
+              return text.toString();
+            }));
   }
 
   private void indexIms(Attachment imsAttach, StringBuilder sbuf, Item item) throws Exception {
@@ -309,7 +333,7 @@ public class TextExtracter {
       List<IMSResource> allResources = imsManifest.getAllResources();
       for (IMSResource res : allResources) {
         String fullHref = res.getFullHref();
-        indexSingleFile(item, sbuf, imsFolder + '/' + fullHref);
+        indexSingleFile(item, sbuf, imsFolder + '/' + fullHref, null);
       }
     }
   }
@@ -19,7 +19,6 @@
 package com.tle.freetext;
 
 import com.dytech.devlib.PropBagEx;
-import com.dytech.devlib.PropBagEx.PropBagIterator;
 import com.dytech.edge.queries.FreeTextQuery;
 import com.tle.beans.entity.Schema.SchemaNode;
 import com.tle.common.util.Dates;
@@ -35,8 +34,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 public class XmlSchemaIndexer {
   private static final String XPATH_EXT = "/$XPATH$"; // $NON-NLS-1$
@@ -62,6 +66,8 @@ public class XmlSchemaIndexer {
       pathsIndexed.add(fullPath);
       indexedFields.add(AbstractIndexingExtension.indexed(xpath + XPATH_EXT, value));
       indexedFields.add(AbstractIndexingExtension.indexed(fullPath, value));
+      indexedFields.add(
+          new SortedSetDocValuesField(FreeTextQuery.getFacetField(fullPath), new BytesRef(value)));
       StringBuilder builder = pathValuesMap.get(fullPath);
       if (builder == null) {
         builder = new StringBuilder(value);
@@ -99,40 +105,67 @@ public class XmlSchemaIndexer {
     }
   }
 
+  /**
+   * Indexes the values of the schema nodes under the element, in a single pass over its child
+   * elements.
+   */
   public void indexChildNodes(
-      SchemaNode parentNode, String itemNamePath, String fullPath, String xpath, PropBagEx xml) {
-    List<SchemaNode> childNodes = parentNode.getChildNodes();
-    for (SchemaNode schemaNode : childNodes) {
-      String thisFullPath = fullPath + '/' + schemaNode.getName();
-      String thisXPath = xpath + '/' + schemaNode.getName();
-      if (schemaNode.isAttribute()) {
-        indexOneValue(
-            schemaNode, itemNamePath, thisFullPath, thisXPath, xml.getNode(schemaNode.getName()));
-      } else {
-        PropBagIterator iter = xml.iterator(schemaNode.getName());
-        int index = 0;
-        while (iter.hasNext()) {
-          PropBagEx childXml = iter.next();
-          String indexedPath = thisXPath;
-
-          if (schemaNode.isXpathIndexed() && index > 0) {
-            indexedPath += "[" + index + "]"; // $NON-NLS-1$//$NON-NLS-2$
-          }
+      SchemaPaths paths, String itemNamePath, String fullPath, String xpath, Element element) {
+    for (SchemaPaths attribute : paths.attributes) {
+      Attr attr = element.getAttributeNode(attribute.name.substring(1));
+      indexOneValue(
+          attribute.node,
+          itemNamePath,
+          fullPath + '/' + attribute.name,
+          xpath + '/' + attribute.name,
+          attr != null ? attr.getValue() : "");
+    }
+    if (paths.elements.isEmpty()) {
+      return;
+    }
 
-          if (schemaNode.hasChildren()) {
-            indexChildNodes(schemaNode, itemNamePath, thisFullPath, indexedPath, childXml);
-          }
+    // The number of elements seen so far for each child schema node
+    int[] counts = new int[paths.elementCount];
+    for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      List<SchemaPaths> matches = paths.elements.get(stripNamespace(child.getNodeName()));
+      if (matches == null) {
+        continue;
+      }
 
-          // Even if the schemaNode has children, they may just be
-          // attributes, so we need to see if the node needs indexing.
-          indexOneValue(schemaNode, itemNamePath, thisFullPath, indexedPath, childXml.getNode());
+      for (SchemaPaths match : matches) {
+        int index = counts[match.position]++;
+        String thisFullPath = fullPath + '/' + match.name;
+        String indexedPath = xpath + '/' + match.name;
+        if (match.node.isXpathIndexed() && index > 0) {
+          indexedPath += "[" + index + "]"; // $NON-NLS-1$//$NON-NLS-2$
+        }
 
-          index++;
+        if (match.node.hasChildren()) {
+          indexChildNodes(match, itemNamePath, thisFullPath, indexedPath, (Element) child);
         }
+
+        // Even if the schemaNode has children, they may just be
+        // attributes, so we need to see if the node needs indexing.
+        indexOneValue(match.node, itemNamePath, thisFullPath, indexedPath, getValue(child));
       }
     }
   }
 
+  /** The text of the element, read the same way as {@link PropBagEx#getNode()}. */
+  private static String getValue(Node element) {
+    Node first = element.getFirstChild();
+    String value = first != null ? first.getNodeValue() : null;
+    return value != null ? value : ""; // $NON-NLS-1$
+  }
+
+  private static String stripNamespace(String name) {
+    int index = name.indexOf(':');
+    return index >= 0 ? name.substring(index + 1) : name;
+  }
+
   public Map<String, StringBuilder> getPathValuesMap() {
     return pathValuesMap;
   }
@@ -144,4 +177,42 @@ public class XmlSchemaIndexer {
   public List<Field> getIndexedFields() {
     return indexedFields;
   }
+
+  /**
+   * A schema node with its child nodes looked up by name, so that the item XML can be indexed in a
+   * single pass over its elements, rather than searching the children of each element once for
+   * every child schema node.
+   */
+  public static final class SchemaPaths {
+    private final SchemaNode node;
+    private final String name;
+    // Position among the element children of the parent
+    private final int position;
+    private final List<SchemaPaths> attributes = new ArrayList<>();
+    // By name without any namespace prefix, which is how elements are matched
+    private final Map<String, List<SchemaPaths>> elements = new HashMap<>();
+    private final int elementCount;
+
+    public SchemaPaths(SchemaNode root) {
+      this(root, -1);
+    }
+
+    private SchemaPaths(SchemaNode node, int position) {
+      this.node = node;
+      this.name = node.getName();
+      this.position = position;
+
+      int count = 0;
+      for (SchemaNode child : node.getChildNodes()) {
+        if (child.isAttribute()) {
+          attributes.add(new SchemaPaths(child, -1));
+        } else {
+          elements
+              .computeIfAbsent(stripNamespace(child.getName()), n -> new ArrayList<>())
+              .add(new SchemaPaths(child, count++));
+        }
+      }
+      elementCount = count;
+    }
+  }
 }
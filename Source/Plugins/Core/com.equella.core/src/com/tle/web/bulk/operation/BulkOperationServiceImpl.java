@@ -22,6 +22,7 @@ import com.google.common.base.Function;
 import com.google.common.collect.Iterators;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemId;
+import com.tle.beans.item.ItemIdKey;
 import com.tle.beans.item.ItemKey;
 import com.tle.beans.item.ItemPack;
 import com.tle.common.i18n.CurrentLocale;
@@ -42,6 +43,8 @@ import it.uniroma3.mat.extendedset.wrappers.LongSet;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -50,6 +53,9 @@ import javax.inject.Singleton;
 @Bind(BulkOperationService.class)
 @SuppressWarnings("nls")
 public class BulkOperationServiceImpl implements BulkOperationService {
+  // Number of item IDs looked up in each query
+  private static final int ID_BATCH_SIZE = 100;
+
   @Inject private ItemService itemService;
   @Inject private RunAsInstitution runAs;
 
@@ -178,17 +184,24 @@ public class BulkOperationServiceImpl implements BulkOperationService {
       } else {
         return new FilterResults(
             itemsBitSet.size(),
-            Iterators.transform(
-                itemsBitSet.iterator(),
-                new Function<Long, ItemKey>() {
-                  @Override
-                  public ItemKey apply(Long id) {
-                    return itemService.getItemIdKey(id);
-                  }
-                }));
+            Iterators.concat(
+                Iterators.transform(
+                    Iterators.partition(itemsBitSet.iterator(), ID_BATCH_SIZE),
+                    new Function<List<Long>, Iterator<ItemIdKey>>() {
+                      @Override
+                      public Iterator<ItemIdKey> apply(List<Long> ids) {
+                        return itemService.getItemIdKeys(ids).iterator();
+                      }
+                    })));
       }
     }
 
+    @Override
+    public boolean isParallel() {
+      // The executors create new operations every time they're asked
+      return true;
+    }
+
     @Override
     public WorkflowOperation[] getOperations() {
       return executor.getOperations();
@@ -79,8 +79,10 @@ import com.tle.web.selection.event.AttachmentSelectorEventListener;
 import com.tle.web.viewable.ViewableItem;
 import com.tle.web.viewitem.summary.attachment.service.ViewAttachmentWebService;
 import com.tle.web.viewitem.summary.attachment.service.ViewAttachmentWebService.AttachmentRowDisplay;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 @NonNullByDefault
 @SuppressWarnings("nls")
@@ -117,7 +119,11 @@ public abstract class AbstractItemlikeListAttachmentDisplaySection<
   private JSCallable selectCall;
   private JSCallable selectCallOne;
 
-  protected abstract boolean canSeeAttachments(I item);
+  /**
+   * Works out which of the items of a page the current user can see the attachments of, for all of
+   * them at once rather than one item at a time.
+   */
+  protected abstract Predicate<I> canSeeAttachments(List<I> items);
 
   @Nullable
   protected abstract SearchDetails getSearchDetails(I item);
@@ -132,60 +138,71 @@ public abstract class AbstractItemlikeListAttachmentDisplaySection<
   @Override
   public ProcessEntryCallback<I, LE> processEntries(
       final RenderContext context, List<LE> entries, ListSettings<LE> listSettings) {
+    final List<LE> attachmentEntries = new ArrayList<LE>();
+    final List<I> items = new ArrayList<I>();
     for (LE entry : entries) {
       if (!Check.isEmpty(entry.getAttachments().getList())
           && !entry.isFlagSet("com.tle.web.itemlist.standard.DontShowAttachments")) {
-        final I item = getItem(entry);
-        final String itemUuid = item.getUuid();
-        final int itemVersion = item.getVersion();
-        final String itemUuidAndVersion = itemUuid + itemVersion;
-
-        final SimpleElementId attId =
-            new SimpleElementId(ATTACHMENTS_ID_PREFIX + itemUuidAndVersion);
-        attId.registerUse();
-
-        if (canSeeAttachments(item)) {
-          boolean defaultOpen = false;
-          final AttachmentDisplayModel<I> model = getModel(context);
-
-          AttachmentDisplay attdisplay = null;
-          SearchDetails searchDetails = getSearchDetails(item);
-          if (searchDetails != null) {
-            defaultOpen =
-                selectionService.getCurrentSession(context) != null
-                    ? searchDetails.isIntegrationOpen()
-                    : searchDetails.isStandardOpen();
-
-            String attDisplay = searchDetails.getAttDisplay();
-            attdisplay =
-                (Strings.isNullOrEmpty(attDisplay)
-                    ? AttachmentDisplay.STRUCTURED
-                    : AttachmentDisplay.valueOf(attDisplay));
-          }
+        attachmentEntries.add(entry);
+        items.add(getItem(entry));
+      }
+    }
+    if (items.isEmpty()) {
+      return null;
+    }
 
-          boolean structured = true;
-          if (attdisplay == AttachmentDisplay.THUMBNAILS) {
-            structured = false;
-          }
+    final Predicate<I> canSeeAttachments = canSeeAttachments(items);
+    for (int i = 0; i < items.size(); i++) {
+      final LE entry = attachmentEntries.get(i);
+      final I item = items.get(i);
+      final String itemUuid = item.getUuid();
+      final int itemVersion = item.getVersion();
+      final String itemUuidAndVersion = itemUuid + itemVersion;
+
+      final SimpleElementId attId = new SimpleElementId(ATTACHMENTS_ID_PREFIX + itemUuidAndVersion);
+      attId.registerUse();
+
+      if (canSeeAttachments.test(item)) {
+        boolean defaultOpen = false;
+        final AttachmentDisplayModel<I> model = getModel(context);
+
+        AttachmentDisplay attdisplay = null;
+        SearchDetails searchDetails = getSearchDetails(item);
+        if (searchDetails != null) {
+          defaultOpen =
+              selectionService.getCurrentSession(context) != null
+                  ? searchDetails.isIntegrationOpen()
+                  : searchDetails.isStandardOpen();
+
+          String attDisplay = searchDetails.getAttDisplay();
+          attdisplay =
+              (Strings.isNullOrEmpty(attDisplay)
+                  ? AttachmentDisplay.STRUCTURED
+                  : AttachmentDisplay.valueOf(attDisplay));
+        }
+
+        boolean structured = true;
+        if (attdisplay == AttachmentDisplay.THUMBNAILS) {
+          structured = false;
+        }
 
-          if (defaultOpen) {
+        if (defaultOpen) {
+          entry.addExtras(
+              createAttachmentsList(
+                  context, item, structured, attId, itemUuid, itemVersion, defaultOpen));
+        } else {
+          if (model.getItemId() != null && model.getItemId().equals(item.getItemId())) {
             entry.addExtras(
                 createAttachmentsList(
-                    context, item, structured, attId, itemUuid, itemVersion, defaultOpen));
+                    context, item, structured, attId, itemUuid, itemVersion, true));
           } else {
-            if (model.getItemId() != null && model.getItemId().equals(item.getItemId())) {
-              entry.addExtras(
-                  createAttachmentsList(
-                      context, item, structured, attId, itemUuid, itemVersion, true));
-            } else {
-              TagState state = new TagState(attId);
-              state.setAccessibilityAttr(TagRenderer.ARIA_HIDDEN, String.valueOf(!model.show));
-              entry.addExtras(new DivRenderer(state));
-            }
+            TagState state = new TagState(attId);
+            state.setAccessibilityAttr(TagRenderer.ARIA_HIDDEN, String.valueOf(!model.show));
+            entry.addExtras(new DivRenderer(state));
           }
-
-          entry.setToggle(createToggler(context, itemUuid, itemVersion, attId, defaultOpen));
         }
+
+        entry.setToggle(createToggler(context, itemUuid, itemVersion, attId, defaultOpen));
       }
     }
     return null;
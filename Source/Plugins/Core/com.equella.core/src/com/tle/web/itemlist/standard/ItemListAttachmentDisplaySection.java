@@ -24,17 +24,22 @@ import com.tle.beans.entity.itemdef.AttachmentDisplay;
 import com.tle.beans.entity.itemdef.SearchDetails;
 import com.tle.beans.item.Item;
 import com.tle.beans.item.ItemId;
+import com.tle.beans.item.ItemIdKey;
 import com.tle.common.Check;
 import com.tle.common.security.SecurityConstants;
 import com.tle.core.guice.Bind;
 import com.tle.core.item.service.ItemService;
-import com.tle.core.security.TLEAclManager;
 import com.tle.web.itemlist.item.ItemListEntry;
 import com.tle.web.sections.SectionResult;
 import com.tle.web.sections.events.RenderEventContext;
 import com.tle.web.viewable.ViewableItem;
 import com.tle.web.viewable.impl.ViewableItemFactory;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 
 @NonNullByDefault
 @Bind
@@ -42,7 +47,6 @@ public class ItemListAttachmentDisplaySection
     extends AbstractItemlikeListAttachmentDisplaySection<Item, ItemListEntry> {
   @Inject private ViewableItemFactory viewItemFactory;
   @Inject private ItemService itemService;
-  @Inject private TLEAclManager aclManager;
 
   @Override
   public SectionResult renderHtml(RenderEventContext context) {
@@ -66,12 +70,18 @@ public class ItemListAttachmentDisplaySection
   }
 
   @Override
-  protected boolean canSeeAttachments(Item item) {
+  protected Predicate<Item> canSeeAttachments(List<Item> items) {
     // No VIEW_ITEM privilege, no view attachment toggle
-    return !aclManager
-        .filterNonGrantedObjects(
-            Collections.singleton(SecurityConstants.VIEW_ITEM), Collections.singleton(item))
-        .isEmpty();
+    final List<ItemIdKey> keys = new ArrayList<ItemIdKey>();
+    for (Item item : items) {
+      keys.add(new ItemIdKey(item));
+    }
+    final Map<ItemIdKey, Set<String>> privileges =
+        itemService.getItemPrivileges(keys, Collections.singleton(SecurityConstants.VIEW_ITEM));
+    return item ->
+        privileges
+            .getOrDefault(new ItemIdKey(item), Collections.<String>emptySet())
+            .contains(SecurityConstants.VIEW_ITEM);
   }
 
   @Override
@@ -48,7 +48,7 @@ public class FileContentStream extends AbstractContentStream {
   public String calculateETag() {
     if (etag == null) {
       try {
-        etag = FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+        etag = calculateDigest(file);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -56,6 +56,11 @@ public class FileContentStream extends AbstractContentStream {
     return etag;
   }
 
+  /** The digest used as the ETag, which reads the whole file unless overridden. */
+  protected String calculateDigest(File file) throws IOException {
+    return FileSystemHelper.md5recurse(file, new byte[Short.MAX_VALUE]);
+  }
+
   @Override
   public File getDirectFile() {
     return file;
@@ -0,0 +1,220 @@
+package com.tle.core.auditlog.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tle.beans.Institution;
+import com.tle.beans.audit.AuditLogEntry;
+import com.tle.core.auditlog.AuditLogDao;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.institution.RunAsInstitution;
+import com.tle.core.plugins.PluginAwareObjectInputStream;
+import com.tle.core.plugins.PluginAwareObjectOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@SuppressWarnings("nls")
+public class AuditLogWriterTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Mock private AuditLogDao dao;
+  @Mock private InstitutionService institutionService;
+  @Mock private RunAsInstitution runAs;
+
+  @InjectMocks private AuditLogWriter writer;
+  @InjectMocks private AuditLogWriter restarted;
+
+  private final Institution institution = new Institution();
+  private final List<List<AuditLogEntry>> batches =
+      Collections.synchronizedList(new ArrayList<List<AuditLogEntry>>());
+  private final AtomicBoolean failSaves = new AtomicBoolean();
+
+  @Before
+  public void setUp() throws Exception {
+    writer = new AuditLogWriter(folder.getRoot(), 3, (int) TimeUnit.MINUTES.toMillis(1));
+    restarted = new AuditLogWriter(folder.getRoot(), 1, (int) TimeUnit.MINUTES.toMillis(1));
+    MockitoAnnotations.openMocks(this);
+    writer.startup();
+
+    institution.setUniqueId(1);
+    when(institutionService.getInstitution(anyLong())).thenReturn(institution);
+    doAnswer(
+            invocation -> {
+              invocation.<Runnable>getArgument(1).run();
+              return null;
+            })
+        .when(runAs)
+        .executeAsSystem(any(Institution.class), any(Runnable.class));
+    doAnswer(
+            invocation -> {
+              if (failSaves.get()) {
+                throw new RuntimeException("Database is down");
+              }
+              batches.add(new ArrayList<>(invocation.<Collection<AuditLogEntry>>getArgument(0)));
+              return null;
+            })
+        .when(dao)
+        .saveAll(any(), anyInt());
+  }
+
+  @After
+  public void tearDown() {
+    writer.shutdown();
+    restarted.shutdown();
+  }
+
+  @Test
+  public void savesQueuedEntriesInBatches() {
+    for (int i = 0; i < 6; i++) {
+      writer.write(entry("entry" + i));
+    }
+
+    waitFor(() -> batches.size() == 2);
+    assertEquals(3, batches.get(0).size());
+    assertEquals(3, batches.get(1).size());
+    verify(dao, never()).save(any());
+  }
+
+  @Test
+  public void doesNotLoseQueuedEntriesWhenStopped() throws Exception {
+    writer.write(entry("one"));
+    writer.write(entry("two"));
+    writer.shutdown();
+
+    // Depending on whether the writer had taken them from the queue, they are saved or spilled
+    Set<String> found = new HashSet<>();
+    for (List<AuditLogEntry> batch : batches) {
+      for (AuditLogEntry entry : batch) {
+        found.add(entry.getData1());
+      }
+    }
+    for (AuditLogEntry entry : readSpilled()) {
+      found.add(entry.getData1());
+    }
+    assertEquals(Set.of("one", "two"), found);
+
+    // Saved straight away once stopped
+    writer.write(entry("three"));
+    verify(dao).save(any());
+  }
+
+  @Test
+  public void savesSpilledEntriesAfterARestart() throws Exception {
+    failSaves.set(true);
+    writer.write(entry("one"));
+    writer.write(entry("two"));
+    writer.write(entry("three"));
+    waitFor(() -> spillFiles().length == 1);
+    writer.shutdown();
+    assertEquals(3, readSpilled().size());
+
+    failSaves.set(false);
+    restarted.startup();
+    restarted.write(entry("four"));
+    waitFor(() -> batches.size() == 2);
+    Set<String> saved = new HashSet<>();
+    for (List<AuditLogEntry> batch : batches) {
+      for (AuditLogEntry entry : batch) {
+        saved.add(entry.getData1());
+      }
+    }
+    assertEquals(Set.of("one", "two", "three", "four"), saved);
+    waitFor(() -> spillFiles().length == 0);
+  }
+
+  @Test
+  public void savesEntriesStraightAwayUntilStarted() {
+    restarted.write(entry("one"));
+
+    verify(dao).save(any());
+    assertTrue(batches.isEmpty());
+  }
+
+  @Test
+  public void doesNotReadOtherClassesFromSpillFiles() throws Exception {
+    File spillFolder = new File(folder.getRoot(), "AuditLogSpill");
+    spillFolder.mkdirs();
+    try (ObjectOutputStream out =
+        new PluginAwareObjectOutputStream(
+            new FileOutputStream(new File(spillFolder, "other.entries")))) {
+      out.writeObject(new ArrayList<>(List.of(new HashMap<String, String>())));
+    }
+
+    restarted.startup();
+    waitFor(() -> new File(spillFolder, "other.entries.failed").exists());
+    assertTrue(batches.isEmpty());
+  }
+
+  private AuditLogEntry entry(String data) {
+    return new AuditLogEntry(
+        "user",
+        "session",
+        "SEARCH",
+        "QUERY",
+        new Date(),
+        data,
+        null,
+        null,
+        null,
+        institution,
+        null);
+  }
+
+  private File[] spillFiles() {
+    File[] files = new File(folder.getRoot(), "AuditLogSpill").listFiles();
+    return files != null ? files : new File[0];
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<AuditLogEntry> readSpilled() throws Exception {
+    List<AuditLogEntry> entries = new ArrayList<>();
+    for (File file : spillFiles()) {
+      assertTrue(file.getName().endsWith(".entries"));
+      try (ObjectInputStream in = new PluginAwareObjectInputStream(new FileInputStream(file))) {
+        entries.addAll((List<AuditLogEntry>) in.readObject());
+      }
+    }
+    return entries;
+  }
+
+  private static void waitFor(BooleanSupplier condition) {
+    long giveUpAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting", System.currentTimeMillis() < giveUpAt);
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.tle.core.freetext.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class SecurityFilterCacheTest {
+  private IndexWriter writer;
+  private DirectoryReader reader;
+
+  @Before
+  public void setUp() throws IOException {
+    writer =
+        new IndexWriter(new ByteBuffersDirectory(), new IndexWriterConfig(new StandardAnalyzer()));
+    Document doc = new Document();
+    doc.add(new StringField("id", "1", Field.Store.NO));
+    writer.addDocument(doc);
+    writer.commit();
+    reader = DirectoryReader.open(writer);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    writer.close();
+  }
+
+  @Test
+  public void countsHitsAndMissesForEachCache() throws IOException {
+    LeafReader segment = reader.leaves().get(0).reader();
+    SecurityFilterCache first = new SecurityFilterCache(1024 * 1024);
+    SecurityFilterCache second = new SecurityFilterCache(1024 * 1024);
+
+    FixedBitSet bits = first.get(segment, "sig", r -> new FixedBitSet(r.maxDoc()));
+    assertSame(bits, first.get(segment, "sig", r -> new FixedBitSet(r.maxDoc())));
+    second.get(segment, "sig", r -> new FixedBitSet(r.maxDoc()));
+
+    assertEquals(1, first.getHitCount());
+    assertEquals(1, first.getMissCount());
+    assertEquals(0, second.getHitCount());
+    assertEquals(1, second.getMissCount());
+  }
+
+  @Test
+  public void countsEvictionsForEachCache() throws IOException {
+    LeafReader segment = reader.leaves().get(0).reader();
+    long oneBitSet = new FixedBitSet(segment.maxDoc()).ramBytesUsed();
+    SecurityFilterCache small = new SecurityFilterCache(oneBitSet);
+    SecurityFilterCache large = new SecurityFilterCache(oneBitSet * 4);
+
+    for (SecurityFilterCache cache : new SecurityFilterCache[] {small, large}) {
+      cache.get(segment, "a", r -> new FixedBitSet(r.maxDoc()));
+      cache.get(segment, "b", r -> new FixedBitSet(r.maxDoc()));
+    }
+
+    assertEquals(1, small.getEvictionCount());
+    assertEquals(1, small.getEntryCount());
+    assertEquals(0, large.getEvictionCount());
+    assertEquals(2, large.getEntryCount());
+  }
+}
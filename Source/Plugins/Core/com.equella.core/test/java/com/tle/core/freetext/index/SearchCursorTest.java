@@ -0,0 +1,55 @@
+package com.tle.core.freetext.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.dytech.edge.exceptions.InvalidSearchQueryException;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+public class SearchCursorTest {
+  @Test
+  public void testSortValuesRoundTrip() {
+    Object[] values = {new BytesRef("name"), null, 42L, 7, 1.5f, 2.5d};
+    FieldDoc last = new FieldDoc(3, 0.5f, values);
+
+    SearchCursor cursor = SearchCursor.decode(SearchCursor.encode(last), values.length);
+
+    FieldDoc after = cursor.getAfter();
+    assertArrayEquals(values, after.fields);
+    // The document number of a search after a cursor must skip everything tied with it
+    assertEquals(Integer.MAX_VALUE, after.doc);
+  }
+
+  @Test
+  public void testOffsetRoundTrip() {
+    SearchCursor cursor = SearchCursor.decode(SearchCursor.encodeOffset(200), 3);
+
+    assertNull(cursor.getAfter());
+    assertEquals(200, cursor.getOffset());
+  }
+
+  @Test(expected = InvalidSearchQueryException.class)
+  public void testDifferentSortOrder() {
+    FieldDoc last = new FieldDoc(3, 0.5f, new Object[] {42L});
+    SearchCursor.decode(SearchCursor.encode(last), 2);
+  }
+
+  @Test(expected = InvalidSearchQueryException.class)
+  public void testNegativeOffset() {
+    SearchCursor.decode(SearchCursor.encodeOffset(-1), 1);
+  }
+
+  @Test(expected = InvalidSearchQueryException.class)
+  public void testMalformedToken() {
+    SearchCursor.decode("not a cursor!", 1);
+  }
+
+  @Test(expected = InvalidSearchQueryException.class)
+  public void testTruncatedToken() {
+    String token = SearchCursor.encode(new FieldDoc(3, 0.5f, new Object[] {new BytesRef("abc")}));
+    SearchCursor.decode(token.substring(0, token.length() - 2), 1);
+  }
+}
@@ -0,0 +1,74 @@
+package com.tle.core.freetext.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class SearchResultCacheTest {
+  private IndexWriter writer;
+  private DirectoryReader reader;
+
+  @Before
+  public void setUp() throws IOException {
+    writer =
+        new IndexWriter(new ByteBuffersDirectory(), new IndexWriterConfig(new StandardAnalyzer()));
+    Document doc = new Document();
+    doc.add(new StringField("id", "1", Field.Store.NO));
+    writer.addDocument(doc);
+    writer.commit();
+    reader = DirectoryReader.open(writer);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    writer.close();
+  }
+
+  @Test
+  public void countsHitsAndMissesForEachCache() throws IOException {
+    Query query = new TermQuery(new Term("id", "1"));
+    SearchResultCache first = new SearchResultCache(10);
+    SearchResultCache second = new SearchResultCache(10);
+
+    assertEquals(1, first.count(reader, query, () -> 1));
+    assertEquals(1, first.count(reader, query, () -> 2));
+    second.count(reader, query, () -> 1);
+
+    assertEquals(1, first.getHitCount());
+    assertEquals(1, first.getMissCount());
+    assertEquals(0, second.getHitCount());
+    assertEquals(1, second.getMissCount());
+  }
+
+  @Test
+  public void countsEvictionsForEachCache() throws IOException {
+    SearchResultCache small = new SearchResultCache(1);
+    SearchResultCache large = new SearchResultCache(4);
+
+    for (SearchResultCache cache : new SearchResultCache[] {small, large}) {
+      cache.count(reader, new TermQuery(new Term("id", "a")), () -> 0);
+      cache.count(reader, new TermQuery(new Term("id", "b")), () -> 0);
+    }
+
+    assertEquals(1, small.getEvictionCount());
+    assertEquals(1, small.getEntryCount());
+    assertEquals(0, large.getEvictionCount());
+    assertEquals(2, large.getEntryCount());
+  }
+}
@@ -0,0 +1,163 @@
+package com.tle.core.freetext.index;
+
+import static org.junit.Assert.assertEquals;
+
+import com.dytech.edge.queries.FreeTextQuery;
+import io.prometheus.client.CollectorRegistry;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class WarmingSearcherFactoryTest {
+  private final AtomicInteger warmingSearches = new AtomicInteger();
+  private IndexWriter writer;
+  private SearcherManager searcherManager;
+
+  @Before
+  public void setUp() throws IOException {
+    // Segments are never merged, so each refresh adds exactly one segment
+    writer =
+        new IndexWriter(
+            new ByteBuffersDirectory(),
+            new IndexWriterConfig(new StandardAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (searcherManager != null) {
+      searcherManager.close();
+    }
+    writer.close();
+  }
+
+  @Test
+  public void warmsTheNewSegmentsOfAReopenedSearcher() throws IOException {
+    addDocument("a");
+    openSearcherManager("name");
+    double warmed = getWarmedSegments();
+
+    addDocument("b");
+    searcherManager.maybeRefreshBlocking();
+    assertEquals(1, warmingSearches.get());
+    assertEquals(warmed + 1, getWarmedSegments(), 0);
+
+    addDocument("c");
+    addDocument("d");
+    searcherManager.maybeRefreshBlocking();
+    assertEquals(2, warmingSearches.get());
+    assertEquals(warmed + 2, getWarmedSegments(), 0);
+    assertEquals(4, countDocuments());
+  }
+
+  @Test
+  public void doesNotWarmTheFirstSearcherOrSegmentsWithOnlyNewDeletions() throws IOException {
+    addDocument("a");
+    addDocument("b");
+    openSearcherManager("name");
+    assertEquals(0, warmingSearches.get());
+
+    writer.deleteDocuments(new Term("name", "a"));
+    searcherManager.maybeRefreshBlocking();
+    assertEquals(0, warmingSearches.get());
+    assertEquals(1, countDocuments());
+  }
+
+  @Test
+  public void reopensTheSearcherWhenWarmingFails() throws IOException {
+    addDocument("a");
+    // Rating only has numeric doc values, so it can't be sorted as a string
+    openSearcherManager("rating");
+
+    addDocument("b");
+    searcherManager.maybeRefreshBlocking();
+    assertEquals(1, warmingSearches.get());
+    assertEquals(2, countDocuments());
+  }
+
+  private void openSearcherManager(String sortField) throws IOException {
+    searcherManager =
+        new SearcherManager(
+            writer,
+            new WarmingSearcherFactory(
+                "test", Collections.singletonList(sortField), Arrays.asList(new CountingQuery())));
+  }
+
+  private void addDocument(String name) throws IOException {
+    Document doc = new Document();
+    doc.add(new StringField(FreeTextQuery.FIELD_ALL, "1", Field.Store.NO));
+    doc.add(new StringField("name", name, Field.Store.NO));
+    doc.add(new SortedDocValuesField("name", new BytesRef(name)));
+    doc.add(new NumericDocValuesField("rating", 3));
+    doc.add(new TextField(FreeTextQuery.FIELD_BODY, "test " + name, Field.Store.NO));
+    writer.addDocument(doc);
+  }
+
+  private int countDocuments() throws IOException {
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      return searcher.count(new TermQuery(new Term(FreeTextQuery.FIELD_ALL, "1")));
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  private static double getWarmedSegments() {
+    Double warmed =
+        CollectorRegistry.defaultRegistry.getSampleValue("freetext_searcher_warmed_segments_total");
+    return warmed != null ? warmed : 0;
+  }
+
+  /** Counts the searches of the body query it stands for. */
+  private final class CountingQuery extends Query {
+    private final Query query = new TermQuery(new Term(FreeTextQuery.FIELD_BODY, "test"));
+
+    @Override
+    public Query rewrite(IndexSearcher searcher) {
+      warmingSearches.incrementAndGet();
+      return query;
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+      query.visit(visitor);
+    }
+
+    @Override
+    public String toString(String field) {
+      return "counting " + query.toString(field);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj == this;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.tle.core.freetext.indexer;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.dytech.devlib.PropBagEx;
+import com.tle.beans.entity.Schema;
+import com.tle.freetext.XmlSchemaIndexer.SchemaPaths;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class StandardIndexerTest {
+  private final StandardIndexer indexer = new StandardIndexer();
+
+  @Test
+  public void reusesThePathsOfASchemaLoadedAgain() {
+    SchemaPaths paths = indexer.getSchemaPaths(schema(1L, "name"));
+
+    assertSame(paths, indexer.getSchemaPaths(schema(1L, "name")));
+  }
+
+  @Test
+  public void rebuildsThePathsWhenTheDefinitionChanges() {
+    SchemaPaths paths = indexer.getSchemaPaths(schema(1L, "name"));
+    SchemaPaths changed = indexer.getSchemaPaths(schema(1L, "title"));
+
+    assertNotSame(paths, changed);
+    assertSame(changed, indexer.getSchemaPaths(schema(1L, "title")));
+  }
+
+  @Test
+  public void keepsABoundedNumberOfSchemas() {
+    int schemas = StandardIndexer.SCHEMA_PATHS_CACHE_SIZE * 2;
+    List<SchemaPaths> paths = new ArrayList<>();
+    for (long id = 0; id < schemas; id++) {
+      paths.add(indexer.getSchemaPaths(schema(id, "name")));
+    }
+
+    int reused = 0;
+    for (long id = schemas - 1; id >= 0; id--) {
+      if (indexer.getSchemaPaths(schema(id, "name")) == paths.get((int) id)) {
+        reused++;
+      }
+    }
+    assertTrue("Some schemas are still cached", reused > 0);
+    assertTrue(
+        "No more than " + StandardIndexer.SCHEMA_PATHS_CACHE_SIZE + " schemas are cached",
+        reused <= StandardIndexer.SCHEMA_PATHS_CACHE_SIZE);
+  }
+
+  private static Schema schema(long id, String fieldNode) {
+    Schema schema = new Schema(id);
+    schema.setDefinition(
+        new PropBagEx("<xml><item><" + fieldNode + " field='true'/></item></xml>"));
+    return schema;
+  }
+}
@@ -0,0 +1,78 @@
+package com.tle.core.institution.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class TransactionThreadPoolTest {
+  private final Converter converter = mock(Converter.class);
+
+  public TransactionThreadPoolTest() {
+    doAnswer(
+            invocation -> {
+              invocation.<Runnable>getArgument(0).run();
+              return null;
+            })
+        .when(converter)
+        .doInTransaction(any(Runnable.class));
+  }
+
+  @Test
+  public void runsAsManyTransactionsAtOnceAsItHasThreads() {
+    final int threads = 4;
+    // Only trips if every worker is running at the same time
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+    final DefaultMessageCallback message = new DefaultMessageCallback("key");
+
+    TransactionThreadPool pool = new TransactionThreadPool(converter, threads);
+    for (int i = 0; i < threads; i++) {
+      pool.doInTransaction(
+          () -> {
+            try {
+              barrier.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+            message.incrementCurrent();
+          });
+    }
+    pool.close();
+
+    assertEquals(threads, message.getCurrent());
+  }
+
+  @Test
+  public void countsProgressFromConcurrentWorkers() {
+    final DefaultMessageCallback message = new DefaultMessageCallback("key");
+
+    TransactionThreadPool pool = new TransactionThreadPool(converter, 4);
+    for (int i = 0; i < 100; i++) {
+      pool.doInTransaction(
+          () -> {
+            for (int j = 0; j < 100; j++) {
+              message.incrementCurrent();
+            }
+          });
+    }
+    pool.close();
+
+    assertEquals(10000, message.getCurrent());
+    assertEquals(10000, message.getValues()[0]);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void rethrowsTheErrorOfAWorkerWhenClosed() {
+    TransactionThreadPool pool = new TransactionThreadPool(converter, 2);
+    pool.doInTransaction(
+        () -> {
+          throw new IllegalStateException("broken item");
+        });
+    pool.close();
+  }
+}
@@ -0,0 +1,292 @@
+package com.tle.core.item.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.dytech.edge.exceptions.WorkflowException;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.tle.beans.item.Item;
+import com.tle.beans.item.ItemIdKey;
+import com.tle.beans.item.ItemKey;
+import com.tle.beans.item.ItemPack;
+import com.tle.common.security.SecurityConstants;
+import com.tle.common.util.Logger;
+import com.tle.core.institution.RunAsInstitution;
+import com.tle.core.item.dao.ItemDao;
+import com.tle.core.item.operations.FilterResultListener;
+import com.tle.core.item.operations.ItemOperationFilter;
+import com.tle.core.item.operations.ItemOperationParams;
+import com.tle.core.item.operations.WorkflowOperation;
+import com.tle.core.item.serializer.ItemSerializerItemBean;
+import com.tle.core.item.serializer.ItemSerializerService;
+import com.tle.core.item.service.ItemService;
+import com.tle.core.services.LoggingService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@SuppressWarnings("nls")
+@RunWith(MockitoJUnitRunner.class)
+public class ItemServiceImplTest {
+  @Mock private ItemSerializerService itemSerializerService;
+  @Mock private ItemSerializerItemBean serializer;
+  @Mock private ItemDao dao;
+  @Mock private RunAsInstitution runAs;
+  @Mock private LoggingService loggingService;
+
+  // Items are operated on by the test rather than by workflow operations
+  @InjectMocks
+  private ItemServiceImpl itemService =
+      new ItemServiceImpl() {
+        @Override
+        protected ItemPack<Item> runOperation(
+            ItemKey key, ItemOperationParams params, WorkflowOperation... operations) {
+          return operate(key);
+        }
+
+        @Override
+        protected Item reloadItem(ItemKey id) {
+          return null;
+        }
+      };
+
+  private final Map<ItemKey, String> operatedBy = new ConcurrentHashMap<ItemKey, String>();
+  private final CountDownLatch started = new CountDownLatch(4);
+  private CountDownLatch gate = new CountDownLatch(0);
+
+  @After
+  public void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    TransactionSynchronizationManager.setActualTransactionActive(false);
+  }
+
+  @Test
+  public void checksAPageOfItemsWithOneSerializer() {
+    when(itemSerializerService.createItemBeanSerializer(
+            anyCollection(), anyCollection(), anyBoolean(), any(String[].class)))
+        .thenReturn(serializer);
+    when(serializer.hasPrivilege(anyLong(), anyString())).thenReturn(false);
+    when(serializer.hasPrivilege(1L, SecurityConstants.VIEW_ITEM)).thenReturn(true);
+    when(serializer.hasPrivilege(3L, SecurityConstants.VIEW_ITEM)).thenReturn(true);
+    when(serializer.hasPrivilege(3L, SecurityConstants.EDIT_ITEM)).thenReturn(true);
+
+    final List<ItemIdKey> page = new ArrayList<ItemIdKey>();
+    for (int i = 1; i <= 50; i++) {
+      page.add(new ItemIdKey(i, "uuid" + i, 1));
+    }
+    final Map<ItemIdKey, Set<String>> privileges =
+        itemService.getItemPrivileges(
+            page, Arrays.asList(SecurityConstants.VIEW_ITEM, SecurityConstants.EDIT_ITEM));
+
+    // The number of lookups doesn't grow with the size of the page
+    verify(itemSerializerService, times(1))
+        .createItemBeanSerializer(
+            anyCollection(), anyCollection(), anyBoolean(), any(String[].class));
+    assertEquals(page, new ArrayList<ItemIdKey>(privileges.keySet()));
+    assertEquals(ImmutableSet.of(SecurityConstants.VIEW_ITEM), privileges.get(page.get(0)));
+    assertEquals(Collections.emptySet(), privileges.get(page.get(1)));
+    assertEquals(
+        ImmutableSet.of(SecurityConstants.VIEW_ITEM, SecurityConstants.EDIT_ITEM),
+        privileges.get(page.get(2)));
+  }
+
+  @Test
+  public void doesNotLookUpAnEmptyPage() {
+    final Map<ItemIdKey, Set<String>> privileges =
+        itemService.getItemPrivileges(
+            Collections.<ItemIdKey>emptyList(), Collections.singleton(SecurityConstants.VIEW_ITEM));
+
+    verify(itemSerializerService, never())
+        .createItemBeanSerializer(
+            anyCollection(), anyCollection(), anyBoolean(), any(String[].class));
+    assertEquals(Collections.emptyMap(), privileges);
+  }
+
+  @Test
+  public void sharesTheItemsOfAParallelFilterBetweenThreads() {
+    prepareOperations();
+    when(runAs.execute(any(), any()))
+        .thenAnswer(invocation -> invocation.<Callable<?>>getArgument(1).call());
+    TransactionSynchronizationManager.initSynchronization();
+    final RecordingListener listener = new RecordingListener();
+
+    itemService.operateAll(filter(250, true), listener);
+
+    // Three batches of 100, each run as the current user on a thread of its own
+    verify(runAs, times(3)).execute(any(), any());
+    assertEquals(250, operatedBy.size());
+    for (String thread : operatedBy.values()) {
+      assertTrue(thread, thread.startsWith("ItemService.operateAll-"));
+    }
+    assertResults(listener, 250);
+    // The parameters of each thread and of the whole operation are processed after commit
+    assertEquals(4, TransactionSynchronizationManager.getSynchronizations().size());
+  }
+
+  @Test
+  public void operatesOnItemsOneByOneWithinATransaction() {
+    prepareOperations();
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    final RecordingListener listener = new RecordingListener();
+
+    itemService.operateAll(filter(250, true), listener);
+
+    verify(runAs, never()).execute(any(), any());
+    assertEquals(
+        Collections.singleton(Thread.currentThread().getName()),
+        new HashSet<String>(operatedBy.values()));
+    assertResults(listener, 250);
+    assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+  }
+
+  @Test
+  public void waitsForTheItemsBeingOperatedOnWhenInterrupted() throws Exception {
+    prepareOperations();
+    when(runAs.execute(any(), any()))
+        .thenAnswer(invocation -> invocation.<Callable<?>>getArgument(1).call());
+    gate = new CountDownLatch(1);
+    final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+    final AtomicBoolean interrupted = new AtomicBoolean();
+    final Thread caller =
+        new Thread(
+            () -> {
+              TransactionSynchronizationManager.initSynchronization();
+              try {
+                itemService.operateAll(filter(500, true), new RecordingListener());
+              } catch (Throwable t) {
+                thrown.set(t);
+              } finally {
+                interrupted.set(Thread.currentThread().isInterrupted());
+                TransactionSynchronizationManager.clearSynchronization();
+              }
+            });
+    caller.start();
+
+    // Four threads have each taken a batch of 100, leaving one batch
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    caller.interrupt();
+    caller.join(200);
+    assertTrue("Waits for the batches already taken", caller.isAlive());
+
+    gate.countDown();
+    caller.join(10000);
+    assertFalse(caller.isAlive());
+    assertTrue(thrown.get() instanceof WorkflowException);
+    assertTrue(interrupted.get());
+    assertEquals(400, operatedBy.size());
+  }
+
+  private void prepareOperations() {
+    when(loggingService.getLogger(ItemService.class)).thenReturn(mock(Logger.class));
+    itemService.setLoggingService(loggingService);
+  }
+
+  private ItemPack<Item> operate(ItemKey key) {
+    operatedBy.put(key, Thread.currentThread().getName());
+    started.countDown();
+    Uninterruptibles.awaitUninterruptibly(gate);
+    if (((ItemIdKey) key).getKey() % 10 == 0) {
+      throw new WorkflowException("Failed " + key);
+    }
+    return new ItemPack<Item>();
+  }
+
+  private static void assertResults(RecordingListener listener, int total) {
+    assertEquals(total, listener.total);
+    assertEquals(total - total / 10, listener.succeeded.size());
+    assertEquals(total / 10, listener.failed.size());
+    for (Map.Entry<ItemKey, Throwable> failure : listener.failed.entrySet()) {
+      assertEquals(0, ((ItemIdKey) failure.getKey()).getKey() % 10);
+      assertEquals("Failed " + failure.getKey(), failure.getValue().getMessage());
+    }
+  }
+
+  private static ItemOperationFilter filter(int items, final boolean parallel) {
+    final List<ItemKey> keys = new ArrayList<ItemKey>();
+    for (int i = 1; i <= items; i++) {
+      keys.add(new ItemIdKey(i, "uuid" + i, 1));
+    }
+    return new ItemOperationFilter() {
+      @Override
+      public WorkflowOperation[] getOperations() {
+        return new WorkflowOperation[0];
+      }
+
+      @Override
+      public void setDateNow(Date now) {
+        // Nothing to filter by date
+      }
+
+      @Override
+      public boolean isReadOnly() {
+        return false;
+      }
+
+      @Override
+      public FilterResults getItemIds() {
+        return new FilterResults(keys);
+      }
+
+      @Override
+      public boolean isParallel() {
+        return parallel;
+      }
+    };
+  }
+
+  /** Records results without synchronising, as results are passed on one at a time. */
+  private static final class RecordingListener implements FilterResultListener {
+    private final List<ItemKey> succeeded = new ArrayList<ItemKey>();
+    private final Map<ItemKey, Throwable> failed = new HashMap<ItemKey, Throwable>();
+    private int total = -1;
+
+    @Override
+    public void succeeded(ItemKey itemId, ItemPack<Item> pack) {
+      succeeded.add(itemId);
+    }
+
+    @Override
+    public void failed(ItemKey itemId, Item item, ItemPack<Item> pack, Throwable e) {
+      failed.put(itemId, e);
+    }
+
+    @Override
+    public void total(int total) {
+      this.total = total;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.tle.core.item.standard.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.tle.beans.item.Item;
+import com.tle.core.item.dao.ItemDao;
+import com.tle.core.security.TLEAclManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ItemCommentServiceImplTest {
+  @Mock private ItemDao itemDao;
+  @Mock private TLEAclManager tleAclManager;
+  @InjectMocks private ItemCommentServiceImpl itemCommentService;
+
+  @Test
+  public void countsTheCommentsOfAPageOfItemsAtOnce() {
+    final List<Item> items = new ArrayList<Item>();
+    for (long id = 1; id <= 3; id++) {
+      final Item item = new Item();
+      item.setId(id);
+      items.add(item);
+    }
+    final List<Item> viewable = Arrays.asList(items.get(0), items.get(2));
+    when(tleAclManager.filterNonGrantedObjects(anyCollection(), anyCollection()))
+        .thenReturn(viewable);
+    when(itemDao.getCommentCounts(viewable)).thenReturn(Arrays.asList(4, 0));
+
+    final Map<Long, Integer> counts = itemCommentService.getCommentCountsWithACLCheck(items);
+
+    // One ACL check and one count for the whole page, and nothing for items which can't be viewed
+    verify(tleAclManager, times(1)).filterNonGrantedObjects(anyCollection(), anyCollection());
+    verify(itemDao, times(1)).getCommentCounts(viewable);
+    assertEquals(ImmutableMap.of(1L, 4, 3L, 0), counts);
+  }
+}
@@ -0,0 +1,183 @@
+package com.tle.core.scripting.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.dytech.edge.common.PropBagWrapper;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+import com.tle.common.Pair;
+import com.tle.common.i18n.CurrentLocale;
+import com.tle.common.i18n.CurrentLocale.AbstractCurrentLocale;
+import com.tle.common.scripting.ScriptException;
+import com.tle.common.util.Logger;
+import com.tle.core.plugins.AbstractPluginService;
+import com.tle.core.plugins.PluginService;
+import com.tle.core.scripting.DefaultScriptContext;
+import com.tle.core.services.LoggingService;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import org.java.plugin.Plugin;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@SuppressWarnings("nls")
+@RunWith(Parameterized.class)
+public class ScriptingServiceImplTest {
+  private final ScriptingServiceImpl scriptingService;
+
+  @Parameters(name = "sharedScope={0}, compiledScriptCacheSize={1}")
+  public static Collection<Object[]> settings() {
+    return Arrays.asList(new Object[][] {{false, 1000}, {true, 1000}, {false, 0}, {true, 0}});
+  }
+
+  public ScriptingServiceImplTest(boolean sharedScope, int compiledScriptCacheSize) {
+    scriptingService = createScriptingService(sharedScope, compiledScriptCacheSize);
+  }
+
+  @BeforeClass
+  public static void setUpPlugins() {
+    // Needed for the messages of the error reporter
+    PluginService pluginService = mock(PluginService.class, RETURNS_DEEP_STUBS);
+    Plugin plugin = mock(Plugin.class, RETURNS_DEEP_STUBS);
+    when(plugin.getDescriptor().getId()).thenReturn("com.equella.core");
+    when(pluginService.getPluginForObject(any())).thenReturn(plugin);
+    AbstractPluginService.thisService = pluginService;
+
+    CurrentLocale.initialise(
+        new AbstractCurrentLocale() {
+          @Override
+          protected Pair<Locale, String> resolveKey(String key) {
+            return new Pair<>(Locale.ENGLISH, key);
+          }
+
+          @Override
+          public boolean isRightToLeft() {
+            return false;
+          }
+
+          @Override
+          public ResourceBundle getResourceBundle() {
+            return null;
+          }
+
+          @Override
+          public Locale getLocale() {
+            return Locale.ENGLISH;
+          }
+        });
+  }
+
+  @Test
+  public void scriptsCannotReachJava() throws ScriptException {
+    for (String name :
+        new String[] {"java", "javax", "Packages", "JavaImporter", "JavaAdapter", "getClass"}) {
+      assertEquals(name, "undefined", execute("typeof " + name));
+    }
+    try {
+      execute("java.lang.System.exit(1)");
+      fail("Scripts must not be able to call Java");
+    } catch (ScriptException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void globalsDoNotLeakBetweenScripts() throws ScriptException {
+    assertEquals("set", execute("leaked = 'set'; var declared = 'set'; leaked"));
+
+    assertEquals("undefined", execute("typeof leaked"));
+    assertEquals("undefined", execute("typeof declared"));
+  }
+
+  @Test
+  public void changesToTheStandardObjectsDoNotLeakBetweenScripts() throws ScriptException {
+    try {
+      execute("String.prototype.leaked = function() { return 'leaked'; }");
+    } catch (ScriptException e) {
+      // The standard objects are sealed when shared
+    }
+
+    assertEquals("undefined", execute("typeof ''.leaked"));
+  }
+
+  @Test
+  public void scriptObjectsAreSeenByEachRun() throws ScriptException {
+    assertEquals("first", execute("name", context("first")));
+    assertEquals("second", execute("name", context("second")));
+  }
+
+  @Test
+  public void compiledScriptsGiveTheSameResultsAsFreshOnes() throws ScriptException {
+    String script =
+        "var total = 0;\n"
+            + "for (var i = 1; i <= 4; i++) { total += i; }\n"
+            + "total + ':' + name + ':' + (typeof leaked)";
+    ScriptingServiceImpl uncached = createScriptingService(false, 0);
+    String fresh =
+        (String) uncached.executeScript(script, "total", context("a"), false, String.class);
+
+    assertEquals("10:a:undefined", fresh);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(fresh, execute(script, context("a")));
+    }
+  }
+
+  @Test
+  public void functionScriptsReturnTheirResult() throws ScriptException {
+    assertFalse(scriptingService.evaluateScript("return name == 'b';", "visibility", context("a")));
+    assertTrue(scriptingService.evaluateScript("return name == 'b';", "visibility", context("b")));
+  }
+
+  private String execute(String script) throws ScriptException {
+    return execute(script, context("test"));
+  }
+
+  private String execute(String script, DefaultScriptContext context) throws ScriptException {
+    return (String) scriptingService.executeScript(script, "test", context, false, String.class);
+  }
+
+  private static DefaultScriptContext context(String name) {
+    Map<String, Object> scriptObjects = new HashMap<>();
+    scriptObjects.put("name", name);
+    return new DefaultScriptContext(scriptObjects, new HashMap<>(), new PropBagWrapper());
+  }
+
+  private static ScriptingServiceImpl createScriptingService(
+      boolean sharedScope, int compiledScriptCacheSize) {
+    LoggingService loggingService = mock(LoggingService.class);
+    when(loggingService.getLogger(any())).thenReturn(mock(Logger.class));
+    ScriptingServiceImpl service =
+        Guice.createInjector(
+                new AbstractModule() {
+                  @Override
+                  protected void configure() {
+                    bind(LoggingService.class).toInstance(loggingService);
+                    bind(PluginService.class).toInstance(mock(PluginService.class));
+                    bindConstant()
+                        .annotatedWith(Names.named("scripting.sharedScope"))
+                        .to(sharedScope);
+                    bindConstant()
+                        .annotatedWith(Names.named("scripting.compiledScriptCacheSize"))
+                        .to(compiledScriptCacheSize);
+                  }
+                })
+            .getInstance(ScriptingServiceImpl.class);
+    service.setupCompiledScripts();
+    return service;
+  }
+}
@@ -0,0 +1,125 @@
+package com.tle.core.services.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import com.tle.common.filesystem.FileSystemHelper;
+import io.prometheus.client.CollectorRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class FileDigestCacheTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void calculatesTheDigestAgainOnceTheFileIsModified() throws IOException {
+    FileDigestCache cache = new FileDigestCache(10, false);
+    File file = write(folder.newFile(), "one", 1000);
+    double hits = getSample("hits");
+    double misses = getSample("misses");
+
+    assertEquals(DigestUtils.md5Hex("one"), cache.getDigest(file));
+    assertEquals(DigestUtils.md5Hex("one"), cache.getDigest(file));
+    assertEquals(misses + 1, getSample("misses"), 0);
+    assertEquals(hits + 1, getSample("hits"), 0);
+
+    // The same size, so only the modification time tells them apart
+    write(file, "two", 2000);
+    assertEquals(DigestUtils.md5Hex("two"), cache.getDigest(file));
+    assertEquals(misses + 2, getSample("misses"), 0);
+  }
+
+  @Test
+  public void readsTheDigestSavedWithTheFile() throws IOException {
+    File file = write(folder.newFile(), "one", 1000);
+    assumeTrue(
+        "User defined attributes are supported",
+        Files.getFileStore(file.toPath()).supportsFileAttributeView("user"));
+
+    // A digest which could only have come from the attribute
+    new FileDigestCache(10, true).put(file, "remembered");
+    FileDigestCache restarted = new FileDigestCache(10, true);
+    double misses = getSample("misses");
+
+    assertEquals("remembered", restarted.getDigest(file));
+    assertEquals(misses, getSample("misses"), 0);
+
+    write(file, "two", 2000);
+    assertEquals(DigestUtils.md5Hex("two"), restarted.getDigest(file));
+    assertEquals(DigestUtils.md5Hex("two"), new FileDigestCache(10, true).getDigest(file));
+    assertEquals(misses + 1, getSample("misses"), 0);
+  }
+
+  @Test
+  public void keepsDigestsInMemoryWhenTheFilestoreHasNoAttributes() throws IOException {
+    File file = write(folder.newFile(), "one", 1000);
+    FileDigestCache cache = withoutAttributes();
+
+    cache.put(file, "remembered");
+    assertEquals("remembered", cache.getDigest(file));
+    assertEquals(DigestUtils.md5Hex("one"), withoutAttributes().getDigest(file));
+
+    UserDefinedFileAttributeView view =
+        Files.getFileAttributeView(file.toPath(), UserDefinedFileAttributeView.class);
+    if (view != null && Files.getFileStore(file.toPath()).supportsFileAttributeView("user")) {
+      assertFalse(view.list().contains("equella.md5"));
+    }
+  }
+
+  @Test
+  public void calculatesTheDigestOfAFolderAgainOnceAnyFileInItChanges() throws IOException {
+    FileDigestCache cache = new FileDigestCache(10, false);
+    File dir = folder.newFolder();
+    write(new File(dir, "a.txt"), "one", 1000);
+    File nested = new File(dir, "sub/b.txt");
+    nested.getParentFile().mkdirs();
+    write(nested, "two", 1000);
+    String original = FileSystemHelper.md5recurse(dir, new byte[1024]);
+    double misses = getSample("misses");
+
+    assertEquals(original, cache.getDigest(dir));
+    assertEquals(original, cache.getDigest(dir));
+    assertEquals(misses + 1, getSample("misses"), 0);
+
+    write(nested, "six", 2000);
+    String modified = FileSystemHelper.md5recurse(dir, new byte[1024]);
+    assertFalse(original.equals(modified));
+    assertEquals(modified, cache.getDigest(dir));
+
+    write(new File(dir, "c.txt"), "ten", 1000);
+    assertEquals(FileSystemHelper.md5recurse(dir, new byte[1024]), cache.getDigest(dir));
+    assertEquals(misses + 3, getSample("misses"), 0);
+  }
+
+  private static FileDigestCache withoutAttributes() {
+    return new FileDigestCache(10, true) {
+      @Override
+      UserDefinedFileAttributeView getAttributeView(Path path) {
+        return null;
+      }
+    };
+  }
+
+  private static File write(File file, String content, long modified) throws IOException {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(modified));
+    return file;
+  }
+
+  private static double getSample(String name) {
+    Double sample =
+        CollectorRegistry.defaultRegistry.getSampleValue("file_digest_cache_" + name + "_total");
+    return sample != null ? sample : 0;
+  }
+}
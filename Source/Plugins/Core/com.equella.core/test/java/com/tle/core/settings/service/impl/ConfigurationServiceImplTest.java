@@ -0,0 +1,100 @@
+package com.tle.core.settings.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.tle.beans.ConfigurationProperty;
+import com.tle.beans.ConfigurationProperty.PropertyKey;
+import com.tle.beans.Institution;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.events.services.EventService;
+import com.tle.core.institution.InstitutionCache;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.settings.dao.ConfigurationDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+
+@SuppressWarnings("nls")
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ConfigurationServiceImplTest {
+  private static final String PROPERTY = "some.secret";
+
+  @Mock private EventService eventService;
+  @Mock private ConfigurationDao configurationDao;
+  @InjectMocks private ConfigurationServiceImpl configService;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    Institution institution = new Institution();
+    institution.setDatabaseId(1);
+    CurrentInstitution.set(institution);
+
+    Cache<Object, Object> cache = CacheBuilder.newBuilder().build();
+    InstitutionCache<Cache<Object, Object>> institutionCache = mock(InstitutionCache.class);
+    when(institutionCache.getCache()).thenReturn(cache);
+    InstitutionService institutionService = mock(InstitutionService.class);
+    when(institutionService.<Cache<Object, Object>>newInstitutionAwareCache(any()))
+        .thenReturn(institutionCache);
+    // Dropped whenever a property is saved
+    doAnswer(
+            invocation -> {
+              cache.invalidateAll();
+              return null;
+            })
+        .when(institutionCache)
+        .clear();
+    configService.setInstitutionService(institutionService);
+  }
+
+  @After
+  public void tearDown() {
+    CurrentInstitution.remove();
+  }
+
+  @Test
+  public void savesThePropertyIfItHasNoValue() {
+    when(configurationDao.findById(any(PropertyKey.class))).thenReturn(null, property("generated"));
+
+    assertEquals("generated", configService.setPropertyIfAbsent(PROPERTY, "generated"));
+    verify(configurationDao).insert(any(ConfigurationProperty.class));
+  }
+
+  @Test
+  public void keepsTheValueSavedFirst() {
+    when(configurationDao.findById(any(PropertyKey.class))).thenReturn(null, property("first"));
+    doThrow(new DataIntegrityViolationException("Duplicate key"))
+        .when(configurationDao)
+        .insert(any(ConfigurationProperty.class));
+
+    assertEquals("first", configService.setPropertyIfAbsent(PROPERTY, "second"));
+  }
+
+  @Test
+  public void doesNotReplaceAnExistingValue() {
+    when(configurationDao.findById(any(PropertyKey.class))).thenReturn(property("existing"));
+
+    assertEquals("existing", configService.setPropertyIfAbsent(PROPERTY, "new"));
+    verify(configurationDao, never()).insert(any(ConfigurationProperty.class));
+  }
+
+  private static ConfigurationProperty property(String value) {
+    ConfigurationProperty property = new ConfigurationProperty();
+    property.setValue(value);
+    return property;
+  }
+}
@@ -0,0 +1,202 @@
+package com.tle.core.taxonomy.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.cache.CacheLoader;
+import com.tle.beans.Institution;
+import com.tle.common.Pair;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.common.taxonomy.SelectionRestriction;
+import com.tle.common.taxonomy.Taxonomy;
+import com.tle.core.events.services.EventService;
+import com.tle.core.institution.InstitutionCache;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.taxonomy.TermResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@SuppressWarnings({"nls", "unchecked"})
+@RunWith(MockitoJUnitRunner.class)
+public class TermSearchIndexTest {
+  @Mock private EventService eventService;
+  @Mock private InstitutionService institutionService;
+  @InjectMocks private TermSearchIndex index;
+
+  private final Taxonomy taxonomy = new Taxonomy();
+  private final List<Object[]> rows = new ArrayList<>();
+  private final AtomicInteger loads = new AtomicInteger();
+  private final IntFunction<List<Object[]>> loader =
+      maxTerms -> {
+        loads.incrementAndGet();
+        return rows;
+      };
+
+  @Before
+  public void setUp() {
+    Institution institution = new Institution();
+    CurrentInstitution.set(institution);
+    when(institutionService.newInstitutionAwareCache(any()))
+        .thenAnswer(
+            invocation -> {
+              Object cache =
+                  ((CacheLoader<Institution, ?>) invocation.getArgument(0)).load(institution);
+              InstitutionCache<Object> institutionCache = mock(InstitutionCache.class);
+              when(institutionCache.getCache()).thenReturn(cache);
+              return institutionCache;
+            });
+    index.setInstitutionService(institutionService);
+
+    taxonomy.setUuid("f4bd1a1e-7d36-4f4c-a2b6-3b3f3fd2c6b9");
+    // Full value, value, left, right and parent ID
+    rows.add(new Object[] {null, "Fruit", 1, 10, null});
+    rows.add(new Object[] {"Fruit\\Apple", "Apple", 2, 3, 1L});
+    rows.add(new Object[] {"Fruit\\apricot", "apricot", 4, 5, 1L});
+    rows.add(new Object[] {"Fruit\\Pineapple", "Pineapple", 6, 7, 1L});
+    rows.add(new Object[] {"Fruit\\banana", "banana", 8, 9, 1L});
+    rows.add(new Object[] {null, "Animal", 11, 14, null});
+    rows.add(new Object[] {"Animal\\Ape", "Ape", 12, 13, 6L});
+  }
+
+  @After
+  public void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    TransactionSynchronizationManager.unbindResourceIfPossible(index);
+    CurrentInstitution.remove();
+  }
+
+  @Test
+  public void findsTermsStartingWithAPrefixIgnoringCase() {
+    assertEquals(Arrays.asList("Ape", "Apple", "apricot"), terms(search("AP*", false)));
+    assertEquals(Arrays.asList("Apple"), terms(search("apple%", false)));
+    assertEquals(Arrays.asList(), terms(search("Apples*", false)));
+  }
+
+  @Test
+  public void matchesWildcardsAnywhereLikeALikeQuery() {
+    assertEquals(Arrays.asList("Apple", "Pineapple"), terms(search("*apple", false)));
+    assertEquals(Arrays.asList("Apple"), terms(search("a_p%e", false)));
+    assertEquals(Arrays.asList("Ape"), terms(search("_pe", false)));
+    assertEquals(Arrays.asList("banana"), terms(search("%an%an%", false)));
+    assertEquals(Arrays.asList(), terms(search("appl", false)));
+    assertEquals(Arrays.asList("Apple"), terms(search("APPLE", false)));
+  }
+
+  @Test
+  public void searchesTheFullValuesOfTerms() {
+    assertEquals(
+        Arrays.asList("Fruit\\Apple", "Fruit\\apricot"), fullTerms(search("fruit\\ap*", true)));
+    assertEquals(
+        Arrays.asList("Animal\\Ape", "Fruit\\Apple", "Fruit\\Pineapple"),
+        fullTerms(search("*\\%p%e", true)));
+  }
+
+  @Test
+  public void ordersMatchesByTheSearchedValueIgnoringCase() {
+    // The query ordered by the searched value, which the database collation compared ignoring case
+    assertEquals(
+        Arrays.asList("Animal", "Ape", "Apple", "apricot", "banana", "Fruit", "Pineapple"),
+        terms(search("*", false)));
+    assertEquals(
+        Arrays.asList(
+            "Animal",
+            "Animal\\Ape",
+            "Fruit",
+            "Fruit\\Apple",
+            "Fruit\\apricot",
+            "Fruit\\banana",
+            "Fruit\\Pineapple"),
+        fullTerms(search("*", true)));
+  }
+
+  @Test
+  public void countsEveryAllowedMatchButReturnsUpToTheLimit() {
+    Pair<Long, List<TermResult>> results = search("*", SelectionRestriction.LEAF_ONLY, 2, false);
+    assertEquals(5L, results.getFirst().longValue());
+    assertEquals(Arrays.asList("Ape", "Apple"), terms(results));
+
+    results = search("*", SelectionRestriction.TOP_LEVEL_ONLY, 0, false);
+    assertEquals(2L, results.getFirst().longValue());
+    assertEquals(Arrays.asList("Animal", "Fruit"), terms(results));
+  }
+
+  @Test
+  public void loadsTheTermsAgainOnceTheyAreChanged() {
+    search("*", false);
+    search("a*", false);
+    assertEquals(1, loads.get());
+
+    rows.add(new Object[] {"Fruit\\Cherry", "Cherry", 15, 16, 1L});
+    index.invalidate(taxonomy);
+    verify(eventService).publishApplicationEvent(any(TaxonomyModifiedEvent.class));
+
+    assertEquals(Arrays.asList("Cherry"), terms(search("c*", false)));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void queriesTermsChangedByTheCurrentTransaction() {
+    search("*", false);
+    TransactionSynchronizationManager.initSynchronization();
+    index.invalidate(taxonomy);
+
+    assertNull(search("*", false));
+    assertNull(search("a*", false));
+    assertEquals(1, loads.get());
+
+    List<TransactionSynchronization> synchronizations =
+        TransactionSynchronizationManager.getSynchronizations();
+    TransactionSynchronizationManager.clearSynchronization();
+    synchronizations.forEach(
+        sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    verify(eventService).publishApplicationEvent(any(TaxonomyModifiedEvent.class));
+
+    search("*", false);
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void queriesTaxonomiesWithTooManyTerms() {
+    rows.clear();
+    rows.addAll(Arrays.asList(new Object[1000001][]));
+    assertNull(search("*", false));
+    assertNull(search("a*", false));
+    assertEquals(1, loads.get());
+  }
+
+  private Pair<Long, List<TermResult>> search(String query, boolean searchFullTerms) {
+    return search(query, SelectionRestriction.UNRESTRICTED, 0, searchFullTerms);
+  }
+
+  private Pair<Long, List<TermResult>> search(
+      String query, SelectionRestriction restriction, int limit, boolean searchFullTerms) {
+    return index.search(taxonomy, query, restriction, limit, searchFullTerms, loader);
+  }
+
+  private static List<String> terms(Pair<Long, List<TermResult>> results) {
+    return results.getSecond().stream().map(TermResult::getTerm).collect(Collectors.toList());
+  }
+
+  private static List<String> fullTerms(Pair<Long, List<TermResult>> results) {
+    return results.getSecond().stream().map(TermResult::getFullTerm).collect(Collectors.toList());
+  }
+}
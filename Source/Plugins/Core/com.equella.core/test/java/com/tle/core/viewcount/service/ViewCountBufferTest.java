@@ -0,0 +1,145 @@
+package com.tle.core.viewcount.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tle.beans.Institution;
+import com.tle.beans.viewcount.AbstractViewcount;
+import com.tle.beans.viewcount.ViewcountAttachment;
+import com.tle.beans.viewcount.ViewcountAttachmentId;
+import com.tle.beans.viewcount.ViewcountItem;
+import com.tle.beans.viewcount.ViewcountItemId;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.institution.RunAsInstitution;
+import com.tle.core.viewcount.dao.AttachmentViewCountDao;
+import com.tle.core.viewcount.dao.ItemViewCountDao;
+import java.io.Serializable;
+import java.util.Collection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@SuppressWarnings("nls")
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ViewCountBufferTest {
+  @Mock private ItemViewCountDao itemViewCountDao;
+  @Mock private AttachmentViewCountDao attachmentViewCountDao;
+  @Mock private InstitutionService institutionService;
+  @Mock private RunAsInstitution runAs;
+  @InjectMocks private ViewCountBuffer buffer;
+
+  private final Institution institution = new Institution();
+  private final ViewcountItemId itemId = new ViewcountItemId(1, "uuid", 1);
+  private final ViewcountAttachmentId attachmentId =
+      new ViewcountAttachmentId(1, "uuid", 1, "attachment");
+
+  @Before
+  public void setUp() {
+    institution.setUniqueId(1);
+    CurrentInstitution.set(institution);
+    when(institutionService.getInstitution(1)).thenReturn(institution);
+    doAnswer(
+            invocation -> {
+              invocation.<Runnable>getArgument(1).run();
+              return null;
+            })
+        .when(runAs)
+        .executeAsSystem(any(Institution.class), any(Runnable.class));
+  }
+
+  @After
+  public void tearDown() {
+    CurrentInstitution.remove();
+  }
+
+  @Test
+  public void addsCollectedViewsToTheSavedCounts() {
+    assertEquals(1, buffer.addView(itemId));
+    assertEquals(2, buffer.addView(itemId));
+    buffer.addView(attachmentId);
+
+    buffer.flush();
+
+    verify(itemViewCountDao).addViews(argThat(hasViews(itemId, 2)));
+    verify(attachmentViewCountDao).addViews(argThat(hasViews(attachmentId, 1)));
+    assertEquals(0, buffer.getViews(itemId));
+  }
+
+  @Test
+  public void keepsViewsWhichCouldNotBeSaved() {
+    buffer.addView(itemId);
+    buffer.addView(itemId);
+    buffer.addView(attachmentId);
+    doThrow(new RuntimeException("Database is down"))
+        .when(itemViewCountDao)
+        .addViews(anyCollection());
+
+    buffer.flush();
+    assertEquals(2, buffer.getViews(itemId));
+    // The attachment views were saved separately, so aren't saved twice
+    assertEquals(0, buffer.getViews(attachmentId));
+
+    // Views seen in the meantime are added to the ones kept
+    buffer.addView(itemId);
+    assertEquals(3, buffer.getViews(itemId));
+  }
+
+  @Test
+  public void discardsTheViewsOfDeletedItems() {
+    buffer.addView(itemId);
+    buffer.addView(attachmentId);
+
+    buffer.discard(institution, id -> id instanceof ViewcountAttachmentId);
+    buffer.flush();
+
+    verify(itemViewCountDao).addViews(argThat(hasViews(itemId, 1)));
+    verify(attachmentViewCountDao, never()).addViews(anyCollection());
+  }
+
+  @Test
+  public void savesCollectedViewsWhenShutDown() {
+    buffer.startup();
+    buffer.addView(itemId);
+
+    buffer.shutdown();
+
+    verify(itemViewCountDao).addViews(argThat(hasViews(itemId, 1)));
+  }
+
+  @Test
+  public void forgetsTheViewsOfDeletedInstitutions() {
+    buffer.addView(itemId);
+    when(institutionService.getInstitution(1)).thenReturn(null);
+
+    buffer.flush();
+
+    verify(runAs, never()).executeAsSystem(any(Institution.class), any(Runnable.class));
+    assertEquals(0, buffer.getViews(itemId));
+  }
+
+  private static <T extends AbstractViewcount> ArgumentMatcher<Collection<T>> hasViews(
+      Serializable id, int count) {
+    return views ->
+        views.size() == 1
+            && views.stream().allMatch(v -> id.equals(getId(v)) && v.getCount() == count);
+  }
+
+  private static Serializable getId(AbstractViewcount v) {
+    return v instanceof ViewcountItem
+        ? ((ViewcountItem) v).getId()
+        : ((ViewcountAttachment) v).getId();
+  }
+}
@@ -0,0 +1,175 @@
+package com.tle.core.viewcount.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.matcher.Matchers;
+import com.tle.beans.Institution;
+import com.tle.beans.viewcount.ViewcountAttachment;
+import com.tle.beans.viewcount.ViewcountAttachmentId;
+import com.tle.beans.viewcount.ViewcountItem;
+import com.tle.beans.viewcount.ViewcountItemId;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.hibernate.HibernateService;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.institution.RunAsInstitution;
+import com.tle.core.viewcount.dao.AttachmentViewCountDao;
+import com.tle.core.viewcount.dao.AttachmentViewCountDaoImpl;
+import com.tle.core.viewcount.dao.ItemViewCountDao;
+import com.tle.core.viewcount.dao.ItemViewCountDaoImpl;
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Singleton;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Saves the collected views through DAOs proxied the way the transaction module proxies them, to
+ * check the writes happen inside a transaction.
+ */
+@SuppressWarnings("nls")
+public class ViewCountBufferTransactionTest {
+  private static final ThreadLocal<Boolean> IN_TRANSACTION = ThreadLocal.withInitial(() -> false);
+
+  private final Institution institution = new Institution();
+  private final ViewcountItemId itemId = new ViewcountItemId(1, "uuid", 1);
+  private final ViewcountAttachmentId attachmentId =
+      new ViewcountAttachmentId(1, "uuid", 1, "attachment");
+
+  private ViewCountBuffer buffer;
+  private RecordingItemDao itemDao;
+  private RecordingAttachmentDao attachmentDao;
+
+  @Before
+  public void setUp() {
+    institution.setUniqueId(1);
+    CurrentInstitution.set(institution);
+
+    InstitutionService institutionService = mock(InstitutionService.class);
+    when(institutionService.getInstitution(1)).thenReturn(institution);
+    RunAsInstitution runAs = mock(RunAsInstitution.class);
+    doAnswer(
+            invocation -> {
+              invocation.<Runnable>getArgument(1).run();
+              return null;
+            })
+        .when(runAs)
+        .executeAsSystem(any(Institution.class), any(Runnable.class));
+
+    Injector injector =
+        Guice.createInjector(
+            new AbstractModule() {
+              @Override
+              protected void configure() {
+                bind(ItemViewCountDao.class).to(RecordingItemDao.class);
+                bind(AttachmentViewCountDao.class).to(RecordingAttachmentDao.class);
+                bind(HibernateService.class).toInstance(mock(HibernateService.class));
+                bind(InstitutionService.class).toInstance(institutionService);
+                bind(RunAsInstitution.class).toInstance(runAs);
+                bindInterceptor(Matchers.any(), new TransactionalMatcher(), transaction());
+              }
+            });
+    buffer = injector.getInstance(ViewCountBuffer.class);
+    itemDao = injector.getInstance(RecordingItemDao.class);
+    attachmentDao = injector.getInstance(RecordingAttachmentDao.class);
+  }
+
+  @After
+  public void tearDown() {
+    CurrentInstitution.remove();
+  }
+
+  @Test
+  public void savesTheCollectedViewsInATransaction() {
+    buffer.addView(itemId);
+    buffer.addView(itemId);
+    buffer.addView(attachmentId);
+
+    buffer.flush();
+
+    assertEquals(List.of(itemId), itemDao.updated);
+    assertEquals(1, itemDao.saved.size());
+    assertEquals(2, itemDao.saved.get(0).getCount());
+    assertEquals(List.of(attachmentId), attachmentDao.updated);
+    assertEquals(1, attachmentDao.saved.size());
+    assertEquals(0, buffer.getViews(itemId));
+    assertEquals(0, buffer.getViews(attachmentId));
+  }
+
+  private static MethodInterceptor transaction() {
+    return invocation -> {
+      boolean outer = IN_TRANSACTION.get();
+      IN_TRANSACTION.set(true);
+      try {
+        return invocation.proceed();
+      } finally {
+        IN_TRANSACTION.set(outer);
+      }
+    };
+  }
+
+  private static void checkInTransaction() {
+    // Hibernate throws TransactionRequiredException for updates outside a transaction
+    assertTrue("Not in a transaction", IN_TRANSACTION.get());
+  }
+
+  private static final class TransactionalMatcher extends AbstractMatcher<Method> {
+    @Override
+    public boolean matches(Method t) {
+      return !t.isSynthetic() && t.isAnnotationPresent(Transactional.class);
+    }
+  }
+
+  @Singleton
+  static class RecordingItemDao extends ItemViewCountDaoImpl {
+    final List<ViewcountItemId> updated = new ArrayList<>();
+    final List<ViewcountItem> saved = new ArrayList<>();
+
+    @Override
+    public int addViews(ViewcountItemId id, int views, Instant lastViewed) {
+      checkInTransaction();
+      updated.add(id);
+      return 0;
+    }
+
+    @Override
+    public ViewcountItemId save(ViewcountItem entity) {
+      checkInTransaction();
+      saved.add(entity);
+      return entity.getId();
+    }
+  }
+
+  @Singleton
+  static class RecordingAttachmentDao extends AttachmentViewCountDaoImpl {
+    final List<ViewcountAttachmentId> updated = new ArrayList<>();
+    final List<ViewcountAttachment> saved = new ArrayList<>();
+
+    @Override
+    public int addViews(ViewcountAttachmentId id, int views, Instant lastViewed) {
+      checkInTransaction();
+      updated.add(id);
+      return 0;
+    }
+
+    @Override
+    public ViewcountAttachmentId save(ViewcountAttachment entity) {
+      checkInTransaction();
+      saved.add(entity);
+      return entity.getId();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.tle.core.xslt.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.dytech.devlib.PropBagEx;
+import com.tle.common.filesystem.handle.FileHandle;
+import com.tle.core.services.FileSystemService;
+import io.prometheus.client.CollectorRegistry;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@SuppressWarnings("nls")
+@RunWith(MockitoJUnitRunner.class)
+public class XsltServiceImplTest {
+  private static final String XSLT_FILE = "display.xsl";
+
+  @Mock private FileSystemService fileSystemService;
+  @Mock private FileHandle handle;
+  @InjectMocks private XsltServiceImpl xsltService;
+
+  @Before
+  public void setUp() {
+    xsltService.setupCaches();
+  }
+
+  @Test
+  public void compilesAStylesheetStringOnce() {
+    String xslt = stylesheet("Hello ");
+    double hits = getSample("hits");
+    double misses = getSample("misses");
+
+    assertEquals("Hello Alice", xsltService.transformFromXsltString(xslt, name("Alice")));
+    assertEquals("Hello Bob", xsltService.transformFromXsltString(xslt, name("Bob")));
+    xsltService.cacheXslt(xslt);
+
+    assertEquals(misses + 1, getSample("misses"), 0);
+    assertEquals(hits + 2, getSample("hits"), 0);
+  }
+
+  @Test
+  public void recompilesAStylesheetFileOnlyOnceItIsModified() throws Exception {
+    when(fileSystemService.lastModified(handle, XSLT_FILE)).thenReturn(1L, 1L, 2L, 2L);
+    when(fileSystemService.read(handle, XSLT_FILE))
+        .thenReturn(stream(stylesheet("Hello ")), stream(stylesheet("Goodbye ")));
+
+    assertEquals("Hello Alice", xsltService.transform(handle, XSLT_FILE, name("Alice"), true));
+    assertEquals("Hello Bob", xsltService.transform(handle, XSLT_FILE, name("Bob"), true));
+    verify(fileSystemService, times(1)).read(handle, XSLT_FILE);
+
+    assertEquals("Goodbye Alice", xsltService.transform(handle, XSLT_FILE, name("Alice"), true));
+    assertEquals("Goodbye Bob", xsltService.transform(handle, XSLT_FILE, name("Bob"), true));
+    verify(fileSystemService, times(2)).read(handle, XSLT_FILE);
+  }
+
+  @Test
+  public void transformsOnceOffStylesheets() {
+    String input = name("Alice").toString();
+
+    assertEquals(
+        "Hello Alice", xsltService.onceOffTransform(stream(stylesheet("Hello ")), stream(input)));
+    assertEquals(
+        "Goodbye Alice",
+        xsltService.onceOffTransform(stream(stylesheet("Goodbye ")), stream(input)));
+  }
+
+  @Test
+  public void compilesDifferentStylesheetsAtTheSameTime() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        String greeting = "Hello " + i + " ";
+        results.add(
+            executor.submit(
+                () -> xsltService.transformFromXsltString(stylesheet(greeting), name("Alice"))));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals("Hello " + i + " Alice", results.get(i).get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String stylesheet(String greeting) {
+    return "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+        + "<xsl:output method=\"text\"/>"
+        + "<xsl:template match=\"/\">"
+        + greeting
+        + "<xsl:value-of select=\"xml/name\"/></xsl:template>"
+        + "</xsl:stylesheet>";
+  }
+
+  private static PropBagEx name(String name) {
+    return new PropBagEx("<xml><name>" + name + "</name></xml>");
+  }
+
+  private static ByteArrayInputStream stream(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static double getSample(String name) {
+    Double sample =
+        CollectorRegistry.defaultRegistry.getSampleValue("xslt_templates_cache_" + name + "_total");
+    return sample != null ? sample : 0;
+  }
+}
@@ -0,0 +1,121 @@
+package com.tle.freetext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tle.beans.item.ItemIdKey;
+import com.tle.core.system.service.SchemaDataSourceService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@SuppressWarnings("nls")
+public class BackgroundIndexerImplTest {
+  @Mock private FreetextIndex freetextIndex;
+  @Mock private ExtractedTextCache extractedTextCache;
+  @Mock private FreetextIndexConfiguration config;
+
+  @InjectMocks private BackgroundIndexerImpl indexer;
+
+  private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+  private final CountDownLatch firstBatchBlocked = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws Exception {
+    indexer = new BackgroundIndexerImpl(1, mock(SchemaDataSourceService.class));
+    MockitoAnnotations.openMocks(this);
+
+    when(config.getIndexerThreads()).thenReturn(1);
+    when(config.getIndexBatchSize()).thenReturn(1);
+    when(config.getPrepareBatchSize()).thenReturn(1);
+    when(config.getIndexWriterThreads()).thenReturn(2);
+    indexer.setConfiguration(config);
+
+    doAnswer(
+            invocation -> {
+              String name = invocation.<List<IndexedItem>>getArgument(0).get(0).toString();
+              events.add("start " + name);
+              if (name.equals("first")) {
+                assertTrue(firstBatchBlocked.await(10, TimeUnit.SECONDS));
+              }
+              events.add("end " + name);
+              return null;
+            })
+        .when(freetextIndex)
+        .indexBatch(any());
+  }
+
+  @After
+  public void tearDown() {
+    firstBatchBlocked.countDown();
+    indexer.kill();
+  }
+
+  @Test
+  public void writesTheBatchesOfAnItemInOrder() throws Exception {
+    indexer.addToQueue(deletion(1, "first"));
+    assertFalse(indexer.processEvent());
+    awaitEvents("start first");
+
+    // The item is held back while its first batch is written, but other items aren't
+    indexer.addToQueue(deletion(1, "second"));
+    indexer.addToQueue(deletion(2, "other"));
+    indexer.processEvent();
+    awaitEvents("start first", "start other", "end other");
+    indexer.processEvent();
+    assertEquals(Arrays.asList("start first", "start other", "end other"), events);
+
+    firstBatchBlocked.countDown();
+    awaitEvents("start first", "start other", "end other", "end first");
+    long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (events.size() < 6 && System.currentTimeMillis() < timeout) {
+      indexer.processEvent();
+      Thread.sleep(10);
+    }
+    assertEquals(
+        Arrays.asList(
+            "start first", "start other", "end other", "end first", "start second", "end second"),
+        events);
+  }
+
+  @Test
+  public void doesNotHandOutBatchesOnceKilled() {
+    indexer.kill();
+    indexer.addToQueue(deletion(1, "first"));
+
+    // Would throw a RejectedExecutionException if the batch was given to the writer pool
+    assertTrue(indexer.processEvent());
+    verify(freetextIndex, never()).indexBatch(any());
+  }
+
+  private IndexedItem deletion(long id, String name) {
+    IndexedItem item = mock(IndexedItem.class, name);
+    when(item.getId()).thenReturn(new FullIdKey(id, 1));
+    when(item.getItemIdKey()).thenReturn(new ItemIdKey(id, "uuid" + id, 1));
+    return item;
+  }
+
+  private void awaitEvents(String... expected) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (events.size() < expected.length && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertEquals(Arrays.asList(expected), events);
+  }
+}
@@ -0,0 +1,111 @@
+package com.tle.freetext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import com.tle.core.TextExtracterExtension;
+import java.util.Random;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class ExtractedTextCacheTest {
+  private static final String MD5_1 = "0cc175b9c0f1b6a831c399e269772661";
+  private static final String MD5_2 = "92eb5ffee6ae2fec3ad71c777531578f";
+  private static final String MD5_3 = "4a8a08f09d37b73795649038408b5f33";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final TextExtracterExtension extractor = mock(TextExtracterExtension.class);
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void extractsTheTextOfAFileOnce() throws Exception {
+    ExtractedTextCache cache = new ExtractedTextCache(folder.getRoot(), 10);
+
+    assertEquals("one", cache.getText(MD5_1, extractor, load("one")));
+    assertEquals("one", cache.getText(MD5_1.toUpperCase(), extractor, load("other")));
+    assertEquals("two", cache.getText(MD5_2, extractor, load("two")));
+
+    assertEquals(2, loads.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void findsTheTextCachedBeforeARestart() throws Exception {
+    new ExtractedTextCache(folder.getRoot(), 10).getText(MD5_1, extractor, load("one"));
+
+    ExtractedTextCache restarted = new ExtractedTextCache(folder.getRoot(), 10);
+    assertEquals("one", restarted.getText(MD5_1, extractor, load("other")));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedText() throws Exception {
+    // Each entry takes most of a megabyte even compressed, so only one fits
+    ExtractedTextCache cache = new ExtractedTextCache(folder.getRoot(), 1);
+    String large = randomText(700 * 1024);
+    cache.getText(MD5_1, extractor, load(large));
+    cache.getText(MD5_2, extractor, load(large));
+    assertEquals(2, loads.get());
+
+    cache.getText(MD5_2, extractor, load(large));
+    assertEquals(2, loads.get());
+    cache.getText(MD5_1, extractor, load(large));
+    assertEquals(3, loads.get());
+    cache.getText(MD5_3, extractor, load(large));
+    cache.getText(MD5_2, extractor, load(large));
+    assertEquals(5, loads.get());
+  }
+
+  @Test
+  public void doesNotCacheTextWhichCouldNotBeExtracted() throws Exception {
+    ExtractedTextCache cache = new ExtractedTextCache(folder.getRoot(), 10);
+    try {
+      cache.getText(
+          MD5_1,
+          extractor,
+          () -> {
+            loads.incrementAndGet();
+            throw new TimeoutException("Parse took too long");
+          });
+      fail("The loader's exception should be thrown");
+    } catch (TimeoutException e) {
+      // Expected
+    }
+
+    assertEquals("one", cache.getText(MD5_1, extractor, load("one")));
+    assertEquals(2, loads.get());
+    assertEquals(0, cache.getHitCount());
+  }
+
+  @Test
+  public void alwaysExtractsWhenDisabled() throws Exception {
+    ExtractedTextCache cache = new ExtractedTextCache(folder.getRoot(), 0);
+    cache.getText(MD5_1, extractor, load("one"));
+    cache.getText(MD5_1, extractor, load("one"));
+
+    assertEquals(2, loads.get());
+  }
+
+  private ExtractedTextCache.TextLoader load(String text) {
+    return () -> {
+      loads.incrementAndGet();
+      return text;
+    };
+  }
+
+  private static String randomText(int length) {
+    Random random = new Random(1);
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      text.append((char) (' ' + random.nextInt(95)));
+    }
+    return text.toString();
+  }
+}
@@ -27,6 +27,7 @@ import com.tle.beans.item.{Item, ItemIdKey, ItemStatus}
 import com.tle.common.i18n.{CurrentLocale, LangUtils}
 import com.tle.common.institution.CurrentInstitution
 import com.tle.common.search.DefaultSearch
+import com.tle.common.searching.{CursorSearchResults, SearchResults}
 import com.tle.common.searching.Search.SortType
 import com.tle.common.security.SecurityConstants
 import com.tle.common.settings.ConfigurationProperties
@@ -35,7 +36,7 @@ import com.tle.common.usermanagement.user.{AbstractUserState, CurrentUser, Defau
 import com.tle.common.{NamedThreadFactory, Triple}
 import com.tle.core.events.services.EventService
 import com.tle.core.freetext.index.AbstractIndexEngine.Searcher
-import com.tle.core.freetext.indexer.StandardIndexer
+import com.tle.core.freetext.indexer.{AbstractIndexingExtension, StandardIndexer}
 import com.tle.core.institution.RunAsInstitution
 import com.tle.core.item.dao.ItemDao
 import com.tle.core.item.helper.ItemHelper
@@ -47,6 +48,8 @@ import com.tle.core.services.user.UserPreferenceService
 import com.tle.core.settings.service.ConfigurationService
 import com.tle.core.zookeeper.ZookeeperService
 import com.tle.freetext.{FreetextIndexConfiguration, FreetextIndexImpl, IndexedItem}
+import com.tle.web.api.search.service.ExportService
+import io.prometheus.client.CollectorRegistry
 import org.apache.lucene.document.{Document, Field, FieldType}
 import org.apache.lucene.index.IndexOptions
 import org.apache.lucene.search.TotalHits.Relation
@@ -131,6 +134,38 @@ class ItemIndexTest
         new File(s"${getClass.getResource("/itemindex/stopwords.txt").getPath}")
 
       override def getAnalyzerLanguage: String = "en"
+
+      override def getSecurityFilterCacheSize: Int = 1
+
+      override def getSearchResultCacheSize: Int = 100
+
+      override def getIndexerThreads: Int = 1
+
+      override def getIndexBatchSize: Int = 50
+
+      override def getPrepareBatchSize: Int = 10
+
+      override def getIndexWriterThreads: Int = 1
+
+      override def getSyncThreads: Int = 1
+
+      override def getDirectoryType: String = "fs"
+
+      override def getMmapPreload: String = ""
+
+      override def getNrtCacheSize: Int = 0
+
+      override def getRamBufferSize: Int = 16
+
+      override def getReopenMaxMillis: Int = 5000
+
+      override def getReopenMinMillis: Int = 100
+
+      override def getCommitMinutes: Int = 5
+
+      override def getWarmSortFields: String = "lastmodified,created,name,rating"
+
+      override def getWarmQueries: String = "test"
     }
 
     val mockedConfigurationService = mock(classOf[ConfigurationService])
@@ -168,9 +203,9 @@ class ItemIndexTest
       privilege: Option[String] = None,
       itemDef: ItemDefinition = collection,
       itemUuid: String = itemUuid,
-      key: Long = Random.nextLong()
+      key: Long = Random.nextLong(),
+      indexer: StandardIndexer = new StandardIndexer
   ): List[IndexedItem] = {
-    val indexer = new StandardIndexer
 
     Range(0, howMany)
       .map(_ => {
@@ -432,6 +467,83 @@ class ItemIndexTest
         result.map(_.get(FreeTextQuery.FIELD_NAME)) shouldBe Array(itemName)
       }
 
+      it("reuses cached ACL bitsets for repeated searches") { f =>
+        val (itemIndex, searchConfig) = f
+        val itemName                  = "cached_acl_item"
+
+        Given("an Item which requires ACL 'DISCOVER_ITEM'")
+        createIndexes(
+          itemIndex,
+          generateIndexedItems(
+            itemName = itemName,
+            privilege = Option(SecurityConstants.DISCOVER_ITEM)
+          )
+        )
+        searchConfig.setPrivilege(SecurityConstants.DISCOVER_ITEM)
+        val cache = itemIndex.getSecurityFilterCache
+
+        When("the same secured search is run twice")
+        val firstResult = itemIndex.search(buildSearcher(itemIndex, searchConfig))
+        val hits        = cache.getHitCount
+        val misses      = cache.getMissCount
+        val result      = itemIndex.search(buildSearcher(itemIndex, searchConfig))
+
+        Then("the second search should be served from the cache with the same result")
+        cache.getHitCount should be > hits
+        cache.getMissCount shouldBe misses
+        cache.getEntryCount should be > 0
+        result.map(_.get(FreeTextQuery.FIELD_NAME)) shouldBe firstResult.map(
+          _.get(FreeTextQuery.FIELD_NAME)
+        )
+        result.map(_.get(FreeTextQuery.FIELD_NAME)) shouldBe Array(itemName)
+      }
+
+      it("reuses the cached hits of a search for its later pages and its count") { f =>
+        val (itemIndex, searchConfig) = f
+        def sample(name: String): Double =
+          CollectorRegistry.defaultRegistry.getSampleValue(
+            s"freetext_search_result_cache_${name}_total"
+          )
+
+        Given("five Items sorted by name")
+        val names = List("a", "b", "c", "d", "e")
+        val uuids = names.map(name => s"$name-cached-hits")
+        createIndexes(
+          itemIndex,
+          names.zip(uuids).flatMap { case (name, uuid) =>
+            generateIndexedItems(itemName = name, itemUuid = uuid)
+          }
+        )
+        searchConfig.setSortType(SortType.NAME)
+
+        When("the first two pages of a search are requested and then the search is counted")
+        val hits       = sample("hits")
+        val misses     = sample("misses")
+        val firstPage  = itemIndex.search(searchConfig, 0, 2, false)
+        val secondPage = itemIndex.search(searchConfig, 2, 2, false)
+        val count      = itemIndex.count(searchConfig, false)
+
+        Then("only the first page should run the query")
+        sample("misses") shouldBe misses + 1
+        sample("hits") shouldBe hits + 2
+
+        And("the pages and the count should be the same as without the cache")
+        def pageUuids(results: SearchResults[FreetextResult]) =
+          results.getResults.asScala.map(_.getItemIdKey.getUuid).toList
+        pageUuids(firstPage) shouldBe uuids.take(2)
+        pageUuids(secondPage) shouldBe uuids.slice(2, 4)
+        firstPage.getAvailable shouldBe 5
+        secondPage.getAvailable shouldBe 5
+        count shouldBe 5
+
+        When("the index changes")
+        createIndexes(itemIndex, generateIndexedItems(itemName = "f", itemUuid = "f-cached-hits"))
+
+        Then("the search should run the query against the new items")
+        itemIndex.count(searchConfig, false) shouldBe 6
+        sample("misses") shouldBe misses + 2
+      }
+
       it("supports filtering by Must clauses") { f =>
         val (itemIndex, searchConfig) = f
         val moderatingItemName        = "moderating item"
@@ -655,6 +767,162 @@ class ItemIndexTest
           java8
         )
       }
+
+      it("indexes schema nodes with the current definition of a schema") { _ =>
+        val indexer = new StandardIndexer
+        def properties(name: String) =
+          new PropBagEx(s"<xml><item><name>$name</name><title>$name</title></item></xml>")
+        def collectionWithSchema(fieldNode: String) = {
+          val schema = new Schema
+          schema.setId(1L)
+          schema.setUuid(schemaUuid)
+          schema.setDefinition(
+            new PropBagEx(s"<xml><item><$fieldNode field='true'></$fieldNode></item></xml>")
+          )
+          val collection = new ItemDefinition
+          collection.setUuid(collectionUuid)
+          collection.setSchema(schema)
+          collection
+        }
+        def indexedPaths(itemDef: ItemDefinition): Set[String] =
+          generateIndexedItems(properties = properties("java"), itemDef = itemDef, indexer = indexer)
+            .flatMap(_.getItemdoc.getValues(FreeTextQuery.FIELD_ALL))
+            .toSet
+
+        Given("an Item indexed with a schema where the name node is a field")
+        indexedPaths(collectionWithSchema("name")) shouldBe Set("/item/name")
+
+        When("the schema is loaded again with the same definition")
+        Then("the same node should be indexed")
+        indexedPaths(collectionWithSchema("name")) shouldBe Set("/item/name")
+
+        When("the schema definition changes so the title node is the field instead")
+        Then("the title node should be indexed rather than the name node")
+        indexedPaths(collectionWithSchema("title")) shouldBe Set("/item/title")
+      }
+
+      it("counts the values of a schema node for matching items") { f =>
+        val (itemIndex, searchConfig) = f
+        val node                      = "/item/name"
+        def properties(name: String)  = new PropBagEx(s"<xml><item><name>$name</name></item></xml>")
+
+        Given(s"a list of Items with repeated values for the schema node $node")
+        val items = List("java 8", "java 8", "java 11", "scala 3").flatMap(name =>
+          generateIndexedItems(itemName = name, properties = properties(name))
+        )
+        createIndexes(itemIndex, items)
+
+        When("the values of the node are counted for a query")
+        searchConfig.setQuery("java")
+        val result = itemIndex.facetCount(searchConfig, List(node).asJava)
+
+        Then("each value of the matching items should be counted")
+        result.get(node).asScala.map(p => (p.getFirst, p.getSecond)).toList shouldBe List(
+          ("java 11", 1),
+          ("java 8", 2)
+        )
+      }
+    }
+
+    describe("counting") {
+      it("counts several searches at once") { f =>
+        val (itemIndex, searchConfig) = f
+
+        Given("a list of Items where Item statuses are different")
+        val liveItems  = generateIndexedItems(1)
+        val draftItems = generateIndexedItems(2, itemStatus = ItemStatus.DRAFT)
+        createIndexes(itemIndex, liveItems ++ draftItems)
+
+        When("all Items, Live Items and a missing search are counted together")
+        val liveSearch = buildDefaultSearch
+        liveSearch.setItemStatuses(ItemStatus.LIVE)
+        val searches = List(searchConfig, liveSearch, null, liveSearch)
+        val counts   = itemIndex.counts(searches.asJava, false)
+
+        Then("each search should get the same count as counting it on its own")
+        counts shouldBe Array(3, 1, -1, 1)
+        counts(0) shouldBe itemIndex.count(searchConfig, false)
+        counts(1) shouldBe itemIndex.count(liveSearch, false)
+      }
+    }
+
+    describe("cursor paging") {
+      // Items which all tie on their last modified date, with the item ID sort field either
+      // replaced by a unique value or removed as it is in an index written before it existed.
+      def tiedItems(howMany: Int, withIdSort: Boolean): List[IndexedItem] = {
+        val dateModified = dateFormatter.parse("2023-07-10")
+        Range(0, howMany).toList.flatMap(i =>
+          generateIndexedItems(
+            dateModified = dateModified,
+            itemUuid = UUID.randomUUID().toString
+          ).map(indexedItem => {
+            indexedItem.getItemdoc.removeFields(FreeTextQuery.FIELD_ID_SORT)
+            if (withIdSort) {
+              indexedItem.getItemdoc.add(
+                AbstractIndexingExtension.numericSortingField(FreeTextQuery.FIELD_ID_SORT, i)
+              )
+            }
+            indexedItem
+          })
+        )
+      }
+
+      def pageThrough(itemIndex: ItemIndex[FreetextResult], search: DefaultSearch): List[String] = {
+        val uuids = List.newBuilder[String]
+        ExportService.forEachPage[CursorSearchResults[FreetextResult]](
+          itemIndex.searchAfter(search, _, 2, false),
+          results => Option(results.getNextCursor)
+        )(results => uuids ++= results.getResults.asScala.map(_.getItemIdKey.getUuid))
+        uuids.result()
+      }
+
+      it("returns every tied result of an index with item ID sort values") { f =>
+        val (itemIndex, searchConfig) = f
+
+        Given("Items which tie on the sort order but have item ID sort values")
+        val items = tiedItems(5, withIdSort = true)
+        createIndexes(itemIndex, items)
+        searchConfig.setSortType(SortType.DATEMODIFIED)
+
+        When("all the pages are walked through with cursors, as the CSV export does")
+        val uuids = pageThrough(itemIndex, searchConfig)
+
+        Then("each Item should be returned exactly once")
+        uuids.sorted shouldBe items.map(_.getItemIdKey.getUuid).sorted
+      }
+
+      it("returns every tied result of an index without item ID sort values") { f =>
+        val (itemIndex, searchConfig) = f
+
+        Given("Items which tie on the sort order and were indexed without item ID sort values")
+        val items = tiedItems(5, withIdSort = false)
+        createIndexes(itemIndex, items)
+        searchConfig.setSortType(SortType.DATEMODIFIED)
+
+        When("all the pages are walked through with cursors, as the CSV export does")
+        val uuids = pageThrough(itemIndex, searchConfig)
+
+        Then("each Item should be returned exactly once")
+        uuids.sorted shouldBe items.map(_.getItemIdKey.getUuid).sorted
+      }
+
+      it("pages by offset when only some documents have item ID sort values") { f =>
+        val (itemIndex, searchConfig) = f
+
+        Given("an index where only some Items have been reindexed")
+        val items = tiedItems(2, withIdSort = true) ++ tiedItems(3, withIdSort = false)
+        createIndexes(itemIndex, items)
+        searchConfig.setSortType(SortType.DATEMODIFIED)
+
+        When("the first page is requested")
+        val firstPage = itemIndex.searchAfter(searchConfig, null, 2, false)
+
+        Then("the cursor for the next page should be an offset")
+        SearchCursor.decode(firstPage.getNextCursor, 2).getOffset shouldBe 2
+        pageThrough(itemIndex, searchConfig).sorted shouldBe items
+          .map(_.getItemIdKey.getUuid)
+          .sorted
+      }
     }
   }
 
@@ -22,6 +22,8 @@ import com.google.common.io.ByteStreams;
 import com.tle.core.cluster.service.ClusterMessagingService;
 import com.tle.core.plugins.PluginAwareObjectInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -30,6 +32,8 @@ import java.text.MessageFormat;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -124,35 +128,46 @@ public class MessageReceiver implements Runnable {
                     + cmo);
           }
 
-          if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace(MessageFormat.format("Receiving message from NODE: {0}", senderId));
+          byte flags = dis.readByte();
+          int messageCount = dis.readInt();
+          int frameSize = dis.readInt();
+          if (frameSize > MessageSender.MAX_FRAME_SIZE) {
+            throw new RuntimeException("Message too big!");
           }
 
-          int messageSize = dis.readInt();
-
-          if (messageSize > ClusterMessagingService.MAX_MSG_SIZE) {
-            throw new RuntimeException("Message too big!");
+          if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace(
+                MessageFormat.format(
+                    "Receiving {0} messages from NODE: {1}", messageCount, senderId));
           }
 
-          byte[] data = new byte[messageSize];
+          byte[] data = new byte[frameSize];
           ByteStreams.readFully(dis, data);
           lastConnected = System.currentTimeMillis();
 
-          if (die) {
-            break;
+          if ((flags & MessageSender.FLAG_COMPRESSED) != 0) {
+            data = inflate(data);
           }
 
-          Object msg = PluginAwareObjectInputStream.fromBytes(data);
-          for (ClusterMessageHandler h : handlers) {
-            Runnable handler = h.canHandle(msg);
-            if (handler != null) {
-              executor.execute(handler);
+          DataInputStream frame = new DataInputStream(new ByteArrayInputStream(data));
+          for (int i = 0; i < messageCount && !die; i++) {
+            int messageSize = frame.readInt();
+            if (messageSize > ClusterMessagingService.MAX_MSG_SIZE) {
+              throw new RuntimeException("Message too big!");
             }
+            byte[] message = new byte[messageSize];
+            frame.readFully(message);
+            dispatch(PluginAwareObjectInputStream.fromBytes(message));
+          }
+
+          if (die) {
+            break;
           }
 
-          dos.writeBoolean(true);
+          // Acknowledge the whole frame with the offset of the next message expected
+          messageOffset = cmo + messageCount;
+          dos.writeLong(messageOffset);
           dos.flush();
-          messageOffset = cmo + 1;
         }
       } catch (IOException ex) {
         logError(senderId, ex);
@@ -162,6 +177,39 @@ public class MessageReceiver implements Runnable {
     }
   }
 
+  private void dispatch(Object msg) {
+    for (ClusterMessageHandler h : handlers) {
+      Runnable handler = h.canHandle(msg);
+      if (handler != null) {
+        executor.execute(handler);
+      }
+    }
+  }
+
+  private static byte[] inflate(byte[] data) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int length = inflater.inflate(buffer);
+        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated compressed message frame");
+        }
+        out.write(buffer, 0, length);
+        if (out.size() > MessageSender.MAX_FRAME_SIZE) {
+          throw new IOException("Message too big!");
+        }
+      }
+      return out.toByteArray();
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid compressed message frame", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
   private void checkLastConnected(long lastConnected) {
     if (lastConnected != 0
         && System.currentTimeMillis() - lastConnected > TimeUnit.MINUTES.toMillis(30)) {
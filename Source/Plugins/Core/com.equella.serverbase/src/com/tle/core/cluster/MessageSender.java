@@ -20,94 +20,255 @@ package com.tle.core.cluster;
 
 import com.tle.core.cluster.exception.MessagingException;
 import com.tle.core.cluster.service.ClusterMessagingService;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.text.MessageFormat;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Queues messages for a remote node and sends them over the connection established by that node.
+ *
+ * <p>Messages are sent in frames, each holding as many queued messages as will fit in {@link
+ * #MAX_FRAME_SIZE}. A frame is a Long offset of its first message (or -1 for a keep alive), a flags
+ * Byte, an Int count of messages and an Int length followed by the payload. The payload is each
+ * message prefixed by its Int length, deflated if {@link #FLAG_COMPRESSED} is set. The receiver
+ * acknowledges each frame with the Long offset of the next message it expects, and up to {@link
+ * #MAX_UNACKNOWLEDGED_FRAMES} frames are sent before waiting for an acknowledgement, so a burst of
+ * messages is not limited to one round trip per message.
+ */
 @SuppressWarnings("nls")
 public class MessageSender {
   private static final Logger LOGGER = LoggerFactory.getLogger(MessageSender.class);
 
-  private String receiverId; // Remote node
-  private final BlockingDeque<byte[]> msgQueue = new LinkedBlockingDeque<>();
+  public static final long KEEP_ALIVE = -1;
+  public static final byte FLAG_COMPRESSED = 1;
+  public static final int MAX_FRAME_SIZE = ClusterMessagingService.MAX_MSG_SIZE + Integer.BYTES;
+  static final int MAX_UNACKNOWLEDGED_FRAMES = 16;
+
+  // Payloads smaller than this are not worth the effort of compressing
+  private static final int MIN_COMPRESS_SIZE = 512;
+
+  private final String receiverId; // Remote node
+  private final boolean compress;
+
+  // Guarded by this
+  private final Deque<QueuedMessage> msgQueue = new ArrayDeque<>();
+  private final Deque<QueuedMessage> unacknowledged = new ArrayDeque<>();
+  private final Deque<Long> unacknowledgedFrameEnds = new ArrayDeque<>();
   private long totalQueueSize;
-  private long headOffset = 0;
+  private long nextOffset = 0;
 
   public MessageSender(String receiverId) {
+    this(receiverId, false);
+  }
+
+  public MessageSender(String receiverId, boolean compress) {
     this.receiverId = receiverId;
+    this.compress = compress;
   }
 
+  /**
+   * Send the next frame of queued messages, or a keep alive if nothing is queued within 5 seconds.
+   * Acknowledgements already received are processed without blocking, unless the maximum number of
+   * frames are waiting to be acknowledged.
+   */
   public void sendMessages(DataOutputStream dos, DataInputStream dis)
       throws IOException, InterruptedException {
-    byte[] msg = msgQueue.poll(5, TimeUnit.SECONDS);
-    if (msg == null) {
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(MessageFormat.format("Sending keepalive to NODE: {0}", receiverId));
+    boolean sent = false;
+    try {
+      readAcknowledgements(dis, unacknowledgedFrameCount() >= MAX_UNACKNOWLEDGED_FRAMES);
+
+      List<QueuedMessage> frame = takeFrame(TimeUnit.SECONDS.toMillis(5));
+      if (frame.isEmpty()) {
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug(MessageFormat.format("Sending keepalive to NODE: {0}", receiverId));
+        }
+        dos.writeLong(KEEP_ALIVE);
+        dos.flush();
+        sent = true;
+        return;
+      }
+
+      writeFrame(dos, frame);
+      sent = true;
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace(
+            MessageFormat.format("Sent {0} messages to NODE: {1}", frame.size(), receiverId));
+      }
+    } finally {
+      if (!sent) {
+        requeueUnacknowledged();
       }
-      dos.writeLong(-1);
-      dos.flush();
-      return;
     }
+  }
 
-    boolean processed = false;
-    try {
-      dos.writeLong(headOffset);
-      int msgSize = msg.length;
-      dos.writeInt(msgSize);
-      dos.write(msg);
-      dos.flush();
+  private synchronized int unacknowledgedFrameCount() {
+    return unacknowledgedFrameEnds.size();
+  }
 
-      if (LOGGER.isTraceEnabled()) {
-        LOGGER.trace(MessageFormat.format("Sending message to NODE: {0}", receiverId));
+  /**
+   * Remove the next frame of contiguous messages from the queue, waiting up to {@code waitMillis}
+   * for one to be queued. The messages are kept as unacknowledged until the receiver confirms them.
+   */
+  private synchronized List<QueuedMessage> takeFrame(long waitMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + waitMillis;
+    while (msgQueue.isEmpty()) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return List.of();
+      }
+      wait(remaining);
+    }
+
+    List<QueuedMessage> frame = new ArrayList<>();
+    int frameSize = 0;
+    QueuedMessage next = msgQueue.peekFirst();
+    while (next != null
+        && frameSize + Integer.BYTES + next.data.length <= MAX_FRAME_SIZE
+        && (frame.isEmpty() || next.offset == frame.get(frame.size() - 1).offset + 1)) {
+      msgQueue.removeFirst();
+      frame.add(next);
+      unacknowledged.add(next);
+      frameSize += Integer.BYTES + next.data.length;
+      next = msgQueue.peekFirst();
+    }
+    unacknowledgedFrameEnds.add(frame.get(frame.size() - 1).offset + 1);
+    return frame;
+  }
+
+  private void writeFrame(DataOutputStream dos, List<QueuedMessage> frame) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream payload = new DataOutputStream(bytes);
+    for (QueuedMessage msg : frame) {
+      payload.writeInt(msg.data.length);
+      payload.write(msg.data);
+    }
+    payload.flush();
+
+    byte flags = 0;
+    byte[] data = bytes.toByteArray();
+    if (compress && data.length >= MIN_COMPRESS_SIZE) {
+      byte[] compressed = deflate(data);
+      if (compressed.length < data.length) {
+        data = compressed;
+        flags |= FLAG_COMPRESSED;
       }
+    }
 
-      dis.readBoolean();
+    dos.writeLong(frame.get(0).offset);
+    dos.writeByte(flags);
+    dos.writeInt(frame.size());
+    dos.writeInt(data.length);
+    dos.write(data);
+    dos.flush();
+  }
 
-      synchronized (this) {
-        totalQueueSize -= msgSize;
-        headOffset++;
-        processed = true;
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
       }
+      return out.toByteArray();
     } finally {
-      if (!processed) {
-        msgQueue.addFirst(msg);
+      deflater.end();
+    }
+  }
+
+  /**
+   * Process the cumulative acknowledgements sent by the receiver. If {@code block} is true, wait
+   * for at least one.
+   */
+  private void readAcknowledgements(DataInputStream dis, boolean block) throws IOException {
+    while (block || dis.available() >= Long.BYTES) {
+      acknowledge(dis.readLong());
+      block = false;
+    }
+  }
+
+  private synchronized void acknowledge(long nextExpected) {
+    Iterator<QueuedMessage> iter = unacknowledged.iterator();
+    while (iter.hasNext()) {
+      QueuedMessage msg = iter.next();
+      if (msg.offset >= nextExpected) {
+        break;
       }
+      totalQueueSize -= msg.data.length;
+      iter.remove();
+    }
+    while (!unacknowledgedFrameEnds.isEmpty()
+        && unacknowledgedFrameEnds.peekFirst() <= nextExpected) {
+      unacknowledgedFrameEnds.removeFirst();
     }
   }
 
+  /**
+   * Put any messages which were sent but not acknowledged back on the front of the queue, so they
+   * are sent again once the receiver reconnects.
+   */
+  private synchronized void requeueUnacknowledged() {
+    Iterator<QueuedMessage> iter = unacknowledged.descendingIterator();
+    while (iter.hasNext()) {
+      msgQueue.addFirst(iter.next());
+    }
+    unacknowledged.clear();
+    unacknowledgedFrameEnds.clear();
+  }
+
+  /**
+   * Read the offset of the next message the receiver expects when it (re)connects. Messages which
+   * were processed but whose acknowledgement was lost are not sent again.
+   */
   public void checkExpectedOffset(DataInputStream dis) throws IOException {
     long expectedOffset = dis.readLong();
-    if (LOGGER.isTraceEnabled()) {
-      LOGGER.trace(
-          MessageFormat.format(
-              "Expected offset: {0}, Head offset: {1}", expectedOffset, headOffset));
-    }
-    if (expectedOffset != -1 && expectedOffset != headOffset) {
-      LOGGER.warn(
-          MessageFormat.format(
-              "NODE: {0} was down for too long. {1} messages have been missed",
-              receiverId, (headOffset - expectedOffset)));
+    synchronized (this) {
+      requeueUnacknowledged();
+      long headOffset = msgQueue.isEmpty() ? nextOffset : msgQueue.peekFirst().offset;
+      if (LOGGER.isTraceEnabled()) {
+        LOGGER.trace(
+            MessageFormat.format(
+                "Expected offset: {0}, Head offset: {1}", expectedOffset, headOffset));
+      }
+      if (expectedOffset == -1) {
+        return;
+      }
+      if (expectedOffset < headOffset) {
+        LOGGER.warn(
+            MessageFormat.format(
+                "NODE: {0} was down for too long. {1} messages have been missed",
+                receiverId, (headOffset - expectedOffset)));
+      }
+      while (!msgQueue.isEmpty() && msgQueue.peekFirst().offset < expectedOffset) {
+        totalQueueSize -= msgQueue.removeFirst().data.length;
+      }
     }
   }
 
   public synchronized void queueMessage(byte[] msg) {
-    totalQueueSize += msg.length;
-
     if (msg.length > ClusterMessagingService.MAX_MSG_SIZE) {
       throw new MessagingException("Message is too large");
     }
 
+    totalQueueSize += msg.length;
+
     int droppedMsgs = 0;
     while (totalQueueSize > ClusterMessagingService.MAX_QUEUE_SIZE && !msgQueue.isEmpty()) {
-      byte[] firstMsg = msgQueue.removeFirst();
-      totalQueueSize -= firstMsg.length;
-      headOffset++;
+      QueuedMessage firstMsg = msgQueue.removeFirst();
+      totalQueueSize -= firstMsg.data.length;
       droppedMsgs++;
     }
     if (droppedMsgs > 0) {
@@ -120,6 +281,17 @@ public class MessageSender {
               "Queueing message of size: {0}, Total queue size: {1}", msg.length, totalQueueSize));
     }
 
-    msgQueue.add(msg);
+    msgQueue.add(new QueuedMessage(nextOffset++, msg));
+    notifyAll();
+  }
+
+  private static final class QueuedMessage {
+    private final long offset;
+    private final byte[] data;
+
+    private QueuedMessage(long offset, byte[] data) {
+      this.offset = offset;
+      this.data = data;
+    }
   }
 }
@@ -85,6 +85,10 @@ public class ClusterMessagingServiceImpl
   @Named("messaging.bindPort")
   private int bindPort;
 
+  @Inject(optional = true)
+  @Named("messaging.compressMessages")
+  private boolean compressMessages;
+
   @Inject private PluginTracker<ClusterMessageHandler> handlerTracker;
   @Inject private ZookeeperService zookeeperService;
 
@@ -116,7 +120,7 @@ public class ClusterMessagingServiceImpl
                   if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Loading sender cache for NODE: " + receiverId);
                   }
-                  return new MessageSender(receiverId);
+                  return new MessageSender(receiverId, compressMessages);
                 }
               });
 
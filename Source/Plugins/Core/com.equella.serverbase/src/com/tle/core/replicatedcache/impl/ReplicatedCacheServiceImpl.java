@@ -48,16 +48,16 @@ import com.tle.core.replicatedcache.dao.CachedValue;
 import com.tle.core.replicatedcache.dao.ReplicatedCacheDao;
 import com.tle.core.scheduler.ScheduledTask;
 import com.tle.core.zookeeper.ZookeeperService;
+import io.prometheus.client.Counter;
 import java.io.Serializable;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 
 @Singleton
 @NonNullByDefault
@@ -75,7 +75,24 @@ public class ReplicatedCacheServiceImpl
   /** Caches identified by cacheId. */
   private final Cache<String, ReplicatedCacheImpl<?>> caches = CacheBuilder.newBuilder().build();
 
-  private static final Log LOGGER = LogFactory.getLog(ReplicatedCacheServiceImpl.class);
+  private static final Counter LOCAL_HITS =
+      Counter.build()
+          .name("replicated_cache_local_hits")
+          .help("Replicated cache reads served from the local in-memory cache")
+          .labelNames("cache")
+          .register();
+  private static final Counter DB_FALLBACKS =
+      Counter.build()
+          .name("replicated_cache_db_fallbacks")
+          .help("Replicated cache reads which were not cached locally and went to the database")
+          .labelNames("cache")
+          .register();
+  private static final Counter MISSES =
+      Counter.build()
+          .name("replicated_cache_misses")
+          .help("Replicated cache reads of keys not held by a cache which is not persisted")
+          .labelNames("cache")
+          .register();
 
   @Override
   public synchronized <V extends Serializable> ReplicatedCache<V> getCache(
@@ -100,40 +117,38 @@ public class ReplicatedCacheServiceImpl
   /**
    * A cache which is replicated across a cluster, where the key/values are partitioned first based
    * on Institution. If the server is not running in clustered mode, the values are stored in
-   * memory. In clustered mode, synchronisation of the in-memory store is done via Zookeeper
-   * signaling and database persistence.
+   * memory. In clustered mode, values are persisted to the database and the in-memory store of
+   * other nodes is kept in sync with {@link ReplicatedCacheInvalidationEvent}s.
    *
    * <p>Partitioning is done by utilising a two-level cache. The first level is at the institution
    * level, and the second level is at the key/value level. As well as providing the partitioning,
    * this also allows us to remove all keys for an institution in one go, which is useful when none
    * have been used for an extended period of time.
    *
-   * <p><strong>TTL</strong> for cache entries is controlled in two main ways. Firstly, the values
-   * are wrapped in an {@code ExpiringValue} which allows us to set a TTL on the value itself.
-   * Secondly, both levels of cache have an access TTL on them of one day - this seems to have been
-   * added to ensure that memory isn't wasted by caches being left lying around.
-   *
-   * <p>Reviewing the use of {@code ExpiringValue} it seemed to be done to support the replication
-   * of values and ensure that the TTL could be consistent across nodes. As it can be seen that the
-   * TTL is also stored in {@code CachedValue} as a {@code Date}. And then when it is read back in
-   * via the {@code LoadingCache} mechanisms this is used to set the TTL on the {@code
-   * ExpiringValue}.
+   * <p><strong>Reads</strong> are served from the local cache without any locking. Only when a key
+   * is not held locally is the database consulted (when persisted), and the value found there is
+   * then cached locally until it expires or an invalidation event for it is received. Absent values
+   * are never cached for persisted caches, so a value put on another node is always found on the
+   * first read even if the invalidation event has not arrived yet. To stop a database read racing
+   * with an invalidation from caching a stale value, each cache keeps a version which every
+   * invalidation increments; a loaded value is discarded if the version changed while loading.
    *
-   * <p>Lastly, note that the {@code ExpiredValue} is also wrapped in an {@code Optional}. It would
-   * seem this has been done to support the case where the value is requested from the DAO but none
-   * is there and in which case {@code null} is returned. (It does unfortunately mean that the cache
-   * is possibly wasting memory storing a number number of `Optional.absent` values rather than
-   * storing nothing. Perhaps something to review.)
+   * <p><strong>TTL</strong> for cache entries is controlled in two main ways. Firstly, the values
+   * are wrapped in an {@code ExpiringValue} which allows us to set a TTL on the value itself, which
+   * is consistent across nodes as the TTL is also stored in {@code CachedValue}. Secondly, both
+   * levels of cache have an access TTL on them of one day to ensure that memory isn't wasted by
+   * caches being left lying around.
    *
    * @param <V> the type for the values which will be cached.
    */
   @NonNullByDefault
   private class ReplicatedCacheImpl<V extends Serializable> implements ReplicatedCache<V> {
     private final String cacheId;
-    private final LoadingCache<Institution, LoadingCache<String, Optional<ExpiringValue<V>>>> cache;
+    private final LoadingCache<Institution, Cache<String, ExpiringValue<V>>> cache;
     private final long ttl;
     private final TimeUnit ttlUnit;
     private final boolean alwaysPersist;
+    private final AtomicLong version = new AtomicLong();
 
     public ReplicatedCacheImpl(
         String cacheId,
@@ -152,62 +167,60 @@ public class ReplicatedCacheServiceImpl
           CacheBuilder.newBuilder()
               .expireAfterAccess(1, TimeUnit.DAYS)
               .build(
-                  new CacheLoader<Institution, LoadingCache<String, Optional<ExpiringValue<V>>>>() {
+                  new CacheLoader<Institution, Cache<String, ExpiringValue<V>>>() {
                     @Override
-                    public LoadingCache<String, Optional<ExpiringValue<V>>> load(Institution key)
-                        throws Exception {
+                    public Cache<String, ExpiringValue<V>> load(Institution key) {
                       return CacheBuilder.newBuilder()
                           .maximumSize(maxLocalCacheSize)
                           .softValues()
                           .expireAfterWrite(ttl, ttlUnit)
                           .expireAfterAccess(1, TimeUnit.DAYS)
-                          .build(
-                              new CacheLoader<String, Optional<ExpiringValue<V>>>() {
-                                @Override
-                                public Optional<ExpiringValue<V>> load(String key)
-                                    throws Exception {
-                                  if (!zookeeperService.isCluster() && !alwaysPersist) {
-                                    return Optional.absent();
-                                  }
-
-                                  CachedValue cv = dao.get(ReplicatedCacheImpl.this.cacheId, key);
-
-                                  // Return Absent so we don't keep looking it
-                                  // up.
-                                  if (cv == null) {
-                                    return Optional.absent();
-                                  }
-
-                                  @SuppressWarnings("unchecked")
-                                  V v = (V) PluginAwareObjectInputStream.fromBytes(cv.getValue());
-                                  return Optional.of(
-                                      ExpiringValue.expireAt(v, cv.getTtl().getTime()));
-                                }
-                              });
+                          .build();
                     }
                   });
     }
 
+    private boolean isPersisted() {
+      return alwaysPersist || zookeeperService.isCluster();
+    }
+
     @Override
-    public synchronized Optional<V> get(@NonNull String key) {
+    public Optional<V> get(@NonNull String key) {
       checkNotNull(key);
-      if (alwaysPersist || zookeeperService.isCluster()) {
-        cache.refresh(CurrentInstitution.get());
+      Cache<String, ExpiringValue<V>> c = cache.getUnchecked(CurrentInstitution.get());
+
+      ExpiringValue<V> local = c.getIfPresent(key);
+      if (local != null) {
+        V value = local.getValue();
+        if (value != null) {
+          LOCAL_HITS.labels(cacheId).inc();
+          return Optional.of(value);
+        }
+        c.asMap().remove(key, local);
       }
 
-      LoadingCache<String, Optional<ExpiringValue<V>>> c;
-      try {
-        c = cache.get(CurrentInstitution.get());
-        Optional<ExpiringValue<V>> op = c.getUnchecked(key);
-        if (op.isPresent()) {
-          V ev = op.get().getValue();
-          return Optional.fromNullable(ev);
-        }
+      if (!isPersisted()) {
+        MISSES.labels(cacheId).inc();
+        return Optional.absent();
+      }
 
-      } catch (ExecutionException e) {
-        LOGGER.error("Fail to access cache of institution " + CurrentInstitution.get());
+      DB_FALLBACKS.labels(cacheId).inc();
+      long loadVersion = version.get();
+      CachedValue cv = dao.get(cacheId, key);
+      if (cv == null) {
+        return Optional.absent();
       }
-      return Optional.absent();
+
+      @SuppressWarnings("unchecked")
+      V v = (V) PluginAwareObjectInputStream.fromBytes(cv.getValue());
+      ExpiringValue<V> loaded = ExpiringValue.expireAt(v, cv.getTtl().getTime());
+      c.asMap().putIfAbsent(key, loaded);
+      // An invalidation may have arrived while loading, in which case what was read can't be
+      // trusted to stay in the local cache.
+      if (version.get() != loadVersion) {
+        c.asMap().remove(key, loaded);
+      }
+      return Optional.fromNullable(loaded.getValue());
     }
 
     @Override
@@ -220,20 +233,19 @@ public class ReplicatedCacheServiceImpl
       checkNotNull(key);
       checkNotNull(value);
 
-      LoadingCache<String, Optional<ExpiringValue<V>>> c =
-          cache.getUnchecked(CurrentInstitution.get());
+      Cache<String, ExpiringValue<V>> c = cache.getUnchecked(CurrentInstitution.get());
 
       // Do nothing if the value hasn't changed
-      Optional<ExpiringValue<V>> opExVal = c.getIfPresent(key);
-      if (opExVal != null && opExVal.isPresent()) {
-        V oldValue = opExVal.get().getValue();
+      ExpiringValue<V> exVal = c.getIfPresent(key);
+      if (exVal != null) {
+        V oldValue = exVal.getValue();
         if (oldValue != null && oldValue.equals(value)) {
           return;
         }
       }
 
       // Update the DB state if it's clustered
-      if (alwaysPersist || zookeeperService.isCluster()) {
+      if (isPersisted()) {
         dao.put(cacheId, key, Date.from(dbEntryTTL), PluginAwareObjectOutputStream.toBytes(value));
       }
 
@@ -241,7 +253,8 @@ public class ReplicatedCacheServiceImpl
       invalidateOthers(key);
 
       // Update our local cache
-      c.put(key, Optional.of(ExpiringValue.expireAfter(value, ttl, ttlUnit)));
+      version.incrementAndGet();
+      c.put(key, ExpiringValue.expireAfter(value, ttl, ttlUnit));
     }
 
     @Override
@@ -251,7 +264,7 @@ public class ReplicatedCacheServiceImpl
         return;
       }
 
-      if (alwaysPersist || zookeeperService.isCluster()) {
+      if (isPersisted()) {
         dao.invalidate(cacheId, keys);
       }
 
@@ -260,11 +273,10 @@ public class ReplicatedCacheServiceImpl
     }
 
     public void invalidateLocal(String... keys) {
-      LoadingCache<String, ?> c = cache.getIfPresent(CurrentInstitution.get());
+      version.incrementAndGet();
+      Cache<String, ?> c = cache.getIfPresent(CurrentInstitution.get());
       if (c != null) {
-        for (String key : keys) {
-          c.invalidate(key);
-        }
+        c.invalidateAll(Arrays.asList(keys));
       }
     }
 
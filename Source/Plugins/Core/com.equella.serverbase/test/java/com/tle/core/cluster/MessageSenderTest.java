@@ -0,0 +1,137 @@
+package com.tle.core.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Inflater;
+import junit.framework.TestCase;
+
+public class MessageSenderTest extends TestCase {
+  private static final DataInputStream NO_ACKS =
+      new DataInputStream(new ByteArrayInputStream(new byte[0]));
+
+  public void testBatchesQueuedMessagesIntoOneFrame() throws Exception {
+    MessageSender sender = new MessageSender("node");
+    sender.queueMessage(bytes("one"));
+    sender.queueMessage(bytes("two"));
+    sender.queueMessage(bytes("three"));
+
+    Frame frame = send(sender, NO_ACKS);
+    assertEquals(0, frame.offset);
+    assertEquals(Arrays.asList("one", "two", "three"), frame.messages);
+  }
+
+  public void testSendsWithoutWaitingForAcknowledgement() throws Exception {
+    MessageSender sender = new MessageSender("node");
+    sender.queueMessage(bytes("one"));
+    assertEquals(0, send(sender, NO_ACKS).offset);
+
+    sender.queueMessage(bytes("two"));
+    Frame frame = send(sender, NO_ACKS);
+    assertEquals(1, frame.offset);
+    assertEquals(Arrays.asList("two"), frame.messages);
+  }
+
+  public void testResendsUnacknowledgedMessagesOnReconnect() throws Exception {
+    MessageSender sender = new MessageSender("node");
+    sender.queueMessage(bytes("one"));
+    sender.queueMessage(bytes("two"));
+    send(sender, NO_ACKS);
+    sender.queueMessage(bytes("three"));
+    send(sender, NO_ACKS);
+
+    // The receiver processed the first frame but the acknowledgement was lost
+    sender.checkExpectedOffset(acks(2));
+
+    Frame frame = send(sender, NO_ACKS);
+    assertEquals(2, frame.offset);
+    assertEquals(Arrays.asList("three"), frame.messages);
+  }
+
+  public void testAcknowledgedMessagesAreNotResent() throws Exception {
+    MessageSender sender = new MessageSender("node");
+    sender.queueMessage(bytes("one"));
+    send(sender, NO_ACKS);
+
+    sender.queueMessage(bytes("two"));
+    send(sender, acks(1));
+
+    sender.checkExpectedOffset(acks(-1));
+    Frame frame = send(sender, NO_ACKS);
+    assertEquals(1, frame.offset);
+    assertEquals(Arrays.asList("two"), frame.messages);
+  }
+
+  public void testCompressesLargeFrames() throws Exception {
+    MessageSender sender = new MessageSender("node", true);
+    char[] repeated = new char[4096];
+    Arrays.fill(repeated, 'a');
+    String message = new String(repeated);
+    sender.queueMessage(bytes(message));
+
+    Frame frame = send(sender, NO_ACKS);
+    assertTrue(frame.compressed);
+    assertEquals(Arrays.asList(message), frame.messages);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static DataInputStream acks(long... offsets) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (long offset : offsets) {
+      out.writeLong(offset);
+    }
+    return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+  }
+
+  private static Frame send(MessageSender sender, DataInputStream acks) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    sender.sendMessages(new DataOutputStream(bytes), acks);
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    Frame frame = new Frame();
+    frame.offset = in.readLong();
+    frame.compressed = (in.readByte() & MessageSender.FLAG_COMPRESSED) != 0;
+    int count = in.readInt();
+    byte[] payload = new byte[in.readInt()];
+    in.readFully(payload);
+    if (frame.compressed) {
+      payload = inflate(payload);
+    }
+
+    DataInputStream messages = new DataInputStream(new ByteArrayInputStream(payload));
+    for (int i = 0; i < count; i++) {
+      byte[] message = new byte[messages.readInt()];
+      messages.readFully(message);
+      frame.messages.add(new String(message, StandardCharsets.UTF_8));
+    }
+    return frame;
+  }
+
+  private static byte[] inflate(byte[] data) throws Exception {
+    Inflater inflater = new Inflater();
+    inflater.setInput(data);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    while (!inflater.finished()) {
+      out.write(buffer, 0, inflater.inflate(buffer));
+    }
+    inflater.end();
+    return out.toByteArray();
+  }
+
+  private static final class Frame {
+    private long offset;
+    private boolean compressed;
+    private final List<String> messages = new ArrayList<>();
+  }
+}
@@ -0,0 +1,127 @@
+package com.tle.core.replicatedcache.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tle.beans.Institution;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.events.services.EventService;
+import com.tle.core.plugins.PluginAwareObjectOutputStream;
+import com.tle.core.replicatedcache.ReplicatedCacheService.ReplicatedCache;
+import com.tle.core.replicatedcache.dao.CachedValue;
+import com.tle.core.replicatedcache.dao.ReplicatedCacheDao;
+import com.tle.core.zookeeper.ZookeeperService;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@SuppressWarnings("nls")
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ReplicatedCacheServiceImplTest {
+  private static final String CACHE_ID = "test-cache";
+
+  @Mock private ReplicatedCacheDao dao;
+  @Mock private EventService eventService;
+  @Mock private ZookeeperService zookeeperService;
+  @InjectMocks private ReplicatedCacheServiceImpl cacheService;
+
+  @Before
+  public void setUp() {
+    CurrentInstitution.set(new Institution());
+    when(zookeeperService.isCluster()).thenReturn(true);
+  }
+
+  @After
+  public void tearDown() {
+    CurrentInstitution.remove();
+  }
+
+  @Test
+  public void readsThroughToTheDatabaseOnlyOnce() {
+    when(dao.get(CACHE_ID, "key")).thenReturn(cachedValue("value"));
+    ReplicatedCache<String> cache = cache();
+
+    assertEquals("value", cache.get("key").get());
+    assertEquals("value", cache.get("key").get());
+    verify(dao, times(1)).get(CACHE_ID, "key");
+  }
+
+  @Test
+  public void servesPutValuesLocally() {
+    ReplicatedCache<String> cache = cache();
+    cache.put("key", "value");
+
+    assertEquals("value", cache.get("key").get());
+    verify(dao, never()).get(CACHE_ID, "key");
+  }
+
+  @Test
+  public void doesNotCacheAbsentValues() {
+    // Put on another node before its invalidation event arrived here
+    when(dao.get(CACHE_ID, "key")).thenReturn(null, cachedValue("value"));
+    ReplicatedCache<String> cache = cache();
+
+    assertFalse(cache.get("key").isPresent());
+    assertEquals("value", cache.get("key").get());
+  }
+
+  @Test
+  public void rereadsInvalidatedEntries() {
+    when(dao.get(CACHE_ID, "key")).thenReturn(cachedValue("old"), cachedValue("new"));
+    ReplicatedCache<String> cache = cache();
+
+    assertEquals("old", cache.get("key").get());
+    cacheService.invalidateCacheEntries(CACHE_ID, "key");
+    assertEquals("new", cache.get("key").get());
+    verify(dao, times(2)).get(CACHE_ID, "key");
+  }
+
+  @Test
+  public void doesNotKeepValuesInvalidatedWhileLoading() {
+    when(dao.get(CACHE_ID, "key"))
+        .thenAnswer(
+            invocation -> {
+              CachedValue stale = cachedValue("stale");
+              cacheService.invalidateCacheEntries(CACHE_ID, "key");
+              return stale;
+            })
+        .thenReturn(cachedValue("fresh"));
+    ReplicatedCache<String> cache = cache();
+
+    assertEquals("stale", cache.get("key").get());
+    assertEquals("fresh", cache.get("key").get());
+  }
+
+  @Test
+  public void missesWithoutTheDatabaseWhenNotPersisted() {
+    when(zookeeperService.isCluster()).thenReturn(false);
+    ReplicatedCache<String> cache = cache();
+
+    assertFalse(cache.get("key").isPresent());
+    verify(dao, never()).get(anyString(), anyString());
+  }
+
+  private ReplicatedCache<String> cache() {
+    return cacheService.getCache(CACHE_ID, 100, 1, TimeUnit.HOURS);
+  }
+
+  private static CachedValue cachedValue(String value) {
+    CachedValue cv = new CachedValue();
+    cv.setCacheId(CACHE_ID);
+    cv.setKey("key");
+    cv.setTtl(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+    cv.setValue(PluginAwareObjectOutputStream.toBytes(value));
+    return cv;
+  }
+}
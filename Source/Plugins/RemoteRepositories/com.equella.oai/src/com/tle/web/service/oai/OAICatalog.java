@@ -30,7 +30,6 @@ import ORG.oclc.oai.server.verb.NoSetHierarchyException;
 import ORG.oclc.oai.server.verb.OAIInternalServerError;
 import ORG.oclc.oai.util.OAIUtil;
 import com.google.common.base.Function;
-import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.tle.beans.entity.DynaCollection;
 import com.tle.beans.item.Item;
@@ -47,17 +46,17 @@ import com.tle.core.freetext.queries.FreeTextBooleanQuery;
 import com.tle.core.freetext.service.FreeTextService;
 import com.tle.core.institution.InstitutionService;
 import com.tle.core.item.service.ItemService;
-import com.tle.core.replicatedcache.ReplicatedCacheService;
-import com.tle.core.replicatedcache.ReplicatedCacheService.ReplicatedCache;
 import com.tle.core.schema.service.SchemaService;
 import com.tle.core.search.QueryGatherer;
 import com.tle.core.search.VirtualisableAndValue;
 import com.tle.core.services.item.FreetextResult;
 import com.tle.core.services.item.FreetextSearchResults;
+import com.tle.core.services.user.UserPreferenceService;
 import com.tle.core.settings.service.ConfigurationService;
-import java.io.Serializable;
+import java.security.SecureRandom;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -65,9 +64,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.UUID;
 import java.util.Vector;
-import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -81,6 +78,7 @@ public class OAICatalog extends AbstractCatalog {
   private static final Logger LOGGER = LoggerFactory.getLogger(OAICatalog.class);
   private static final int MAX_RESULTS = 10;
   private static final String OAI_USAGE = "oaiUsage";
+  private static final String TOKEN_SECRET_PROPERTY = "oai.resumptiontoken.secret";
 
   @Inject private FreeTextService freeTextService;
   @Inject private ItemService itemService;
@@ -88,8 +86,7 @@ public class OAICatalog extends AbstractCatalog {
   @Inject private SchemaService schemaService;
   @Inject private ConfigurationService configService;
   @Inject private InstitutionService institutionService;
-
-  private ReplicatedCache<ResumptionToken> resumptionTokens;
+  @Inject private UserPreferenceService userPreferenceService;
 
   public OAICatalog(Properties props // NOSONAR
       ) {
@@ -98,11 +95,6 @@ public class OAICatalog extends AbstractCatalog {
     // framework using reflection.
   }
 
-  @Inject
-  public void setReplicatedCacheService(ReplicatedCacheService service) {
-    resumptionTokens = service.getCache("oai-resumptiontokens", 2000, 1, TimeUnit.HOURS);
-  }
-
   @Override
   public String getDescriptions() {
     OAIUtils utils = OAIUtils.getInstance(institutionService, configService);
@@ -248,40 +240,40 @@ public class OAICatalog extends AbstractCatalog {
     // NOTHING TO DO
   }
 
-  private static class ResumptionToken implements Serializable {
-    private final DefaultSearch request;
-    private final String format;
-    private final int start;
-
-    public ResumptionToken(int start, DefaultSearch request, String format) {
-      this.start = start;
-      this.request = request;
-      this.format = format;
-    }
-  }
-
   private Map<?, ?> list(String stoken, Handler handler)
       throws BadResumptionTokenException, OAIInternalServerError {
-    Optional<ResumptionToken> maybeToken = resumptionTokens.get(stoken);
-    if (!maybeToken.isPresent()) {
+    ResumptionToken token = ResumptionToken.decode(stoken, getTokenSecret());
+    if (!Check.isEmpty(token.set) && !isSetAvailable(token.set)) {
+      // The set has been removed, or is no longer used by OAI, since the list was started
+      LOGGER.warn("Set " + token.set + " of resumption token is no longer available");
       throw new BadResumptionTokenException();
     }
-
     try {
-      // Token is only valid for one use
-      resumptionTokens.invalidate(stoken);
-
-      ResumptionToken token = maybeToken.get();
-      return list(token.request, token.format, token.start + MAX_RESULTS, handler);
+      DefaultSearch search = createSearch(token.set, token.from, token.until, token.metadataPrefix);
+      return list(search, token, handler);
     } catch (NoRecordsMatchException e) {
       LOGGER.error("No records match", e);
       throw new BadResumptionTokenException();
+    } catch (BadArgumentException e) {
+      LOGGER.warn("Invalid arguments in resumption token", e);
+      throw new BadResumptionTokenException();
     }
   }
 
+  private boolean isSetAvailable(String set) {
+    final DynaCollection dc = dynaCollectionService.getByUuid(set.split(":", 2)[0]);
+    return dc != null && dc.getUsageIds() != null && dc.getUsageIds().contains(OAI_USAGE);
+  }
+
   private Map<?, ?> list(
       String set, String from, String until, String metadataFormat, Handler handler)
       throws NoRecordsMatchException, BadArgumentException, OAIInternalServerError {
+    DefaultSearch search = createSearch(set, from, until, metadataFormat);
+    return list(search, new ResumptionToken(set, from, until, metadataFormat, null, 0), handler);
+  }
+
+  private DefaultSearch createSearch(String set, String from, String until, String metadataFormat)
+      throws BadArgumentException {
     final OAIUtils utils = OAIUtils.getInstance(institutionService, configService);
     DefaultSearch search = new DefaultSearch();
     search.setSortType(SortType.DATEMODIFIED);
@@ -302,8 +294,7 @@ public class OAICatalog extends AbstractCatalog {
     if (from != null || until != null) {
       search.setDateRange(new Date[] {parseDate(from), parseDate(until)});
     }
-
-    return list(search, metadataFormat, 0, handler);
+    return search;
   }
 
   private Date parseDate(String s) throws BadArgumentException {
@@ -354,28 +345,41 @@ public class OAICatalog extends AbstractCatalog {
     search.setFreeTextQuery(dynaCollectionService.getSearchClause(dc, virtualiseValue));
   }
 
-  private Map<String, Map<?, ?>> list(
-      DefaultSearch request, String format, int start, Handler handler)
+  /**
+   * Lists the page of records after the cursor of the token. Pages are found with a search after
+   * the date modified and ID of the last record of the previous page, rather than an offset, so
+   * that later pages of a large list cost no more than the first. Records which share a date
+   * modified are never skipped, as indexes without item ID sort values are paged by offset.
+   */
+  private Map<String, Map<?, ?>> list(DefaultSearch request, ResumptionToken token, Handler handler)
       throws NoRecordsMatchException, OAIInternalServerError {
     try {
       Map<String, Map<?, ?>> items = new HashMap<String, Map<?, ?>>();
 
       FreetextSearchResults<FreetextResult> results =
-          freeTextService.search(request, start, MAX_RESULTS);
+          freeTextService.searchAfter(
+              request, token.cursor, MAX_RESULTS, userPreferenceService.isSearchAttachment());
 
       int available = results.getAvailable();
       if (available == 0) {
         throw new NoRecordsMatchException();
       }
       for (Item item : results.getResults()) {
-        handler.add(item, format);
+        handler.add(item, token.metadataPrefix);
       }
 
-      if (available > start + MAX_RESULTS) {
-        String uuid = UUID.randomUUID().toString();
-        Map<?, ?> map = getResumptionMap(uuid, available, start);
-        ResumptionToken token = new ResumptionToken(start, request, format);
-        resumptionTokens.put(uuid, token);
+      int start = token.position;
+      String nextCursor = results.getNextCursor();
+      if (nextCursor != null && available > start + MAX_RESULTS) {
+        ResumptionToken next =
+            new ResumptionToken(
+                token.set,
+                token.from,
+                token.until,
+                token.metadataPrefix,
+                nextCursor,
+                start + MAX_RESULTS);
+        Map<?, ?> map = getResumptionMap(next.encode(getTokenSecret()), available, start);
         items.put("resumptionMap", map); // $NON-NLS-1$
       }
       handler.put(items);
@@ -389,6 +393,23 @@ public class OAICatalog extends AbstractCatalog {
     }
   }
 
+  /**
+   * The secret resumption tokens are signed with, created the first time it's needed. Concurrent
+   * first requests, on any node of the cluster, must agree on one secret, so only the first one
+   * saved is kept and the others use it instead of the one they generated.
+   */
+  private byte[] getTokenSecret() {
+    String secret = configService.getProperty(TOKEN_SECRET_PROPERTY);
+    if (Check.isEmpty(secret)) {
+      byte[] bytes = new byte[32];
+      new SecureRandom().nextBytes(bytes);
+      secret =
+          configService.setPropertyIfAbsent(
+              TOKEN_SECRET_PROPERTY, Base64.getEncoder().encodeToString(bytes));
+    }
+    return Base64.getDecoder().decode(secret);
+  }
+
   private interface Handler {
     void add(Item item, String metadataPrefix) throws Exception;
 
@@ -0,0 +1,143 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.web.service.oai;
+
+import ORG.oclc.oai.server.verb.BadResumptionTokenException;
+import com.tle.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A self-contained resumption token, holding the arguments of the original list request and the
+ * search cursor after the last record returned. Any node can carry on the list from the token
+ * alone, and each page costs the same however deep into the list it is. Tokens are signed with a
+ * secret of the institution, so harvesters can't alter them.
+ */
+@SuppressWarnings("nls")
+final class ResumptionToken {
+  private static final int VERSION = 1;
+  private static final String ALGORITHM = "HmacSHA256";
+
+  @Nullable final String set;
+  @Nullable final String from;
+  @Nullable final String until;
+  final String metadataPrefix;
+  // Null for the first page, which is never encoded
+  @Nullable final String cursor;
+  // The number of records already returned
+  final int position;
+
+  ResumptionToken(
+      @Nullable String set,
+      @Nullable String from,
+      @Nullable String until,
+      String metadataPrefix,
+      @Nullable String cursor,
+      int position) {
+    this.set = set;
+    this.from = from;
+    this.until = until;
+    this.metadataPrefix = metadataPrefix;
+    this.cursor = cursor;
+    this.position = position;
+  }
+
+  String encode(byte[] secret) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        out.writeByte(VERSION);
+        writeNullable(out, set);
+        writeNullable(out, from);
+        writeNullable(out, until);
+        out.writeUTF(metadataPrefix);
+        out.writeUTF(cursor);
+        out.writeInt(position);
+      }
+      String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+      return payload + '.' + sign(payload, secret);
+    } catch (IOException e) {
+      // Can't happen writing to memory
+      throw new RuntimeException(e);
+    }
+  }
+
+  static ResumptionToken decode(String token, byte[] secret) throws BadResumptionTokenException {
+    int dot = token.indexOf('.');
+    if (dot == -1) {
+      throw new BadResumptionTokenException();
+    }
+    String payload = token.substring(0, dot);
+    byte[] signature = token.substring(dot + 1).getBytes(StandardCharsets.US_ASCII);
+    if (!MessageDigest.isEqual(
+        signature, sign(payload, secret).getBytes(StandardCharsets.US_ASCII))) {
+      throw new BadResumptionTokenException();
+    }
+
+    try (DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(payload)))) {
+      if (in.readByte() != VERSION) {
+        throw new BadResumptionTokenException();
+      }
+      return new ResumptionToken(
+          readNullable(in),
+          readNullable(in),
+          readNullable(in),
+          in.readUTF(),
+          in.readUTF(),
+          in.readInt());
+    } catch (IOException | IllegalArgumentException e) {
+      throw new BadResumptionTokenException();
+    }
+  }
+
+  private static String sign(String payload, byte[] secret) {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(new SecretKeySpec(secret, ALGORITHM));
+      return Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII)));
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void writeNullable(DataOutputStream out, @Nullable String value)
+      throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  @Nullable
+  private static String readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
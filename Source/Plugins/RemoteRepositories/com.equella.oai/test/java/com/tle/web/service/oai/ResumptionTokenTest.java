@@ -0,0 +1,78 @@
+package com.tle.web.service.oai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import ORG.oclc.oai.server.verb.BadResumptionTokenException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.Test;
+
+public class ResumptionTokenTest {
+  private static final byte[] SECRET =
+      "a secret of the institution".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testRoundTrip() throws BadResumptionTokenException {
+    ResumptionToken token =
+        new ResumptionToken("set:value", "2023-01-01", "2024-01-01", "oai_dc", "cursor", 20);
+
+    ResumptionToken decoded = ResumptionToken.decode(token.encode(SECRET), SECRET);
+
+    assertEquals("set:value", decoded.set);
+    assertEquals("2023-01-01", decoded.from);
+    assertEquals("2024-01-01", decoded.until);
+    assertEquals("oai_dc", decoded.metadataPrefix);
+    assertEquals("cursor", decoded.cursor);
+    assertEquals(20, decoded.position);
+  }
+
+  @Test
+  public void testRoundTripWithoutOptionalArguments() throws BadResumptionTokenException {
+    ResumptionToken token = new ResumptionToken(null, null, null, "oai_dc", "cursor", 10);
+
+    ResumptionToken decoded = ResumptionToken.decode(token.encode(SECRET), SECRET);
+
+    assertNull(decoded.set);
+    assertNull(decoded.from);
+    assertNull(decoded.until);
+    assertEquals(10, decoded.position);
+  }
+
+  @Test(expected = BadResumptionTokenException.class)
+  public void testTamperedPayload() throws BadResumptionTokenException {
+    String encoded = new ResumptionToken(null, null, null, "oai_dc", "cursor", 10).encode(SECRET);
+    String signature = encoded.substring(encoded.indexOf('.'));
+    String other = new ResumptionToken(null, null, null, "oai_dc", "cursor", 9990).encode(SECRET);
+
+    ResumptionToken.decode(other.substring(0, other.indexOf('.')) + signature, SECRET);
+  }
+
+  @Test(expected = BadResumptionTokenException.class)
+  public void testTamperedSignature() throws BadResumptionTokenException {
+    String encoded = new ResumptionToken(null, null, null, "oai_dc", "cursor", 10).encode(SECRET);
+    char last = encoded.charAt(encoded.length() - 1);
+
+    ResumptionToken.decode(
+        encoded.substring(0, encoded.length() - 1) + (last == 'A' ? 'B' : 'A'), SECRET);
+  }
+
+  @Test(expected = BadResumptionTokenException.class)
+  public void testSignedWithAnotherSecret() throws BadResumptionTokenException {
+    String encoded = new ResumptionToken(null, null, null, "oai_dc", "cursor", 10).encode(SECRET);
+
+    ResumptionToken.decode(encoded, "another secret".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test(expected = BadResumptionTokenException.class)
+  public void testUnsignedToken() throws BadResumptionTokenException {
+    ResumptionToken.decode(
+        Base64.getUrlEncoder().encodeToString("cursor".getBytes(StandardCharsets.UTF_8)), SECRET);
+  }
+
+  @Test(expected = BadResumptionTokenException.class)
+  public void testLegacyToken() throws BadResumptionTokenException {
+    // Tokens used to be random UUIDs for entries in a cache
+    ResumptionToken.decode("1b4e28ba-2d11-4a26-9c4e-dd58e04b3a2c", SECRET);
+  }
+}
@@ -42,6 +42,12 @@ public interface AclDao extends GenericDao<AccessEntry, Long> {
 
   List<AccessEntry> listAll();
 
+  /**
+   * Lists the aggregate ordering, privilege, target and expression ID of the entries in the current
+   * institution.
+   */
+  List<Object[]> listPrivilegeEntries(int maxResults);
+
   void deleteAll();
 
   void remapExpressionId(long oldId, long newId);
@@ -27,10 +27,12 @@ import com.tle.core.dao.AclDao;
 import com.tle.core.dao.helpers.CollectionPartitioner;
 import com.tle.core.guice.Bind;
 import com.tle.core.hibernate.dao.GenericDaoImpl;
+import com.tle.core.security.impl.AclEntryCache;
 import com.tle.core.security.impl.SecureOnCallSystem;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
@@ -43,6 +45,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Singleton
 @SuppressWarnings("nls")
 public class AclDaoImpl extends GenericDaoImpl<AccessEntry, Long> implements AclDao {
+  @Inject private AclEntryCache aclCache;
+
   public AclDaoImpl() {
     super(AccessEntry.class);
   }
@@ -51,6 +55,7 @@ public class AclDaoImpl extends GenericDaoImpl<AccessEntry, Long> implements Acl
   @Transactional(propagation = Propagation.MANDATORY)
   public Long save(AccessEntry entity) {
     entity.generateAggregateOrdering();
+    aclCache.invalidate();
     return super.save(entity);
   }
 
@@ -58,12 +63,35 @@ public class AclDaoImpl extends GenericDaoImpl<AccessEntry, Long> implements Acl
   @Transactional(propagation = Propagation.MANDATORY)
   public void saveOrUpdate(AccessEntry entity) {
     entity.generateAggregateOrdering();
+    aclCache.invalidate();
     super.saveOrUpdate(entity);
   }
 
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void update(AccessEntry entity) {
+    aclCache.invalidate();
+    super.update(entity);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public AccessEntry merge(AccessEntry entity) {
+    aclCache.invalidate();
+    return super.merge(entity);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void delete(AccessEntry entity) {
+    aclCache.invalidate();
+    super.delete(entity);
+  }
+
   @Override
   @Transactional(propagation = Propagation.MANDATORY)
   public void delete(final String target, final String privilege, final Institution institution) {
+    aclCache.invalidate();
     getHibernateTemplate()
         .execute(
             new HibernateCallback() {
@@ -89,6 +117,7 @@ public class AclDaoImpl extends GenericDaoImpl<AccessEntry, Long> implements Acl
   @Transactional(propagation = Propagation.MANDATORY)
   public void deleteAll(
       final String target, final boolean targetIsPartial, final List<Integer> priorities) {
+    aclCache.invalidate();
     getHibernateTemplate()
         .execute(
             new HibernateCallback() {
@@ -121,6 +150,7 @@ public class AclDaoImpl extends GenericDaoImpl<AccessEntry, Long> implements Acl
   @SecureOnCallSystem
   @Transactional(propagation = Propagation.MANDATORY)
   public void deleteAll() {
+    aclCache.invalidate();
     getHibernateTemplate().deleteAll(listAll());
   }
 
@@ -131,6 +161,11 @@ public class AclDaoImpl extends GenericDaoImpl<AccessEntry, Long> implements Acl
     if (privileges.isEmpty() || expressions.isEmpty()) {
       return Collections.emptyList();
     }
+    List<Object[]> cached =
+        aclCache.getPrivileges(privileges, null, expressions, this::listPrivilegeEntries);
+    if (cached != null) {
+      return cached;
+    }
     return (List<Object[]>)
         getHibernateTemplate()
             .execute(
@@ -152,6 +187,11 @@ public class AclDaoImpl extends GenericDaoImpl<AccessEntry, Long> implements Acl
       final Collection<String> privileges,
       Collection<String> targets,
       final Collection<Long> expressions) {
+    List<Object[]> cached =
+        aclCache.getPrivileges(privileges, targets, expressions, this::listPrivilegeEntries);
+    if (cached != null) {
+      return cached;
+    }
     return (List<Object[]>)
         getHibernateTemplate()
             .execute(
@@ -223,9 +263,32 @@ public class AclDaoImpl extends GenericDaoImpl<AccessEntry, Long> implements Acl
                 });
   }
 
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public List<Object[]> listPrivilegeEntries(final int maxResults) {
+    return (List<Object[]>)
+        getHibernateTemplate()
+            .execute(
+                new TLEHibernateCallback() {
+                  @Override
+                  public Object doInHibernate(Session session) throws HibernateException {
+                    Query query =
+                        session.createQuery(
+                            "SELECT ae.aggregateOrdering, ae.privilege, ae.targetObject,"
+                                + " ae.expression.id FROM AccessEntry ae"
+                                + " WHERE ae.institution = :institution");
+                    query.setParameter("institution", CurrentInstitution.get());
+                    query.setReadOnly(true);
+                    query.setMaxResults(maxResults);
+                    return query.list();
+                  }
+                });
+  }
+
   @Override
   @Transactional(propagation = Propagation.MANDATORY)
   public void remapExpressionId(final long oldId, final long newId) {
+    aclCache.invalidate();
     getHibernateTemplate()
         .execute(
             new TLEHibernateCallback() {
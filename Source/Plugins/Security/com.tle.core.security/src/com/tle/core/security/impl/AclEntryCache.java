@@ -0,0 +1,284 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0, (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tle.core.security.impl;
+
+import com.google.common.cache.CacheLoader;
+import com.tle.annotation.Nullable;
+import com.tle.beans.Institution;
+import com.tle.common.institution.CurrentInstitution;
+import com.tle.core.events.services.EventService;
+import com.tle.core.guice.Bind;
+import com.tle.core.institution.InstitutionCache;
+import com.tle.core.institution.InstitutionService;
+import com.tle.core.security.events.AclsChangedEvent;
+import com.tle.core.security.events.AclsChangedListener;
+import io.prometheus.client.Counter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps the ACL entries of each institution in memory, so that working out which of a set of
+ * privileges the current user's expressions are granted or revoked over a set of targets doesn't
+ * need a query. Lookups return the same rows, in the same order, as the {@code getPrivileges} and
+ * {@code getPrivilegesForTargets} queries, so callers can't tell the difference.
+ *
+ * <p>The entries are loaded the first time they are needed and thrown away whenever an entry of the
+ * institution is changed, on this node straight away and on the other nodes once the change is
+ * committed. Institutions with more entries than {@code security.aclCache.maxEntries} keep using
+ * the queries.
+ */
+@SuppressWarnings("nls")
+@Bind
+@Singleton
+public class AclEntryCache implements AclsChangedListener {
+  private static final Counter MEMORY_LOOKUPS =
+      Counter.build()
+          .name("acl_privilege_lookups_memory")
+          .help("Privilege lookups answered from the in-memory ACL entries")
+          .register();
+  private static final Counter DATABASE_LOOKUPS =
+      Counter.build()
+          .name("acl_privilege_lookups_database")
+          .help("Privilege lookups which had to query the ACL entries")
+          .register();
+
+  private static final Comparator<Object[]> ORDERING_DESC =
+      Comparator.comparing((Object[] row) -> (String) row[0]).reversed();
+
+  @Inject private EventService eventService;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("security.aclCache.maxEntries")
+  private int maxEntries = 200000;
+
+  // Bumped by every change, so a table loaded while entries were being changed is never used
+  private final AtomicLong generation = new AtomicLong();
+  private InstitutionCache<AtomicReference<AclTable>> tables;
+
+  @Inject
+  public void setInstitutionService(InstitutionService service) {
+    tables =
+        service.newInstitutionAwareCache(
+            new CacheLoader<Institution, AtomicReference<AclTable>>() {
+              @Override
+              public AtomicReference<AclTable> load(Institution institution) {
+                return new AtomicReference<>();
+              }
+            });
+  }
+
+  /**
+   * Finds the entries for the privileges and targets which have one of the expressions, as rows of
+   * the maximum aggregate ordering, privilege and target. The rows are ordered by aggregate
+   * ordering, highest first.
+   *
+   * @param targets The targets to look for, or null for all of them.
+   * @param loader Loads the aggregate ordering, privilege, target and expression ID of every entry
+   *     in the current institution, up to the given maximum number of entries.
+   * @return The rows, or null if the entries of the institution aren't kept in memory and the
+   *     caller must query them.
+   */
+  @Nullable
+  public List<Object[]> getPrivileges(
+      Collection<String> privileges,
+      @Nullable Collection<String> targets,
+      Collection<Long> expressions,
+      IntFunction<List<Object[]>> loader) {
+    AclTable table = getTable(loader);
+    if (table == null) {
+      DATABASE_LOOKUPS.inc();
+      return null;
+    }
+    MEMORY_LOOKUPS.inc();
+    return table.getPrivileges(privileges, targets, expressions);
+  }
+
+  @Nullable
+  private AclTable getTable(IntFunction<List<Object[]>> loader) {
+    if (maxEntries <= 0 || CurrentInstitution.get() == null) {
+      return null;
+    }
+    // Entries changed by the current transaction can only be seen by querying them, and must not
+    // be kept for other transactions before they are committed
+    if (TransactionSynchronizationManager.hasResource(this)) {
+      return null;
+    }
+
+    AtomicReference<AclTable> ref = tables.getCache();
+    AclTable table = ref.get();
+    long current = generation.get();
+    if (table == null || table.generation != current) {
+      // Concurrent loads of the same entries are harmless, and rarer than waiting on a lock
+      table = new AclTable(current, loader.apply(maxEntries + 1), maxEntries);
+      ref.set(table);
+    }
+    return table.isAvailable() ? table : null;
+  }
+
+  /**
+   * Forgets the entries of the current institution after they have been changed. When called within
+   * a transaction they are forgotten again once it completes, in case they were reloaded from the
+   * uncommitted changes, and only then are the other nodes told.
+   */
+  public void invalidate() {
+    final Institution institution = CurrentInstitution.get();
+    if (institution == null) {
+      return;
+    }
+    clear(institution);
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      eventService.publishApplicationEvent(new AclsChangedEvent());
+    } else if (!TransactionSynchronizationManager.hasResource(this)) {
+      // Only once per transaction, no matter how many entries are changed
+      TransactionSynchronizationManager.bindResource(this, institution);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(AclEntryCache.this);
+              clear(institution);
+              if (status == STATUS_COMMITTED) {
+                eventService.publishApplicationEvent(new AclsChangedEvent());
+              }
+            }
+          });
+    }
+  }
+
+  /** Changes whenever ACL entries are changed, so lookups remembered elsewhere can be dropped. */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  @Override
+  public void aclsChangedEvent(AclsChangedEvent event) {
+    clear(CurrentInstitution.get());
+  }
+
+  private void clear(Institution institution) {
+    generation.incrementAndGet();
+    tables.clear(institution);
+  }
+
+  static final class AclTable {
+    private final long generation;
+    // Privilege to target to the entries for it, highest aggregate ordering first. Null when there
+    // are too many entries to keep.
+    @Nullable private final Map<String, Map<String, List<Entry>>> entries;
+
+    /**
+     * @param rows The aggregate ordering, privilege, target and expression ID of every entry.
+     * @param maxEntries The most entries to keep in memory.
+     */
+    AclTable(long generation, List<Object[]> rows, int maxEntries) {
+      this.generation = generation;
+      if (rows.size() > maxEntries) {
+        entries = null;
+        return;
+      }
+
+      entries = new HashMap<>();
+      for (Object[] row : rows) {
+        entries
+            .computeIfAbsent((String) row[1], p -> new HashMap<>())
+            .computeIfAbsent((String) row[2], t -> new ArrayList<>())
+            .add(new Entry(((String) row[0]).intern(), (Long) row[3]));
+      }
+      for (Map<String, List<Entry>> targets : entries.values()) {
+        for (List<Entry> targetEntries : targets.values()) {
+          targetEntries.sort(Comparator.comparing((Entry e) -> e.ordering).reversed());
+        }
+      }
+    }
+
+    boolean isAvailable() {
+      return entries != null;
+    }
+
+    List<Object[]> getPrivileges(
+        Collection<String> privileges,
+        @Nullable Collection<String> targets,
+        Collection<Long> expressions) {
+      Set<Long> expressionIds = new HashSet<>(expressions);
+      List<Object[]> rows = new ArrayList<>();
+      for (String privilege : new HashSet<>(privileges)) {
+        Map<String, List<Entry>> privilegeEntries = entries.get(privilege);
+        if (privilegeEntries == null) {
+          continue;
+        }
+
+        if (targets == null) {
+          for (Map.Entry<String, List<Entry>> target : privilegeEntries.entrySet()) {
+            addRows(rows, privilege, target.getKey(), target.getValue(), expressionIds);
+          }
+        } else {
+          for (String target : new HashSet<>(targets)) {
+            List<Entry> targetEntries = privilegeEntries.get(target);
+            if (targetEntries != null) {
+              addRows(rows, privilege, target, targetEntries, expressionIds);
+            }
+          }
+        }
+      }
+      rows.sort(ORDERING_DESC);
+      return rows;
+    }
+
+    /** One row for each distinct aggregate ordering, like the queries' GROUP BY. */
+    private static void addRows(
+        List<Object[]> rows,
+        String privilege,
+        String target,
+        List<Entry> targetEntries,
+        Set<Long> expressionIds) {
+      String last = null;
+      for (Entry entry : targetEntries) {
+        if (!entry.ordering.equals(last) && expressionIds.contains(entry.expressionId)) {
+          rows.add(new Object[] {entry.ordering, privilege, target});
+          last = entry.ordering;
+        }
+      }
+    }
+  }
+
+  private static final class Entry {
+    private final String ordering;
+    private final long expressionId;
+
+    private Entry(String ordering, long expressionId) {
+      this.ordering = ordering;
+      this.expressionId = expressionId;
+    }
+  }
+}
@@ -37,6 +37,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.tle.annotation.Nullable;
 import com.tle.beans.security.ACLEntryMapping;
 import com.tle.beans.security.AccessEntry;
 import com.tle.beans.security.AccessExpression;
@@ -61,6 +62,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -78,6 +80,8 @@ import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @SuppressWarnings("nls")
 @Bind(TLEAclManager.class)
@@ -87,7 +91,13 @@ public class TLEAclManagerImpl implements TLEAclManager {
       String.format(
           "%04d", SecurityConstants.PRIORITY_OBJECT_INSTANCE + SecurityConstants.PRIORITY_MAX);
 
+  private static final Comparator<Object[]> ORDERING_DESC =
+      Comparator.comparing((Object[] row) -> (String) row[0]).reversed();
+  // Start again rather than let a long transaction remember every target it has looked up
+  private static final int MAX_MEMO_TARGETS = 10000;
+
   @Inject private AclDao aclDao;
+  @Inject private AclEntryCache aclCache;
   @Inject private AccessExpressionDao expressionDao;
 
   private PluginTracker<SecurityTargetHandler> ownerHandlers;
@@ -225,11 +235,88 @@ public class TLEAclManagerImpl implements TLEAclManager {
         new CombinedCollection<Long>(currentUser.getCommonAclExpressions(), ownerOrNotOwner);
 
     if (!targetMapping.isEmpty() && !expressions.isEmpty()) {
-      return aclDao.getPrivilegesForTargets(privileges, targetMapping.keySet(), expressions);
+      return getPrivilegesForTargets(privileges, targetMapping.keySet(), expressions);
     }
     return Collections.emptyList();
   }
 
+  /**
+   * Looks up the ACLs for the targets, ordered by aggregate ordering with the highest first. Only
+   * the targets which haven't already been looked up for the same privileges and expressions in the
+   * current transaction are queried, so the targets shared by a page of objects (their collection,
+   * status and so on) and objects checked again while rendering the page cost nothing extra.
+   */
+  private List<Object[]> getPrivilegesForTargets(
+      Collection<String> privileges, Set<String> targets, Collection<Long> expressions) {
+    Map<String, List<Object[]>> memo = getMemo(privileges, expressions);
+    if (memo == null) {
+      List<Object[]> rows =
+          new ArrayList<Object[]>(aclDao.getPrivilegesForTargets(privileges, targets, expressions));
+      // Large target lists are queried in chunks, each in its own order
+      rows.sort(ORDERING_DESC);
+      return rows;
+    }
+
+    List<String> missing =
+        targets.stream().filter(t -> !memo.containsKey(t)).collect(Collectors.toList());
+    if (!missing.isEmpty()) {
+      for (String target : missing) {
+        memo.put(target, new ArrayList<Object[]>());
+      }
+      for (Object[] row : aclDao.getPrivilegesForTargets(privileges, missing, expressions)) {
+        memo.get((String) row[2]).add(row);
+      }
+    }
+
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for (String target : targets) {
+      rows.addAll(memo.get(target));
+    }
+    rows.sort(ORDERING_DESC);
+    return rows;
+  }
+
+  /**
+   * The rows looked up by target for the privileges and expressions in the current transaction, or
+   * null if there is no transaction. Everything is forgotten if any ACLs are changed.
+   */
+  @Nullable
+  private Map<String, List<Object[]>> getMemo(
+      Collection<String> privileges, Collection<Long> expressions) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return null;
+    }
+
+    AclLookupMemo memo = (AclLookupMemo) TransactionSynchronizationManager.getResource(this);
+    if (memo == null) {
+      memo = new AclLookupMemo();
+      TransactionSynchronizationManager.bindResource(this, memo);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager.unbindResourceIfPossible(TLEAclManagerImpl.this);
+            }
+          });
+    }
+
+    long generation = aclCache.getGeneration();
+    if (memo.generation != generation
+        || memo.rows.values().stream().mapToInt(Map::size).sum() > MAX_MEMO_TARGETS) {
+      memo.rows.clear();
+      memo.generation = generation;
+    }
+
+    List<Set<?>> key =
+        Arrays.asList(new HashSet<String>(privileges), new HashSet<Long>(expressions));
+    Map<String, List<Object[]>> rows = memo.rows.get(key);
+    if (rows == null) {
+      rows = new HashMap<String, List<Object[]>>();
+      memo.rows.put(key, rows);
+    }
+    return rows;
+  }
+
   /** Adds each object to a map, stating whether each privilege is granted or revoked. */
   private <T> void mapObjectsToPrivileges(
       Map<String, Set<T>> targetMapping,
@@ -722,6 +809,12 @@ public class TLEAclManagerImpl implements TLEAclManager {
     return null;
   }
 
+  private static final class AclLookupMemo {
+    private final Map<List<Set<?>>, Map<String, List<Object[]>>> rows =
+        new HashMap<List<Set<?>>, Map<String, List<Object[]>>>();
+    private long generation = -1;
+  }
+
   private class TargetTransformer implements Iterator<Object> {
     private final Set<Class<?>> handledClassNames = new LinkedHashSet<Class<?>>();
 
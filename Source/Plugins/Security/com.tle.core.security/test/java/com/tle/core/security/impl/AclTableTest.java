@@ -0,0 +1,97 @@
+package com.tle.core.security.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.tle.core.security.impl.AclEntryCache.AclTable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class AclTableTest {
+  private static final List<Long> ALL_EXPRESSIONS = Arrays.asList(1L, 2L, 3L);
+
+  private final List<Object[]> entries =
+      Arrays.asList(
+          entry("0100", "VIEW_ITEM", "*", 1),
+          entry("0300", "VIEW_ITEM", "C:collection", 1),
+          entry("0300", "VIEW_ITEM", "C:collection", 2),
+          entry("0200", "VIEW_ITEM", "C:collection", 3),
+          entry("0400", "EDIT_ITEM", "C:collection", 2),
+          entry("0500", "VIEW_ITEM", "C:other", 3));
+
+  @Test
+  public void ordersRowsByHighestAggregateOrderingFirst() {
+    AclTable table = new AclTable(0, entries, 100);
+
+    List<Object[]> rows =
+        table.getPrivileges(
+            Arrays.asList("VIEW_ITEM", "EDIT_ITEM"), null, Collections.singleton(1L));
+    assertRows(rows, row("0300", "VIEW_ITEM", "C:collection"), row("0100", "VIEW_ITEM", "*"));
+
+    rows = table.getPrivileges(Arrays.asList("VIEW_ITEM", "EDIT_ITEM"), null, ALL_EXPRESSIONS);
+    assertRows(
+        rows,
+        row("0500", "VIEW_ITEM", "C:other"),
+        row("0400", "EDIT_ITEM", "C:collection"),
+        row("0300", "VIEW_ITEM", "C:collection"),
+        row("0200", "VIEW_ITEM", "C:collection"),
+        row("0100", "VIEW_ITEM", "*"));
+  }
+
+  @Test
+  public void groupsEntriesWithTheSameOrdering() {
+    AclTable table = new AclTable(0, entries, 100);
+
+    // Expressions 1 and 2 both have an entry with ordering 0300, which is one row
+    List<Object[]> rows =
+        table.getPrivileges(
+            Collections.singleton("VIEW_ITEM"),
+            Collections.singleton("C:collection"),
+            Arrays.asList(1L, 2L));
+    assertRows(rows, row("0300", "VIEW_ITEM", "C:collection"));
+  }
+
+  @Test
+  public void onlyFindsTheGivenTargets() {
+    AclTable table = new AclTable(0, entries, 100);
+
+    List<Object[]> rows =
+        table.getPrivileges(
+            Collections.singleton("VIEW_ITEM"),
+            Arrays.asList("*", "C:other", "C:missing"),
+            ALL_EXPRESSIONS);
+    assertRows(rows, row("0500", "VIEW_ITEM", "C:other"), row("0100", "VIEW_ITEM", "*"));
+
+    assertTrue(
+        table
+            .getPrivileges(
+                Collections.singleton("DELETE_ITEM"), Collections.singleton("*"), ALL_EXPRESSIONS)
+            .isEmpty());
+  }
+
+  @Test
+  public void isNotAvailableWithTooManyEntries() {
+    assertTrue(new AclTable(0, entries, entries.size()).isAvailable());
+    assertFalse(new AclTable(0, entries, entries.size() - 1).isAvailable());
+  }
+
+  private static Object[] entry(String ordering, String privilege, String target, long expr) {
+    return new Object[] {ordering, privilege, target, expr};
+  }
+
+  private static Object[] row(String ordering, String privilege, String target) {
+    return new Object[] {ordering, privilege, target};
+  }
+
+  private static void assertRows(List<Object[]> actual, Object[]... expected) {
+    assertEquals(expected.length, actual.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertArrayEquals(expected[i], actual.get(i));
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package com.tle.core.security.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tle.common.usermanagement.user.CurrentUser;
+import com.tle.common.usermanagement.user.UserState;
+import com.tle.core.dao.AclDao;
+import com.tle.core.plugins.PluginService;
+import com.tle.core.plugins.PluginTracker;
+import com.tle.core.security.DomainObjectPrivilegeFilterExtension;
+import com.tle.core.security.SecurityTargetHandler;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.java.plugin.registry.Extension;
+import org.java.plugin.registry.Extension.Parameter;
+import org.java.plugin.registry.PluginDescriptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@SuppressWarnings("nls")
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TLEAclManagerImplTest {
+  private static final List<String> VIEW_ITEM = Collections.singletonList("VIEW_ITEM");
+
+  @Mock private AclDao aclDao;
+  @Mock private AclEntryCache aclCache;
+  @Mock private PluginService pluginService;
+  @Mock private PluginTracker<DomainObjectPrivilegeFilterExtension> domainObjectPrivFilters;
+  @Mock private UserState userState;
+  @InjectMocks private TLEAclManagerImpl aclManager;
+
+  @Before
+  public void setUp() {
+    SecurityTargetHandler labeller = mock(SecurityTargetHandler.class);
+    doAnswer(
+            invocation -> {
+              Set<String> labels = invocation.getArgument(0);
+              Target target = invocation.getArgument(1);
+              labels.add("C:" + target.collection);
+              labels.add("I:" + target.id);
+              return null;
+            })
+        .when(labeller)
+        .gatherAllLabels(any(), any());
+
+    Parameter handles = mock(Parameter.class);
+    when(handles.valueAsString()).thenReturn(Target.class.getName());
+    Extension extension = mock(Extension.class);
+    when(extension.getParameters("handlesLabellingFor")).thenReturn(List.of(handles));
+    when(extension.getParameter("handler")).thenReturn(mock(Parameter.class));
+    when(pluginService.getConnectedExtensions("com.tle.core.security", "securityTargetHandler"))
+        .thenReturn(List.of(extension));
+    when(pluginService.getBean(nullable(PluginDescriptor.class), nullable(String.class)))
+        .thenReturn(labeller);
+    aclManager.setPluginService(pluginService);
+
+    when(userState.getCommonAclExpressions()).thenReturn(List.of(1L));
+    when(userState.getOwnerAclExpressions()).thenReturn(List.of(2L));
+    when(userState.getNotOwnerAclExpressions()).thenReturn(List.of(3L));
+    CurrentUser.setUserState(userState);
+
+    // Every collection grants VIEW_ITEM
+    when(aclDao.getPrivilegesForTargets(anyCollection(), anyCollection(), anyCollection()))
+        .thenAnswer(
+            invocation -> {
+              List<Object[]> rows = new ArrayList<>();
+              for (String target : invocation.<Collection<String>>getArgument(1)) {
+                if (target.startsWith("C:")) {
+                  rows.add(new Object[] {"0300G", "VIEW_ITEM", target});
+                }
+              }
+              return rows;
+            });
+  }
+
+  @After
+  public void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.unbindResourceIfPossible(aclManager);
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    CurrentUser.setUserState(null);
+  }
+
+  @Test
+  public void looksUpAPageOfObjectsInOneQuery() {
+    List<Target> page = page(0, 50, "a", "b");
+
+    Map<Target, Map<String, Boolean>> privileges =
+        aclManager.getPrivilegesForObjects(VIEW_ITEM, page);
+
+    // None are owned, so only the non-owner ACLs are looked up
+    Collection<String> targets = verifyQueriedTargets(1).get(0);
+    assertEquals(1 + 2 + 50, targets.size());
+    assertEquals(50, privileges.size());
+    for (Target target : page) {
+      assertEquals(Boolean.TRUE, privileges.get(target).get("VIEW_ITEM"));
+    }
+  }
+
+  @Test
+  public void onlyLooksUpNewTargetsForLaterPagesInTheTransaction() {
+    TransactionSynchronizationManager.initSynchronization();
+
+    aclManager.getPrivilegesForObjects(VIEW_ITEM, page(0, 20, "a"));
+    aclManager.getPrivilegesForObjects(VIEW_ITEM, page(20, 20, "a", "b"));
+    // Checking the same objects again while rendering the page costs nothing
+    Map<Target, Map<String, Boolean>> privileges =
+        aclManager.getPrivilegesForObjects(VIEW_ITEM, page(20, 20, "a", "b"));
+
+    List<Collection<String>> queried = verifyQueriedTargets(2);
+    Set<String> secondPage = new HashSet<>(queried.get(1));
+    assertEquals(1 + 20, secondPage.size());
+    assertTrue(secondPage.contains("C:b"));
+    assertEquals(20, privileges.size());
+    for (Map<String, Boolean> privs : privileges.values()) {
+      assertEquals(Boolean.TRUE, privs.get("VIEW_ITEM"));
+    }
+  }
+
+  @Test
+  public void looksUpAgainOnceTheAclsChange() {
+    TransactionSynchronizationManager.initSynchronization();
+
+    aclManager.getPrivilegesForObjects(VIEW_ITEM, page(0, 20, "a"));
+    when(aclCache.getGeneration()).thenReturn(1L);
+    aclManager.getPrivilegesForObjects(VIEW_ITEM, page(0, 20, "a"));
+
+    List<Collection<String>> queried = verifyQueriedTargets(2);
+    assertEquals(new HashSet<>(queried.get(0)), new HashSet<>(queried.get(1)));
+  }
+
+  private List<Collection<String>> verifyQueriedTargets(int queries) {
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Collection<String>> targets = ArgumentCaptor.forClass(Collection.class);
+    verify(aclDao, times(queries))
+        .getPrivilegesForTargets(
+            eq(VIEW_ITEM),
+            targets.capture(),
+            argThat(expressions -> Set.of(1L, 3L).equals(new HashSet<>(expressions))));
+    return targets.getAllValues();
+  }
+
+  /** Objects with IDs from {@code first}, spread across the collections. */
+  private static List<Target> page(int first, int size, String... collections) {
+    List<Target> page = new ArrayList<>();
+    for (int i = first; i < first + size; i++) {
+      page.add(new Target(i, collections[i % collections.length]));
+    }
+    return page;
+  }
+
+  private static final class Target {
+    private final int id;
+    private final String collection;
+
+    private Target(int id, String collection) {
+      this.id = id;
+      this.collection = collection;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Target && ((Target) obj).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return id;
+    }
+  }
+}
@@ -49,6 +49,11 @@ interface SearchParamsBase {
    * The number of results to return.
    */
   length?: number;
+  /**
+   * A cursor used to page through the results instead of `start`. Use '*' for the first page,
+   * and then the `nextCursor` of each result for the following page.
+   */
+  cursor?: string;
   /**
    * List of collections.
    */
@@ -488,6 +493,10 @@ export interface SearchResult<T> {
    * List of words to use to highlight when displaying the results
    */
   highlight: string[];
+  /**
+   * The cursor for the next page when paging with a cursor. Absent if there are no more results.
+   */
+  nextCursor?: string;
 }
 
 const isMustValid = ([field, values]: Must): boolean => {